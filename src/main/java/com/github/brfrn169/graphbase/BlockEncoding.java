@@ -0,0 +1,7 @@
+package com.github.brfrn169.graphbase;
+
+// how the keys are encoded in the blocks of the tables, which mostly shortens the repeated
+// prefixes of the row keys
+public enum BlockEncoding {
+    NONE, PREFIX, DIFF, FAST_DIFF, PREFIX_TREE
+}
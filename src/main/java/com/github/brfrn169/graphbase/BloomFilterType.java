@@ -0,0 +1,6 @@
+package com.github.brfrn169.graphbase;
+
+// what the bloom filters of the tables are built on, the rows or the rows and the columns
+public enum BloomFilterType {
+    NONE, ROW, ROWCOL
+}
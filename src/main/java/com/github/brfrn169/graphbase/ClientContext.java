@@ -0,0 +1,48 @@
+package com.github.brfrn169.graphbase;
+
+import javax.annotation.Nullable;
+
+// the client the calls of the current thread are made for, which the per client quotas apply to,
+// and the workload class of the calls, which is INTERACTIVE unless set
+public final class ClientContext {
+
+    private static final ThreadLocal<String> CLIENT_ID = new ThreadLocal<>();
+
+    private static final ThreadLocal<WorkloadClass> WORKLOAD_CLASS = new ThreadLocal<>();
+
+    private ClientContext() {
+    }
+
+    public static void set(@Nullable String clientId) {
+        if (clientId == null) {
+            CLIENT_ID.remove();
+        } else {
+            CLIENT_ID.set(clientId);
+        }
+    }
+
+    public static void setWorkloadClass(@Nullable WorkloadClass workloadClass) {
+        if (workloadClass == null) {
+            WORKLOAD_CLASS.remove();
+        } else {
+            WORKLOAD_CLASS.set(workloadClass);
+        }
+    }
+
+    public static void clear() {
+        CLIENT_ID.remove();
+        WORKLOAD_CLASS.remove();
+    }
+
+    @Nullable public static String get() {
+        return CLIENT_ID.get();
+    }
+
+    public static WorkloadClass getWorkloadClass() {
+        WorkloadClass workloadClass = WORKLOAD_CLASS.get();
+        if (workloadClass == null) {
+            return WorkloadClass.INTERACTIVE;
+        }
+        return workloadClass;
+    }
+}
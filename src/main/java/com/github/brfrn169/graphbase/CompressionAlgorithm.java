@@ -0,0 +1,7 @@
+package com.github.brfrn169.graphbase;
+
+// the compression of the blocks of the tables. the ones other than NONE and GZ need the native
+// libraries on the storage servers
+public enum CompressionAlgorithm {
+    NONE, GZ, SNAPPY, LZ4, LZO
+}
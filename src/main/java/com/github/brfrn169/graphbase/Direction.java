@@ -0,0 +1,5 @@
+package com.github.brfrn169.graphbase;
+
+public enum Direction {
+    OUT, IN, BOTH
+}
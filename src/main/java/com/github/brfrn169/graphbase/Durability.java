@@ -0,0 +1,7 @@
+package com.github.brfrn169.graphbase;
+
+// how the writes go to the write-ahead log, from the fastest and the least durable.
+// USE_DEFAULT takes the durability of the tables
+public enum Durability {
+    USE_DEFAULT, SKIP_WAL, ASYNC_WAL, SYNC_WAL, FSYNC_WAL
+}
@@ -5,24 +5,30 @@ import com.github.brfrn169.graphbase.exception.GraphAlreadyExistsException;
 import com.github.brfrn169.graphbase.exception.GraphNotFoundException;
 import com.github.brfrn169.graphbase.exception.GraphbaseException;
 import com.github.brfrn169.graphbase.util.Json;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
-import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.Stat;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class GraphCatalogManager implements Closeable {
 
@@ -40,13 +46,49 @@ public class GraphCatalogManager implements Closeable {
 
     public static final String ZOOKEEPER_RETRY_CONF_KEY = "graphbase.hbase.catalog.zookeeper.retry";
 
+    public static final String ZOOKEEPER_INITIAL_LOAD_TIMEOUT_CONF_KEY =
+        "graphbase.hbase.catalog.zookeeper.initial.load.timeout";
+
+    private static final Log LOG = LogFactory.getLog(GraphCatalogManager.class);
+
     private final String catalogBasePath;
 
-    private final ConcurrentMap<String, GraphConfiguration> graphConfMap =
-        new ConcurrentHashMap<>();
+    // a configuration and the zxids of the znode which has it: the czxid tells the znodes of a
+    // graph which was dropped and created again apart, and the mzxid the changes of a znode. the
+    // changes come both from the cache and from this manager, and only the ones newer than the
+    // entry are applied, so that a late event of the cache doesn't bring back an older
+    // configuration. a dropped graph is kept as an entry without a configuration, so that the late
+    // events of its znode don't bring it back either
+    private static final class CatalogEntry {
+        @Nullable private final GraphConfiguration graphConf;
+        private final long czxid;
+        private final long mzxid;
+
+        private CatalogEntry(@Nullable GraphConfiguration graphConf, long czxid, long mzxid) {
+            this.graphConf = graphConf;
+            this.czxid = czxid;
+            this.mzxid = mzxid;
+        }
+
+        // the drop is the last change of a znode, whatever the mzxid the cache saw last
+        private static CatalogEntry dropped(long czxid) {
+            return new CatalogEntry(null, czxid, Long.MAX_VALUE);
+        }
+
+        private boolean isNewerThan(CatalogEntry other) {
+            if (czxid != other.czxid) {
+                return czxid > other.czxid;
+            }
+            return mzxid > other.mzxid;
+        }
+    }
+
+    private final ConcurrentMap<String, CatalogEntry> graphConfMap = new ConcurrentHashMap<>();
 
     private final CuratorFramework client;
 
+    private final PathChildrenCache cache;
+
     private final Json json;
 
     public GraphCatalogManager(Configuration conf) {
@@ -62,6 +104,7 @@ public class GraphCatalogManager implements Closeable {
             conf.getInt(HConstants.ZK_SESSION_TIMEOUT, 20000));
         int connectionTimeout = conf.getInt(ZOOKEEPER_CONNECTION_TIMEOUT_CONF_KEY, 10000);
         int retryCount = conf.getInt(ZOOKEEPER_RETRY_CONF_KEY, 10);
+        int initialLoadTimeout = conf.getInt(ZOOKEEPER_INITIAL_LOAD_TIMEOUT_CONF_KEY, 60000);
 
         client =
             CuratorFrameworkFactory.builder().connectString(quorum).sessionTimeoutMs(sessionTimeout)
@@ -76,65 +119,101 @@ public class GraphCatalogManager implements Closeable {
             throw new GraphbaseException("an error occurred during creating a base path.", e);
         }
 
-        setCatalogWatcher();
+        cache = new PathChildrenCache(client, catalogBasePath, true,
+            new ThreadFactoryBuilder().setNameFormat("graphbase-catalog-%d").setDaemon(true)
+                .build());
+        startCache(initialLoadTimeout);
     }
 
-    private synchronized void setCatalogWatcher() {
-        try {
-            List<String> children = client.getChildren().usingWatcher((Watcher) event -> {
-                if (event.getType() == Watcher.Event.EventType.NodeChildrenChanged) {
-                    setCatalogWatcher();
-                }
-            }).forPath(catalogBasePath);
-
-            Set<String> removedGraphIds = new HashSet<>(graphConfMap.keySet());
-
-            for (String graphId : children) {
-                if (graphConfMap.containsKey(graphId)) {
-                    removedGraphIds.remove(graphId);
-                } else {
-                    Optional<GraphConfiguration> graphConf =
-                        getGraphGraphConfigurationInternal(graphId);
-                    graphConf.ifPresent(conf -> graphConfMap.put(graphId, conf));
-                }
+    // the cache applies each change of the children as it comes, instead of listing all of them
+    // again. the data of the children are fetched in the background at the start, so they are
+    // loaded in parallel
+    private void startCache(int initialLoadTimeout) {
+        CountDownLatch initialized = new CountDownLatch(1);
+        cache.getListenable().addListener((curatorFramework, event) -> {
+            switch (event.getType()) {
+                case CHILD_ADDED:
+                case CHILD_UPDATED:
+                    onChildChanged(event.getData());
+                    break;
+                case CHILD_REMOVED:
+                    onChildRemoved(event.getData());
+                    break;
+                case INITIALIZED:
+                    initialized.countDown();
+                    break;
+                default:
+                    break;
             }
+        });
 
-            removedGraphIds.forEach(graphConfMap::remove);
+        try {
+            cache.start(PathChildrenCache.StartMode.POST_INITIALIZED_EVENT);
+            if (!initialized.await(initialLoadTimeout, TimeUnit.MILLISECONDS)) {
+                throw new GraphbaseException("timed out during loading the graph catalog.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GraphbaseException("interrupted during loading the graph catalog.", e);
+        } catch (GraphbaseException e) {
+            throw e;
         } catch (Exception e) {
-            throw new GraphbaseException("an error occurred during setting a watcher.", e);
+            throw new GraphbaseException("an error occurred during starting the catalog cache.",
+                e);
         }
     }
 
-    private Optional<GraphConfiguration> getGraphGraphConfigurationInternal(String graphId) {
+    void onChildChanged(ChildData data) {
+        String graphId = ZKPaths.getNodeFromPath(data.getPath());
         try {
-            byte[] result = client.getData().usingWatcher((Watcher) event -> {
-                if (event.getType() == Watcher.Event.EventType.NodeDataChanged) {
-                    getGraphGraphConfigurationInternal(graphId)
-                        .ifPresent(graphConf -> graphConfMap.put(graphId, graphConf));
-                }
-            }).forPath(catalogBasePath + "/" + graphId);
-            return Optional.of(json.readValue(result, GraphConfiguration.class));
-        } catch (KeeperException.NoNodeException e) {
-            return Optional.empty();
-        } catch (Exception e) {
-            throw new GraphbaseException("an error occurred during getting graph configuration.",
-                e);
+            putIfNewer(graphId,
+                new CatalogEntry(json.readValue(data.getData(), GraphConfiguration.class),
+                    data.getStat().getCzxid(), data.getStat().getMzxid()));
+        } catch (GraphbaseException e) {
+            LOG.error("failed to read the graph configuration. graphId=" + graphId, e);
         }
+        // the configuration is kept in graphConfMap
+        cache.clearDataBytes(data.getPath(), data.getStat().getVersion());
+    }
+
+    // the stat is the last one the cache saw, which can be older than the one of a change made
+    // through this manager, so only the czxid is compared
+    void onChildRemoved(ChildData data) {
+        putIfNewer(ZKPaths.getNodeFromPath(data.getPath()),
+            CatalogEntry.dropped(data.getStat().getCzxid()));
+    }
+
+    private void putIfNewer(String graphId, CatalogEntry entry) {
+        graphConfMap.merge(graphId, entry, (current, e) -> {
+            if (e.isNewerThan(current)) {
+                return e;
+            }
+            return current;
+        });
     }
 
     public boolean graphExists(String graphId) {
-        return graphConfMap.containsKey(graphId);
+        return getGraphConfiguration(graphId).isPresent();
     }
 
     public Optional<GraphConfiguration> getGraphConfiguration(String graphId) {
-        return Optional.ofNullable(graphConfMap.get(graphId));
+        return Optional.ofNullable(graphConfMap.get(graphId)).map(entry -> entry.graphConf);
     }
 
+    // the changes made through this manager are visible to it when they return, without waiting
+    // for the cache
     public void createGraph(GraphConfiguration graphConf) {
+        String path = catalogBasePath + "/" + graphConf.graphId();
         try {
             client.create().withMode(CreateMode.PERSISTENT).withACL(ZooDefs.Ids.OPEN_ACL_UNSAFE)
-                .forPath(catalogBasePath + "/" + graphConf.graphId(),
-                    json.writeValueAsBytes(graphConf));
+                .forPath(path, json.writeValueAsBytes(graphConf));
+
+            // the create doesn't return the zxid
+            Stat stat = client.checkExists().forPath(path);
+            if (stat != null) {
+                putIfNewer(graphConf.graphId(),
+                    new CatalogEntry(graphConf, stat.getCzxid(), stat.getMzxid()));
+            }
         } catch (final KeeperException.NodeExistsException e) {
             throw new GraphAlreadyExistsException();
         } catch (final Exception e) {
@@ -143,9 +222,30 @@ public class GraphCatalogManager implements Closeable {
         }
     }
 
+    public void updateGraph(GraphConfiguration graphConf) {
+        try {
+            Stat stat = client.setData().forPath(catalogBasePath + "/" + graphConf.graphId(),
+                json.writeValueAsBytes(graphConf));
+            putIfNewer(graphConf.graphId(),
+                new CatalogEntry(graphConf, stat.getCzxid(), stat.getMzxid()));
+        } catch (final KeeperException.NoNodeException e) {
+            throw new GraphNotFoundException();
+        } catch (final Exception e) {
+            throw new GraphbaseException("an error occurred during updating graph configuration.",
+                e);
+        }
+    }
+
     public void dropGraph(String graphId) {
+        String path = catalogBasePath + "/" + graphId;
         try {
-            client.delete().forPath(catalogBasePath + "/" + graphId);
+            // the delete doesn't return the czxid
+            Stat stat = client.checkExists().forPath(path);
+            if (stat == null) {
+                throw new KeeperException.NoNodeException(path);
+            }
+            client.delete().forPath(path);
+            putIfNewer(graphId, CatalogEntry.dropped(stat.getCzxid()));
         } catch (final KeeperException.NoNodeException e) {
             throw new GraphNotFoundException();
         } catch (final Exception e) {
@@ -155,6 +255,10 @@ public class GraphCatalogManager implements Closeable {
     }
 
     @Override public void close() throws IOException {
-        client.close();
+        try {
+            cache.close();
+        } finally {
+            client.close();
+        }
     }
 }
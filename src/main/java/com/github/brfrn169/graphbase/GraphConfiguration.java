@@ -5,11 +5,106 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.NonNull;
 import lombok.experimental.Accessors;
+import org.apache.hadoop.hbase.client.Consistency;
+
+import javax.annotation.Nullable;
 
 @Data @Accessors(fluent = true) public class GraphConfiguration {
     @NonNull @JsonProperty("graphId") private final String graphId;
+    // DEDICATED when null
+    @Nullable @JsonProperty("layout") private final StorageLayout layout;
+    @Nullable @JsonProperty("storageOptions") private final StorageOptions storageOptions;
+    // the durability of the writes to the graph. a write takes the durability of its request,
+    // then this one, then the one of the tables in the storage options, then the hbase default.
+    // it's changed by GraphService.setDurability without altering the tables
+    @Nullable @JsonProperty("durability") private final Durability durability;
+    // the rates the calls to the graph are limited to. not limited when null
+    @Nullable @JsonProperty("quotas") private final Quotas quotas;
+    // the consistency of the reads of the graph, which can be overridden per request. TIMELINE
+    // reads can be served by the secondary region replicas. STRONG when null
+    @Nullable @JsonProperty("consistency") private final Consistency consistency;
+    // when a shared graph was created, in milliseconds since the epoch. the reads of its history
+    // don't go before it, so that a graph created again with the same id doesn't see the cells
+    // the dropped one left in the shared tables. null for the dedicated graphs
+    @Nullable @JsonProperty("createdAt") private final Long createdAt;
+
+    public GraphConfiguration(@NonNull String graphId) {
+        this(graphId, null, null, null);
+    }
+
+    public GraphConfiguration(@NonNull String graphId, @Nullable StorageOptions storageOptions) {
+        this(graphId, null, storageOptions, null);
+    }
+
+    public GraphConfiguration(@NonNull String graphId, @Nullable StorageLayout layout,
+        @Nullable StorageOptions storageOptions) {
+        this(graphId, layout, storageOptions, null);
+    }
+
+    public GraphConfiguration(@NonNull String graphId, @Nullable StorageLayout layout,
+        @Nullable StorageOptions storageOptions, @Nullable Durability durability) {
+        this(graphId, layout, storageOptions, durability, null, null);
+    }
 
-    @JsonCreator public GraphConfiguration(@NonNull @JsonProperty("graphId") String graphId) {
+    public GraphConfiguration(@NonNull String graphId, @Nullable StorageLayout layout,
+        @Nullable StorageOptions storageOptions, @Nullable Durability durability,
+        @Nullable Quotas quotas) {
+        this(graphId, layout, storageOptions, durability, quotas, null);
+    }
+
+    public GraphConfiguration(@NonNull String graphId, @Nullable StorageLayout layout,
+        @Nullable StorageOptions storageOptions, @Nullable Durability durability,
+        @Nullable Quotas quotas, @Nullable Consistency consistency) {
+        this(graphId, layout, storageOptions, durability, quotas, consistency, null);
+    }
+
+    @JsonCreator public GraphConfiguration(@NonNull @JsonProperty("graphId") String graphId,
+        @JsonProperty("layout") StorageLayout layout,
+        @JsonProperty("storageOptions") StorageOptions storageOptions,
+        @JsonProperty("durability") Durability durability,
+        @JsonProperty("quotas") Quotas quotas,
+        @JsonProperty("consistency") Consistency consistency,
+        @JsonProperty("createdAt") Long createdAt) {
         this.graphId = graphId;
+        this.layout = layout;
+        this.storageOptions = storageOptions;
+        this.durability = durability;
+        this.quotas = quotas;
+        this.consistency = consistency;
+        this.createdAt = createdAt;
+    }
+
+    // the same graph, written with another durability. this one when null
+    public GraphConfiguration withDurability(@Nullable Durability durability) {
+        if (durability == null) {
+            return this;
+        }
+        return new GraphConfiguration(graphId, layout, storageOptions, durability, quotas,
+            consistency, createdAt);
+    }
+
+    // the same graph with another durability of its own, which is removed when null
+    public GraphConfiguration withGraphDurability(@Nullable Durability durability) {
+        return new GraphConfiguration(graphId, layout, storageOptions, durability, quotas,
+            consistency, createdAt);
+    }
+
+    public GraphConfiguration withQuotas(@Nullable Quotas quotas) {
+        return new GraphConfiguration(graphId, layout, storageOptions, durability, quotas,
+            consistency, createdAt);
+    }
+
+    public GraphConfiguration withCreatedAt(@Nullable Long createdAt) {
+        return new GraphConfiguration(graphId, layout, storageOptions, durability, quotas,
+            consistency, createdAt);
+    }
+
+    // the same graph, read with another consistency. this one when null
+    public GraphConfiguration withConsistency(@Nullable Consistency consistency) {
+        if (consistency == null) {
+            return this;
+        }
+        return new GraphConfiguration(graphId, layout, storageOptions, durability, quotas,
+            consistency, createdAt);
     }
 }
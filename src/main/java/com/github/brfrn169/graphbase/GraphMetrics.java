@@ -0,0 +1,159 @@
+package com.github.brfrn169.graphbase;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+// the meters of the operations of the graphs, of the scans of their entities and of the hbase
+// calls, tagged by the graph or the table so that the hot graphs can be found. the percentile
+// histograms are published only when enabled, by meters of their own without the graph and table
+// tags, as each of them has dozens of buckets
+public class GraphMetrics {
+
+    public static final String PERCENTILE_HISTOGRAMS_CONF_KEY =
+        "graphbase.metrics.percentile.histograms";
+
+    public static final String OPERATIONS = "graphbase.operations";
+    public static final String SCAN_ROWS_SCANNED = "graphbase.scan.rows.scanned";
+    public static final String SCAN_ROWS_RETURNED = "graphbase.scan.rows.returned";
+    public static final String SCAN_BYTES_DECODED = "graphbase.scan.bytes.decoded";
+    public static final String SCAN_FILTER_SELECTIVITY = "graphbase.scan.filter.selectivity";
+    public static final String QUOTA_THROTTLED = "graphbase.quota.throttled";
+    public static final String HBASE_CALLS = "graphbase.hbase.calls";
+    public static final String HBASE_CONNECTIONS = "graphbase.hbase.connections";
+    public static final String HBASE_SCAN_THREADS_ACTIVE = "graphbase.hbase.scan.threads.active";
+    public static final String HBASE_SCAN_QUEUE_SIZE = "graphbase.hbase.scan.queue.size";
+    // the suffix of the names of the histogram meters, like graphbase.operations.histogram
+    public static final String HISTOGRAM_SUFFIX = ".histogram";
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry registry;
+    private final boolean percentileHistograms;
+
+    public GraphMetrics(MeterRegistry registry) {
+        this(registry, false);
+    }
+
+    public GraphMetrics(MeterRegistry registry, boolean percentileHistograms) {
+        this.registry = registry;
+        this.percentileHistograms = percentileHistograms;
+    }
+
+    // the failed operations are tagged by their exception
+    public <T> T timed(String operation, String graphId, Supplier<T> call) {
+        long startNanos = System.nanoTime();
+        String exception = NONE;
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            recordOperation(operation, graphId, exception, startNanos);
+        }
+    }
+
+    // the streams are timed until they are closed, and only the failures to open them are tagged
+    // by their exception
+    public <T> Stream<T> timedStream(String operation, String graphId, Supplier<Stream<T>> call) {
+        long startNanos = System.nanoTime();
+        Stream<T> ret;
+        try {
+            ret = call.get();
+        } catch (RuntimeException e) {
+            recordOperation(operation, graphId, e.getClass().getSimpleName(), startNanos);
+            throw e;
+        }
+        return ret.onClose(() -> recordOperation(operation, graphId, NONE, startNanos));
+    }
+
+    public void timed(String operation, String graphId, Runnable call) {
+        timed(operation, graphId, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private void recordOperation(String operation, String graphId, String exception,
+        long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Timer.builder(OPERATIONS).tag("operation", operation).tag("graph", graphId)
+            .tag("exception", exception).register(registry)
+            .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (percentileHistograms) {
+            Timer.builder(OPERATIONS + HISTOGRAM_SUFFIX).tag("operation", operation)
+                .tag("exception", exception).publishPercentileHistogram().register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // the selectivity is the fraction of the rows scanned which passed the filter, so it's
+    // recorded only for the filtered scans
+    public void recordScan(String graphId, String entity, long rowsScanned, long rowsReturned,
+        long bytesDecoded, boolean filtered) {
+        recordSummary(SCAN_ROWS_SCANNED, graphId, entity, "rows", rowsScanned);
+        recordSummary(SCAN_ROWS_RETURNED, graphId, entity, "rows", rowsReturned);
+        recordSummary(SCAN_BYTES_DECODED, graphId, entity, "bytes", bytesDecoded);
+        if (filtered && rowsScanned > 0) {
+            DistributionSummary.builder(SCAN_FILTER_SELECTIVITY).tag("graph", graphId)
+                .tag("entity", entity).register(registry)
+                .record((double) rowsReturned / rowsScanned);
+        }
+    }
+
+    private void recordSummary(String name, String graphId, String entity, String baseUnit,
+        long amount) {
+        DistributionSummary.builder(name).tag("graph", graphId).tag("entity", entity)
+            .baseUnit(baseUnit).register(registry).record(amount);
+        if (percentileHistograms) {
+            DistributionSummary.builder(name + HISTOGRAM_SUFFIX).tag("entity", entity)
+                .baseUnit(baseUnit).publishPercentileHistogram().register(registry)
+                .record(amount);
+        }
+    }
+
+    // the calls delayed or rejected by a quota of the graph, like the reads
+    public void countThrottled(String graphId, String quota, String outcome) {
+        Counter.builder(QUOTA_THROTTLED).tag("graph", graphId).tag("quota", quota)
+            .tag("outcome", outcome).register(registry).increment();
+    }
+
+    // the threads of the scan executor of a workload class which are busy, and the scans waiting
+    // for them
+    public void monitorScanExecutor(WorkloadClass workloadClass, ThreadPoolExecutor executor) {
+        String workload = workloadClass.name().toLowerCase(Locale.ROOT);
+        Gauge.builder(HBASE_SCAN_THREADS_ACTIVE, executor, ThreadPoolExecutor::getActiveCount)
+            .tag("workload", workload).register(registry);
+        Gauge.builder(HBASE_SCAN_QUEUE_SIZE, executor, e -> e.getQueue().size())
+            .tag("workload", workload).register(registry);
+    }
+
+    // the gauges don't keep the client from being collected
+    public <T> void monitorConnections(T client, ToDoubleFunction<T> connections) {
+        Gauge.builder(HBASE_CONNECTIONS, client, connections).register(registry);
+    }
+
+    public void recordHBaseCall(String method, String table, WorkloadClass workloadClass,
+        long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        String workload = workloadClass.name().toLowerCase(Locale.ROOT);
+        Timer.builder(HBASE_CALLS).tag("method", method).tag("table", table)
+            .tag("workload", workload).register(registry)
+            .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (percentileHistograms) {
+            Timer.builder(HBASE_CALLS + HISTOGRAM_SUFFIX).tag("method", method)
+                .tag("workload", workload).publishPercentileHistogram().register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
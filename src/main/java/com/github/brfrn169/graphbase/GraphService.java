@@ -1,34 +1,117 @@
 package com.github.brfrn169.graphbase;
 
+import com.github.brfrn169.graphbase.aggregation.AggregationQuery;
+import com.github.brfrn169.graphbase.aggregation.AggregationResult;
+import com.github.brfrn169.graphbase.aggregation.Aggregator;
+import com.github.brfrn169.graphbase.algorithm.AdjacencyFetcher;
+import com.github.brfrn169.graphbase.algorithm.NeighborSample;
+import com.github.brfrn169.graphbase.algorithm.NeighborSampleParameters;
+import com.github.brfrn169.graphbase.algorithm.NeighborSampler;
+import com.github.brfrn169.graphbase.algorithm.NeighborSimilarity;
+import com.github.brfrn169.graphbase.algorithm.NodePair;
+import com.github.brfrn169.graphbase.algorithm.NodeSimilarity;
+import com.github.brfrn169.graphbase.algorithm.PersonalizedPageRank;
+import com.github.brfrn169.graphbase.algorithm.PersonalizedPageRankParameters;
+import com.github.brfrn169.graphbase.algorithm.RandomWalkParameters;
+import com.github.brfrn169.graphbase.algorithm.RandomWalker;
+import com.github.brfrn169.graphbase.algorithm.ScoredNode;
 import com.github.brfrn169.graphbase.exception.GraphNotFoundException;
 import com.github.brfrn169.graphbase.filter.FilterPredicate;
+import com.github.brfrn169.graphbase.filter.PropertyCondition;
+import com.github.brfrn169.graphbase.io.EntityFiles;
+import com.github.brfrn169.graphbase.io.EntityRecord;
+import com.github.brfrn169.graphbase.io.ImportResult;
+import com.github.brfrn169.graphbase.query.PatternQuery;
+import com.github.brfrn169.graphbase.query.PatternQueryExecutor;
 import com.github.brfrn169.graphbase.sort.SortPredicate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Consistency;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.function.LongSupplier;
+import java.util.function.ObjLongConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withProperties;
+
 public class GraphService implements Closeable {
 
+    public static final String ADJACENCY_CACHE_SIZE_CONF_KEY =
+        "graphbase.algorithm.adjacency.cache.size";
+
+    // the node updates written behind are buffered for this long. 0 disables the buffer
+    public static final String WRITE_BEHIND_WINDOW_MS_CONF_KEY = "graphbase.writebehind.window.ms";
+
+    public static final String WRITE_BEHIND_MAX_PENDING_NODES_CONF_KEY =
+        "graphbase.writebehind.max.pending.nodes";
+
+    // whether the reads of nodes write their pending updates first
+    public static final String WRITE_BEHIND_FLUSH_ON_READ_CONF_KEY =
+        "graphbase.writebehind.flush.on.read";
+
+    // how long a call waits for its quota before it's rejected
+    public static final String QUOTA_MAX_WAIT_MS_CONF_KEY = "graphbase.quota.max.wait.ms";
+
     private static final Log LOG = LogFactory.getLog(GraphService.class);
 
     private final GraphCatalogManager graphCatalogManager;
     private final GraphStorage graphStorage;
+    private final int adjacencyCacheSize;
+    @Nullable private final WriteBehindBuffer writeBehindBuffer;
+    private final boolean flushOnRead;
+    private final QuotaManager quotaManager;
+    private final ObjLongConsumer<GraphConfiguration> scannedRowsListener;
+    private final GraphMetrics metrics;
+
+    public GraphService(Configuration conf, GraphStorage graphStorage, GraphMetrics metrics) {
+        this(conf, graphStorage, metrics, System::nanoTime);
+    }
 
-    public GraphService(Configuration conf, GraphStorage graphStorage) {
+    // the quotas refill by the clock
+    GraphService(Configuration conf, GraphStorage graphStorage, GraphMetrics metrics,
+        LongSupplier nanoClock) {
+        this.metrics = metrics;
         graphCatalogManager = new GraphCatalogManager(conf);
         this.graphStorage = graphStorage;
+        adjacencyCacheSize = conf.getInt(ADJACENCY_CACHE_SIZE_CONF_KEY, 1000000);
+
+        long writeBehindWindowMillis = conf.getLong(WRITE_BEHIND_WINDOW_MS_CONF_KEY, 0L);
+        if (writeBehindWindowMillis > 0) {
+            writeBehindBuffer = new WriteBehindBuffer(graphStorage,
+                graphCatalogManager::getGraphConfiguration, writeBehindWindowMillis,
+                conf.getInt(WRITE_BEHIND_MAX_PENDING_NODES_CONF_KEY, 10000));
+        } else {
+            writeBehindBuffer = null;
+        }
+        flushOnRead = conf.getBoolean(WRITE_BEHIND_FLUSH_ON_READ_CONF_KEY, true);
+        quotaManager =
+            new QuotaManager(conf.getLong(QUOTA_MAX_WAIT_MS_CONF_KEY, 100L), nanoClock, metrics);
+        // the rows of the scans are known only after them, so they are charged then
+        scannedRowsListener = (graphConf, rows) -> quotaManager
+            .charge(graphConf, QuotaManager.Kind.SCANNED_ROWS, rows);
+        graphStorage.addScannedRowsListener(scannedRowsListener);
     }
 
     @Override public void close() throws IOException {
+        graphStorage.removeScannedRowsListener(scannedRowsListener);
+        if (writeBehindBuffer != null) {
+            try {
+                writeBehindBuffer.close();
+            } catch (RuntimeException e) {
+                LOG.error("failed to write the pending node updates.", e);
+            }
+        }
         try {
             graphCatalogManager.close();
         } catch (IOException e) {
@@ -37,13 +120,60 @@ public class GraphService implements Closeable {
     }
 
     public void createGraph(GraphConfiguration graphConf) {
+        if (graphConf.layout() == StorageLayout.SHARED) {
+            graphConf = graphConf.withCreatedAt(System.currentTimeMillis());
+        } else {
+            graphConf = graphConf.withCreatedAt(null);
+        }
+
         graphCatalogManager.createGraph(graphConf);
-        graphStorage.createGraph(graphConf.graphId());
+        try {
+            graphStorage.createGraph(graphConf);
+        } catch (RuntimeException e) {
+            // the storage options can be rejected by the storage
+            graphCatalogManager.dropGraph(graphConf.graphId());
+            throw e;
+        }
+    }
+
+    public void alterGraph(String graphId, @Nullable StorageOptions storageOptions) {
+        GraphConfiguration current = graphCatalogManager.getGraphConfiguration(graphId)
+            .orElseThrow(GraphNotFoundException::new);
+
+        GraphConfiguration graphConf = new GraphConfiguration(graphId, current.layout(),
+            storageOptions, current.durability(), current.quotas(), current.consistency(),
+            current.createdAt());
+        graphStorage.alterGraph(graphConf);
+        graphCatalogManager.updateGraph(graphConf);
+    }
+
+    // the durability of the writes which don't have one. the tables are left as they are
+    public void setDurability(String graphId, @Nullable Durability durability) {
+        GraphConfiguration current = graphCatalogManager.getGraphConfiguration(graphId)
+            .orElseThrow(GraphNotFoundException::new);
+
+        graphCatalogManager.updateGraph(current.withGraphDurability(durability));
+    }
+
+    // the quotas are in the catalog, so that every server applies them. each server limits the
+    // calls it serves
+    public void setQuotas(String graphId, @Nullable Quotas quotas) {
+        GraphConfiguration current = graphCatalogManager.getGraphConfiguration(graphId)
+            .orElseThrow(GraphNotFoundException::new);
+
+        graphCatalogManager.updateGraph(current.withQuotas(quotas));
     }
 
     public void dropGraph(String graphId) {
+        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
+            .orElseThrow(GraphNotFoundException::new);
+
         graphCatalogManager.dropGraph(graphId);
-        graphStorage.dropGraph(graphId);
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.discard(graphId);
+        }
+        quotaManager.remove(graphId);
+        graphStorage.dropGraph(graphConf);
     }
 
     public Optional<GraphConfiguration> getGraphConfiguration(String graphId) {
@@ -56,102 +186,634 @@ public class GraphService implements Closeable {
 
     public void addNode(String graphId, String nodeId, String nodeType,
         Map<String, Object> properties) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        addNode(graphId, nodeId, nodeType, properties, null);
+    }
+
+    public void addNode(String graphId, String nodeId, String nodeType,
+        Map<String, Object> properties, @Nullable Durability durability) {
+        metrics.timed("addNode", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
+            flushPendingUpdates(graphId, nodeId);
+
+            graphStorage.addNode(graphConf, nodeId, nodeType, properties);
+        });
+    }
+
+    // returns the new version of the node
+    public String upsertNode(String graphId, Node node, UpsertMode mode) {
+        return upsertNode(graphId, node, mode, null);
+    }
+
+    public String upsertNode(String graphId, Node node, UpsertMode mode,
+        @Nullable Durability durability) {
+        return metrics.timed("upsertNode", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
+            flushPendingUpdates(graphId, node.id());
 
-        graphStorage.addNode(graphConf, nodeId, nodeType, properties);
+            return graphStorage.upsertNode(graphConf, node, mode);
+        });
+    }
+
+    public void upsertNodes(String graphId, List<Node> nodes, UpsertMode mode) {
+        upsertNodes(graphId, nodes, mode, null);
+    }
+
+    public void upsertNodes(String graphId, List<Node> nodes, UpsertMode mode,
+        @Nullable Durability durability) {
+        metrics.timed("upsertNodes", graphId, () -> {
+            GraphConfiguration graphConf =
+                getWriteGraphConfiguration(graphId, durability, nodes.size());
+            flushPendingUpdates(graphId);
+
+            graphStorage.upsertNodes(graphConf, nodes, mode);
+        });
     }
 
     public void deleteNode(String graphId, String nodeId) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        deleteNode(graphId, nodeId, null);
+    }
+
+    public void deleteNode(String graphId, String nodeId, @Nullable Durability durability) {
+        metrics.timed("deleteNode", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
+            flushPendingUpdates(graphId, nodeId);
+
+            graphStorage.deleteNode(graphConf, nodeId);
+        });
+    }
+
+    // returns the number of the deleted relationships
+    public long deleteNodeWithRelationships(String graphId, String nodeId) {
+        return deleteNodeWithRelationships(graphId, nodeId, null);
+    }
 
-        graphStorage.deleteNode(graphConf, nodeId);
+    public long deleteNodeWithRelationships(String graphId, String nodeId,
+        @Nullable Durability durability) {
+        return metrics.timed("deleteNodeWithRelationships", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
+            flushPendingUpdates(graphId, nodeId);
+
+            return graphStorage.deleteNodeWithRelationships(graphConf, nodeId);
+        });
     }
 
     public void updateNode(String graphId, String nodeId, Mutation mutation) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        updateNode(graphId, nodeId, mutation, null);
+    }
+
+    public void updateNode(String graphId, String nodeId, Mutation mutation,
+        @Nullable Durability durability) {
+        updateNode(graphId, nodeId, mutation, durability, null);
+    }
+
+    // returns the new version of the node
+    public String updateNode(String graphId, String nodeId, Mutation mutation,
+        @Nullable Durability durability, @Nullable String expectedVersion) {
+        return metrics.timed("updateNode", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
+            flushPendingUpdates(graphId, nodeId);
 
-        graphStorage.updateNode(graphConf, nodeId, mutation);
+            return graphStorage.updateNode(graphConf, nodeId, mutation, expectedVersion);
+        });
     }
 
     public void addRelationship(String graphId, String outNodeId, String relType, String inNodeId,
         Map<String, Object> properties) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        addRelationship(graphId, outNodeId, relType, inNodeId, properties, null);
+    }
+
+    public void addRelationship(String graphId, String outNodeId, String relType, String inNodeId,
+        Map<String, Object> properties, @Nullable Durability durability) {
+        metrics.timed("addRelationship", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
+
+            graphStorage.createRelationship(graphConf, outNodeId, relType, inNodeId, properties);
+        });
+    }
+
+    // returns the new version of the relationship
+    public String upsertRelationship(String graphId, Relationship rel, UpsertMode mode) {
+        return upsertRelationship(graphId, rel, mode, null);
+    }
+
+    public String upsertRelationship(String graphId, Relationship rel, UpsertMode mode,
+        @Nullable Durability durability) {
+        return metrics.timed("upsertRelationship", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
 
-        graphStorage.createRelationship(graphConf, outNodeId, relType, inNodeId, properties);
+            return graphStorage.upsertRelationship(graphConf, rel, mode);
+        });
+    }
+
+    public void upsertRelationships(String graphId, List<Relationship> rels, UpsertMode mode) {
+        upsertRelationships(graphId, rels, mode, null);
+    }
+
+    public void upsertRelationships(String graphId, List<Relationship> rels, UpsertMode mode,
+        @Nullable Durability durability) {
+        metrics.timed("upsertRelationships", graphId, () -> {
+            GraphConfiguration graphConf =
+                getWriteGraphConfiguration(graphId, durability, rels.size());
+
+            graphStorage.upsertRelationships(graphConf, rels, mode);
+        });
     }
 
     public void deleteRelationship(String graphId, String outNodeId, String relType,
         String inNodeId) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        deleteRelationship(graphId, outNodeId, relType, inNodeId, null);
+    }
+
+    public void deleteRelationship(String graphId, String outNodeId, String relType,
+        String inNodeId, @Nullable Durability durability) {
+        metrics.timed("deleteRelationship", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
 
-        graphStorage.deleteRelationship(graphConf, outNodeId, relType, inNodeId);
+            graphStorage.deleteRelationship(graphConf, outNodeId, relType, inNodeId);
+        });
     }
 
     public void updateRelationship(String graphId, String outNodeId, String relType,
         String inNodeId, Mutation mutation) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        updateRelationship(graphId, outNodeId, relType, inNodeId, mutation, null);
+    }
 
-        graphStorage.updateRelationship(graphConf, outNodeId, relType, inNodeId, mutation);
+    public void updateRelationship(String graphId, String outNodeId, String relType,
+        String inNodeId, Mutation mutation, @Nullable Durability durability) {
+        updateRelationship(graphId, outNodeId, relType, inNodeId, mutation, durability, null);
+    }
+
+    // returns the new version of the relationship
+    public String updateRelationship(String graphId, String outNodeId, String relType,
+        String inNodeId, Mutation mutation, @Nullable Durability durability,
+        @Nullable String expectedVersion) {
+        return metrics.timed("updateRelationship", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
+
+            return graphStorage.updateRelationship(graphConf, outNodeId, relType, inNodeId,
+                mutation, expectedVersion);
+        });
     }
 
     public Optional<Node> getNode(String graphId, String nodeId,
         PropertyProjections propertyProjections) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        return metrics.timed("getNode", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+            flushPendingUpdatesOnRead(graphId, nodeId);
+
+            return graphStorage.getNode(graphConf, nodeId, propertyProjections);
+        });
+    }
+
+    public Optional<Node> getNode(String graphId, String nodeId,
+        PropertyProjections propertyProjections, long asOf) {
+        return metrics.timed("getNode", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+            flushPendingUpdatesOnRead(graphId, nodeId);
+
+            return graphStorage.getNode(graphConf, nodeId, propertyProjections, asOf);
+        });
+    }
+
+    // the versions are read from the primary replicas whatever the consistency of the graph is,
+    // as they are sent as the strong ETags of the entities
+    public Optional<Versioned<Node>> getVersionedNode(String graphId, String nodeId,
+        PropertyProjections propertyProjections) {
+        return metrics.timed("getNode", graphId, () -> {
+            GraphConfiguration graphConf =
+                getReadGraphConfiguration(graphId).withConsistency(Consistency.STRONG);
+            flushPendingUpdatesOnRead(graphId, nodeId);
+
+            return graphStorage.getVersionedNode(graphConf, nodeId, propertyProjections);
+        });
+    }
 
-        return graphStorage.getNode(graphConf, nodeId, propertyProjections);
+    // the consistency overrides the one of the graph when not null. the TIMELINE reads can be
+    // served by the secondary region replicas, and tell whether they did
+    public Timelined<Optional<Node>> getTimelinedNode(String graphId, String nodeId,
+        PropertyProjections propertyProjections, @Nullable Consistency consistency) {
+        return metrics.timed("getNode", graphId, () -> {
+            GraphConfiguration graphConf =
+                getReadGraphConfiguration(graphId).withConsistency(consistency);
+            flushPendingUpdatesOnRead(graphId, nodeId);
+
+            return graphStorage.getTimelinedNode(graphConf, nodeId, propertyProjections);
+        });
+    }
+
+    // the nodes not found are skipped
+    public List<Node> getNodes(String graphId, Collection<String> nodeIds,
+        PropertyProjections propertyProjections) {
+        return getTimelinedNodes(graphId, nodeIds, propertyProjections, null).value();
+    }
+
+    public Timelined<List<Node>> getTimelinedNodes(String graphId, Collection<String> nodeIds,
+        PropertyProjections propertyProjections, @Nullable Consistency consistency) {
+        return metrics.timed("getNodes", graphId, () -> {
+            GraphConfiguration graphConf =
+                getReadGraphConfiguration(graphId).withConsistency(consistency);
+            if (nodeIds.size() > 1) {
+                quotaManager.charge(graphConf, QuotaManager.Kind.READS, nodeIds.size() - 1);
+            }
+            flushPendingUpdatesOnRead(graphId);
+
+            return graphStorage.getTimelinedNodes(graphConf, nodeIds, propertyProjections);
+        });
     }
 
     public Optional<Relationship> getRelationship(String graphId, String outNodeId, String relType,
         String inNodeId, PropertyProjections propertyProjections) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        return metrics.timed("getRelationship", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
 
-        return graphStorage
-            .getRelationship(graphConf, outNodeId, relType, inNodeId, propertyProjections);
+            return graphStorage
+                .getRelationship(graphConf, outNodeId, relType, inNodeId, propertyProjections);
+        });
+    }
+
+    public Optional<Versioned<Relationship>> getVersionedRelationship(String graphId,
+        String outNodeId, String relType, String inNodeId,
+        PropertyProjections propertyProjections) {
+        return metrics.timed("getRelationship", graphId, () -> {
+            GraphConfiguration graphConf =
+                getReadGraphConfiguration(graphId).withConsistency(Consistency.STRONG);
+
+            return graphStorage.getVersionedRelationship(graphConf, outNodeId, relType, inNodeId,
+                propertyProjections);
+        });
+    }
+
+    public Timelined<Optional<Relationship>> getTimelinedRelationship(String graphId,
+        String outNodeId, String relType, String inNodeId, PropertyProjections propertyProjections,
+        @Nullable Consistency consistency) {
+        return metrics.timed("getRelationship", graphId, () -> {
+            GraphConfiguration graphConf =
+                getReadGraphConfiguration(graphId).withConsistency(consistency);
+
+            return graphStorage.getTimelinedRelationship(graphConf, outNodeId, relType, inNodeId,
+                propertyProjections);
+        });
     }
 
     public boolean nodeExists(String graphId, String nodeId) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
-        return graphStorage.nodeExists(graphConf, nodeId);
+        return metrics.timed("nodeExists", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+            return graphStorage.nodeExists(graphConf, nodeId);
+        });
     }
 
     public boolean relationshipExists(String graphId, String outNodeId, String relType,
         String inNodeId) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        return metrics.timed("relationshipExists", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
 
-        return graphStorage.relationshipExists(graphConf, outNodeId, relType, inNodeId);
+            return graphStorage.relationshipExists(graphConf, outNodeId, relType, inNodeId);
+        });
     }
 
     public List<Node> getNodes(String graphId, @Nullable List<String> nodeTypes,
         @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
         PropertyProjections propertyProjections) {
-        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
-            .orElseThrow(GraphNotFoundException::new);
+        return metrics.timed("scanNodes", graphId, () -> {
+            GraphConfiguration graphConf = getScanGraphConfiguration(graphId);
+            flushPendingUpdatesOnRead(graphId);
+
+            try (Stream<Node> nodes = graphStorage
+                .getNodes(graphConf, nodeTypes, filter, sorts, propertyProjections)) {
+                return nodes.collect(Collectors.toList());
+            }
+        });
+    }
 
-        try (Stream<Node> nodes = graphStorage
-            .getNodes(graphConf, nodeTypes, filter, sorts, propertyProjections)) {
-            return nodes.collect(Collectors.toList());
-        }
+    public List<Node> getNodes(String graphId, @Nullable List<String> nodeTypes,
+        @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
+        PropertyProjections propertyProjections, long asOf) {
+        return metrics.timed("scanNodes", graphId, () -> {
+            GraphConfiguration graphConf = getScanGraphConfiguration(graphId);
+            flushPendingUpdatesOnRead(graphId);
+
+            try (Stream<Node> nodes = graphStorage
+                .getNodes(graphConf, nodeTypes, filter, sorts, propertyProjections, asOf)) {
+                return nodes.collect(Collectors.toList());
+            }
+        });
+    }
+
+    public Timelined<List<Node>> getTimelinedNodes(String graphId,
+        @Nullable List<String> nodeTypes, @Nullable FilterPredicate filter,
+        @Nullable List<SortPredicate> sorts, PropertyProjections propertyProjections,
+        @Nullable Consistency consistency) {
+        return metrics.timed("scanNodes", graphId, () -> {
+            GraphConfiguration graphConf =
+                getScanGraphConfiguration(graphId).withConsistency(consistency);
+            flushPendingUpdatesOnRead(graphId);
+
+            return graphStorage
+                .getTimelinedNodes(graphConf, nodeTypes, filter, sorts, propertyProjections);
+        });
     }
 
     public List<Relationship> getRelationships(String graphId, @Nullable List<String> relTypes,
         @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
         PropertyProjections propertyProjections) {
+        return metrics.timed("scanRelationships", graphId, () -> {
+            GraphConfiguration graphConf = getScanGraphConfiguration(graphId);
+
+            try (Stream<Relationship> rels = graphStorage
+                .getRelationships(graphConf, relTypes, filter, sorts, propertyProjections)) {
+                return rels.collect(Collectors.toList());
+            }
+        });
+    }
+
+    public Timelined<List<Relationship>> getTimelinedRelationships(String graphId,
+        @Nullable List<String> relTypes, @Nullable FilterPredicate filter,
+        @Nullable List<SortPredicate> sorts, PropertyProjections propertyProjections,
+        @Nullable Consistency consistency) {
+        return metrics.timed("scanRelationships", graphId, () -> {
+            GraphConfiguration graphConf =
+                getScanGraphConfiguration(graphId).withConsistency(consistency);
+
+            return graphStorage
+                .getTimelinedRelationships(graphConf, relTypes, filter, sorts, propertyProjections);
+        });
+    }
+
+    public long countNodes(String graphId, @Nullable List<String> nodeTypes,
+        @Nullable FilterPredicate filter) {
+        return metrics.timed("countNodes", graphId, () -> {
+            GraphConfiguration graphConf = getScanGraphConfiguration(graphId);
+            flushPendingUpdatesOnRead(graphId);
+
+            return graphStorage.countNodes(graphConf, nodeTypes, filter);
+        });
+    }
+
+    // the returned stream should be closed after use
+    public Stream<String> getNodeIds(String graphId, @Nullable List<String> nodeTypes,
+        @Nullable FilterPredicate filter) {
+        return metrics.timedStream("getNodeIds", graphId, () -> {
+            GraphConfiguration graphConf = getScanGraphConfiguration(graphId);
+            flushPendingUpdatesOnRead(graphId);
+
+            return graphStorage.getNodeIds(graphConf, nodeTypes, filter);
+        });
+    }
+
+    public long countRelationships(String graphId, @Nullable List<String> relTypes,
+        @Nullable FilterPredicate filter) {
+        return metrics.timed("countRelationships", graphId, () -> {
+            GraphConfiguration graphConf = getScanGraphConfiguration(graphId);
+
+            return graphStorage.countRelationships(graphConf, relTypes, filter);
+        });
+    }
+
+    // the returned stream should be closed after use
+    public Stream<Relationship> getRelationshipIds(String graphId,
+        @Nullable List<String> relTypes, @Nullable FilterPredicate filter) {
+        return metrics.timedStream("getRelationshipIds", graphId, () -> {
+            GraphConfiguration graphConf = getScanGraphConfiguration(graphId);
+
+            return graphStorage.getRelationshipIds(graphConf, relTypes, filter);
+        });
+    }
+
+    public List<AggregationResult> aggregate(String graphId, AggregationQuery query) {
+        return metrics.timed("aggregate", graphId, () -> {
+            GraphConfiguration graphConf = getScanGraphConfiguration(graphId);
+            flushPendingUpdatesOnRead(graphId);
+
+            Aggregator aggregator = new Aggregator(query);
+            PropertyProjections propertyProjections = withProperties(aggregator.propertyKeys());
+            FilterPredicate filter = PropertyCondition.toFilter(query.where());
+
+            switch (query.target()) {
+                case NODES:
+                    return graphStorage
+                        .collectNodes(graphConf, query.types(), filter, propertyProjections,
+                            aggregator.collector(Node::type));
+                case RELATIONSHIPS:
+                    return graphStorage
+                        .collectRelationships(graphConf, query.types(), filter, propertyProjections,
+                            aggregator.collector(Relationship::type));
+                default:
+                    throw new AssertionError();
+            }
+        });
+    }
+
+    public long degree(String graphId, String nodeId, Direction direction,
+        @Nullable List<String> relTypes) {
+        return metrics.timed("degree", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+
+            return graphStorage.degree(graphConf, nodeId, direction, relTypes);
+        });
+    }
+
+    public long recomputeDegrees(String graphId) {
+        return metrics.timed("recomputeDegrees", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, null);
+
+            return graphStorage.recomputeDegrees(graphConf);
+        });
+    }
+
+    public List<NeighborSample> sampleNeighbors(String graphId,
+        NeighborSampleParameters parameters) {
+        return metrics.timed("sampleNeighbors", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+
+            NeighborSampler neighborSampler =
+                new NeighborSampler(graphStorage, graphConf, parameters.relTypes(),
+                    parameters.weightKey(), createRandom(parameters.seed()));
+            return neighborSampler.sample(parameters.nodeIds(), parameters.fanouts());
+        });
+    }
+
+    // the returned stream computes the walks lazily, so it should be closed after use
+    public Stream<List<String>> randomWalks(String graphId, RandomWalkParameters parameters) {
+        return metrics.timedStream("randomWalks", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+
+            return new RandomWalker(graphStorage, graphConf, parameters,
+                createRandom(parameters.seed())).walks();
+        });
+    }
+
+    public List<ScoredNode> personalizedPageRank(String graphId, String seedNodeId,
+        PersonalizedPageRankParameters parameters) {
+        return metrics.timed("personalizedPageRank", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+
+            AdjacencyFetcher adjacencyFetcher =
+                new AdjacencyFetcher(graphStorage, graphConf, parameters.relTypes(),
+                    parameters.cacheAdjacency() ? adjacencyCacheSize : 0);
+            return new PersonalizedPageRank(adjacencyFetcher, parameters).compute(seedNodeId);
+        });
+    }
+
+    public List<String> commonNeighbors(String graphId, String nodeId1, String nodeId2,
+        String relType) {
+        return metrics.timed("commonNeighbors", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+
+            return new NeighborSimilarity(graphStorage, graphConf, relType)
+                .commonNeighbors(nodeId1, nodeId2);
+        });
+    }
+
+    public NodeSimilarity similarity(String graphId, String nodeId1, String nodeId2,
+        String relType) {
+        return metrics.timed("similarity", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+
+            return new NeighborSimilarity(graphStorage, graphConf, relType)
+                .similarity(nodeId1, nodeId2);
+        });
+    }
+
+    public List<NodeSimilarity> similarities(String graphId, List<NodePair> pairs,
+        String relType) {
+        return metrics.timed("similarities", graphId, () -> {
+            GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+
+            return new NeighborSimilarity(graphStorage, graphConf, relType).similarities(pairs);
+        });
+    }
+
+    // the returned stream matches the pattern lazily, so it should be closed after use
+    public Stream<Map<String, Object>> query(String graphId, PatternQuery query) {
+        return metrics.timedStream("query", graphId, () -> {
+            GraphConfiguration graphConf = getScanGraphConfiguration(graphId);
+            flushPendingUpdatesOnRead(graphId);
+
+            return new PatternQueryExecutor(graphStorage, graphConf, query).execute();
+        });
+    }
+
+    // the input is read as a stream and closed at the end
+    public ImportResult importNodes(String graphId, InputStream in, EntityFiles.Format format) {
+        return importNodes(graphId, in, format, null);
+    }
+
+    public ImportResult importNodes(String graphId, InputStream in, EntityFiles.Format format,
+        @Nullable Durability durability) {
+        return metrics.timed("importNodes", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
+            flushPendingUpdates(graphId);
+
+            try (Stream<EntityRecord<Node>> records = EntityFiles.readNodes(in, format)) {
+                return chargeImport(graphConf, graphStorage.importNodes(graphConf, records));
+            }
+        });
+    }
+
+    public ImportResult importRelationships(String graphId, InputStream in,
+        EntityFiles.Format format) {
+        return importRelationships(graphId, in, format, null);
+    }
+
+    public ImportResult importRelationships(String graphId, InputStream in,
+        EntityFiles.Format format, @Nullable Durability durability) {
+        return metrics.timed("importRelationships", graphId, () -> {
+            GraphConfiguration graphConf = getWriteGraphConfiguration(graphId, durability);
+
+            try (Stream<EntityRecord<Relationship>> records = EntityFiles
+                .readRelationships(in, format)) {
+                return chargeImport(graphConf,
+                    graphStorage.importRelationships(graphConf, records));
+            }
+        });
+    }
+
+    // the update is buffered and written later in a batch with the other updates of the node, when
+    // the write-behind buffer is enabled, and otherwise right away. a buffered update of a node
+    // which doesn't exist is dropped
+    public void updateNodeBehind(String graphId, String nodeId, Mutation mutation) {
+        if (writeBehindBuffer == null) {
+            updateNode(graphId, nodeId, mutation);
+            return;
+        }
+
+        getWriteGraphConfiguration(graphId, null);
+        writeBehindBuffer.add(graphId, nodeId, mutation);
+    }
+
+    // writes all the buffered updates
+    public void flushPendingUpdates() {
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.flush();
+        }
+    }
+
+    // the buffered updates of a node are written before its other writes, so that they are
+    // applied in order
+    private void flushPendingUpdates(String graphId, String nodeId) {
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.flush(graphId, nodeId);
+        }
+    }
+
+    private void flushPendingUpdates(String graphId) {
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.flush(graphId);
+        }
+    }
+
+    private void flushPendingUpdatesOnRead(String graphId, String nodeId) {
+        if (flushOnRead) {
+            flushPendingUpdates(graphId, nodeId);
+        }
+    }
+
+    private void flushPendingUpdatesOnRead(String graphId) {
+        if (flushOnRead) {
+            flushPendingUpdates(graphId);
+        }
+    }
+
+    // the durability overrides the one of the graph when not null
+    private GraphConfiguration getWriteGraphConfiguration(String graphId,
+        @Nullable Durability durability) {
+        return getWriteGraphConfiguration(graphId, durability, 1);
+    }
+
+    private GraphConfiguration getWriteGraphConfiguration(String graphId,
+        @Nullable Durability durability, int writes) {
         GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
             .orElseThrow(GraphNotFoundException::new);
+        quotaManager.acquire(graphConf, QuotaManager.Kind.WRITES, writes);
+        return graphConf.withDurability(durability);
+    }
 
-        try (Stream<Relationship> rels = graphStorage
-            .getRelationships(graphConf, relTypes, filter, sorts, propertyProjections)) {
-            return rels.collect(Collectors.toList());
+    private GraphConfiguration getReadGraphConfiguration(String graphId) {
+        GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(graphId)
+            .orElseThrow(GraphNotFoundException::new);
+        quotaManager.acquire(graphConf, QuotaManager.Kind.READS, 1);
+        return graphConf;
+    }
+
+    // the rows of a scan are charged by the storage after it, so a scan waits only for the rows
+    // the previous ones went over the quota by
+    private GraphConfiguration getScanGraphConfiguration(String graphId) {
+        GraphConfiguration graphConf = getReadGraphConfiguration(graphId);
+        quotaManager.acquire(graphConf, QuotaManager.Kind.SCANNED_ROWS, 0);
+        return graphConf;
+    }
+
+    // the records of an import are known only after it, so the ones past the first are charged
+    // then
+    private ImportResult chargeImport(GraphConfiguration graphConf, ImportResult result) {
+        long records = result.imported() + result.failureCount();
+        if (records > 1) {
+            quotaManager.charge(graphConf, QuotaManager.Kind.WRITES, records - 1);
         }
+        return result;
+    }
+
+    private static Random createRandom(@Nullable Long seed) {
+        return seed != null ? new Random(seed) : new Random();
     }
 }
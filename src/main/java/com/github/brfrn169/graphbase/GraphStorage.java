@@ -1,42 +1,114 @@
 package com.github.brfrn169.graphbase;
 
 import com.github.brfrn169.graphbase.filter.FilterPredicate;
+import com.github.brfrn169.graphbase.io.EntityRecord;
+import com.github.brfrn169.graphbase.io.ImportResult;
 import com.github.brfrn169.graphbase.sort.SortPredicate;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collector;
 import java.util.stream.Stream;
 
 public interface GraphStorage extends Closeable {
-    void createGraph(String graphId);
+    void createGraph(GraphConfiguration graphConf);
 
-    void dropGraph(String graphId);
+    // applies the storage options of the graph to the existing tables
+    void alterGraph(GraphConfiguration graphConf);
+
+    void dropGraph(GraphConfiguration graphConf);
+
+    // the listeners are called with the rows read by each scan of a graph when it's done, the
+    // ones dropped by the filters included
+    void addScannedRowsListener(ObjLongConsumer<GraphConfiguration> listener);
+
+    void removeScannedRowsListener(ObjLongConsumer<GraphConfiguration> listener);
 
     void addNode(GraphConfiguration graphConf, String nodeId, String nodeType,
         Map<String, Object> properties);
 
     void deleteNode(GraphConfiguration graphConf, String nodeId);
 
-    void updateNode(GraphConfiguration graphConf, String nodeId, Mutation mutation);
+    // also deletes the outgoing relationships of the node, and returns how many there were. the
+    // incoming relationships are left, as they can't be found without scanning all of them
+    long deleteNodeWithRelationships(GraphConfiguration graphConf, String nodeId);
+
+    // a single conditional write, which fails with VersionMismatchException unless the version of
+    // the node is expectedVersion, when not null. returns the new version
+    String updateNode(GraphConfiguration graphConf, String nodeId, Mutation mutation,
+        @Nullable String expectedVersion);
+
+    // sets and deletes the properties of the nodes in a batch, without the operators. returns the
+    // ids of the nodes which don't exist, which are not updated
+    List<String> updateNodes(GraphConfiguration graphConf, Map<String, Mutation> mutations);
+
+    // creates the node or updates it, including its type, in a single write. returns the new
+    // version
+    String upsertNode(GraphConfiguration graphConf, Node node, UpsertMode mode);
+
+    // the nodes are written in a batch, and a node given more than once is written as the last one
+    void upsertNodes(GraphConfiguration graphConf, List<Node> nodes, UpsertMode mode);
 
     void createRelationship(GraphConfiguration graphConf, String outNodeId, String relType,
         String inNodeId, Map<String, Object> properties);
 
+    // the degree counters are incremented only when the relationship is created
+    String upsertRelationship(GraphConfiguration graphConf, Relationship rel, UpsertMode mode);
+
+    void upsertRelationships(GraphConfiguration graphConf, List<Relationship> rels,
+        UpsertMode mode);
+
     void deleteRelationship(GraphConfiguration graphConf, String outNodeId, String relType,
         String inNodeId);
 
-    void updateRelationship(GraphConfiguration graphConf, String outNodeId, String relType,
-        String inNodeId, Mutation mutation);
+    String updateRelationship(GraphConfiguration graphConf, String outNodeId, String relType,
+        String inNodeId, Mutation mutation, @Nullable String expectedVersion);
 
     Optional<Node> getNode(GraphConfiguration graphConf, String nodeId,
         PropertyProjections propertyProjections);
 
+    // reads the node as it was at asOf, in milliseconds since the epoch, as far as the history of
+    // the graph is kept
+    Optional<Node> getNode(GraphConfiguration graphConf, String nodeId,
+        PropertyProjections propertyProjections, long asOf);
+
+    Optional<Versioned<Node>> getVersionedNode(GraphConfiguration graphConf, String nodeId,
+        PropertyProjections propertyProjections);
+
     Optional<Relationship> getRelationship(GraphConfiguration graphConf, String outNodeId,
         String relType, String inNodeId, PropertyProjections propertyProjections);
 
+    Optional<Versioned<Relationship>> getVersionedRelationship(GraphConfiguration graphConf,
+        String outNodeId, String relType, String inNodeId, PropertyProjections propertyProjections);
+
+    // the nodes not found are skipped
+    List<Node> getNodes(GraphConfiguration graphConf, Collection<String> nodeIds,
+        PropertyProjections propertyProjections);
+
+    // the reads below tell whether their results are stale. all the reads use the consistency of
+    // the graph configuration
+    Optional<Timelined<Node>> getTimelinedNode(GraphConfiguration graphConf, String nodeId,
+        PropertyProjections propertyProjections);
+
+    Optional<Timelined<Relationship>> getTimelinedRelationship(GraphConfiguration graphConf,
+        String outNodeId, String relType, String inNodeId, PropertyProjections propertyProjections);
+
+    Timelined<List<Node>> getTimelinedNodes(GraphConfiguration graphConf,
+        Collection<String> nodeIds, PropertyProjections propertyProjections);
+
+    Timelined<List<Node>> getTimelinedNodes(GraphConfiguration graphConf,
+        @Nullable List<String> nodeTypes, @Nullable FilterPredicate filter,
+        @Nullable List<SortPredicate> sorts, PropertyProjections propertyProjections);
+
+    Timelined<List<Relationship>> getTimelinedRelationships(GraphConfiguration graphConf,
+        @Nullable List<String> relTypes, @Nullable FilterPredicate filter,
+        @Nullable List<SortPredicate> sorts, PropertyProjections propertyProjections);
+
     boolean nodeExists(GraphConfiguration graphConf, String nodeId);
 
     boolean relationshipExists(GraphConfiguration graphConf, String outNodeId, String relType,
@@ -46,7 +118,74 @@ public interface GraphStorage extends Closeable {
         @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
         PropertyProjections propertyProjections);
 
+    Stream<Node> getNodes(GraphConfiguration graphConf, @Nullable List<String> nodeTypes,
+        @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
+        PropertyProjections propertyProjections, long asOf);
+
     Stream<Relationship> getRelationships(GraphConfiguration graphConf,
         @Nullable List<String> relTypes, @Nullable FilterPredicate filter,
         @Nullable List<SortPredicate> sorts, PropertyProjections propertyProjections);
+
+    long countNodes(GraphConfiguration graphConf, @Nullable List<String> nodeTypes,
+        @Nullable FilterPredicate filter);
+
+    Stream<String> getNodeIds(GraphConfiguration graphConf, @Nullable List<String> nodeTypes,
+        @Nullable FilterPredicate filter);
+
+    long countRelationships(GraphConfiguration graphConf, @Nullable List<String> relTypes,
+        @Nullable FilterPredicate filter);
+
+    // the relationships are returned without properties
+    Stream<Relationship> getRelationshipIds(GraphConfiguration graphConf,
+        @Nullable List<String> relTypes, @Nullable FilterPredicate filter);
+
+    // folds the matching nodes into the collector without holding them. the collector may be
+    // used on several partitions concurrently, so its combiner must be implemented
+    <A, R> R collectNodes(GraphConfiguration graphConf, @Nullable List<String> nodeTypes,
+        @Nullable FilterPredicate filter, PropertyProjections propertyProjections,
+        Collector<? super Node, A, R> collector);
+
+    <A, R> R collectRelationships(GraphConfiguration graphConf, @Nullable List<String> relTypes,
+        @Nullable FilterPredicate filter, PropertyProjections propertyProjections,
+        Collector<? super Relationship, A, R> collector);
+
+    // the relationships of each outNodeId are returned contiguously
+    Stream<Relationship> getOutgoingRelationships(GraphConfiguration graphConf,
+        Collection<String> outNodeIds, @Nullable List<String> relTypes,
+        PropertyProjections propertyProjections);
+
+    // the incoming relationships aren't indexed, so this reads the relationships of the graph
+    // on the server side and only the ones of the given inNodeIds come back, in no order
+    Stream<Relationship> getIncomingRelationships(GraphConfiguration graphConf,
+        Collection<String> inNodeIds, @Nullable List<String> relTypes,
+        PropertyProjections propertyProjections);
+
+    // the nodeIds are sorted in the order of their UTF-8 bytes
+    Stream<String> getOutgoingNodeIds(GraphConfiguration graphConf, String outNodeId,
+        String relType);
+
+    // the map has an entry for every outNodeId, and each list is sorted like the above
+    Map<String, List<String>> getOutgoingNodeIds(GraphConfiguration graphConf,
+        Collection<String> outNodeIds, String relType);
+
+    // the degrees are counted per relationship type, and all the types are summed up when
+    // relTypes is null or empty
+    long degree(GraphConfiguration graphConf, String nodeId, Direction direction,
+        @Nullable List<String> relTypes);
+
+    Map<String, Long> degrees(GraphConfiguration graphConf, Collection<String> nodeIds,
+        Direction direction, @Nullable List<String> relTypes);
+
+    // the degree counters are written apart from the relationships, so they can be left off by a
+    // failure. this counts the relationships again, fixes the counters and returns how many were
+    // off
+    long recomputeDegrees(GraphConfiguration graphConf);
+
+    // writes the entities in bulk. unlike addNode and createRelationship, the records which can't
+    // be imported, because they are malformed, duplicated in the input or already exist, are
+    // reported in the result instead of failing the import
+    ImportResult importNodes(GraphConfiguration graphConf, Stream<EntityRecord<Node>> records);
+
+    ImportResult importRelationships(GraphConfiguration graphConf,
+        Stream<EntityRecord<Relationship>> records);
 }
@@ -5,16 +5,42 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.experimental.Accessors;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+// the operators are applied by the storage atomically per property, without reading the
+// properties first: incrementProperties adds to integers, appendProperties appends elements to
+// lists, and maxProperties sets the properties which are less than the given values
 @Data @Accessors(fluent = true) public class Mutation {
     private final Map<String, Object> setProperties;
     private final Set<String> deleteKeys;
+    private final Map<String, Long> incrementProperties;
+    private final Map<String, List<Object>> appendProperties;
+    private final Map<String, Long> maxProperties;
+
+    public Mutation(Map<String, Object> setProperties, Set<String> deleteKeys) {
+        this(setProperties, deleteKeys, null, null, null);
+    }
 
     @JsonCreator public Mutation(@JsonProperty("setProperties") Map<String, Object> setProperties,
-        @JsonProperty("deleteKeys") Set<String> deleteKeys) {
+        @JsonProperty("deleteKeys") Set<String> deleteKeys,
+        @JsonProperty("incrementProperties") Map<String, Long> incrementProperties,
+        @JsonProperty("appendProperties") Map<String, List<Object>> appendProperties,
+        @JsonProperty("maxProperties") Map<String, Long> maxProperties) {
         this.setProperties = setProperties;
         this.deleteKeys = deleteKeys;
+        this.incrementProperties = incrementProperties;
+        this.appendProperties = appendProperties;
+        this.maxProperties = maxProperties;
+    }
+
+    public boolean hasOperators() {
+        return isNotEmpty(incrementProperties) || isNotEmpty(appendProperties) || isNotEmpty(
+            maxProperties);
+    }
+
+    private static boolean isNotEmpty(Map<String, ?> map) {
+        return map != null && !map.isEmpty();
     }
 }
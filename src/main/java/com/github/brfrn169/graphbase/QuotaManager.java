@@ -0,0 +1,155 @@
+package com.github.brfrn169.graphbase;
+
+import com.github.brfrn169.graphbase.exception.GraphbaseException;
+import com.github.brfrn169.graphbase.exception.QuotaExceededException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// admits the calls to the graphs within their quotas. a call waits up to maxWait for its tokens,
+// in turn with the other calls, and is rejected with QuotaExceededException otherwise. the
+// buckets of a graph are recreated when its quotas change. the throttled calls are counted in the
+// metrics
+final class QuotaManager {
+
+    enum Kind {
+        READS(Quotas::readsPerSecond),
+        WRITES(Quotas::writesPerSecond),
+        SCANNED_ROWS(Quotas::scannedRowsPerSecond);
+
+        private final Function<Quotas, Double> rate;
+
+        Kind(Function<Quotas, Double> rate) {
+            this.rate = rate;
+        }
+    }
+
+    private static final int CLIENT_EXPIRY_MINUTES = 10;
+
+    private final long maxWaitNanos;
+    private final LongSupplier nanoClock;
+    private final GraphMetrics metrics;
+    private final ConcurrentMap<String, GraphLimiter> limiters = new ConcurrentHashMap<>();
+
+    QuotaManager(long maxWaitMillis, LongSupplier nanoClock, GraphMetrics metrics) {
+        maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.nanoClock = nanoClock;
+        this.metrics = metrics;
+    }
+
+    // the buckets of a graph, and of its clients which called it recently
+    private final class GraphLimiter {
+        private final Quotas quotas;
+        private final Map<Kind, TokenBucket> buckets;
+        private final Cache<String, Map<Kind, TokenBucket>> clientBuckets =
+            CacheBuilder.newBuilder().expireAfterAccess(CLIENT_EXPIRY_MINUTES, TimeUnit.MINUTES)
+                .build();
+
+        private GraphLimiter(Quotas quotas) {
+            this.quotas = quotas;
+            buckets = createBuckets(quotas);
+        }
+
+        private List<TokenBucket> buckets(Kind kind, @Nullable String clientId) {
+            List<TokenBucket> ret = new ArrayList<>();
+            if (clientId != null && quotas.perClient() != null) {
+                try {
+                    TokenBucket bucket =
+                        clientBuckets.get(clientId, () -> createBuckets(quotas.perClient()))
+                            .get(kind);
+                    if (bucket != null) {
+                        ret.add(bucket);
+                    }
+                } catch (ExecutionException e) {
+                    throw new GraphbaseException("an error occurred during creating buckets", e);
+                }
+            }
+            if (buckets.containsKey(kind)) {
+                ret.add(buckets.get(kind));
+            }
+            return ret;
+        }
+
+        private Map<Kind, TokenBucket> createBuckets(Quotas quotas) {
+            Map<Kind, TokenBucket> ret = new EnumMap<>(Kind.class);
+            for (Kind kind : Kind.values()) {
+                Double rate = kind.rate.apply(quotas);
+                if (rate != null) {
+                    ret.put(kind, new TokenBucket(rate, nanoClock));
+                }
+            }
+            return ret;
+        }
+    }
+
+    // waits for the tokens of the call, in the buckets of the graph and of the client
+    void acquire(GraphConfiguration graphConf, Kind kind, double permits) {
+        List<TokenBucket> buckets = buckets(graphConf, kind);
+        if (buckets.isEmpty()) {
+            return;
+        }
+
+        long waitNanos = 0;
+        for (int i = 0; i < buckets.size(); i++) {
+            long bucketWaitNanos = buckets.get(i).reserve(permits, maxWaitNanos);
+            if (bucketWaitNanos < 0) {
+                // the tokens taken from the other buckets are given back
+                for (int j = 0; j < i; j++) {
+                    buckets.get(j).charge(-permits);
+                }
+                String quota = kind.name().toLowerCase(Locale.ROOT);
+                metrics.countThrottled(graphConf.graphId(), quota, "rejected");
+                throw new QuotaExceededException("the quota of " + quota + " is exceeded");
+            }
+            waitNanos = Math.max(waitNanos, bucketWaitNanos);
+        }
+
+        if (waitNanos > 0) {
+            metrics.countThrottled(graphConf.graphId(), kind.name().toLowerCase(Locale.ROOT),
+                "delayed");
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GraphbaseException("interrupted during waiting for the quota", e);
+            }
+        }
+    }
+
+    // charges the tokens known only after the call, like the scanned rows
+    void charge(GraphConfiguration graphConf, Kind kind, double permits) {
+        buckets(graphConf, kind).forEach(bucket -> bucket.charge(permits));
+    }
+
+    private List<TokenBucket> buckets(GraphConfiguration graphConf, Kind kind) {
+        Quotas quotas = graphConf.quotas();
+        if (quotas == null) {
+            limiters.remove(graphConf.graphId());
+            return new ArrayList<>();
+        }
+
+        GraphLimiter limiter = limiters.compute(graphConf.graphId(), (graphId, current) -> {
+            if (current != null && current.quotas.equals(quotas)) {
+                return current;
+            }
+            return new GraphLimiter(quotas);
+        });
+        return limiter.buckets(kind, ClientContext.get());
+    }
+
+    void remove(String graphId) {
+        limiters.remove(graphId);
+    }
+}
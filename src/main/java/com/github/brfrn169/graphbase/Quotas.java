@@ -0,0 +1,41 @@
+package com.github.brfrn169.graphbase;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+
+// the rates a graph is limited to, per second. a rate is not limited when null. the per client
+// quotas limit each client separately, within the quotas of the graph
+@Data @Accessors(fluent = true) public class Quotas {
+    @Nullable @JsonProperty("readsPerSecond") private final Double readsPerSecond;
+    @Nullable @JsonProperty("writesPerSecond") private final Double writesPerSecond;
+    @Nullable @JsonProperty("scannedRowsPerSecond") private final Double scannedRowsPerSecond;
+    @Nullable @JsonProperty("perClient") private final Quotas perClient;
+
+    public Quotas(@Nullable Double readsPerSecond, @Nullable Double writesPerSecond,
+        @Nullable Double scannedRowsPerSecond) {
+        this(readsPerSecond, writesPerSecond, scannedRowsPerSecond, null);
+    }
+
+    @JsonCreator public Quotas(@JsonProperty("readsPerSecond") Double readsPerSecond,
+        @JsonProperty("writesPerSecond") Double writesPerSecond,
+        @JsonProperty("scannedRowsPerSecond") Double scannedRowsPerSecond,
+        @JsonProperty("perClient") Quotas perClient) {
+        Preconditions.checkArgument(readsPerSecond == null || readsPerSecond > 0.0,
+            "readsPerSecond must be positive");
+        Preconditions.checkArgument(writesPerSecond == null || writesPerSecond > 0.0,
+            "writesPerSecond must be positive");
+        Preconditions.checkArgument(scannedRowsPerSecond == null || scannedRowsPerSecond > 0.0,
+            "scannedRowsPerSecond must be positive");
+        Preconditions.checkArgument(perClient == null || perClient.perClient() == null,
+            "the per client quotas can't have per client quotas");
+        this.readsPerSecond = readsPerSecond;
+        this.writesPerSecond = writesPerSecond;
+        this.scannedRowsPerSecond = scannedRowsPerSecond;
+        this.perClient = perClient;
+    }
+}
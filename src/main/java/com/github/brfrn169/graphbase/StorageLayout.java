@@ -0,0 +1,7 @@
+package com.github.brfrn169.graphbase;
+
+// how the graphs are laid out in the storage. a graph has its own tables with DEDICATED, and
+// shares tables with the other SHARED graphs otherwise, which suits many small graphs
+public enum StorageLayout {
+    DEDICATED, SHARED
+}
@@ -0,0 +1,64 @@
+package com.github.brfrn169.graphbase;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+
+// how the tables of a graph are stored. the options which are null are left to the storage defaults
+@Data @Accessors(fluent = true) public class StorageOptions {
+    @Nullable @JsonProperty("compression") private final CompressionAlgorithm compression;
+    @Nullable @JsonProperty("dataBlockEncoding") private final BlockEncoding dataBlockEncoding;
+    @Nullable @JsonProperty("blockSize") private final Integer blockSize;
+    @Nullable @JsonProperty("bloomFilterType") private final BloomFilterType bloomFilterType;
+    // in-memory blocks have the highest priority in the block cache
+    @Nullable @JsonProperty("inMemory") private final Boolean inMemory;
+    @Nullable @JsonProperty("blockCacheEnabled") private final Boolean blockCacheEnabled;
+    @Nullable @JsonProperty("splitPolicy") private final String splitPolicy;
+    // the durability of the tables, for the writes of the graph which don't have one
+    @Nullable @JsonProperty("durability") private final Durability durability;
+    // the history is the older versions and the deleted cells, which the as-of reads see. it's
+    // bounded by the number of the versions kept and by how long it's kept
+    @Nullable @JsonProperty("maxVersions") private final Integer maxVersions;
+    @Nullable @JsonProperty("historyTtlSeconds") private final Integer historyTtlSeconds;
+    // the number of the replicas of each region. the secondary replicas serve the timeline
+    // consistent reads while the primary is slow or moving, and can be behind it
+    @Nullable @JsonProperty("regionReplication") private final Integer regionReplication;
+
+    @JsonCreator
+    public StorageOptions(@JsonProperty("compression") CompressionAlgorithm compression,
+        @JsonProperty("dataBlockEncoding") BlockEncoding dataBlockEncoding,
+        @JsonProperty("blockSize") Integer blockSize,
+        @JsonProperty("bloomFilterType") BloomFilterType bloomFilterType,
+        @JsonProperty("inMemory") Boolean inMemory,
+        @JsonProperty("blockCacheEnabled") Boolean blockCacheEnabled,
+        @JsonProperty("splitPolicy") String splitPolicy,
+        @JsonProperty("durability") Durability durability,
+        @JsonProperty("maxVersions") Integer maxVersions,
+        @JsonProperty("historyTtlSeconds") Integer historyTtlSeconds,
+        @JsonProperty("regionReplication") Integer regionReplication) {
+        Preconditions.checkArgument(blockSize == null || blockSize > 0,
+            "blockSize must be positive");
+        Preconditions.checkArgument(maxVersions == null || maxVersions > 0,
+            "maxVersions must be positive");
+        Preconditions.checkArgument(historyTtlSeconds == null || historyTtlSeconds > 0,
+            "historyTtlSeconds must be positive");
+        Preconditions.checkArgument(regionReplication == null || regionReplication > 0,
+            "regionReplication must be positive");
+
+        this.compression = compression;
+        this.dataBlockEncoding = dataBlockEncoding;
+        this.blockSize = blockSize;
+        this.bloomFilterType = bloomFilterType;
+        this.inMemory = inMemory;
+        this.blockCacheEnabled = blockCacheEnabled;
+        this.splitPolicy = splitPolicy;
+        this.durability = durability;
+        this.maxVersions = maxVersions;
+        this.historyTtlSeconds = historyTtlSeconds;
+        this.regionReplication = regionReplication;
+    }
+}
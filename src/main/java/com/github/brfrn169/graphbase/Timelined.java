@@ -0,0 +1,12 @@
+package com.github.brfrn169.graphbase;
+
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+// a result and whether any of it was read from a secondary region replica, which can be behind the
+// primary. only the TIMELINE reads can be stale
+@Data @Accessors(fluent = true) public class Timelined<T> {
+    @NonNull private final T value;
+    private final boolean stale;
+}
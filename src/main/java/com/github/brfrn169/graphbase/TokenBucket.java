@@ -0,0 +1,57 @@
+package com.github.brfrn169.graphbase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// a token bucket which refills at its rate and holds up to a second of tokens. the tokens are
+// taken before they are available, so that the callers wait for them in turn, and the ones only
+// known after a call are charged, both of which can make the balance negative
+final class TokenBucket {
+
+    private final double nanosPerToken;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+
+    private double tokens;
+    private long lastNanos;
+
+    TokenBucket(double tokensPerSecond) {
+        this(tokensPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(double tokensPerSecond, LongSupplier nanoClock) {
+        nanosPerToken = TimeUnit.SECONDS.toNanos(1) / tokensPerSecond;
+        capacity = tokensPerSecond;
+        this.nanoClock = nanoClock;
+        tokens = capacity;
+        lastNanos = nanoClock.getAsLong();
+    }
+
+    // takes the tokens and returns how long the caller has to wait for them, or -1 without taking
+    // them if it's longer than maxWaitNanos. a call taking more tokens than the bucket holds waits
+    // only for a full bucket, and the rest is charged to the next calls
+    synchronized long reserve(double permits, long maxWaitNanos) {
+        refill();
+        double needed = Math.min(permits, capacity);
+        long waitNanos = 0;
+        if (tokens < needed) {
+            waitNanos = (long) Math.ceil((needed - tokens) * nanosPerToken);
+        }
+        if (waitNanos > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= permits;
+        return waitNanos;
+    }
+
+    synchronized void charge(double permits) {
+        refill();
+        tokens -= permits;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastNanos) / nanosPerToken);
+        lastNanos = now;
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.brfrn169.graphbase;
+
+// how an upsert treats the properties of an existing entity. MERGE keeps the ones it doesn't set,
+// and REPLACE removes them
+public enum UpsertMode {
+    MERGE, REPLACE
+}
@@ -0,0 +1,14 @@
+package com.github.brfrn169.graphbase;
+
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+
+// an entity and its version, which changes on every write of the entity. the entities written
+// before the versions were introduced have none until they are updated
+@Data @Accessors(fluent = true) public class Versioned<T> {
+    @NonNull private final T entity;
+    @Nullable private final String version;
+}
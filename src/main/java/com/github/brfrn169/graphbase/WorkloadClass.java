@@ -0,0 +1,14 @@
+package com.github.brfrn169.graphbase;
+
+import java.util.Locale;
+
+// the classes of the calls, which are served by separate resources so that the heavy ones can't
+// starve the others: the latency-sensitive reads and writes, the bulk writes, and the long scans
+public enum WorkloadClass {
+    INTERACTIVE, BATCH, ANALYTICS;
+
+    // the configuration key of the class, like graphbase.workload.analytics.scan.caching
+    public String confKey(String key) {
+        return "graphbase.workload." + name().toLowerCase(Locale.ROOT) + "." + key;
+    }
+}
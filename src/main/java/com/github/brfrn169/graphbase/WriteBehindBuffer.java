@@ -0,0 +1,200 @@
+package com.github.brfrn169.graphbase;
+
+import com.github.brfrn169.graphbase.exception.GraphNotFoundException;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// holds the node updates written behind, coalesced per node, and writes them in a batch per graph
+// once per window, so that a node updated many times in a window is written once. a writer of a
+// node which isn't pending yet, which finds too many nodes pending, flushes them itself before its
+// update is buffered, and gets the error of the flush when it fails, so that the buffer doesn't
+// grow while the storage fails and a failed update isn't written later. the flushes are serialized
+// so that the updates of a node are written in order, and a pending update stays in the buffer
+// until it's written, so that a reader which finds nothing pending for a node reads all its
+// updates
+final class WriteBehindBuffer implements Closeable {
+
+    private static final Log LOG = LogFactory.getLog(WriteBehindBuffer.class);
+
+    private final GraphStorage graphStorage;
+    private final Function<String, Optional<GraphConfiguration>> graphConfigurations;
+    private final int maxPendingNodes;
+
+    // the pending updates by node id by graph id. an update is replaced rather than changed, so
+    // that a flush removes it only if it wasn't updated while being written
+    private final ConcurrentMap<String, ConcurrentMap<String, Mutation>> pending =
+        new ConcurrentHashMap<>();
+    private final AtomicInteger pendingNodes = new AtomicInteger();
+
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService executor;
+
+    WriteBehindBuffer(GraphStorage graphStorage,
+        Function<String, Optional<GraphConfiguration>> graphConfigurations, long windowMillis,
+        int maxPendingNodes) {
+        Preconditions.checkArgument(windowMillis > 0, "windowMillis must be positive");
+        Preconditions.checkArgument(maxPendingNodes > 0, "maxPendingNodes must be positive");
+        this.graphStorage = graphStorage;
+        this.graphConfigurations = graphConfigurations;
+        this.maxPendingNodes = maxPendingNodes;
+
+        executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("graphbase-write-behind-%d").setDaemon(true)
+                .build());
+        executor.scheduleWithFixedDelay(this::flushQuietly, windowMillis, windowMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    void add(String graphId, String nodeId, Mutation mutation) {
+        Preconditions.checkArgument(!mutation.hasOperators(),
+            "the operators can't be written behind");
+
+        if (!isPending(graphId, nodeId) && pendingNodes.get() >= maxPendingNodes) {
+            flush();
+        }
+
+        pending.computeIfAbsent(graphId, id -> new ConcurrentHashMap<>())
+            .compute(nodeId, (id, pendingMutation) -> {
+                if (pendingMutation == null) {
+                    pendingNodes.incrementAndGet();
+                }
+                return coalesce(pendingMutation, mutation);
+            });
+    }
+
+    // the result has the effect of the mutations applied in order, and no key is both set and
+    // deleted
+    static Mutation coalesce(@Nullable Mutation first, Mutation second) {
+        Map<String, Object> setProperties = new HashMap<>();
+        Set<String> deleteKeys = new HashSet<>();
+        for (Mutation mutation : new Mutation[] {first, second}) {
+            if (mutation == null) {
+                continue;
+            }
+            if (mutation.setProperties() != null) {
+                mutation.setProperties().forEach((key, value) -> {
+                    deleteKeys.remove(key);
+                    setProperties.put(key, value);
+                });
+            }
+            if (mutation.deleteKeys() != null) {
+                mutation.deleteKeys().forEach(key -> {
+                    setProperties.remove(key);
+                    deleteKeys.add(key);
+                });
+            }
+        }
+        return new Mutation(setProperties, deleteKeys);
+    }
+
+    boolean isPending(String graphId, String nodeId) {
+        Map<String, Mutation> mutations = pending.get(graphId);
+        return mutations != null && mutations.containsKey(nodeId);
+    }
+
+    void flush() {
+        synchronized (flushLock) {
+            pending.keySet().forEach(this::flushGraph);
+        }
+    }
+
+    void flush(String graphId) {
+        synchronized (flushLock) {
+            flushGraph(graphId);
+        }
+    }
+
+    void flush(String graphId, String nodeId) {
+        if (!isPending(graphId, nodeId)) {
+            return;
+        }
+        synchronized (flushLock) {
+            ConcurrentMap<String, Mutation> mutations = pending.get(graphId);
+            Mutation mutation = mutations.get(nodeId);
+            if (mutation != null) {
+                write(graphId, mutations, Collections.singletonMap(nodeId, mutation));
+            }
+        }
+    }
+
+    // drops the pending updates of a graph which is dropped
+    void discard(String graphId) {
+        synchronized (flushLock) {
+            ConcurrentMap<String, Mutation> mutations = pending.get(graphId);
+            if (mutations != null) {
+                mutations.keySet().forEach(nodeId -> {
+                    if (mutations.remove(nodeId) != null) {
+                        pendingNodes.decrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+
+    private void flushGraph(String graphId) {
+        ConcurrentMap<String, Mutation> mutations = pending.get(graphId);
+        if (mutations != null && !mutations.isEmpty()) {
+            write(graphId, mutations, new HashMap<>(mutations));
+        }
+    }
+
+    private void write(String graphId, ConcurrentMap<String, Mutation> mutations,
+        Map<String, Mutation> written) {
+        try {
+            GraphConfiguration graphConf =
+                graphConfigurations.apply(graphId).orElseThrow(GraphNotFoundException::new);
+            List<String> notFound = graphStorage.updateNodes(graphConf, written);
+            if (!notFound.isEmpty()) {
+                LOG.warn("dropped the updates of " + notFound.size()
+                    + " nodes which don't exist in the graph " + graphId);
+            }
+        } catch (GraphNotFoundException e) {
+            LOG.warn("dropped the updates of " + written.size() + " nodes of the graph " + graphId
+                + " which doesn't exist");
+        }
+
+        written.forEach((nodeId, mutation) -> {
+            if (mutations.remove(nodeId, mutation)) {
+                pendingNodes.decrementAndGet();
+            }
+        });
+    }
+
+    // a failed flush is retried in the next window
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOG.error("failed to write the pending node updates", e);
+        }
+    }
+
+    @Override public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.brfrn169.graphbase.aggregation;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.brfrn169.graphbase.util.Json;
+import com.github.brfrn169.graphbase.util.Properties;
+
+import javax.annotation.Nullable;
+
+// the partial state of an aggregate function. the values that do not apply, such as nulls or
+// non-numbers for SUM and AVG, are skipped. the numbers are normalized before they are added
+final class Accumulator {
+
+    private static final Json JSON = new Json(JsonInclude.Include.ALWAYS);
+
+    private final Aggregation.Function function;
+
+    private long count;
+    private long longSum;
+    private double doubleSum;
+    private boolean floating;
+    private Object extreme;
+
+    Accumulator(Aggregation.Function function) {
+        this.function = function;
+    }
+
+    void add(@Nullable Object value) {
+        if (value == null) {
+            return;
+        }
+        value = normalize(value);
+
+        switch (function) {
+            case COUNT:
+                count++;
+                break;
+            case SUM:
+            case AVG:
+                if (value instanceof Long) {
+                    count++;
+                    longSum += (Long) value;
+                } else if (value instanceof Double) {
+                    count++;
+                    doubleSum += (Double) value;
+                    floating = true;
+                }
+                break;
+            case MIN:
+                if (extreme == null || compare(value, extreme) < 0) {
+                    extreme = value;
+                }
+                break;
+            case MAX:
+                if (extreme == null || compare(value, extreme) > 0) {
+                    extreme = value;
+                }
+                break;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    void merge(Accumulator other) {
+        count += other.count;
+        longSum += other.longSum;
+        doubleSum += other.doubleSum;
+        floating |= other.floating;
+        if (other.extreme != null) {
+            add(other.extreme);
+        }
+    }
+
+    @Nullable Object result() {
+        switch (function) {
+            case COUNT:
+                return count;
+            case SUM:
+                if (floating) {
+                    return longSum + doubleSum;
+                }
+                return longSum;
+            case AVG:
+                if (count == 0) {
+                    return null;
+                }
+                return (longSum + doubleSum) / count;
+            case MIN:
+            case MAX:
+                return extreme;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    // JSON numbers of a property can be decoded into different classes, so the integral ones are
+    // made Long and the others Double, both for the accumulators and for the group keys
+    static Object normalize(@Nullable Object value) {
+        if (!(value instanceof Number)) {
+            return value;
+        }
+        if (isIntegral((Number) value)) {
+            return ((Number) value).longValue();
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    // a total order of the normalized values, for MIN and MAX and for the group keys. nulls come
+    // first, and a Long and a Double are compared as numbers. the lists and the maps of the JSON
+    // properties aren't Comparable, so they are ordered by their JSON, after the values of the
+    // other classes, which are ordered by their class names
+    static int compare(@Nullable Object value1, @Nullable Object value2) {
+        if (value1 == null || value2 == null) {
+            return Properties.comparePropertyValue(value1, value2);
+        }
+        if (value1 instanceof Long && value2 instanceof Long) {
+            return Long.compare((Long) value1, (Long) value2);
+        }
+        if (value1 instanceof Number && value2 instanceof Number) {
+            return Double
+                .compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+        }
+
+        boolean comparable1 = value1 instanceof Comparable;
+        boolean comparable2 = value2 instanceof Comparable;
+        if (!comparable1 && !comparable2) {
+            return JSON.writeValueAsString(value1).compareTo(JSON.writeValueAsString(value2));
+        }
+        if (comparable1 != comparable2) {
+            return comparable1 ? -1 : 1;
+        }
+        if (value1.getClass() == value2.getClass()) {
+            return Properties.comparePropertyValue(value1, value2);
+        }
+        return value1.getClass().getName().compareTo(value2.getClass().getName());
+    }
+
+    private static boolean isIntegral(Number value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short
+            || value instanceof Byte;
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.brfrn169.graphbase.aggregation;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+
+// an aggregate function on a property. COUNT without a key counts the entities themselves
+@Data @Accessors(fluent = true) public class Aggregation {
+
+    public enum Function {
+        COUNT, SUM, MIN, MAX, AVG
+    }
+
+
+    @NonNull @JsonProperty("name") private final String name;
+    @NonNull @JsonProperty("function") private final Function function;
+    @Nullable @JsonProperty("key") private final String key;
+
+    @JsonCreator public Aggregation(@NonNull @JsonProperty("name") String name,
+        @NonNull @JsonProperty("function") Function function, @JsonProperty("key") String key) {
+        Preconditions.checkArgument(key != null || function == Function.COUNT,
+            "key must be specified for %s", function);
+
+        this.name = name;
+        this.function = function;
+        this.key = key;
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.brfrn169.graphbase.aggregation;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.brfrn169.graphbase.filter.PropertyCondition;
+import com.google.common.base.Preconditions;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Data @Accessors(fluent = true) public class AggregationQuery {
+
+    public enum Target {
+        NODES, RELATIONSHIPS
+    }
+
+
+    @NonNull @JsonProperty("target") private final Target target;
+    @Nullable @JsonProperty("types") private final List<String> types;
+    @Nullable @JsonProperty("where") private final List<PropertyCondition> where;
+    @JsonProperty("groupByType") private final boolean groupByType;
+    @NonNull @JsonProperty("groupBy") private final List<String> groupBy;
+    @NonNull @JsonProperty("aggregations") private final List<Aggregation> aggregations;
+
+    @JsonCreator public AggregationQuery(@NonNull @JsonProperty("target") Target target,
+        @JsonProperty("types") List<String> types,
+        @JsonProperty("where") List<PropertyCondition> where,
+        @JsonProperty("groupByType") boolean groupByType,
+        @JsonProperty("groupBy") List<String> groupBy,
+        @NonNull @JsonProperty("aggregations") List<Aggregation> aggregations) {
+        Preconditions.checkArgument(!aggregations.isEmpty(), "aggregations must not be empty");
+        Set<String> names = new HashSet<>();
+        aggregations.forEach(aggregation -> Preconditions.checkArgument(
+            names.add(aggregation.name()), "duplicate aggregation name: %s", aggregation.name()));
+
+        this.target = target;
+        this.types = types;
+        this.where = where;
+        this.groupByType = groupByType;
+        this.groupBy = groupBy != null ? groupBy : Collections.emptyList();
+        this.aggregations = aggregations;
+    }
+}
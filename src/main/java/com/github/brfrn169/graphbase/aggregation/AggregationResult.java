@@ -0,0 +1,25 @@
+package com.github.brfrn169.graphbase.aggregation;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+// the aggregated values of a group. type is only set when grouping by type
+@Data @Accessors(fluent = true) public class AggregationResult {
+    @Nullable @JsonProperty("type") private final String type;
+    @NonNull @JsonProperty("group") private final Map<String, Object> group;
+    @NonNull @JsonProperty("values") private final Map<String, Object> values;
+
+    @JsonCreator public AggregationResult(@JsonProperty("type") String type,
+        @NonNull @JsonProperty("group") Map<String, Object> group,
+        @NonNull @JsonProperty("values") Map<String, Object> values) {
+        this.type = type;
+        this.group = group;
+        this.values = values;
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.brfrn169.graphbase.aggregation;
+
+import com.github.brfrn169.graphbase.Entity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+// aggregates entities into per-group accumulators as they are scanned. the collector can be
+// used on several partitions concurrently, whose partial aggregates are merged at the end
+public class Aggregator {
+
+    // the groups are sorted for a stable output, in the order MIN and MAX use
+    private static final Comparator<List<Object>> GROUP_KEY_COMPARATOR = (key1, key2) -> {
+        for (int i = 0; i < key1.size(); i++) {
+            int c = Accumulator.compare(key1.get(i), key2.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    };
+
+    private final AggregationQuery query;
+
+    public Aggregator(AggregationQuery query) {
+        this.query = query;
+    }
+
+    // the properties to read
+    public Set<String> propertyKeys() {
+        Set<String> ret = new HashSet<>(query.groupBy());
+        query.aggregations().stream().filter(aggregation -> aggregation.key() != null)
+            .forEach(aggregation -> ret.add(aggregation.key()));
+        return ret;
+    }
+
+    public <T extends Entity> Collector<T, ?, List<AggregationResult>> collector(
+        Function<T, String> typeGetter) {
+        return Collector.of(HashMap<List<Object>, Accumulator[]>::new, (groups, entity) -> {
+            List<Object> groupKey = new ArrayList<>();
+            if (query.groupByType()) {
+                groupKey.add(typeGetter.apply(entity));
+            }
+            query.groupBy()
+                .forEach(key -> groupKey.add(Accumulator.normalize(entity.propertyValue(key))));
+
+            Accumulator[] accumulators =
+                groups.computeIfAbsent(groupKey, k -> createAccumulators());
+            for (int i = 0; i < accumulators.length; i++) {
+                String key = query.aggregations().get(i).key();
+                if (key != null) {
+                    accumulators[i].add(entity.propertyValue(key));
+                } else {
+                    accumulators[i].add(Boolean.TRUE);
+                }
+            }
+        }, (groups1, groups2) -> {
+            groups2.forEach((groupKey, accumulators) -> groups1
+                .merge(groupKey, accumulators, (accumulators1, accumulators2) -> {
+                    for (int i = 0; i < accumulators1.length; i++) {
+                        accumulators1[i].merge(accumulators2[i]);
+                    }
+                    return accumulators1;
+                }));
+            return groups1;
+        }, this::toResults);
+    }
+
+    private Accumulator[] createAccumulators() {
+        return query.aggregations().stream()
+            .map(aggregation -> new Accumulator(aggregation.function()))
+            .toArray(Accumulator[]::new);
+    }
+
+    private List<AggregationResult> toResults(Map<List<Object>, Accumulator[]> groups) {
+        List<List<Object>> groupKeys = new ArrayList<>(groups.keySet());
+        groupKeys.sort(GROUP_KEY_COMPARATOR);
+
+        List<AggregationResult> ret = new ArrayList<>();
+        for (List<Object> groupKey : groupKeys) {
+            int i = 0;
+            String type = null;
+            if (query.groupByType()) {
+                type = (String) groupKey.get(i++);
+            }
+
+            Map<String, Object> group = new LinkedHashMap<>();
+            for (String key : query.groupBy()) {
+                group.put(key, groupKey.get(i++));
+            }
+
+            Accumulator[] accumulators = groups.get(groupKey);
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int j = 0; j < accumulators.length; j++) {
+                values.put(query.aggregations().get(j).name(), accumulators[j].result());
+            }
+            ret.add(new AggregationResult(type, group, values));
+        }
+        return ret;
+    }
+}
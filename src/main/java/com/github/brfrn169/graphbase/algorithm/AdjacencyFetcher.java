@@ -0,0 +1,80 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphStorage;
+import com.github.brfrn169.graphbase.Relationship;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutProperties;
+
+// fetches the outgoing neighbors of many nodes with one batched scan. the fetched adjacency lists
+// can be cached for the lifetime of the instance (typically a request), so expanding the same hub
+// repeatedly does not hit HBase again. not thread-safe
+public class AdjacencyFetcher {
+
+    private final GraphStorage graphStorage;
+    private final GraphConfiguration graphConf;
+    @Nullable private final List<String> relTypes;
+
+    // the total number of the cached neighbors. 0 disables the cache
+    private final int maxCachedNeighbors;
+
+    private final Map<String, List<String>> cache = new HashMap<>();
+    private int cachedNeighbors;
+
+    public AdjacencyFetcher(GraphStorage graphStorage, GraphConfiguration graphConf,
+        @Nullable List<String> relTypes, int maxCachedNeighbors) {
+        this.graphStorage = graphStorage;
+        this.graphConf = graphConf;
+        this.relTypes = relTypes;
+        this.maxCachedNeighbors = maxCachedNeighbors;
+    }
+
+    public List<String> fetch(String nodeId) {
+        return fetch(Collections.singletonList(nodeId)).get(nodeId);
+    }
+
+    public Map<String, List<String>> fetch(Collection<String> nodeIds) {
+        Map<String, List<String>> ret = new HashMap<>();
+
+        List<String> missingNodeIds = new ArrayList<>();
+        for (String nodeId : nodeIds) {
+            List<String> neighbors = cache.get(nodeId);
+            if (neighbors != null) {
+                ret.put(nodeId, neighbors);
+            } else {
+                missingNodeIds.add(nodeId);
+            }
+        }
+
+        if (missingNodeIds.isEmpty()) {
+            return ret;
+        }
+
+        Map<String, List<String>> fetched = new HashMap<>();
+        try (Stream<Relationship> rels = graphStorage
+            .getOutgoingRelationships(graphConf, missingNodeIds, relTypes, withoutProperties())) {
+            rels.forEach(rel -> fetched.computeIfAbsent(rel.outNodeId(), k -> new ArrayList<>())
+                .add(rel.inNodeId()));
+        }
+
+        for (String nodeId : missingNodeIds) {
+            List<String> neighbors = fetched.getOrDefault(nodeId, Collections.emptyList());
+            ret.put(nodeId, neighbors);
+
+            if (cachedNeighbors + neighbors.size() + 1 <= maxCachedNeighbors) {
+                cache.put(nodeId, neighbors);
+                cachedNeighbors += neighbors.size() + 1;
+            }
+        }
+        return ret;
+    }
+}
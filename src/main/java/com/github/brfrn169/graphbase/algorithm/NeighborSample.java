@@ -0,0 +1,22 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+@Data @Accessors(fluent = true) public class NeighborSample {
+    @NonNull @JsonProperty("nodeId") private final String nodeId;
+    @JsonProperty("hop") private final int hop;
+    @NonNull @JsonProperty("neighbors") private final List<String> neighbors;
+
+    @JsonCreator public NeighborSample(@NonNull @JsonProperty("nodeId") String nodeId,
+        @JsonProperty("hop") int hop, @NonNull @JsonProperty("neighbors") List<String> neighbors) {
+        this.nodeId = nodeId;
+        this.hop = hop;
+        this.neighbors = neighbors;
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+@Data @Accessors(fluent = true) public class NeighborSampleParameters {
+    @NonNull @JsonProperty("nodeIds") private final List<String> nodeIds;
+    @NonNull @JsonProperty("fanouts") private final List<Integer> fanouts;
+    @Nullable @JsonProperty("relTypes") private final List<String> relTypes;
+    @Nullable @JsonProperty("weightKey") private final String weightKey;
+    @Nullable @JsonProperty("seed") private final Long seed;
+
+    @JsonCreator
+    public NeighborSampleParameters(@NonNull @JsonProperty("nodeIds") List<String> nodeIds,
+        @NonNull @JsonProperty("fanouts") List<Integer> fanouts,
+        @JsonProperty("relTypes") List<String> relTypes,
+        @JsonProperty("weightKey") String weightKey, @JsonProperty("seed") Long seed) {
+        Preconditions.checkArgument(!fanouts.isEmpty(), "fanouts must not be empty");
+        Preconditions.checkArgument(fanouts.stream().allMatch(fanout -> fanout > 0),
+            "fanouts must be positive");
+
+        this.nodeIds = nodeIds;
+        this.fanouts = fanouts;
+        this.relTypes = relTypes;
+        this.weightKey = weightKey;
+        this.seed = seed;
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphStorage;
+import com.github.brfrn169.graphbase.PropertyProjections;
+import com.github.brfrn169.graphbase.Relationship;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withProperties;
+import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutProperties;
+
+public class NeighborSampler {
+
+    private final GraphStorage graphStorage;
+    private final GraphConfiguration graphConf;
+    @Nullable private final List<String> relTypes;
+    @Nullable private final String weightKey;
+    private final Random random;
+
+    public NeighborSampler(GraphStorage graphStorage, GraphConfiguration graphConf,
+        @Nullable List<String> relTypes, @Nullable String weightKey, Random random) {
+        this.graphStorage = graphStorage;
+        this.graphConf = graphConf;
+        this.relTypes = relTypes;
+        this.weightKey = weightKey;
+        this.random = random;
+    }
+
+    // relationships without a positive numeric weight are never sampled
+    static double weight(Relationship rel, @Nullable String weightKey) {
+        if (weightKey == null) {
+            return 1.0;
+        }
+
+        Object value = rel.propertyValue(weightKey);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return 0.0;
+    }
+
+    static PropertyProjections weightProjections(@Nullable String weightKey) {
+        return weightKey != null ? withProperties(weightKey) : withoutProperties();
+    }
+
+    public Map<String, List<String>> sample(Collection<String> nodeIds, int fanout) {
+        Map<String, Reservoir<String>> reservoirs = new HashMap<>();
+
+        try (Stream<Relationship> rels = graphStorage
+            .getOutgoingRelationships(graphConf, nodeIds, relTypes,
+                weightProjections(weightKey))) {
+            rels.forEach(rel -> reservoirs
+                .computeIfAbsent(rel.outNodeId(), nodeId -> new Reservoir<>(fanout, random))
+                .offer(rel.inNodeId(), weight(rel, weightKey)));
+        }
+
+        Map<String, List<String>> ret = new LinkedHashMap<>();
+        nodeIds.forEach(nodeId -> {
+            Reservoir<String> reservoir = reservoirs.get(nodeId);
+            ret.put(nodeId, reservoir != null ? reservoir.items() : Collections.emptyList());
+        });
+        return ret;
+    }
+
+    // samples layer by layer, the sampled neighbors of a hop being the nodes of the next hop
+    public List<NeighborSample> sample(List<String> nodeIds, List<Integer> fanouts) {
+        List<NeighborSample> ret = new ArrayList<>();
+
+        Collection<String> frontier = new LinkedHashSet<>(nodeIds);
+        for (int hop = 0; hop < fanouts.size() && !frontier.isEmpty(); hop++) {
+            Map<String, List<String>> samples = sample(frontier, fanouts.get(hop));
+
+            Set<String> nextFrontier = new LinkedHashSet<>();
+            for (Map.Entry<String, List<String>> entry : samples.entrySet()) {
+                ret.add(new NeighborSample(entry.getKey(), hop, entry.getValue()));
+                nextFrontier.addAll(entry.getValue());
+            }
+            frontier = nextFrontier;
+        }
+        return ret;
+    }
+}
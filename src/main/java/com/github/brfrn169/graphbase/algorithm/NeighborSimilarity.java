@@ -0,0 +1,160 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.github.brfrn169.graphbase.Direction;
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// similarities of two nodes based on their outgoing neighbors of a relationship type. the
+// adjacency lists come sorted from the storage, so they are merge-joined without buffering
+public class NeighborSimilarity {
+
+    static final class MergeResult {
+        final List<String> common = new ArrayList<>();
+        long leftSize;
+        long rightSize;
+    }
+
+
+    private final GraphStorage graphStorage;
+    private final GraphConfiguration graphConf;
+    private final String relType;
+
+    public NeighborSimilarity(GraphStorage graphStorage, GraphConfiguration graphConf,
+        String relType) {
+        this.graphStorage = graphStorage;
+        this.graphConf = graphConf;
+        this.relType = relType;
+    }
+
+    public List<String> commonNeighbors(String nodeId1, String nodeId2) {
+        return merge(nodeId1, nodeId2).common;
+    }
+
+    public NodeSimilarity similarity(String nodeId1, String nodeId2) {
+        MergeResult merged = merge(nodeId1, nodeId2);
+        return toSimilarity(nodeId1, nodeId2, merged, degrees(merged.common));
+    }
+
+    public List<NodeSimilarity> similarities(List<NodePair> pairs) {
+        Set<String> nodeIds = new HashSet<>();
+        pairs.forEach(pair -> {
+            nodeIds.add(pair.nodeId1());
+            nodeIds.add(pair.nodeId2());
+        });
+
+        Map<String, List<String>> adjacency = graphStorage.getOutgoingNodeIds(graphConf, nodeIds,
+            relType);
+
+        List<MergeResult> merged = pairs.stream().map(
+            pair -> merge(adjacency.get(pair.nodeId1()).iterator(),
+                adjacency.get(pair.nodeId2()).iterator())).collect(Collectors.toList());
+
+        Set<String> commonNeighbors = new HashSet<>();
+        merged.forEach(result -> commonNeighbors.addAll(result.common));
+        Map<String, Long> degrees = degrees(commonNeighbors);
+
+        List<NodeSimilarity> ret = new ArrayList<>();
+        for (int i = 0; i < pairs.size(); i++) {
+            ret.add(toSimilarity(pairs.get(i).nodeId1(), pairs.get(i).nodeId2(), merged.get(i),
+                degrees));
+        }
+        return ret;
+    }
+
+    private MergeResult merge(String nodeId1, String nodeId2) {
+        try (Stream<String> left = graphStorage.getOutgoingNodeIds(graphConf, nodeId1, relType);
+            Stream<String> right = graphStorage.getOutgoingNodeIds(graphConf, nodeId2, relType)) {
+            return merge(left.iterator(), right.iterator());
+        }
+    }
+
+    // the common neighbors are reached by outgoing relationships, so their incoming degree is used
+    private Map<String, Long> degrees(Collection<String> nodeIds) {
+        return graphStorage.degrees(graphConf, nodeIds, Direction.IN,
+            Collections.singletonList(relType));
+    }
+
+    private static NodeSimilarity toSimilarity(String nodeId1, String nodeId2, MergeResult merged,
+        Map<String, Long> degrees) {
+        long common = merged.common.size();
+        long union = merged.leftSize + merged.rightSize - common;
+        double jaccard = union == 0 ? 0.0 : (double) common / union;
+
+        double adamicAdar = 0.0;
+        for (String nodeId : merged.common) {
+            long degree = degrees.getOrDefault(nodeId, 0L);
+            if (degree > 1) {
+                adamicAdar += 1.0 / Math.log(degree);
+            }
+        }
+        return new NodeSimilarity(nodeId1, nodeId2, common, jaccard, adamicAdar);
+    }
+
+    // both iterators must be sorted by compareUtf8
+    static MergeResult merge(Iterator<String> left, Iterator<String> right) {
+        MergeResult ret = new MergeResult();
+
+        String l = next(left, ret, true);
+        String r = next(right, ret, false);
+        while (l != null && r != null) {
+            int c = compareUtf8(l, r);
+            if (c == 0) {
+                ret.common.add(l);
+            }
+            if (c <= 0) {
+                l = next(left, ret, true);
+            }
+            if (c >= 0) {
+                r = next(right, ret, false);
+            }
+        }
+
+        // the rest is only counted
+        for (; left.hasNext(); left.next()) {
+            ret.leftSize++;
+        }
+        for (; right.hasNext(); right.next()) {
+            ret.rightSize++;
+        }
+        return ret;
+    }
+
+    private static String next(Iterator<String> iterator, MergeResult result, boolean left) {
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        if (left) {
+            result.leftSize++;
+        } else {
+            result.rightSize++;
+        }
+        return iterator.next();
+    }
+
+    // the order of the UTF-8 bytes is the same as the order of the code points
+    static int compareUtf8(String s1, String s2) {
+        int i = 0;
+        int j = 0;
+        while (i < s1.length() && j < s2.length()) {
+            int c1 = s1.codePointAt(i);
+            int c2 = s2.codePointAt(j);
+            if (c1 != c2) {
+                return Integer.compare(c1, c2);
+            }
+            i += Character.charCount(c1);
+            j += Character.charCount(c2);
+        }
+        return Integer.compare(s1.length() - i, s2.length() - j);
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+@Data @Accessors(fluent = true) public class NodePair {
+    @NonNull @JsonProperty("nodeId1") private final String nodeId1;
+    @NonNull @JsonProperty("nodeId2") private final String nodeId2;
+
+    @JsonCreator public NodePair(@NonNull @JsonProperty("nodeId1") String nodeId1,
+        @NonNull @JsonProperty("nodeId2") String nodeId2) {
+        this.nodeId1 = nodeId1;
+        this.nodeId2 = nodeId2;
+    }
+}
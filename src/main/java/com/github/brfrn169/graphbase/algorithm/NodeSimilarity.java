@@ -0,0 +1,26 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+@Data @Accessors(fluent = true) public class NodeSimilarity {
+    @NonNull @JsonProperty("nodeId1") private final String nodeId1;
+    @NonNull @JsonProperty("nodeId2") private final String nodeId2;
+    @JsonProperty("commonNeighbors") private final long commonNeighbors;
+    @JsonProperty("jaccard") private final double jaccard;
+    @JsonProperty("adamicAdar") private final double adamicAdar;
+
+    @JsonCreator public NodeSimilarity(@NonNull @JsonProperty("nodeId1") String nodeId1,
+        @NonNull @JsonProperty("nodeId2") String nodeId2,
+        @JsonProperty("commonNeighbors") long commonNeighbors,
+        @JsonProperty("jaccard") double jaccard, @JsonProperty("adamicAdar") double adamicAdar) {
+        this.nodeId1 = nodeId1;
+        this.nodeId2 = nodeId2;
+        this.commonNeighbors = commonNeighbors;
+        this.jaccard = jaccard;
+        this.adamicAdar = adamicAdar;
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// approximate personalized PageRank by the forward push (Andersen, Chung and Lang). the queued
+// nodes are pushed in batches so that the adjacency of a whole batch is fetched with one scan
+public class PersonalizedPageRank {
+
+    private static final int PUSH_BATCH_SIZE = 256;
+
+    private static final Comparator<ScoredNode> SCORE_COMPARATOR =
+        Comparator.comparingDouble(ScoredNode::score).reversed()
+            .thenComparing(ScoredNode::nodeId);
+
+    private final AdjacencyFetcher adjacencyFetcher;
+    private final PersonalizedPageRankParameters parameters;
+
+    private final Map<String, Double> estimates = new HashMap<>();
+    private final Map<String, Double> residuals = new HashMap<>();
+    private final Map<String, Integer> degrees = new HashMap<>();
+    private final Set<String> queue = new LinkedHashSet<>();
+
+    public PersonalizedPageRank(AdjacencyFetcher adjacencyFetcher,
+        PersonalizedPageRankParameters parameters) {
+        this.adjacencyFetcher = adjacencyFetcher;
+        this.parameters = parameters;
+    }
+
+    public List<ScoredNode> compute(String seedNodeId) {
+        long deadline =
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(parameters.timeoutMillis());
+
+        addResidual(seedNodeId, 1.0);
+
+        int visits = 0;
+        while (!queue.isEmpty() && visits < parameters.maxVisits()
+            && System.nanoTime() < deadline) {
+
+            List<String> batch = new ArrayList<>();
+            Iterator<String> iterator = queue.iterator();
+            while (iterator.hasNext() && batch.size() < Math
+                .min(PUSH_BATCH_SIZE, parameters.maxVisits() - visits)) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+
+            Map<String, List<String>> adjacency = adjacencyFetcher.fetch(batch);
+            for (String nodeId : batch) {
+                List<String> neighbors = adjacency.get(nodeId);
+                degrees.put(nodeId, neighbors.size());
+
+                double residual = residuals.getOrDefault(nodeId, 0.0);
+                if (!aboveThreshold(nodeId, residual)) {
+                    continue;
+                }
+
+                visits++;
+                residuals.remove(nodeId);
+                estimates.merge(nodeId, parameters.alpha() * residual, Double::sum);
+
+                double pushed = (1.0 - parameters.alpha()) * residual;
+                if (neighbors.isEmpty()) {
+                    // a dangling node teleports back to the seed node
+                    addResidual(seedNodeId, pushed);
+                } else {
+                    double share = pushed / neighbors.size();
+                    neighbors.forEach(neighbor -> addResidual(neighbor, share));
+                }
+            }
+        }
+
+        Set<String> excluded = new HashSet<>();
+        excluded.add(seedNodeId);
+        if (parameters.excludeNeighbors()) {
+            excluded.addAll(adjacencyFetcher.fetch(seedNodeId));
+        }
+
+        return topN(excluded);
+    }
+
+    private void addResidual(String nodeId, double amount) {
+        double residual = residuals.merge(nodeId, amount, Double::sum);
+        if (aboveThreshold(nodeId, residual)) {
+            queue.add(nodeId);
+        }
+    }
+
+    private boolean aboveThreshold(String nodeId, double residual) {
+        // the degree is unknown until the adjacency of the node is fetched
+        int degree = degrees.getOrDefault(nodeId, 1);
+        return residual > parameters.epsilon() * Math.max(degree, 1);
+    }
+
+    private List<ScoredNode> topN(Set<String> excluded) {
+        PriorityQueue<ScoredNode> top =
+            new PriorityQueue<>(parameters.limit() + 1, SCORE_COMPARATOR.reversed());
+
+        estimates.forEach((nodeId, score) -> {
+            if (excluded.contains(nodeId)) {
+                return;
+            }
+
+            top.add(new ScoredNode(nodeId, score));
+            if (top.size() > parameters.limit()) {
+                top.poll();
+            }
+        });
+
+        List<ScoredNode> ret = new ArrayList<>(top);
+        Collections.sort(ret, SCORE_COMPARATOR);
+        return ret;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+@Data @Accessors(fluent = true) public class PersonalizedPageRankParameters {
+
+    public static final double DEFAULT_ALPHA = 0.15;
+    public static final double DEFAULT_EPSILON = 1e-4;
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int DEFAULT_MAX_VISITS = 10000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 100;
+
+    @Nullable @JsonProperty("relTypes") private final List<String> relTypes;
+
+    // the teleport probability
+    @JsonProperty("alpha") private final double alpha;
+
+    // the residual (per out-degree) below which a node is not pushed
+    @JsonProperty("epsilon") private final double epsilon;
+
+    @JsonProperty("limit") private final int limit;
+
+    // the budget of the computation
+    @JsonProperty("maxVisits") private final int maxVisits;
+    @JsonProperty("timeoutMillis") private final long timeoutMillis;
+
+    // whether the nodes the seed node already points to are excluded from the results
+    @JsonProperty("excludeNeighbors") private final boolean excludeNeighbors;
+
+    @JsonProperty("cacheAdjacency") private final boolean cacheAdjacency;
+
+    @JsonCreator
+    public PersonalizedPageRankParameters(@JsonProperty("relTypes") List<String> relTypes,
+        @JsonProperty("alpha") Double alpha, @JsonProperty("epsilon") Double epsilon,
+        @JsonProperty("limit") Integer limit, @JsonProperty("maxVisits") Integer maxVisits,
+        @JsonProperty("timeoutMillis") Long timeoutMillis,
+        @JsonProperty("excludeNeighbors") Boolean excludeNeighbors,
+        @JsonProperty("cacheAdjacency") Boolean cacheAdjacency) {
+        this.relTypes = relTypes;
+        this.alpha = alpha != null ? alpha : DEFAULT_ALPHA;
+        this.epsilon = epsilon != null ? epsilon : DEFAULT_EPSILON;
+        this.limit = limit != null ? limit : DEFAULT_LIMIT;
+        this.maxVisits = maxVisits != null ? maxVisits : DEFAULT_MAX_VISITS;
+        this.timeoutMillis = timeoutMillis != null ? timeoutMillis : DEFAULT_TIMEOUT_MILLIS;
+        this.excludeNeighbors = excludeNeighbors != null ? excludeNeighbors : true;
+        this.cacheAdjacency = cacheAdjacency != null ? cacheAdjacency : true;
+
+        Preconditions.checkArgument(this.alpha > 0.0 && this.alpha < 1.0,
+            "alpha must be between 0 and 1");
+        Preconditions.checkArgument(this.epsilon > 0.0, "epsilon must be positive");
+        Preconditions.checkArgument(this.limit > 0, "limit must be positive");
+        Preconditions.checkArgument(this.maxVisits > 0, "maxVisits must be positive");
+        Preconditions.checkArgument(this.timeoutMillis > 0, "timeoutMillis must be positive");
+    }
+}
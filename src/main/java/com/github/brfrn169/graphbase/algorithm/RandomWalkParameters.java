@@ -0,0 +1,58 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+@Data @Accessors(fluent = true) public class RandomWalkParameters {
+
+    public static final int DEFAULT_WALK_LENGTH = 10;
+    public static final int DEFAULT_WALKS_PER_NODE = 1;
+    // the walks of a request, which are indexed by ints
+    public static final int MAX_WALKS = 1000000;
+
+    @NonNull @JsonProperty("startNodeIds") private final List<String> startNodeIds;
+    @JsonProperty("walkLength") private final int walkLength;
+    @JsonProperty("walksPerNode") private final int walksPerNode;
+    @Nullable @JsonProperty("relTypes") private final List<String> relTypes;
+    @Nullable @JsonProperty("weightKey") private final String weightKey;
+
+    // the return parameter and the in-out parameter of node2vec
+    @JsonProperty("p") private final double p;
+    @JsonProperty("q") private final double q;
+
+    @Nullable @JsonProperty("seed") private final Long seed;
+
+    @JsonCreator
+    public RandomWalkParameters(@NonNull @JsonProperty("startNodeIds") List<String> startNodeIds,
+        @JsonProperty("walkLength") Integer walkLength,
+        @JsonProperty("walksPerNode") Integer walksPerNode,
+        @JsonProperty("relTypes") List<String> relTypes,
+        @JsonProperty("weightKey") String weightKey, @JsonProperty("p") Double p,
+        @JsonProperty("q") Double q, @JsonProperty("seed") Long seed) {
+        this.startNodeIds = startNodeIds;
+        this.walkLength = walkLength != null ? walkLength : DEFAULT_WALK_LENGTH;
+        this.walksPerNode = walksPerNode != null ? walksPerNode : DEFAULT_WALKS_PER_NODE;
+        this.relTypes = relTypes;
+        this.weightKey = weightKey;
+        this.p = p != null ? p : 1.0;
+        this.q = q != null ? q : 1.0;
+        this.seed = seed;
+
+        Preconditions.checkArgument(this.walkLength > 0, "walkLength must be positive");
+        Preconditions.checkArgument(this.walksPerNode > 0, "walksPerNode must be positive");
+        Preconditions.checkArgument((long) startNodeIds.size() * this.walksPerNode <= MAX_WALKS,
+            "the number of the walks must be at most %s", MAX_WALKS);
+        Preconditions.checkArgument(this.p > 0.0 && this.q > 0.0, "p and q must be positive");
+    }
+
+    public boolean biased() {
+        return p != 1.0 || q != 1.0;
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphStorage;
+import com.github.brfrn169.graphbase.PropertyProjections;
+import com.github.brfrn169.graphbase.Relationship;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// walks are advanced in lockstep per batch, so every step of a batch costs one batched scan of
+// the outgoing relationships of the current nodes
+public class RandomWalker {
+
+    private static final int WALK_BATCH_SIZE = 1024;
+
+    // the neighbors remembered per node for the node2vec bias. when a node has more neighbors than
+    // this, the rest of them are treated as being two hops away from the previous node
+    private static final int MAX_REMEMBERED_NEIGHBORS = 10000;
+
+    private static final class Walk {
+        private final List<String> path = new ArrayList<>();
+        @Nullable private String previous;
+        @Nullable private Set<String> previousNeighbors;
+        @Nullable private Reservoir<String> reservoir;
+
+        private Walk(String startNodeId) {
+            path.add(startNodeId);
+        }
+
+        private String current() {
+            return path.get(path.size() - 1);
+        }
+    }
+
+
+    private final GraphStorage graphStorage;
+    private final GraphConfiguration graphConf;
+    private final RandomWalkParameters parameters;
+    private final PropertyProjections propertyProjections;
+    private final Random random;
+
+    public RandomWalker(GraphStorage graphStorage, GraphConfiguration graphConf,
+        RandomWalkParameters parameters, Random random) {
+        this.graphStorage = graphStorage;
+        this.graphConf = graphConf;
+        this.parameters = parameters;
+        this.random = random;
+        propertyProjections = NeighborSampler.weightProjections(parameters.weightKey());
+    }
+
+    public Stream<List<String>> walks() {
+        List<String> startNodeIds = parameters.startNodeIds();
+        int walksPerNode = parameters.walksPerNode();
+        int walkCount = Math.multiplyExact(startNodeIds.size(), walksPerNode);
+        int batchCount = (walkCount + WALK_BATCH_SIZE - 1) / WALK_BATCH_SIZE;
+
+        return IntStream.range(0, batchCount).mapToObj(batch -> {
+            int from = batch * WALK_BATCH_SIZE;
+            int to = Math.min(walkCount, from + WALK_BATCH_SIZE);
+            return IntStream.range(from, to).mapToObj(i -> startNodeIds.get(i / walksPerNode))
+                .collect(Collectors.toList());
+        }).flatMap(batch -> walk(batch).stream());
+    }
+
+    private List<List<String>> walk(List<String> startNodeIds) {
+        List<Walk> walks = startNodeIds.stream().map(Walk::new).collect(Collectors.toList());
+
+        List<Walk> activeWalks = walks;
+        for (int step = 1; step < parameters.walkLength() && !activeWalks.isEmpty(); step++) {
+            activeWalks = step(activeWalks);
+        }
+
+        return walks.stream().map(walk -> walk.path).collect(Collectors.toList());
+    }
+
+    private List<Walk> step(List<Walk> activeWalks) {
+        Map<String, List<Walk>> walksByNode = new HashMap<>();
+        activeWalks.forEach(walk -> {
+            walk.reservoir = new Reservoir<>(1, random);
+            walksByNode.computeIfAbsent(walk.current(), nodeId -> new ArrayList<>()).add(walk);
+        });
+
+        Map<String, Set<String>> neighbors = new HashMap<>();
+
+        try (Stream<Relationship> rels = graphStorage
+            .getOutgoingRelationships(graphConf, walksByNode.keySet(), parameters.relTypes(),
+                propertyProjections)) {
+            rels.forEach(rel -> {
+                double weight = NeighborSampler.weight(rel, parameters.weightKey());
+                if (!(weight > 0.0)) {
+                    return;
+                }
+
+                if (parameters.biased()) {
+                    Set<String> remembered =
+                        neighbors.computeIfAbsent(rel.outNodeId(), nodeId -> new HashSet<>());
+                    if (remembered.size() < MAX_REMEMBERED_NEIGHBORS) {
+                        remembered.add(rel.inNodeId());
+                    }
+                }
+
+                List<Walk> walksOnNode = walksByNode.get(rel.outNodeId());
+                if (walksOnNode != null) {
+                    walksOnNode.forEach(
+                        walk -> walk.reservoir.offer(rel.inNodeId(), weight * bias(walk, rel)));
+                }
+            });
+        }
+
+        List<Walk> ret = new ArrayList<>();
+        for (Walk walk : activeWalks) {
+            List<String> next = walk.reservoir.items();
+            walk.reservoir = null;
+            if (next.isEmpty()) {
+                // a dead end
+                continue;
+            }
+
+            walk.previous = walk.current();
+            walk.previousNeighbors = neighbors.get(walk.previous);
+            walk.path.add(next.get(0));
+            ret.add(walk);
+        }
+        return ret;
+    }
+
+    private double bias(Walk walk, Relationship rel) {
+        if (!parameters.biased() || walk.previous == null) {
+            return 1.0;
+        }
+
+        String nextNodeId = rel.inNodeId();
+        if (nextNodeId.equals(walk.previous)) {
+            return 1.0 / parameters.p();
+        } else if (walk.previousNeighbors != null && walk.previousNeighbors
+            .contains(nextNodeId)) {
+            return 1.0;
+        } else {
+            return 1.0 / parameters.q();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+// weighted reservoir sampling (A-Res). it keeps at most "capacity" items however many items are
+// offered, and offering every item with the same weight is the uniform sampling
+public class Reservoir<T> {
+
+    private static final class Candidate<T> {
+        private final double key;
+        private final T item;
+
+        private Candidate(double key, T item) {
+            this.key = key;
+            this.item = item;
+        }
+    }
+
+
+    private final int capacity;
+    private final Random random;
+    private final PriorityQueue<Candidate<T>> candidates;
+
+    public Reservoir(int capacity, Random random) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+        this.random = random;
+        candidates = new PriorityQueue<>(capacity,
+            Comparator.comparingDouble((Candidate<T> candidate) -> candidate.key));
+    }
+
+    public void offer(T item) {
+        offer(item, 1.0);
+    }
+
+    public void offer(T item, double weight) {
+        if (!(weight > 0.0) || Double.isInfinite(weight)) {
+            return;
+        }
+
+        // log(u) / w keeps the same order as u^(1/w) without underflowing for small weights
+        double key = Math.log(1.0 - random.nextDouble()) / weight;
+        if (candidates.size() < capacity) {
+            candidates.add(new Candidate<>(key, item));
+        } else if (key > candidates.peek().key) {
+            candidates.poll();
+            candidates.add(new Candidate<>(key, item));
+        }
+    }
+
+    public boolean isEmpty() {
+        return candidates.isEmpty();
+    }
+
+    public List<T> items() {
+        return candidates.stream().map(candidate -> candidate.item).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+@Data @Accessors(fluent = true) public class ScoredNode {
+    @NonNull @JsonProperty("nodeId") private final String nodeId;
+    @JsonProperty("score") private final double score;
+
+    @JsonCreator public ScoredNode(@NonNull @JsonProperty("nodeId") String nodeId,
+        @JsonProperty("score") double score) {
+        this.nodeId = nodeId;
+        this.score = score;
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.brfrn169.graphbase.exception;
+
+public class QuotaExceededException extends GraphbaseException {
+    private static final long serialVersionUID = -2815342197354816622L;
+
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,5 @@
+package com.github.brfrn169.graphbase.exception;
+
+public class VersionMismatchException extends GraphbaseException {
+    private static final long serialVersionUID = 3350858315694017722L;
+}
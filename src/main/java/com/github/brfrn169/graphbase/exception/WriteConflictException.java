@@ -0,0 +1,5 @@
+package com.github.brfrn169.graphbase.exception;
+
+public class WriteConflictException extends GraphbaseException {
+    private static final long serialVersionUID = -4417263871507120361L;
+}
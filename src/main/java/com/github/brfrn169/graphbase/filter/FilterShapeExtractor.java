@@ -0,0 +1,86 @@
+package com.github.brfrn169.graphbase.filter;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// the shape of a filter, with the property keys and the operators of its conditions but without
+// their values, which may be personal data, so that it can be logged
+public class FilterShapeExtractor implements FilterPredicateVisitor<Void, Map<String, Object>> {
+
+    public static final String REDACTED = "?";
+
+    private FilterPredicate filter;
+
+    public FilterShapeExtractor(FilterPredicate filter) {
+        this.filter = filter;
+    }
+
+    public Map<String, Object> extract() {
+        return filter.accept(this, null);
+    }
+
+    private static Map<String, Object> condition(String propertyKey,
+        PropertyCondition.Operator op, boolean hasValue) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("key", propertyKey);
+        ret.put("op", op);
+        if (hasValue) {
+            ret.put("value", REDACTED);
+        }
+        return ret;
+    }
+
+    @Override public Map<String, Object> visit(EqualFilterPredicate filterPredicate, Void context) {
+        return condition(filterPredicate.propertyKey, PropertyCondition.Operator.EQ, true);
+    }
+
+    @Override
+    public Map<String, Object> visit(NotEqualFilterPredicate filterPredicate, Void context) {
+        return condition(filterPredicate.propertyKey, PropertyCondition.Operator.NE, true);
+    }
+
+    @Override
+    public Map<String, Object> visit(GreaterFilterPredicate filterPredicate, Void context) {
+        return condition(filterPredicate.propertyKey, PropertyCondition.Operator.GT, true);
+    }
+
+    @Override
+    public Map<String, Object> visit(GreaterOrEqualFilterPredicate filterPredicate, Void context) {
+        return condition(filterPredicate.propertyKey, PropertyCondition.Operator.GE, true);
+    }
+
+    @Override public Map<String, Object> visit(LessFilterPredicate filterPredicate, Void context) {
+        return condition(filterPredicate.propertyKey, PropertyCondition.Operator.LT, true);
+    }
+
+    @Override
+    public Map<String, Object> visit(LessOrEqualFilterPredicate filterPredicate, Void context) {
+        return condition(filterPredicate.propertyKey, PropertyCondition.Operator.LE, true);
+    }
+
+    @Override
+    public Map<String, Object> visit(IsNullFilterPredicate filterPredicate, Void context) {
+        return condition(filterPredicate.propertyKey, PropertyCondition.Operator.IS_NULL, false);
+    }
+
+    @Override
+    public Map<String, Object> visit(IsNotNullFilterPredicate filterPredicate, Void context) {
+        return condition(filterPredicate.propertyKey, PropertyCondition.Operator.IS_NOT_NULL,
+            false);
+    }
+
+    @Override
+    public Map<String, Object> visit(RegexFilterPredicate filterPredicate, Void context) {
+        return condition(filterPredicate.propertyKey, PropertyCondition.Operator.REGEX, true);
+    }
+
+    @Override
+    public Map<String, Object> visit(CompositeFilterPredicate compositeFilter, Void context) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("op", compositeFilter.operator);
+        ret.put("filters", Arrays.asList(compositeFilter.leftFilter.accept(this, context),
+            compositeFilter.rightFilter.accept(this, context)));
+        return ret;
+    }
+}
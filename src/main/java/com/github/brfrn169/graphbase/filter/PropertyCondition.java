@@ -0,0 +1,71 @@
+package com.github.brfrn169.graphbase.filter;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+// the JSON form of a FilterPredicate on a single property
+@Data @Accessors(fluent = true) public class PropertyCondition {
+
+    public enum Operator {
+        EQ, NE, GT, GE, LT, LE, REGEX, IS_NULL, IS_NOT_NULL
+    }
+
+
+    @NonNull @JsonProperty("key") private final String key;
+    @NonNull @JsonProperty("op") private final Operator op;
+    @Nullable @JsonProperty("value") private final Object value;
+
+    @JsonCreator public PropertyCondition(@NonNull @JsonProperty("key") String key,
+        @NonNull @JsonProperty("op") Operator op, @JsonProperty("value") Object value) {
+        Preconditions.checkArgument(
+            value != null || op == Operator.IS_NULL || op == Operator.IS_NOT_NULL,
+            "value must be specified for %s", op);
+        Preconditions.checkArgument(op != Operator.REGEX || value instanceof String,
+            "value must be a string for REGEX");
+
+        this.key = key;
+        this.op = op;
+        this.value = value;
+    }
+
+    public FilterPredicate toFilter() {
+        switch (op) {
+            case EQ:
+                return FilterPredicate.Builder.equal(key, value);
+            case NE:
+                return FilterPredicate.Builder.notEqual(key, value);
+            case GT:
+                return FilterPredicate.Builder.greater(key, value);
+            case GE:
+                return FilterPredicate.Builder.greaterOrEqual(key, value);
+            case LT:
+                return FilterPredicate.Builder.less(key, value);
+            case LE:
+                return FilterPredicate.Builder.lessOrEqual(key, value);
+            case REGEX:
+                return FilterPredicate.Builder.regex(key, (String) value);
+            case IS_NULL:
+                return FilterPredicate.Builder.isNull(key);
+            case IS_NOT_NULL:
+                return FilterPredicate.Builder.isNotNull(key);
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    // ANDs all the conditions, or returns null if there are none
+    @Nullable public static FilterPredicate toFilter(@Nullable List<PropertyCondition> conditions) {
+        if (conditions == null) {
+            return null;
+        }
+        return conditions.stream().map(PropertyCondition::toFilter)
+            .reduce(FilterPredicate.Builder::and).orElse(null);
+    }
+}
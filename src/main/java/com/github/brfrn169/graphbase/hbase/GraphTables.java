@@ -0,0 +1,237 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.Relationship;
+import com.github.brfrn169.graphbase.StorageLayout;
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.types.RawByte;
+import org.apache.hadoop.hbase.types.RawInteger;
+import org.apache.hadoop.hbase.types.RawString;
+import org.apache.hadoop.hbase.types.RawStringTerminated;
+import org.apache.hadoop.hbase.types.Struct;
+import org.apache.hadoop.hbase.types.StructBuilder;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Hash;
+import org.apache.hadoop.hbase.util.MurmurHash3;
+import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.hbase.util.PositionedByteRange;
+import org.apache.hadoop.hbase.util.SimplePositionedByteRange;
+import org.apache.hadoop.hbase.util.SimplePositionedMutableByteRange;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// the tables of a graph and its row keys in them. with the shared layout, the rows of a graph are
+// prefixed by the hash and the id of the graph, so that the graph is a contiguous range of the
+// shared tables, the graphs are spread over the regions, and the rows of a graph are still spread
+// by the hash of the node id within its range
+final class GraphTables {
+
+    static final String NAMESPACE = "graphbase";
+
+    // the graph ids can't make these table names
+    static final String SHARED_NAMESPACE = "graphbase_shared";
+
+    private static final String NODE_TABLE_NAME_SUFFIX = "_node";
+    private static final String REL_TABLE_NAME_SUFFIX = "_rel";
+
+    private static final TableName SHARED_NODE_TABLE_NAME =
+        TableName.valueOf(SHARED_NAMESPACE, "node");
+    private static final TableName SHARED_REL_TABLE_NAME =
+        TableName.valueOf(SHARED_NAMESPACE, "rel");
+
+    private static final Hash HASH = MurmurHash3.getInstance();
+
+    private static final Struct SHARED_ROW_PREFIX_STRUCT =
+        new StructBuilder().add(new RawInteger()).add(new RawStringTerminated("\0")).toStruct();
+
+    // for the node schema
+    private static final byte NODE_ROW_TYPE = (byte) 1;
+
+    private static final Struct NODE_ROW_STRUCT =
+        new StructBuilder().add(new RawByte()).add(new RawInteger()).add(RawString.ASCENDING)
+            .toStruct();
+
+    // for the relationship schema
+    private static final byte REL_ROW_TYPE = (byte) 1;
+
+    private static final Struct REL_STRUCT =
+        new StructBuilder().add(new RawByte()).add(new RawInteger())
+            .add(new RawStringTerminated("\0")).add(new RawStringTerminated("\0"))
+            .add(RawString.ASCENDING).toStruct();
+
+    // prefixes of the relationship row key, used for scanning the outgoing relationships
+    private static final Struct REL_OUT_NODE_PREFIX_STRUCT =
+        new StructBuilder().add(new RawByte()).add(new RawInteger())
+            .add(new RawStringTerminated("\0")).toStruct();
+
+    private static final Struct REL_OUT_NODE_AND_TYPE_PREFIX_STRUCT =
+        new StructBuilder().add(new RawByte()).add(new RawInteger())
+            .add(new RawStringTerminated("\0")).add(new RawStringTerminated("\0")).toStruct();
+
+    // the number of the ranges a shared graph is split into for deleting it in parallel
+    private static final int GRAPH_RANGES = 16;
+
+    private final TableName nodeTableName;
+    private final TableName relTableName;
+    private final byte[] rowPrefix;
+
+    private GraphTables(TableName nodeTableName, TableName relTableName, byte[] rowPrefix) {
+        this.nodeTableName = nodeTableName;
+        this.relTableName = relTableName;
+        this.rowPrefix = rowPrefix;
+    }
+
+    static GraphTables of(GraphConfiguration graphConf) {
+        if (isShared(graphConf)) {
+            return shared(graphConf.graphId());
+        }
+        return dedicated(graphConf.graphId());
+    }
+
+    static boolean isShared(GraphConfiguration graphConf) {
+        return graphConf.layout() == StorageLayout.SHARED;
+    }
+
+    private static GraphTables dedicated(String graphId) {
+        return new GraphTables(TableName.valueOf(NAMESPACE, graphId + NODE_TABLE_NAME_SUFFIX),
+            TableName.valueOf(NAMESPACE, graphId + REL_TABLE_NAME_SUFFIX),
+            HConstants.EMPTY_BYTE_ARRAY);
+    }
+
+    private static GraphTables shared(String graphId) {
+        Preconditions.checkArgument(graphId.indexOf('\0') < 0,
+            "the graph id must not contain NUL for the shared layout");
+
+        Object[] values = new Object[] {HASH.hash(Bytes.toBytes(graphId)), graphId};
+        PositionedByteRange byteRange = new SimplePositionedMutableByteRange(
+            SHARED_ROW_PREFIX_STRUCT.encodedLength(values));
+        SHARED_ROW_PREFIX_STRUCT.encode(byteRange, values);
+        return new GraphTables(SHARED_NODE_TABLE_NAME, SHARED_REL_TABLE_NAME,
+            byteRange.getBytes());
+    }
+
+    TableName nodeTableName() {
+        return nodeTableName;
+    }
+
+    TableName relTableName() {
+        return relTableName;
+    }
+
+    byte[] nodeRow(String nodeId) {
+        Object[] values = new Object[] {NODE_ROW_TYPE, HASH.hash(Bytes.toBytes(nodeId)), nodeId};
+        return encode(NODE_ROW_STRUCT, values);
+    }
+
+    byte[] relRow(String outNodeId, String relType, String inNodeId) {
+        Object[] values =
+            new Object[] {REL_ROW_TYPE, HASH.hash(Bytes.toBytes(outNodeId)), outNodeId, relType,
+                inNodeId};
+        return encode(REL_STRUCT, values);
+    }
+
+    byte[] relPrefix(String outNodeId) {
+        Object[] values =
+            new Object[] {REL_ROW_TYPE, HASH.hash(Bytes.toBytes(outNodeId)), outNodeId};
+        return encode(REL_OUT_NODE_PREFIX_STRUCT, values);
+    }
+
+    byte[] relPrefix(String outNodeId, String relType) {
+        Object[] values =
+            new Object[] {REL_ROW_TYPE, HASH.hash(Bytes.toBytes(outNodeId)), outNodeId, relType};
+        return encode(REL_OUT_NODE_AND_TYPE_PREFIX_STRUCT, values);
+    }
+
+    // matches the relationship rows ending with one of the inNodeIds, and one of the types when
+    // given, in the rows read as ISO-8859-1 so that each byte is a char. the outNodeId and the
+    // type are terminated by NUL, so the inNodeId is what follows the last NUL of the row
+    static String relInNodeRowRegex(Collection<String> inNodeIds,
+        @Nullable Collection<String> relTypes) {
+        StringBuilder ret = new StringBuilder();
+        if (relTypes != null && !relTypes.isEmpty()) {
+            ret.append("\\x00").append(alternation(relTypes));
+        }
+        return ret.append("\\x00").append(alternation(inNodeIds)).append("\\z").toString();
+    }
+
+    private static String alternation(Collection<String> values) {
+        return values.stream().distinct()
+            .map(value -> Pattern.quote(
+                new String(Bytes.toBytes(value), StandardCharsets.ISO_8859_1)))
+            .collect(Collectors.joining("|", "(?:", ")"));
+    }
+
+    private byte[] encode(Struct struct, Object[] values) {
+        PositionedByteRange byteRange = new SimplePositionedMutableByteRange(
+            rowPrefix.length + struct.encodedLength(values));
+        byteRange.put(rowPrefix);
+        struct.encode(byteRange, values);
+        return byteRange.getBytes();
+    }
+
+    Pair<byte[], byte[]> nodeScanRows() {
+        return new Pair<>(Bytes.add(rowPrefix, new byte[] {NODE_ROW_TYPE}),
+            Bytes.add(rowPrefix, new byte[] {NODE_ROW_TYPE + 1}));
+    }
+
+    Pair<byte[], byte[]> relScanRows() {
+        return new Pair<>(Bytes.add(rowPrefix, new byte[] {REL_ROW_TYPE}),
+            Bytes.add(rowPrefix, new byte[] {REL_ROW_TYPE + 1}));
+    }
+
+    String nodeId(byte[] row) {
+        return (String) NODE_ROW_STRUCT.decode(decodingRange(row), 2);
+    }
+
+    String relOutNodeId(byte[] row) {
+        return (String) REL_STRUCT.decode(decodingRange(row), 2);
+    }
+
+    String relType(byte[] row) {
+        return (String) REL_STRUCT.decode(decodingRange(row), 3);
+    }
+
+    String relInNodeId(byte[] row) {
+        return (String) REL_STRUCT.decode(decodingRange(row), 4);
+    }
+
+    // the relationship of the row, without properties
+    Relationship rel(byte[] row) {
+        PositionedByteRange byteRange = decodingRange(row);
+        return new Relationship((String) REL_STRUCT.decode(byteRange, 2),
+            (String) REL_STRUCT.decode(byteRange, 3), (String) REL_STRUCT.decode(byteRange, 4),
+            Collections.emptyMap());
+    }
+
+    private PositionedByteRange decodingRange(byte[] row) {
+        return new SimplePositionedByteRange(row, rowPrefix.length, row.length - rowPrefix.length);
+    }
+
+    // the ranges covering all the rows of a shared graph, split by the hash of the node id
+    List<Pair<byte[], byte[]>> graphRanges() {
+        Preconditions.checkState(rowPrefix.length > 0);
+
+        List<byte[]> boundaries = new ArrayList<>();
+        boundaries.add(rowPrefix);
+        for (int i = 1; i < GRAPH_RANGES; i++) {
+            boundaries.add(Bytes.add(rowPrefix,
+                new byte[] {NODE_ROW_TYPE, (byte) (256 / GRAPH_RANGES * i)}));
+        }
+        boundaries.add(HBaseClient.createPrefixStopRow(rowPrefix));
+
+        List<Pair<byte[], byte[]>> ret = new ArrayList<>();
+        for (int i = 0; i < boundaries.size() - 1; i++) {
+            ret.add(new Pair<>(boundaries.get(i), boundaries.get(i + 1)));
+        }
+        return ret;
+    }
+}
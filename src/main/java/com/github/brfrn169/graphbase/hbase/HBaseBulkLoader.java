@@ -0,0 +1,320 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import com.github.brfrn169.graphbase.Direction;
+import com.github.brfrn169.graphbase.GraphCatalogManager;
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphMetrics;
+import com.github.brfrn169.graphbase.Node;
+import com.github.brfrn169.graphbase.Relationship;
+import com.github.brfrn169.graphbase.exception.GraphNotFoundException;
+import com.github.brfrn169.graphbase.exception.GraphbaseException;
+import com.github.brfrn169.graphbase.io.EntityFiles;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.HStore;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// loads nodes and relationships from files (see EntityFiles) into a graph without going through
+// the write path. the cells are encoded the same way as HBaseGraphStorage does, sorted with an
+// external sort, written to HFiles split at the region boundaries, and then moved into the
+// tables. the degree counters are computed from the distinct relationships and written as
+// absolute values, so this is meant for the initial load of an empty graph: the counters of the
+// nodes which already have relationships would be overwritten
+public class HBaseBulkLoader implements Closeable {
+
+    // a directory on the default filesystem, which the HBase region servers can move files from
+    public static final String STAGING_DIR_CONF_KEY = "graphbase.bulkload.staging.dir";
+
+    // a local directory for the spills of the sort
+    public static final String SPILL_DIR_CONF_KEY = "graphbase.bulkload.spill.dir";
+
+    // the bytes each of the node and relationship sorts buffers in memory before spilling
+    public static final String SORT_BUFFER_SIZE_CONF_KEY = "graphbase.bulkload.sort.buffer.size";
+
+    private static final Log LOG = LogFactory.getLog(HBaseBulkLoader.class);
+
+    private final Configuration conf;
+    private final HBaseClient hbaseClient;
+    private final CacheConfig cacheConf;
+    private final long sortBufferSize;
+    private final File spillDir;
+
+    public HBaseBulkLoader(Configuration conf, GraphMetrics metrics) {
+        this.conf = conf;
+        hbaseClient = new HBaseClient(conf, metrics);
+
+        // the written blocks are not read back, so they are not cached
+        Configuration writerConf = new Configuration(conf);
+        writerConf.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
+        cacheConf = new CacheConfig(writerConf);
+
+        sortBufferSize = conf.getLong(SORT_BUFFER_SIZE_CONF_KEY, 256 * 1024 * 1024);
+        spillDir = new File(conf.get(SPILL_DIR_CONF_KEY, System.getProperty("java.io.tmpdir")));
+    }
+
+    @Override public void close() throws IOException {
+        hbaseClient.close();
+    }
+
+    public void load(GraphConfiguration graphConf, List<File> nodeFiles, List<File> relFiles) {
+        long timestamp = System.currentTimeMillis();
+        GraphTables tables = GraphTables.of(graphConf);
+
+        try (KeyValueSorter nodeSorter = new KeyValueSorter(sortBufferSize, spillDir);
+            KeyValueSorter relSorter = new KeyValueSorter(sortBufferSize, spillDir)) {
+            long nodeCount = 0;
+            for (File nodeFile : nodeFiles) {
+                try (Stream<Node> nodes = EntityFiles.readNodes(nodeFile)) {
+                    for (Iterator<Node> it = nodes.iterator(); it.hasNext(); ) {
+                        Node node = it.next();
+                        addCells(nodeSorter, HBaseGraphStorage.createNodePut(tables, node.id(),
+                            node.type(), node.properties(), timestamp));
+                        nodeCount++;
+                    }
+                }
+            }
+
+            long relCount = 0;
+            for (File relFile : relFiles) {
+                try (Stream<Relationship> rels = EntityFiles.readRelationships(relFile)) {
+                    for (Iterator<Relationship> it = rels.iterator(); it.hasNext(); ) {
+                        Relationship rel = it.next();
+                        addCells(relSorter, HBaseGraphStorage
+                            .createRelPut(tables, rel.outNodeId(), rel.type(), rel.inNodeId(),
+                                rel.properties(), timestamp));
+                        relCount++;
+                    }
+                }
+            }
+            LOG.info("read " + nodeCount + " nodes and " + relCount + " relationships. graphId="
+                + graphConf.graphId());
+
+            Path stagingDir = new Path(conf.get(STAGING_DIR_CONF_KEY, "/tmp/graphbase-bulkload"),
+                UUID.randomUUID().toString());
+            FileSystem fs = stagingDir.getFileSystem(conf);
+            try {
+                // the relationships go first, as each distinct one adds to the degree counters
+                // of its nodes
+                TableName relTableName = tables.relTableName();
+                Path relDir = new Path(stagingDir, "rel");
+                writeHFiles(relSorter.sorted(), relTableName, fs, relDir, row -> {
+                    Relationship rel = tables.rel(row);
+                    nodeSorter.add(HBaseGraphStorage
+                        .createDegreeCell(tables, rel.outNodeId(), Direction.OUT, rel.type(),
+                            1, timestamp));
+                    nodeSorter.add(HBaseGraphStorage
+                        .createDegreeCell(tables, rel.inNodeId(), Direction.IN, rel.type(),
+                            1, timestamp));
+                });
+
+                TableName nodeTableName = tables.nodeTableName();
+                Path nodeDir = new Path(stagingDir, "node");
+                writeHFiles(nodeSorter.sorted(), nodeTableName, fs, nodeDir, null);
+
+                if (fs.exists(relDir)) {
+                    hbaseClient.bulkLoad(relDir, relTableName);
+                }
+                if (fs.exists(nodeDir)) {
+                    hbaseClient.bulkLoad(nodeDir, nodeTableName);
+                }
+            } finally {
+                fs.delete(stagingDir, true);
+            }
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during bulk loading", e);
+        }
+    }
+
+    private static void addCells(KeyValueSorter sorter, Put put) {
+        for (List<Cell> cells : put.getFamilyCellMap().values()) {
+            for (Cell cell : cells) {
+                sorter.add(KeyValueUtil.ensureKeyValue(cell));
+            }
+        }
+    }
+
+    // the same cell can come more than once from duplicate entities in the input. the degree
+    // counters add up, and for the other cells one of them is kept
+    private void writeHFiles(Iterator<KeyValue> sorted, TableName tableName, FileSystem fs,
+        Path dir, @Nullable Consumer<byte[]> newRowListener) throws IOException {
+        try (HFileSink sink = new HFileSink(tableName, fs, dir)) {
+            KeyValue pending = null;
+            long pendingDegree = 0;
+            while (sorted.hasNext()) {
+                KeyValue kv = sorted.next();
+                boolean sameRow = pending != null && CellUtil.matchingRow(pending, kv);
+                if (sameRow && CellUtil.matchingColumn(pending, kv)) {
+                    if (HBaseGraphStorage.isDegreeCell(kv)) {
+                        pendingDegree += toLong(kv);
+                    }
+                    continue;
+                }
+
+                if (pending != null) {
+                    sink.append(withDegree(pending, pendingDegree));
+                }
+                if (!sameRow && newRowListener != null) {
+                    newRowListener.accept(CellUtil.cloneRow(kv));
+                }
+                pending = kv;
+                if (HBaseGraphStorage.isDegreeCell(kv)) {
+                    pendingDegree = toLong(kv);
+                }
+            }
+            if (pending != null) {
+                sink.append(withDegree(pending, pendingDegree));
+            }
+        }
+    }
+
+    private static long toLong(Cell cell) {
+        return Bytes.toLong(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+    }
+
+    private static KeyValue withDegree(KeyValue kv, long degree) {
+        if (!HBaseGraphStorage.isDegreeCell(kv) || toLong(kv) == degree) {
+            return kv;
+        }
+        return new KeyValue(CellUtil.cloneRow(kv), CellUtil.cloneFamily(kv),
+            CellUtil.cloneQualifier(kv), kv.getTimestamp(), Bytes.toBytes(degree));
+    }
+
+    // writes sorted cells to one HFile per region and column family, under a directory per
+    // column family as LoadIncrementalHFiles expects. the files are written the way the column
+    // families are configured, so that they don't need to be rewritten on load
+    private final class HFileSink implements Closeable {
+        private final HTableDescriptor tableDescriptor;
+        private final List<byte[]> startKeys;
+        private final FileSystem fs;
+        private final Path dir;
+
+        private int region;
+        private final Map<byte[], StoreFile.Writer> writers = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+        private HFileSink(TableName tableName, FileSystem fs, Path dir) {
+            tableDescriptor = hbaseClient.getTableDescriptor(tableName);
+            startKeys = hbaseClient.getRegionStartKeys(tableName);
+            this.fs = fs;
+            this.dir = dir;
+        }
+
+        private void append(KeyValue kv) throws IOException {
+            int nextRegion = region;
+            while (nextRegion + 1 < startKeys.size() && Bytes
+                .compareTo(kv.getRowArray(), kv.getRowOffset(), kv.getRowLength(),
+                    startKeys.get(nextRegion + 1), 0, startKeys.get(nextRegion + 1).length)
+                >= 0) {
+                nextRegion++;
+            }
+            if (nextRegion != region) {
+                closeWriters();
+                region = nextRegion;
+            }
+
+            byte[] family = CellUtil.cloneFamily(kv);
+            StoreFile.Writer writer = writers.get(family);
+            if (writer == null) {
+                writer = createWriter(family);
+                writers.put(family, writer);
+            }
+            writer.append(kv);
+        }
+
+        private StoreFile.Writer createWriter(byte[] family) throws IOException {
+            HColumnDescriptor familyDescriptor = tableDescriptor.getFamily(family);
+            HFileContext fileContext =
+                new HFileContextBuilder().withCompression(familyDescriptor.getCompressionType())
+                    .withDataBlockEncoding(familyDescriptor.getDataBlockEncoding())
+                    .withBlockSize(familyDescriptor.getBlocksize())
+                    .withChecksumType(HStore.getChecksumType(conf))
+                    .withBytesPerCheckSum(HStore.getBytesPerChecksum(conf)).build();
+
+            Path familyDir = new Path(dir, Bytes.toString(family));
+            return new StoreFile.WriterBuilder(conf, cacheConf, fs)
+                .withFilePath(new Path(familyDir, UUID.randomUUID().toString().replace("-", "")))
+                .withComparator(KeyValue.COMPARATOR)
+                .withBloomType(familyDescriptor.getBloomFilterType())
+                .withFileContext(fileContext).build();
+        }
+
+        private void closeWriters() throws IOException {
+            for (StoreFile.Writer writer : writers.values()) {
+                writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY,
+                    Bytes.toBytes(System.currentTimeMillis()));
+                writer.appendFileInfo(StoreFile.BULKLOAD_TASK_KEY, Bytes.toBytes("graphbase"));
+                writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(true));
+                writer.appendFileInfo(StoreFile.EXCLUDE_FROM_MINOR_COMPACTION_KEY,
+                    Bytes.toBytes(false));
+                writer.appendTrackedTimestampsToMetadata();
+                writer.close();
+            }
+            writers.clear();
+        }
+
+        @Override public void close() throws IOException {
+            closeWriters();
+        }
+    }
+
+    // usage: HBaseBulkLoader <graphId> [--nodes <file>]... [--relationships <file>]...
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length % 2 == 0) {
+            System.err.println("usage: HBaseBulkLoader <graphId> [--nodes <file>]... "
+                + "[--relationships <file>]...");
+            System.exit(1);
+        }
+
+        List<File> nodeFiles = new ArrayList<>();
+        List<File> relFiles = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 2) {
+            if (args[i].equals("--nodes")) {
+                nodeFiles.add(new File(args[i + 1]));
+            } else if (args[i].equals("--relationships")) {
+                relFiles.add(new File(args[i + 1]));
+            } else {
+                throw new IllegalArgumentException("unknown option. option=" + args[i]);
+            }
+        }
+
+        // the meters of a single run aren't published
+        Configuration conf = HBaseConfiguration.create();
+        try (GraphCatalogManager graphCatalogManager = new GraphCatalogManager(conf);
+            HBaseBulkLoader loader = new HBaseBulkLoader(conf,
+                new GraphMetrics(new SimpleMeterRegistry()))) {
+            GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(args[0])
+                .orElseThrow(GraphNotFoundException::new);
+            loader.load(graphConf, nodeFiles, relFiles);
+        }
+    }
+}
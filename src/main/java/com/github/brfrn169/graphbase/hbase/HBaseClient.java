@@ -1,40 +1,211 @@
 package com.github.brfrn169.graphbase.hbase;
 
+import com.github.brfrn169.graphbase.ClientContext;
+import com.github.brfrn169.graphbase.GraphMetrics;
+import com.github.brfrn169.graphbase.WorkloadClass;
 import com.github.brfrn169.graphbase.exception.GraphbaseException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class HBaseClient implements Closeable {
 
+    public static final String SCAN_PARALLELISM_CONF_KEY = "graphbase.hbase.scan.parallelism";
+
+    // how long modifyTable and addFamily wait for the regions to be updated
+    public static final String ALTER_TIMEOUT_MS_CONF_KEY = "graphbase.hbase.alter.timeout.ms";
+
+    // the TIMELINE reads are sent to the secondary region replicas too when the primary doesn't
+    // answer within this long, and the first answer is taken. the hbase defaults are used when
+    // not set
+    public static final String TIMELINE_PRIMARY_TIMEOUT_MS_CONF_KEY =
+        "graphbase.hbase.timeline.primary.timeout.ms";
+
+    // the keys of the workload classes, like graphbase.workload.analytics.scan.parallelism. a class
+    // with any of the timeouts set gets a dedicated connection, since the hbase timeouts are per
+    // connection. the hbase defaults are used when not set
+    public static final String WORKLOAD_DEDICATED_CONNECTION_CONF_KEY = "dedicated.connection";
+    public static final String WORKLOAD_SCAN_PARALLELISM_CONF_KEY = "scan.parallelism";
+    public static final String WORKLOAD_SCAN_CACHING_CONF_KEY = "scan.caching";
+    public static final String WORKLOAD_RPC_TIMEOUT_MS_CONF_KEY = "rpc.timeout.ms";
+    public static final String WORKLOAD_OPERATION_TIMEOUT_MS_CONF_KEY = "operation.timeout.ms";
+    public static final String WORKLOAD_SCANNER_TIMEOUT_MS_CONF_KEY = "scanner.timeout.ms";
+
     private static final Log LOG = LogFactory.getLog(HBaseClient.class);
 
+    private final Configuration conf;
+    private final GraphMetrics metrics;
     private final Connection connection;
+    private final Map<WorkloadClass, WorkloadResources> workloadResources =
+        new EnumMap<>(WorkloadClass.class);
+
+    // the connection, the scan threads and the scan caching of a workload class
+    private static final class WorkloadResources {
+        private final WorkloadClass workloadClass;
+        private final Connection connection;
+        private final boolean dedicated;
+        private final ThreadPoolExecutor scanExecutor;
+        private final int scanCaching;
+
+        private WorkloadResources(WorkloadClass workloadClass, Connection connection,
+            boolean dedicated, ThreadPoolExecutor scanExecutor, int scanCaching) {
+            this.workloadClass = workloadClass;
+            this.connection = connection;
+            this.dedicated = dedicated;
+            this.scanExecutor = scanExecutor;
+            this.scanCaching = scanCaching;
+        }
+    }
+
+    public HBaseClient(Configuration conf, GraphMetrics metrics) {
+        this.conf = withTimelinePrimaryTimeout(conf);
+        this.metrics = metrics;
+        connection = createConnection(this.conf);
+
+        for (WorkloadClass workloadClass : WorkloadClass.values()) {
+            WorkloadResources resources = createWorkloadResources(workloadClass);
+            workloadResources.put(workloadClass, resources);
+            metrics.monitorScanExecutor(workloadClass, resources.scanExecutor);
+        }
+        metrics.monitorConnections(this, HBaseClient::connections);
+    }
 
-    public HBaseClient(Configuration conf) {
+    private static Connection createConnection(Configuration conf) {
         try {
-            connection = ConnectionFactory.createConnection(conf);
+            return ConnectionFactory.createConnection(conf);
         } catch (IOException e) {
             throw new GraphbaseException("fail to create a hbase connection", e); // TODO
         }
     }
 
+    private WorkloadResources createWorkloadResources(WorkloadClass workloadClass) {
+        Configuration workloadConf = withWorkloadTimeouts(conf, workloadClass);
+        boolean dedicated = workloadConf != conf || conf
+            .getBoolean(workloadClass.confKey(WORKLOAD_DEDICATED_CONNECTION_CONF_KEY), false);
+
+        int scanParallelism = conf.getInt(workloadClass.confKey(WORKLOAD_SCAN_PARALLELISM_CONF_KEY),
+            conf.getInt(SCAN_PARALLELISM_CONF_KEY, 8));
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(
+            "graphbase-scan-" + workloadClass.name().toLowerCase(Locale.ROOT) + "-%d")
+            .setDaemon(true).build();
+        ThreadPoolExecutor scanExecutor =
+            (ThreadPoolExecutor) Executors.newFixedThreadPool(scanParallelism, threadFactory);
+
+        Connection workloadConnection = connection;
+        if (dedicated) {
+            workloadConnection = createConnection(workloadConf);
+        }
+        return new WorkloadResources(workloadClass, workloadConnection, dedicated, scanExecutor,
+            conf.getInt(workloadClass.confKey(WORKLOAD_SCAN_CACHING_CONF_KEY), 0));
+    }
+
+    // returns the given conf when none of the timeouts of the class is set
+    private static Configuration withWorkloadTimeouts(Configuration conf,
+        WorkloadClass workloadClass) {
+        Map<String, String> timeoutKeys = new LinkedHashMap<>();
+        timeoutKeys.put(WORKLOAD_RPC_TIMEOUT_MS_CONF_KEY, HConstants.HBASE_RPC_TIMEOUT_KEY);
+        timeoutKeys.put(WORKLOAD_OPERATION_TIMEOUT_MS_CONF_KEY,
+            HConstants.HBASE_CLIENT_OPERATION_TIMEOUT);
+        timeoutKeys.put(WORKLOAD_SCANNER_TIMEOUT_MS_CONF_KEY,
+            HConstants.HBASE_CLIENT_SCANNER_TIMEOUT_PERIOD);
+
+        Configuration ret = conf;
+        for (Map.Entry<String, String> entry : timeoutKeys.entrySet()) {
+            long timeoutMillis = conf.getLong(workloadClass.confKey(entry.getKey()), -1L);
+            if (timeoutMillis < 0) {
+                continue;
+            }
+            if (ret == conf) {
+                ret = new Configuration(conf);
+            }
+            ret.setLong(entry.getValue(), timeoutMillis);
+        }
+        return ret;
+    }
+
     @Override public void close() throws IOException {
+        for (WorkloadResources resources : workloadResources.values()) {
+            resources.scanExecutor.shutdownNow();
+            if (resources.dedicated) {
+                resources.connection.close();
+            }
+        }
         connection.close();
     }
 
+    // the resources of the workload class of the current thread. the admin calls use the default
+    // connection
+    private WorkloadResources workloadResources() {
+        return workloadResources.get(ClientContext.getWorkloadClass());
+    }
+
+    private Connection workloadConnection() {
+        return workloadResources().connection;
+    }
+
+    private void recordCall(String method, TableName tableName, long startNanos) {
+        metrics.recordHBaseCall(method, tableName.getNameAsString(),
+            ClientContext.getWorkloadClass(), startNanos);
+    }
+
+    // the default connection and the dedicated ones of the workload classes
+    private int connections() {
+        return 1 + (int) workloadResources.values().stream().filter(r -> r.dedicated).count();
+    }
+
+    // the timeouts of the hbase client are in microseconds, and separate for the gets, the
+    // multi-gets and the scans
+    private static Configuration withTimelinePrimaryTimeout(Configuration conf) {
+        long primaryTimeoutMillis = conf.getLong(TIMELINE_PRIMARY_TIMEOUT_MS_CONF_KEY, -1L);
+        if (primaryTimeoutMillis < 0) {
+            return conf;
+        }
+
+        int primaryTimeoutMicros = (int) TimeUnit.MILLISECONDS.toMicros(primaryTimeoutMillis);
+        Configuration ret = new Configuration(conf);
+        ret.setInt("hbase.client.primaryCallTimeout.get", primaryTimeoutMicros);
+        ret.setInt("hbase.client.primaryCallTimeout.multiget", primaryTimeoutMicros);
+        ret.setInt("hbase.client.replicaCallTimeout.scan", primaryTimeoutMicros);
+        return ret;
+    }
+
     public static void addMutations(RowMutations mutations, Put put) {
         try {
             mutations.add(put);
@@ -51,6 +222,56 @@ public class HBaseClient implements Closeable {
         }
     }
 
+    public static byte[] createPrefixStopRow(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xff) {
+                byte[] stopRow = Arrays.copyOf(prefix, i + 1);
+                stopRow[i]++;
+                return stopRow;
+            }
+        }
+        return HConstants.EMPTY_END_ROW;
+    }
+
+    public static Scan createPrefixScan(List<byte[]> prefixes, @Nullable Filter filter) {
+        byte[] startRow = Collections.min(prefixes, Bytes.BYTES_COMPARATOR);
+
+        List<byte[]> stopRows =
+            prefixes.stream().map(HBaseClient::createPrefixStopRow).collect(Collectors.toList());
+        byte[] stopRow = HConstants.EMPTY_END_ROW;
+        if (stopRows.stream().noneMatch(row -> row.length == 0)) {
+            stopRow = Collections.max(stopRows, Bytes.BYTES_COMPARATOR);
+        }
+
+        Scan scan = new Scan(startRow, stopRow);
+        if (prefixes.size() == 1) {
+            if (filter != null) {
+                scan.setFilter(filter);
+            }
+            return scan;
+        }
+
+        List<MultiRowRangeFilter.RowRange> rowRanges = new ArrayList<>();
+        for (int i = 0; i < prefixes.size(); i++) {
+            rowRanges.add(
+                new MultiRowRangeFilter.RowRange(prefixes.get(i), true, stopRows.get(i), false));
+        }
+
+        Filter rangeFilter;
+        try {
+            rangeFilter = new MultiRowRangeFilter(rowRanges);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during creating a prefix scan", e);
+        }
+
+        if (filter != null) {
+            scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, rangeFilter, filter));
+        } else {
+            scan.setFilter(rangeFilter);
+        }
+        return scan;
+    }
+
     public void createNamespace(String namespace) {
         try (Admin admin = connection.getAdmin()) {
             try {
@@ -82,6 +303,66 @@ public class HBaseClient implements Closeable {
         }
     }
 
+    // waits until all the regions are updated. the region replication can be changed only while
+    // the table is disabled, so the table is unavailable for a while then
+    public void modifyTable(HTableDescriptor hTableDescriptor) {
+        TableName tableName = hTableDescriptor.getTableName();
+        try (Admin admin = connection.getAdmin()) {
+            if (admin.getTableDescriptor(tableName).getRegionReplication() != hTableDescriptor
+                .getRegionReplication()) {
+                admin.disableTable(tableName);
+                try {
+                    admin.modifyTable(tableName, hTableDescriptor);
+                } finally {
+                    admin.enableTable(tableName);
+                }
+                return;
+            }
+
+            admin.modifyTable(tableName, hTableDescriptor);
+            waitForAlter(admin, tableName);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during modifyTable", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GraphbaseException("interrupted during modifyTable", e);
+        }
+    }
+
+    // waits until all the regions have the family. another client may add it first
+    public void addFamily(TableName tableName, HColumnDescriptor hColumnDescriptor) {
+        try (Admin admin = connection.getAdmin()) {
+            try {
+                admin.addColumn(tableName, hColumnDescriptor);
+            } catch (InvalidFamilyOperationException e) {
+                LOG.warn("family already exists. tableName=" + tableName + ", family="
+                    + hColumnDescriptor.getNameAsString(), e);
+                return;
+            }
+            waitForAlter(admin, tableName);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during addFamily", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GraphbaseException("interrupted during addFamily", e);
+        }
+    }
+
+    // the alter goes on in the background after the timeout, so the caller can call again
+    private void waitForAlter(Admin admin, TableName tableName)
+        throws IOException, InterruptedException {
+        long timeoutMillis = conf.getLong(ALTER_TIMEOUT_MS_CONF_KEY, 60000L);
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (admin.getAlterStatus(tableName).getFirst() > 0) {
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                throw new GraphbaseException(
+                    "the regions weren't updated in " + timeoutMillis + " ms. tableName="
+                        + tableName);
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
     public void deleteTable(TableName tableName) {
         try (Admin admin = connection.getAdmin()) {
             if (admin.tableExists(tableName)) {
@@ -97,60 +378,178 @@ public class HBaseClient implements Closeable {
 
     public boolean checkAndPut(byte[] row, byte[] family, byte[] qualifier, byte[] value, Put put,
         TableName tableName) {
-        try (Table table = connection.getTable(tableName)) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
             return table.checkAndPut(row, family, qualifier, value, put);
         } catch (IOException e) {
             throw new GraphbaseException("an error occurred during checkAndPut", e);
+        } finally {
+            recordCall("checkAndPut", tableName, startNanos);
+        }
+    }
+
+    public boolean checkAndPut(byte[] row, byte[] family, byte[] qualifier,
+        CompareFilter.CompareOp compareOp, byte[] value, Put put, TableName tableName) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
+            return table.checkAndPut(row, family, qualifier, compareOp, value, put);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during checkAndPut", e);
+        } finally {
+            recordCall("checkAndPut", tableName, startNanos);
         }
     }
 
     public boolean checkAndDelete(byte[] row, byte[] family, byte[] qualifier, byte[] value,
         Delete delete, TableName tableName) {
-        try (Table table = connection.getTable(tableName)) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
             return table.checkAndDelete(row, family, qualifier, value, delete);
         } catch (IOException e) {
             throw new GraphbaseException("an error occurred during checkAndDelete", e);
+        } finally {
+            recordCall("checkAndDelete", tableName, startNanos);
         }
     }
 
     public boolean checkAndDelete(byte[] row, byte[] family, byte[] qualifier,
         CompareFilter.CompareOp compareOp, byte[] value, Delete delete, TableName tableName) {
-        try (Table table = connection.getTable(tableName)) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
             return table.checkAndDelete(row, family, qualifier, compareOp, value, delete);
         } catch (IOException e) {
             throw new GraphbaseException("an error occurred during checkAndDelete", e);
+        } finally {
+            recordCall("checkAndDelete", tableName, startNanos);
         }
     }
 
     public boolean checkAndMutate(byte[] row, byte[] family, byte[] qualifier,
         CompareFilter.CompareOp compareOp, byte[] value, RowMutations mutation,
         TableName tableName) {
-        try (Table table = connection.getTable(tableName)) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
             return table.checkAndMutate(row, family, qualifier, compareOp, value, mutation);
         } catch (IOException e) {
             throw new GraphbaseException("an error occurred during checkAndMutate", e);
+        } finally {
+            recordCall("checkAndMutate", tableName, startNanos);
         }
     }
 
+    // runs the checkAndMutates concurrently, on the threads of the workload class of the caller,
+    // and returns whether each of them was applied, in their order
+    public boolean[] checkAndMutate(List<RowMutations> mutations, byte[] family, byte[] qualifier,
+        CompareFilter.CompareOp compareOp, byte[] value, TableName tableName) {
+        WorkloadResources resources = workloadResources();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (RowMutations mutation : mutations) {
+            futures.add(resources.scanExecutor.submit(() -> {
+                long startNanos = System.nanoTime();
+                try (Table table = resources.connection.getTable(tableName)) {
+                    return table.checkAndMutate(mutation.getRow(), family, qualifier, compareOp,
+                        value, mutation);
+                } catch (IOException e) {
+                    throw new GraphbaseException("an error occurred during checkAndMutate", e);
+                } finally {
+                    metrics.recordHBaseCall("checkAndMutate", tableName.getNameAsString(),
+                        resources.workloadClass, startNanos);
+                }
+            }));
+        }
+
+        List<Boolean> results = getAll(futures, "checkAndMutate");
+        boolean[] ret = new boolean[results.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = results.get(i);
+        }
+        return ret;
+    }
+
     public void mutateRow(RowMutations mutation, TableName tableName) {
-        try (Table table = connection.getTable(tableName)) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
             table.mutateRow(mutation);
         } catch (IOException e) {
             throw new GraphbaseException("an error occurred during mutateRow", e);
+        } finally {
+            recordCall("mutateRow", tableName, startNanos);
+        }
+    }
+
+    public Result increment(Increment increment, TableName tableName) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
+            return table.increment(increment);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during increment", e);
+        } finally {
+            recordCall("increment", tableName, startNanos);
+        }
+    }
+
+    public void append(Append append, TableName tableName) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
+            table.append(append);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during append", e);
+        } finally {
+            recordCall("append", tableName, startNanos);
+        }
+    }
+
+    public void batch(List<? extends Row> actions, TableName tableName) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
+            table.batch(actions, new Object[actions.size()]);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during batch", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GraphbaseException("interrupted during batch", e);
+        } finally {
+            recordCall("batch", tableName, startNanos);
         }
     }
 
     public boolean exists(Get get, TableName tableName) {
-        try (Table table = connection.getTable(tableName)) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
             return table.exists(get);
         } catch (IOException e) {
             throw new GraphbaseException("an error occurred during exists", e);
+        } finally {
+            recordCall("exists", tableName, startNanos);
+        }
+    }
+
+    public boolean[] exists(List<Get> gets, TableName tableName) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
+            return table.existsAll(gets);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during exists", e);
+        } finally {
+            recordCall("exists", tableName, startNanos);
+        }
+    }
+
+    // the caller closes the returned mutator, which flushes it
+    public BufferedMutator getBufferedMutator(TableName tableName,
+        BufferedMutator.ExceptionListener listener) {
+        try {
+            return workloadConnection()
+                .getBufferedMutator(new BufferedMutatorParams(tableName).listener(listener));
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during getBufferedMutator", e);
         }
     }
 
     public <R> Optional<R> get(Get get, TableName tableName,
         Function<Result, Optional<R>> callback) {
-        try (Table table = connection.getTable(tableName)) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
             Result result = table.get(get);
             if (result.isEmpty()) {
                 return Optional.empty();
@@ -158,18 +557,80 @@ public class HBaseClient implements Closeable {
             return callback.apply(result);
         } catch (IOException e) {
             throw new GraphbaseException("an error occurred during get", e);
+        } finally {
+            recordCall("get", tableName, startNanos);
+        }
+    }
+
+    // the result is empty when the row is not found, and tells whether it's stale either way
+    public Result get(Get get, TableName tableName) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
+            return table.get(get);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during get", e);
+        } finally {
+            recordCall("get", tableName, startNanos);
+        }
+    }
+
+    // the results are in the order of the gets, including the empty ones of the rows not found
+    public Result[] get(List<Get> gets, TableName tableName) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
+            return table.get(gets);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during get", e);
+        } finally {
+            recordCall("get", tableName, startNanos);
+        }
+    }
+
+    // the results are in the order of the gets, and the rows not found are skipped
+    public <R> List<R> get(List<Get> gets, TableName tableName, Function<Result, R> callback) {
+        long startNanos = System.nanoTime();
+        try (Table table = workloadConnection().getTable(tableName)) {
+            return Arrays.stream(table.get(gets)).filter(result -> !result.isEmpty()).map(callback)
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during get", e);
+        } finally {
+            recordCall("get", tableName, startNanos);
         }
     }
 
     public <R> Stream<R> scan(Scan scan, TableName tableName, Function<Result, R> callback) {
+        return scan(workloadResources(), scan, tableName, callback, null);
+    }
+
+    // the stats get the time waiting for the scanner
+    <R> Stream<R> scan(Scan scan, TableName tableName, Function<Result, R> callback,
+        ScanStats stats) {
+        return scan(workloadResources(), scan, tableName, callback, stats);
+    }
 
+    // the scans which don't set the caching take the one of the workload class. a scan is timed
+    // until its stream is closed
+    private <R> Stream<R> scan(WorkloadResources resources, Scan scan, TableName tableName,
+        Function<Result, R> callback, @Nullable ScanStats stats) {
+        if (scan.getCaching() <= 0 && resources.scanCaching > 0) {
+            scan.setCaching(resources.scanCaching);
+        }
+
+        long startNanos = System.nanoTime();
         try {
-            Table table = connection.getTable(tableName);
+            Table table = resources.connection.getTable(tableName);
             ResultScanner scanner = table.getScanner(scan);
+            Iterator<Result> iterator = scanner.iterator();
+            if (stats != null) {
+                iterator = stats.timed(iterator);
+            }
 
             return StreamSupport.stream(
-                Spliterators.spliteratorUnknownSize(scanner.iterator(), Spliterator.ORDERED), false)
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
                 .map(callback).onClose(() -> {
+                    metrics.recordHBaseCall("scan", tableName.getNameAsString(),
+                        resources.workloadClass, startNanos);
                     scanner.close();
                     try {
                         table.close();
@@ -181,4 +642,125 @@ public class HBaseClient implements Closeable {
             throw new GraphbaseException("an error occurred during scan", e);
         }
     }
+
+    public HTableDescriptor getTableDescriptor(TableName tableName) {
+        try (Table table = connection.getTable(tableName)) {
+            return table.getTableDescriptor();
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during getTableDescriptor", e);
+        }
+    }
+
+    // the start keys of the regions in order. the first one is empty
+    public List<byte[]> getRegionStartKeys(TableName tableName) {
+        try (RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+            return Arrays.asList(regionLocator.getStartKeys());
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during getRegionStartKeys", e);
+        }
+    }
+
+    // moves the HFiles under dir, one directory per column family, into the table. the files
+    // spanning a region boundary which moved after they were written are split first
+    public void bulkLoad(Path dir, TableName tableName) {
+        try (Admin admin = connection.getAdmin(); Table table = connection.getTable(tableName);
+            RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+            new LoadIncrementalHFiles(conf).doBulkLoad(dir, admin, table, regionLocator);
+        } catch (Exception e) {
+            throw new GraphbaseException("an error occurred during bulkLoad", e);
+        }
+    }
+
+    // groups the rows by the regions they belong to, keeping the order within each group
+    public List<List<byte[]>> groupRowsByRegion(TableName tableName, List<byte[]> rows) {
+        try (RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+            Map<String, List<byte[]>> groups = new LinkedHashMap<>();
+            for (byte[] row : rows) {
+                HRegionLocation location = regionLocator.getRegionLocation(row);
+                groups.computeIfAbsent(location.getRegionInfo().getEncodedName(),
+                    regionName -> new ArrayList<>()).add(row);
+            }
+            return new ArrayList<>(groups.values());
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during groupRowsByRegion", e);
+        }
+    }
+
+    // splits the scan at the region boundaries, so that each region can be scanned concurrently
+    public List<Scan> splitScanByRegion(Scan scan, TableName tableName) {
+        try (RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+            Pair<byte[][], byte[][]> startEndKeys = regionLocator.getStartEndKeys();
+
+            List<Scan> ret = new ArrayList<>();
+            for (int i = 0; i < startEndKeys.getFirst().length; i++) {
+                byte[] startRow = maxStartRow(scan.getStartRow(), startEndKeys.getFirst()[i]);
+                byte[] stopRow = minStopRow(scan.getStopRow(), startEndKeys.getSecond()[i]);
+                if (stopRow.length > 0 && Bytes.compareTo(startRow, stopRow) >= 0) {
+                    continue;
+                }
+
+                Scan regionScan = new Scan(scan);
+                regionScan.setStartRow(startRow);
+                regionScan.setStopRow(stopRow);
+                ret.add(regionScan);
+            }
+            return ret;
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during splitScanByRegion", e);
+        }
+    }
+
+    // an empty start row is the smallest
+    private static byte[] maxStartRow(byte[] row1, byte[] row2) {
+        return Bytes.compareTo(row1, row2) >= 0 ? row1 : row2;
+    }
+
+    // an empty stop row is the largest
+    private static byte[] minStopRow(byte[] row1, byte[] row2) {
+        if (row1.length == 0) {
+            return row2;
+        }
+        if (row2.length == 0) {
+            return row1;
+        }
+        return Bytes.compareTo(row1, row2) <= 0 ? row1 : row2;
+    }
+
+    // runs the scans concurrently and returns the callback results in the order of the scans
+    public <R> List<R> parallelScan(List<Scan> scans, TableName tableName,
+        Function<Stream<Result>, R> callback) {
+        // the scans run on the threads of the workload class of the caller
+        WorkloadResources resources = workloadResources();
+        List<Future<R>> futures = new ArrayList<>();
+        for (Scan scan : scans) {
+            futures.add(resources.scanExecutor.submit(() -> {
+                try (Stream<Result> results = scan(resources, scan, tableName,
+                    Function.identity(), null)) {
+                    return callback.apply(results);
+                }
+            }));
+        }
+        return getAll(futures, "parallelScan");
+    }
+
+    // the rest are cancelled when one fails
+    private static <R> List<R> getAll(List<Future<R>> futures, String method) {
+        try {
+            List<R> ret = new ArrayList<>();
+            for (Future<R> future : futures) {
+                ret.add(future.get());
+            }
+            return ret;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GraphbaseException("interrupted during " + method, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GraphbaseException) {
+                throw (GraphbaseException) e.getCause();
+            }
+            throw new GraphbaseException("an error occurred during " + method, e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
 }
@@ -0,0 +1,302 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.brfrn169.graphbase.GraphCatalogManager;
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphMetrics;
+import com.github.brfrn169.graphbase.exception.GraphNotFoundException;
+import com.github.brfrn169.graphbase.exception.GraphbaseException;
+import com.github.brfrn169.graphbase.io.EntityFiles;
+import com.github.brfrn169.graphbase.io.RawEntityWriter;
+import com.github.brfrn169.graphbase.util.Json;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// exports a graph into a directory, one file per region of the node and relationship tables, in
+// NDJSON or the binary format of EntityFiles. the regions are scanned in parallel, and the
+// property values are copied as they are stored. the files can be loaded back with
+// HBaseBulkLoader or the import API.
+//
+// the shards are fixed in manifest.json when an export starts, and each shard records a
+// checkpoint of the rows it has written. exporting again into the same directory resumes the
+// shards which aren't done from their checkpoints, discarding what was written after them
+public class HBaseExporter implements Closeable {
+
+    public static final String PARALLELISM_CONF_KEY = "graphbase.export.parallelism";
+
+    // the number of entities between the checkpoints of a shard
+    public static final String CHECKPOINT_INTERVAL_CONF_KEY =
+        "graphbase.export.checkpoint.interval";
+
+    private static final Log LOG = LogFactory.getLog(HBaseExporter.class);
+
+    private static final Json JSON = new Json(JsonInclude.Include.NON_NULL);
+
+    private static final String MANIFEST_FILE_NAME = "manifest.json";
+    private static final String NODE_SHARD_PREFIX = "node-";
+    private static final String REL_SHARD_PREFIX = "relationship-";
+
+    @Data @Accessors(fluent = true) static final class Manifest {
+        @NonNull @JsonProperty("graphId") private final String graphId;
+        @NonNull @JsonProperty("format") private final EntityFiles.Format format;
+        @NonNull @JsonProperty("shards") private final List<Shard> shards;
+
+        @JsonCreator Manifest(@NonNull @JsonProperty("graphId") String graphId,
+            @NonNull @JsonProperty("format") EntityFiles.Format format,
+            @NonNull @JsonProperty("shards") List<Shard> shards) {
+            this.graphId = graphId;
+            this.format = format;
+            this.shards = shards;
+        }
+    }
+
+    @Data @Accessors(fluent = true) static final class Shard {
+        @NonNull @JsonProperty("name") private final String name;
+        @NonNull @JsonProperty("startRow") private final byte[] startRow;
+        @NonNull @JsonProperty("stopRow") private final byte[] stopRow;
+
+        @JsonCreator Shard(@NonNull @JsonProperty("name") String name,
+            @NonNull @JsonProperty("startRow") byte[] startRow,
+            @NonNull @JsonProperty("stopRow") byte[] stopRow) {
+            this.name = name;
+            this.startRow = startRow;
+            this.stopRow = stopRow;
+        }
+
+        private boolean isNodeShard() {
+            return name.startsWith(NODE_SHARD_PREFIX);
+        }
+    }
+
+    // the output file is valid up to length, which holds count entities up to lastRow
+    @Data @Accessors(fluent = true) static final class Checkpoint {
+        @Nullable @JsonProperty("lastRow") private final byte[] lastRow;
+        @JsonProperty("length") private final long length;
+        @JsonProperty("count") private final long count;
+        @JsonProperty("done") private final boolean done;
+
+        @JsonCreator Checkpoint(@JsonProperty("lastRow") byte[] lastRow,
+            @JsonProperty("length") long length, @JsonProperty("count") long count,
+            @JsonProperty("done") boolean done) {
+            this.lastRow = lastRow;
+            this.length = length;
+            this.count = count;
+            this.done = done;
+        }
+    }
+
+    private final HBaseClient hbaseClient;
+    private final ExecutorService executor;
+    private final int checkpointInterval;
+
+    public HBaseExporter(Configuration conf, GraphMetrics metrics) {
+        hbaseClient = new HBaseClient(conf, metrics);
+        executor = Executors.newFixedThreadPool(conf.getInt(PARALLELISM_CONF_KEY, 8),
+            new ThreadFactoryBuilder().setNameFormat("graphbase-export-%d").setDaemon(true)
+                .build());
+        checkpointInterval = conf.getInt(CHECKPOINT_INTERVAL_CONF_KEY, 10000);
+    }
+
+    @Override public void close() throws IOException {
+        executor.shutdownNow();
+        hbaseClient.close();
+    }
+
+    // returns the numbers of the exported nodes and relationships
+    public long[] export(GraphConfiguration graphConf, File dir, EntityFiles.Format format) {
+        Manifest manifest = prepareManifest(graphConf, dir, format);
+
+        List<Future<Long>> futures = new ArrayList<>();
+        for (Shard shard : manifest.shards()) {
+            futures.add(executor.submit(() -> exportShard(graphConf, dir, format, shard)));
+        }
+
+        long[] ret = new long[2];
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                ret[manifest.shards().get(i).isNodeShard() ? 0 : 1] += futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GraphbaseException("interrupted during exporting", e);
+        } catch (ExecutionException e) {
+            throw new GraphbaseException("an error occurred during exporting", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        LOG.info("exported " + ret[0] + " nodes and " + ret[1] + " relationships. graphId="
+            + graphConf.graphId() + ", dir=" + dir);
+        return ret;
+    }
+
+    private Manifest prepareManifest(GraphConfiguration graphConf, File dir,
+        EntityFiles.Format format) {
+        File manifestFile = new File(dir, MANIFEST_FILE_NAME);
+        try {
+            if (manifestFile.exists()) {
+                Manifest manifest =
+                    JSON.readValue(Files.readAllBytes(manifestFile.toPath()), Manifest.class);
+                if (!manifest.graphId().equals(graphConf.graphId())
+                    || manifest.format() != format) {
+                    throw new IllegalArgumentException(
+                        "the directory has an export of another graph or format. dir=" + dir);
+                }
+                return manifest;
+            }
+
+            GraphTables tables = GraphTables.of(graphConf);
+            List<Shard> shards = new ArrayList<>();
+            addShards(shards, NODE_SHARD_PREFIX, HBaseGraphStorage.createNodeExportScan(tables),
+                tables.nodeTableName());
+            addShards(shards, REL_SHARD_PREFIX, HBaseGraphStorage.createRelExportScan(tables),
+                tables.relTableName());
+            Manifest manifest = new Manifest(graphConf.graphId(), format, shards);
+
+            Files.createDirectories(dir.toPath());
+            writeAtomically(manifestFile, JSON.writeValueAsBytes(manifest));
+            return manifest;
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during preparing a manifest", e);
+        }
+    }
+
+    private void addShards(List<Shard> shards, String prefix, Scan scan, TableName tableName) {
+        List<Scan> regionScans = hbaseClient.splitScanByRegion(scan, tableName);
+        for (int i = 0; i < regionScans.size(); i++) {
+            shards.add(new Shard(String.format("%s%05d", prefix, i),
+                regionScans.get(i).getStartRow(), regionScans.get(i).getStopRow()));
+        }
+    }
+
+    private long exportShard(GraphConfiguration graphConf, File dir, EntityFiles.Format format,
+        Shard shard) throws IOException {
+        File dataFile = new File(dir, shard.name() + format.extension());
+        File checkpointFile = new File(dir, shard.name() + ".checkpoint");
+
+        Checkpoint checkpoint = new Checkpoint(null, 0, 0, false);
+        if (checkpointFile.exists()) {
+            checkpoint =
+                JSON.readValue(Files.readAllBytes(checkpointFile.toPath()), Checkpoint.class);
+            if (checkpoint.done()) {
+                return checkpoint.count();
+            }
+        }
+
+        // what was written after the checkpoint is discarded, and the scan resumes after its row
+        try (RandomAccessFile file = new RandomAccessFile(dataFile, "rw")) {
+            file.setLength(checkpoint.length());
+        }
+        GraphTables tables = GraphTables.of(graphConf);
+        Scan scan;
+        TableName tableName;
+        if (shard.isNodeShard()) {
+            scan = HBaseGraphStorage.createNodeExportScan(tables);
+            tableName = tables.nodeTableName();
+        } else {
+            scan = HBaseGraphStorage.createRelExportScan(tables);
+            tableName = tables.relTableName();
+        }
+        if (checkpoint.lastRow() != null) {
+            scan.setStartRow(Bytes.add(checkpoint.lastRow(), new byte[] {0}));
+        } else {
+            scan.setStartRow(shard.startRow());
+        }
+        scan.setStopRow(shard.stopRow());
+
+        long count = checkpoint.count();
+        byte[] lastRow = checkpoint.lastRow();
+        try (FileOutputStream out = new FileOutputStream(dataFile, true);
+            RawEntityWriter writer = EntityFiles
+                .createRawWriter(new BufferedOutputStream(out, 64 * 1024), format);
+            Stream<Result> results = hbaseClient.scan(scan, tableName, result -> result)) {
+            for (Iterator<Result> it = results.iterator(); it.hasNext(); ) {
+                Result result = it.next();
+                if (shard.isNodeShard()) {
+                    HBaseGraphStorage.writeRawNode(tables, result, writer);
+                } else {
+                    HBaseGraphStorage.writeRawRelationship(tables, result, writer);
+                }
+                count++;
+                lastRow = result.getRow();
+
+                if ((count - checkpoint.count()) % checkpointInterval == 0) {
+                    writeCheckpoint(checkpointFile, writer, out, lastRow, count, false);
+                }
+            }
+            writeCheckpoint(checkpointFile, writer, out, lastRow, count, true);
+        }
+
+        LOG.info("exported a shard. shard=" + shard.name() + ", count=" + count);
+        return count;
+    }
+
+    private static void writeCheckpoint(File checkpointFile, RawEntityWriter writer,
+        FileOutputStream out, byte[] lastRow, long count, boolean done) throws IOException {
+        writer.flush();
+        out.getChannel().force(false);
+        writeAtomically(checkpointFile, JSON.writeValueAsBytes(
+            new Checkpoint(lastRow, out.getChannel().position(), count, done)));
+    }
+
+    private static void writeAtomically(File file, byte[] bytes) throws IOException {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(tmpFile.toPath(), bytes);
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // usage: HBaseExporter <graphId> <dir> [NDJSON|BINARY]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: HBaseExporter <graphId> <dir> [NDJSON|BINARY]");
+            System.exit(1);
+        }
+
+        EntityFiles.Format format = EntityFiles.Format.NDJSON;
+        if (args.length == 3) {
+            format = EntityFiles.Format.valueOf(args[2]);
+        }
+
+        // the meters of a single run aren't published
+        Configuration conf = HBaseConfiguration.create();
+        try (GraphCatalogManager graphCatalogManager = new GraphCatalogManager(conf);
+            HBaseExporter exporter = new HBaseExporter(conf,
+                new GraphMetrics(new SimpleMeterRegistry()))) {
+            GraphConfiguration graphConf = graphCatalogManager.getGraphConfiguration(args[0])
+                .orElseThrow(GraphNotFoundException::new);
+            exporter.export(graphConf, new File(args[1]), format);
+        }
+    }
+}
@@ -1,67 +1,102 @@
 package com.github.brfrn169.graphbase.hbase;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.brfrn169.graphbase.Direction;
+import com.github.brfrn169.graphbase.Durability;
 import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphMetrics;
 import com.github.brfrn169.graphbase.GraphStorage;
 import com.github.brfrn169.graphbase.GraphbaseConstants;
 import com.github.brfrn169.graphbase.Mutation;
 import com.github.brfrn169.graphbase.Node;
 import com.github.brfrn169.graphbase.PropertyProjections;
 import com.github.brfrn169.graphbase.Relationship;
+import com.github.brfrn169.graphbase.StorageOptions;
+import com.github.brfrn169.graphbase.Timelined;
+import com.github.brfrn169.graphbase.UpsertMode;
+import com.github.brfrn169.graphbase.Versioned;
+import com.github.brfrn169.graphbase.exception.GraphbaseException;
 import com.github.brfrn169.graphbase.exception.NodeAlreadyExistsException;
 import com.github.brfrn169.graphbase.exception.NodeNotFoundException;
 import com.github.brfrn169.graphbase.exception.RelationshipAlreadyExistsException;
 import com.github.brfrn169.graphbase.exception.RelationshipNotFoundException;
+import com.github.brfrn169.graphbase.exception.VersionMismatchException;
+import com.github.brfrn169.graphbase.exception.WriteConflictException;
 import com.github.brfrn169.graphbase.filter.FilterExecutor;
 import com.github.brfrn169.graphbase.filter.FilterPredicate;
 import com.github.brfrn169.graphbase.filter.FilterPropertyKeysExtractor;
+import com.github.brfrn169.graphbase.io.EntityRecord;
+import com.github.brfrn169.graphbase.io.ImportResult;
+import com.github.brfrn169.graphbase.io.RawEntityWriter;
 import com.github.brfrn169.graphbase.sort.SortComparator;
 import com.github.brfrn169.graphbase.sort.SortPredicate;
-import com.github.brfrn169.graphbase.util.Json;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.KeepDeletedCells;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Append;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Query;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.RowMutations;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
 import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.filter.RowFilter;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
-import org.apache.hadoop.hbase.types.RawByte;
-import org.apache.hadoop.hbase.types.RawInteger;
-import org.apache.hadoop.hbase.types.RawString;
-import org.apache.hadoop.hbase.types.RawStringTerminated;
-import org.apache.hadoop.hbase.types.Struct;
-import org.apache.hadoop.hbase.types.StructBuilder;
+import org.apache.hadoop.hbase.regionserver.BloomType;
 import org.apache.hadoop.hbase.util.Bytes;
-import org.apache.hadoop.hbase.util.Hash;
-import org.apache.hadoop.hbase.util.MurmurHash3;
 import org.apache.hadoop.hbase.util.Pair;
-import org.apache.hadoop.hbase.util.PositionedByteRange;
-import org.apache.hadoop.hbase.util.SimplePositionedByteRange;
-import org.apache.hadoop.hbase.util.SimplePositionedMutableByteRange;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withProperties;
+import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutProperties;
 import static com.github.brfrn169.graphbase.hbase.HBaseClient.addMutations;
 
 public class HBaseGraphStorage implements GraphStorage {
@@ -70,82 +105,133 @@ public class HBaseGraphStorage implements GraphStorage {
 
     public static final String TABLE_SPLITS_CONF_KEY = "graphbase.hbase.table.splits";
 
-    private static final Json JSON = new Json(JsonInclude.Include.NON_EMPTY);
+    public static final String CASCADE_BATCH_SIZE_CONF_KEY = "graphbase.hbase.cascade.batch.size";
 
-    private static final Hash HASH = MurmurHash3.getInstance();
+    public static final String SHARED_HISTORY_TTL_CONF_KEY =
+        "graphbase.hbase.shared.history.ttl";
+
+    public static final String IMPORT_WRITERS_CONF_KEY = "graphbase.hbase.import.writers";
+
+    public static final String IMPORT_MAX_REPORTED_FAILURES_CONF_KEY =
+        "graphbase.hbase.import.max.reported.failures";
+
+    // the conditional writes which lose to the concurrent writes of the same row are tried again
+    // up to this many times in all, and fail with WriteConflictException then
+    public static final String CONDITIONAL_WRITE_MAX_ATTEMPTS_CONF_KEY =
+        "graphbase.hbase.conditional.write.max.attempts";
+
+    // the node and relationship scans which take at least this long are logged with their cost.
+    // a negative value disables the log, and the scans aren't timed per phase then
+    public static final String SLOW_QUERY_THRESHOLD_MS_CONF_KEY =
+        "graphbase.hbase.slowquery.threshold.ms";
 
     private static final byte[] ONE_BYTE_ARRAY = new byte[] {0};
     private static final byte[] EXISTENCE_MARKER = ONE_BYTE_ARRAY;
 
-    private static final String NAMESPACE = "graphbase";
-
     // for the node schema
-    private static final String NODE_TABLE_NAME_SUFFIX = "_node";
-
     private static final byte[] NODE_FAMILY = Bytes.toBytes("n");
 
-    private static final byte NODE_ROW_TYPE = (byte) 1;
+    private static final byte[] NODE_QUALIFIER_TYPE = HConstants.EMPTY_BYTE_ARRAY;
 
-    private static final Struct NODE_ROW_STRUCT =
-        new StructBuilder().add(new RawByte()).add(new RawInteger()).add(RawString.ASCENDING)
-            .toStruct();
+    // the degree counters are kept in their own family of the node row, so that they survive the
+    // deletion of the node and are not read with the properties. the qualifier is the direction
+    // followed by the relationship type, and the value is a long maintained by Increment. the
+    // relationships are in another table, so the counters can't be written atomically with them
+    // and are best-effort: a failure in between leaves them off until recomputeDegrees
+    private static final byte[] DEGREE_FAMILY = Bytes.toBytes("d");
 
-    private static final byte[] NODE_QUALIFIER_TYPE = HConstants.EMPTY_BYTE_ARRAY;
+    private static final byte DEGREE_QUALIFIER_OUT = (byte) 'o';
+    private static final byte DEGREE_QUALIFIER_IN = (byte) 'i';
+
+    // rewritten with a random value by every write of a node or a relationship, so that the
+    // updates can be made conditional on it. 0xFF is never in the UTF-8 property keys
+    private static final byte[] VERSION_QUALIFIER = new byte[] {(byte) 0xFF};
 
     private static final Filter NODE_EXISTS_FILTER =
         new SingleColumnValueFilter(NODE_FAMILY, NODE_QUALIFIER_TYPE,
             CompareFilter.CompareOp.GREATER_OR_EQUAL, ONE_BYTE_ARRAY);
 
-    private static final byte[] NODE_SCAN_START_ROW = new byte[] {NODE_ROW_TYPE};
-    private static final byte[] NODE_SCAN_STOP_ROW = new byte[] {NODE_ROW_TYPE + 1};
-    private static final Pair<byte[], byte[]> NODE_SCAN_ROWS =
-        new Pair<>(NODE_SCAN_START_ROW, NODE_SCAN_STOP_ROW);
-
     // for the relationship schema
-    private static final String REL_TABLE_NAME_SUFFIX = "_rel";
-
     private static final byte[] REL_FAMILY = Bytes.toBytes("r");
 
-    private static final byte REL_ROW_TYPE = (byte) 1;
-
-    private static final Struct REL_STRUCT =
-        new StructBuilder().add(new RawByte()).add(new RawInteger())
-            .add(new RawStringTerminated("\0")).add(new RawStringTerminated("\0"))
-            .add(RawString.ASCENDING).toStruct();
-
     private static final byte[] REL_QUALIFIER_EXISTENCE_MARKER = HConstants.EMPTY_BYTE_ARRAY;
 
     private static final Filter REL_EXISTS_FILTER =
         new SingleColumnValueFilter(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER,
             CompareFilter.CompareOp.EQUAL, EXISTENCE_MARKER);
 
-    private static final byte[] REL_SCAN_START_ROW = new byte[] {REL_ROW_TYPE};
-    private static final byte[] REL_SCAN_STOP_ROW = new byte[] {REL_ROW_TYPE + 1};
-    private static final Pair<byte[], byte[]> REL_SCAN_ROWS =
-        new Pair<>(REL_SCAN_START_ROW, REL_SCAN_STOP_ROW);
-
 
     private final HBaseClient hbaseClient;
+    private final Set<TableName> degreeFamilyTables = ConcurrentHashMap.newKeySet();
     private final boolean compression;
     private final int splits;
-
-    public HBaseGraphStorage(Configuration conf) {
-        hbaseClient = new HBaseClient(conf);
+    private final int cascadeBatchSize;
+    private final int sharedHistoryTtlSeconds;
+    private final int conditionalWriteMaxAttempts;
+    private final HBaseImporter importer;
+    private final GraphMetrics metrics;
+    private final SlowQueryLog slowQueryLog;
+    private final List<ObjLongConsumer<GraphConfiguration>> scannedRowsListeners =
+        new CopyOnWriteArrayList<>();
+
+    public HBaseGraphStorage(Configuration conf, GraphMetrics metrics) {
+        this.metrics = metrics;
+        slowQueryLog = new SlowQueryLog(conf.getLong(SLOW_QUERY_THRESHOLD_MS_CONF_KEY, -1L));
+        hbaseClient = new HBaseClient(conf, metrics);
         compression = conf.getBoolean(TABLE_COMPRESSION_CONF_KEY, true);
         splits = conf.getInt(TABLE_SPLITS_CONF_KEY, 1);
+        cascadeBatchSize = conf.getInt(CASCADE_BATCH_SIZE_CONF_KEY, 1000);
+        // a week
+        sharedHistoryTtlSeconds = conf.getInt(SHARED_HISTORY_TTL_CONF_KEY, 604800);
+        conditionalWriteMaxAttempts = conf.getInt(CONDITIONAL_WRITE_MAX_ATTEMPTS_CONF_KEY, 10);
+        importer = new HBaseImporter(hbaseClient, conf.getInt(IMPORT_WRITERS_CONF_KEY, 8),
+            conf.getInt(IMPORT_MAX_REPORTED_FAILURES_CONF_KEY, 1000));
 
         ensureCreatingNamespace();
     }
 
     private void ensureCreatingNamespace() {
-        hbaseClient.createNamespace(NAMESPACE);
+        hbaseClient.createNamespace(GraphTables.NAMESPACE);
     }
 
     @Override public void close() throws IOException {
         hbaseClient.close();
     }
 
-    @Override public void createGraph(String graphId) {
+    @Override
+    public void addScannedRowsListener(ObjLongConsumer<GraphConfiguration> listener) {
+        scannedRowsListeners.add(listener);
+    }
+
+    @Override
+    public void removeScannedRowsListener(ObjLongConsumer<GraphConfiguration> listener) {
+        scannedRowsListeners.remove(listener);
+    }
+
+    private void notifyScannedRows(GraphConfiguration graphConf, long rows) {
+        scannedRowsListeners.forEach(listener -> listener.accept(graphConf, rows));
+    }
+
+    // the rows of the scan are counted as its stream is consumed and reported when it's closed
+    private <R> Stream<R> scan(GraphConfiguration graphConf, Scan scan, TableName tableName,
+        Function<Result, R> decoder) {
+        ScanStats stats = new ScanStats();
+        return hbaseClient.scan(scan, tableName, stats.decoder(decoder))
+            .onClose(() -> notifyScannedRows(graphConf, stats.rowsScanned()));
+    }
+
+    @Override public void createGraph(GraphConfiguration graphConf) {
+        GraphTables tables = GraphTables.of(graphConf);
+        if (GraphTables.isShared(graphConf)) {
+            createSharedTables(graphConf, tables);
+            return;
+        }
+
+        HTableDescriptor nodeHTableDescriptor =
+            getNodeHTableDescriptor(tables.nodeTableName(), graphConf.storageOptions());
+        HTableDescriptor relHTableDescriptor =
+            getRelHTableDescriptor(tables.relTableName(), graphConf.storageOptions());
+
         // create a node table
         {
             byte[][] splitKeys = new byte[splits][];
@@ -155,7 +241,7 @@ public class HBaseGraphStorage implements GraphStorage {
                 splitKeys[i + 1] = new byte[] {2, (byte) (256 / splits * (i + 1))};
             }
 
-            hbaseClient.createTable(getNodeHTableDescriptor(graphId, compression), splitKeys);
+            hbaseClient.createTable(nodeHTableDescriptor, splitKeys);
         }
 
         // create a relationship table
@@ -167,21 +253,91 @@ public class HBaseGraphStorage implements GraphStorage {
                 splitKeys[i + 1] = new byte[] {2, (byte) (256 / splits * (i + 1))};
             }
 
-            hbaseClient.createTable(getRelHTableDescriptor(graphId, compression), splitKeys);
+            try {
+                hbaseClient.createTable(relHTableDescriptor, splitKeys);
+            } catch (RuntimeException e) {
+                // the graph is created again from scratch
+                try {
+                    hbaseClient.deleteTable(tables.nodeTableName());
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+
+    // the shared tables are created by the first shared graph, and are split by the hash of the
+    // graph id. they keep the history only for a while, which also bounds how long the cells of
+    // the dropped graphs take space
+    private void createSharedTables(GraphConfiguration graphConf, GraphTables tables) {
+        Preconditions.checkArgument(graphConf.storageOptions() == null,
+            "the storage options can't be set for the shared layout");
+
+        hbaseClient.createNamespace(GraphTables.SHARED_NAMESPACE);
+
+        StorageOptions storageOptions =
+            new StorageOptions(null, null, null, null, null, null, null, null, null,
+                sharedHistoryTtlSeconds, null);
+
+        byte[][] splitKeys = null;
+        if (splits > 1) {
+            splitKeys = new byte[splits - 1][];
+            for (int i = 0; i < splits - 1; i++) {
+                splitKeys[i] = new byte[] {(byte) (256 / splits * (i + 1))};
+            }
         }
+
+        hbaseClient.createTable(getNodeHTableDescriptor(tables.nodeTableName(), storageOptions),
+            splitKeys);
+        hbaseClient.createTable(getRelHTableDescriptor(tables.relTableName(), storageOptions),
+            splitKeys);
     }
 
-    @Override public void dropGraph(String graphId) {
-        Arrays.asList(getNodeTableName(graphId), getRelTableName(graphId))
-            .forEach(hbaseClient::deleteTable);
+    // the descriptors are built again from the options, so the options which are left out go back
+    // to the defaults
+    @Override public void alterGraph(GraphConfiguration graphConf) {
+        Preconditions.checkArgument(!GraphTables.isShared(graphConf),
+            "the storage options can't be set for the shared layout");
+
+        GraphTables tables = GraphTables.of(graphConf);
+        hbaseClient.modifyTable(
+            getNodeHTableDescriptor(tables.nodeTableName(), graphConf.storageOptions()));
+        hbaseClient.modifyTable(
+            getRelHTableDescriptor(tables.relTableName(), graphConf.storageOptions()));
     }
 
-    private TableName getNodeTableName(String graphId) {
-        return TableName.valueOf(NAMESPACE, graphId + NODE_TABLE_NAME_SUFFIX);
+    // a shared graph is deleted row by row, over ranges of the hash of the node id in parallel
+    @Override public void dropGraph(GraphConfiguration graphConf) {
+        GraphTables tables = GraphTables.of(graphConf);
+        if (!GraphTables.isShared(graphConf)) {
+            Arrays.asList(tables.nodeTableName(), tables.relTableName())
+                .forEach(hbaseClient::deleteTable);
+            return;
+        }
+
+        for (TableName tableName : Arrays.asList(tables.nodeTableName(), tables.relTableName())) {
+            List<Scan> scans = tables.graphRanges().stream().map(
+                range -> createScan(range).setCaching(cascadeBatchSize)
+                    .setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter())))
+                .collect(Collectors.toList());
+
+            hbaseClient.parallelScan(scans, tableName, results -> {
+                Iterator<List<Result>> batches =
+                    Iterators.partition(results.iterator(), cascadeBatchSize);
+                while (batches.hasNext()) {
+                    hbaseClient.batch(batches.next().stream()
+                        .map(result -> withDurability(graphConf, new Delete(result.getRow())))
+                        .collect(Collectors.toList()), tableName);
+                }
+                return null;
+            });
+        }
     }
 
-    private HTableDescriptor getNodeHTableDescriptor(String graphId, boolean compression) {
-        HTableDescriptor hTableDescriptor = new HTableDescriptor(getNodeTableName(graphId));
+    private HTableDescriptor getNodeHTableDescriptor(TableName tableName,
+        @Nullable StorageOptions storageOptions) {
+        HTableDescriptor hTableDescriptor = new HTableDescriptor(tableName);
 
         HColumnDescriptor hColumnDescriptor = new HColumnDescriptor(NODE_FAMILY);
         hColumnDescriptor.setMaxVersions(Integer.MAX_VALUE);
@@ -190,16 +346,39 @@ public class HBaseGraphStorage implements GraphStorage {
             hColumnDescriptor.setCompressionType(Compression.Algorithm.LZ4);
         }
         hColumnDescriptor.setDataBlockEncoding(DataBlockEncoding.FAST_DIFF);
+        applyRetention(hColumnDescriptor, storageOptions);
         hTableDescriptor.addFamily(hColumnDescriptor);
+
+        hTableDescriptor.addFamily(getDegreeHColumnDescriptor());
+
+        applyStorageOptions(hTableDescriptor, storageOptions);
         return hTableDescriptor;
     }
 
-    private TableName getRelTableName(String graphId) {
-        return TableName.valueOf(NAMESPACE, graphId + REL_TABLE_NAME_SUFFIX);
+    private HColumnDescriptor getDegreeHColumnDescriptor() {
+        HColumnDescriptor hColumnDescriptor = new HColumnDescriptor(DEGREE_FAMILY);
+        if (compression) {
+            hColumnDescriptor.setCompressionType(Compression.Algorithm.LZ4);
+        }
+        return hColumnDescriptor;
+    }
+
+    // the node tables created before the degree counters don't have their family, so it's added
+    // on the first use of the counters of each table. alterGraph adds it too
+    private void ensureDegreeFamily(GraphTables tables) {
+        TableName tableName = tables.nodeTableName();
+        if (degreeFamilyTables.contains(tableName)) {
+            return;
+        }
+        if (!hbaseClient.getTableDescriptor(tableName).hasFamily(DEGREE_FAMILY)) {
+            hbaseClient.addFamily(tableName, getDegreeHColumnDescriptor());
+        }
+        degreeFamilyTables.add(tableName);
     }
 
-    private HTableDescriptor getRelHTableDescriptor(String graphId, boolean compression) {
-        HTableDescriptor hTableDescriptor = new HTableDescriptor(getRelTableName(graphId));
+    private HTableDescriptor getRelHTableDescriptor(TableName tableName,
+        @Nullable StorageOptions storageOptions) {
+        HTableDescriptor hTableDescriptor = new HTableDescriptor(tableName);
 
         HColumnDescriptor hColumnDescriptor = new HColumnDescriptor(REL_FAMILY);
         hColumnDescriptor.setMaxVersions(Integer.MAX_VALUE);
@@ -208,105 +387,704 @@ public class HBaseGraphStorage implements GraphStorage {
             hColumnDescriptor.setCompressionType(Compression.Algorithm.LZ4);
         }
         hColumnDescriptor.setDataBlockEncoding(DataBlockEncoding.FAST_DIFF);
+        applyRetention(hColumnDescriptor, storageOptions);
         hTableDescriptor.addFamily(hColumnDescriptor);
+
+        applyStorageOptions(hTableDescriptor, storageOptions);
         return hTableDescriptor;
     }
 
+    private static Scan createScan(Pair<byte[], byte[]> rows) {
+        return new Scan(rows.getFirst(), rows.getSecond());
+    }
+
+    // only for the families keeping the history. the latest version of a cell outlives the ttl,
+    // unless it's deleted, and then it goes with its delete marker once the ttl has passed
+    private static void applyRetention(HColumnDescriptor hColumnDescriptor,
+        @Nullable StorageOptions storageOptions) {
+        if (storageOptions == null) {
+            return;
+        }
+
+        if (storageOptions.maxVersions() != null) {
+            hColumnDescriptor.setMaxVersions(storageOptions.maxVersions());
+        }
+        if (storageOptions.historyTtlSeconds() != null) {
+            hColumnDescriptor.setTimeToLive(storageOptions.historyTtlSeconds());
+            hColumnDescriptor.setMinVersions(1);
+            hColumnDescriptor.setKeepDeletedCells(KeepDeletedCells.TTL);
+        }
+    }
+
+    // the options override the defaults above, for all the families of the table
+    private static void applyStorageOptions(HTableDescriptor hTableDescriptor,
+        @Nullable StorageOptions storageOptions) {
+        if (storageOptions == null) {
+            return;
+        }
+
+        for (HColumnDescriptor hColumnDescriptor : hTableDescriptor.getColumnFamilies()) {
+            if (storageOptions.compression() != null) {
+                hColumnDescriptor.setCompressionType(
+                    Compression.Algorithm.valueOf(storageOptions.compression().name()));
+            }
+            if (storageOptions.dataBlockEncoding() != null) {
+                hColumnDescriptor.setDataBlockEncoding(
+                    DataBlockEncoding.valueOf(storageOptions.dataBlockEncoding().name()));
+            }
+            if (storageOptions.blockSize() != null) {
+                hColumnDescriptor.setBlocksize(storageOptions.blockSize());
+            }
+            if (storageOptions.bloomFilterType() != null) {
+                hColumnDescriptor.setBloomFilterType(
+                    BloomType.valueOf(storageOptions.bloomFilterType().name()));
+            }
+            if (storageOptions.inMemory() != null) {
+                hColumnDescriptor.setInMemory(storageOptions.inMemory());
+            }
+            if (storageOptions.blockCacheEnabled() != null) {
+                hColumnDescriptor.setBlockCacheEnabled(storageOptions.blockCacheEnabled());
+            }
+        }
+
+        if (storageOptions.splitPolicy() != null) {
+            hTableDescriptor.setRegionSplitPolicyClassName(storageOptions.splitPolicy());
+        }
+        if (storageOptions.durability() != null) {
+            hTableDescriptor.setDurability(toHBaseDurability(storageOptions.durability()));
+        }
+        if (storageOptions.regionReplication() != null) {
+            hTableDescriptor.setRegionReplication(storageOptions.regionReplication());
+        }
+    }
+
     @Override public void addNode(GraphConfiguration graphConf, String nodeId, String nodeType,
         Map<String, Object> properties) {
+        GraphTables tables = GraphTables.of(graphConf);
 
-        byte[] row = createNodeRow(nodeId);
-        Put put = new Put(row);
+        Put put = withDurability(graphConf,
+            createNodePut(tables, nodeId, nodeType, properties, HConstants.LATEST_TIMESTAMP));
 
-        put.addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE, Bytes.toBytes(nodeType));
+        if (!hbaseClient.checkAndPut(put.getRow(), NODE_FAMILY, NODE_QUALIFIER_TYPE, null, put,
+            tables.nodeTableName())) {
+            throw new NodeAlreadyExistsException();
+        }
+    }
 
+    // the cells of a node, also written by HBaseBulkLoader
+    static Put createNodePut(GraphTables tables, String nodeId, String nodeType,
+        Map<String, Object> properties, long timestamp) {
+        Put put = new Put(tables.nodeRow(nodeId), timestamp);
+        put.addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE, Bytes.toBytes(nodeType));
+        put.addColumn(NODE_FAMILY, VERSION_QUALIFIER, createVersion());
         populatePutWithProperties(put, NODE_FAMILY, properties);
+        return put;
+    }
 
-        if (!hbaseClient.checkAndPut(put.getRow(), NODE_FAMILY, NODE_QUALIFIER_TYPE, null, put,
-            getNodeTableName(graphConf.graphId()))) {
-            throw new NodeAlreadyExistsException();
+    @Override public String upsertNode(GraphConfiguration graphConf, Node node, UpsertMode mode) {
+        GraphTables tables = GraphTables.of(graphConf);
+        Put put = createNodeUpsertPut(graphConf, tables, node);
+
+        if (mode == UpsertMode.REPLACE) {
+            replaceRow(graphConf, put, NODE_FAMILY, tables.nodeTableName());
+        } else {
+            RowMutations mutations = new RowMutations(put.getRow());
+            addMutations(mutations, put);
+            hbaseClient.mutateRow(mutations, tables.nodeTableName());
+        }
+        return formatVersion(putVersion(put, NODE_FAMILY));
+    }
+
+    // the nodes are written in one batch, which is not atomic, so a failed batch can leave some of
+    // the nodes written
+    @Override
+    public void upsertNodes(GraphConfiguration graphConf, List<Node> nodes, UpsertMode mode) {
+        GraphTables tables = GraphTables.of(graphConf);
+
+        Map<String, Node> lastNodes = new LinkedHashMap<>();
+        nodes.forEach(node -> lastNodes.put(node.id(), node));
+
+        List<Put> puts = lastNodes.values().stream()
+            .map(node -> createNodeUpsertPut(graphConf, tables, node))
+            .collect(Collectors.toList());
+        if (puts.isEmpty()) {
+            return;
+        }
+
+        List<org.apache.hadoop.hbase.client.Mutation> mutations = new ArrayList<>();
+        if (mode == UpsertMode.REPLACE) {
+            Result[] current = getCurrentRows(puts, NODE_FAMILY, tables.nodeTableName());
+            for (int i = 0; i < puts.size(); i++) {
+                Delete delete = createReplaceDelete(graphConf, puts.get(i), NODE_FAMILY,
+                    current[i]);
+                if (delete != null) {
+                    mutations.add(delete);
+                }
+            }
+        }
+        mutations.addAll(puts);
+        hbaseClient.batch(mutations, tables.nodeTableName());
+    }
+
+    private static Put createNodeUpsertPut(GraphConfiguration graphConf, GraphTables tables,
+        Node node) {
+        Preconditions.checkArgument(node.type() != null, "the type of a node must be set");
+        return withDurability(graphConf,
+            createNodePut(tables, node.id(), node.type(), propertiesOrEmpty(node.properties()),
+                HConstants.LATEST_TIMESTAMP));
+    }
+
+    // REPLACE reads the row, and deletes the columns the put doesn't have along with the put in
+    // one checkAndMutate on the version read, so that nothing is written in between. the deletes
+    // and the put are on other columns and are all stamped by the region server, so they don't
+    // mask each other. returns whether the row was created
+    private boolean replaceRow(GraphConfiguration graphConf, Put put, byte[] family,
+        TableName tableName) {
+        for (int attempt = 0; attempt < conditionalWriteMaxAttempts; attempt++) {
+            Result current = hbaseClient.get(new Get(put.getRow()).addFamily(family), tableName);
+            byte[] currentVersion = current.getValue(family, VERSION_QUALIFIER);
+
+            RowMutations mutations = new RowMutations(put.getRow());
+            Delete delete = createReplaceDelete(graphConf, put, family, current);
+            if (delete != null) {
+                addMutations(mutations, delete);
+            }
+            addMutations(mutations, put);
+            if (hbaseClient.checkAndMutate(put.getRow(), family, VERSION_QUALIFIER,
+                CompareFilter.CompareOp.EQUAL, currentVersion, mutations, tableName)) {
+                return currentVersion == null;
+            }
         }
+        throw new WriteConflictException();
+    }
+
+    // the rows of the puts in one batch, for REPLACE in batches. unlike replaceRow, a column
+    // written between the read and the batch is left
+    private Result[] getCurrentRows(List<Put> puts, byte[] family, TableName tableName) {
+        return hbaseClient.get(
+            puts.stream().map(put -> new Get(put.getRow()).addFamily(family))
+                .collect(Collectors.toList()), tableName);
+    }
+
+    @Nullable private static Delete createReplaceDelete(GraphConfiguration graphConf, Put put,
+        byte[] family, Result current) {
+        Delete ret = null;
+        for (Cell cell : current.rawCells()) {
+            byte[] qualifier = CellUtil.cloneQualifier(cell);
+            if (put.has(family, qualifier)) {
+                continue;
+            }
+            if (ret == null) {
+                ret = withDurability(graphConf, new Delete(put.getRow()));
+            }
+            ret.addColumns(family, qualifier);
+        }
+        return ret;
+    }
+
+    private static byte[] putVersion(Put put, byte[] family) {
+        return CellUtil.cloneValue(put.get(family, VERSION_QUALIFIER).get(0));
+    }
+
+    private static Map<String, Object> propertiesOrEmpty(
+        @Nullable Map<String, Object> properties) {
+        if (properties == null) {
+            return Collections.emptyMap();
+        }
+        return properties;
     }
 
     @Override public void deleteNode(GraphConfiguration graphConf, String nodeId) {
-        Delete delete = new Delete(createNodeRow(nodeId));
+        GraphTables tables = GraphTables.of(graphConf);
+        Delete delete =
+            withDurability(graphConf, new Delete(tables.nodeRow(nodeId)).addFamily(NODE_FAMILY));
 
         if (!hbaseClient.checkAndDelete(delete.getRow(), NODE_FAMILY, NODE_QUALIFIER_TYPE,
             CompareFilter.CompareOp.LESS, ONE_BYTE_ARRAY, delete,
-            getNodeTableName(graphConf.graphId()))) {
+            tables.nodeTableName())) {
 
             throw new NodeNotFoundException();
         }
     }
 
+    // the outgoing relationships are deleted first, one batch at a time, and the node last.
+    // nothing is retried here, but a cascade which fails halfway leaves the node, so the caller
+    // can call it again for the rest. the decrements of a batch whose deletes went through are
+    // lost by such a failure, and unlike deleteRelationship the relationships are deleted without
+    // checking they still exist, so one deleted concurrently has its degree counters decremented
+    // twice. either leaves the counters off until recomputeDegrees
     @Override
-    public void updateNode(GraphConfiguration graphConf, String nodeId, Mutation mutation) {
+    public long deleteNodeWithRelationships(GraphConfiguration graphConf, String nodeId) {
+        if (!nodeExists(graphConf, nodeId)) {
+            throw new NodeNotFoundException();
+        }
+
+        GraphTables tables = GraphTables.of(graphConf);
+        TableName relTableName = tables.relTableName();
+        TableName nodeTableName = tables.nodeTableName();
+        ensureDegreeFamily(tables);
+
+        Scan scan = createOutgoingNodeIdsScan(Collections.singletonList(tables.relPrefix(nodeId)));
+        scan.setCaching(cascadeBatchSize);
+
+        long ret = 0;
+        try (Stream<byte[]> rows = scan(graphConf, scan, relTableName, Result::getRow)) {
+            Iterator<List<byte[]>> batches = Iterators.partition(rows.iterator(), cascadeBatchSize);
+            while (batches.hasNext()) {
+                List<byte[]> batch = batches.next();
+
+                List<Delete> deletes = new ArrayList<>();
+                List<Increment> increments = new ArrayList<>();
+                Map<String, Long> outDegrees = new HashMap<>();
+                for (byte[] row : batch) {
+                    deletes.add(withDurability(graphConf, new Delete(row)));
+
+                    Relationship rel = tables.rel(row);
+                    increments.add(withDurability(graphConf,
+                        new Increment(tables.nodeRow(rel.inNodeId())).addColumn(DEGREE_FAMILY,
+                            createDegreeQualifier(DEGREE_QUALIFIER_IN, rel.type()), -1L)));
+                    outDegrees.merge(rel.type(), 1L, Long::sum);
+                }
 
-        byte[] row = createNodeRow(nodeId);
+                Increment outIncrement =
+                    withDurability(graphConf, new Increment(tables.nodeRow(nodeId)));
+                outDegrees.forEach((relType, count) -> outIncrement.addColumn(DEGREE_FAMILY,
+                    createDegreeQualifier(DEGREE_QUALIFIER_OUT, relType), -count));
+                increments.add(outIncrement);
 
-        if (!nodeExists(graphConf, row)) {
-            throw new NodeNotFoundException();
+                hbaseClient.batch(deletes, relTableName);
+                hbaseClient.batch(increments, nodeTableName);
+                ret += batch.size();
+            }
         }
 
-        RowMutations rowMutations = new RowMutations(row);
+        deleteNode(graphConf, nodeId);
+        return ret;
+    }
+
+    @Override public String updateNode(GraphConfiguration graphConf, String nodeId,
+        Mutation mutation, @Nullable String expectedVersion) {
+        GraphTables tables = GraphTables.of(graphConf);
 
-        if (mutation.setProperties() != null && mutation.setProperties().size() > 0) {
-            Put put = new Put(row);
-            populatePutWithProperties(put, NODE_FAMILY, mutation.setProperties());
+        return updateEntity(graphConf, tables.nodeTableName(), tables.nodeRow(nodeId),
+            NODE_FAMILY, NODE_QUALIFIER_TYPE, CompareFilter.CompareOp.LESS, ONE_BYTE_ARRAY,
+            mutation, expectedVersion, NodeNotFoundException::new);
+    }
 
-            addMutations(rowMutations, put);
+    // each node is written by a checkAndMutate on its type, like updateNode, so that a node
+    // deleted concurrently isn't written back without one. the nodes are written in parallel and
+    // those which don't exist are returned. a property both set and deleted is only deleted, as
+    // with updateNode
+    @Override public List<String> updateNodes(GraphConfiguration graphConf,
+        Map<String, Mutation> mutations) {
+        mutations.values().forEach(mutation -> Preconditions
+            .checkArgument(!mutation.hasOperators(), "the operators can't be applied in a batch"));
+        if (mutations.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        if (mutation.deleteKeys() != null && mutation.deleteKeys().size() > 0) {
-            Delete delete = new Delete(row);
-            mutation.deleteKeys()
-                .forEach(key -> delete.addColumns(NODE_FAMILY, Bytes.toBytes(key)));
+        GraphTables tables = GraphTables.of(graphConf);
+        List<String> nodeIds = new ArrayList<>(mutations.keySet());
+        List<RowMutations> rowMutations = new ArrayList<>();
+        for (String nodeId : nodeIds) {
+            Mutation mutation = mutations.get(nodeId);
+            byte[] row = tables.nodeRow(nodeId);
+            RowMutations nodeMutations = new RowMutations(row);
+
+            Put put = withDurability(graphConf, new Put(row));
+            put.addColumn(NODE_FAMILY, VERSION_QUALIFIER, createVersion());
+            Set<String> deleteKeys = Optional.ofNullable(mutation.deleteKeys())
+                .orElse(Collections.emptySet());
+            if (mutation.setProperties() != null) {
+                mutation.setProperties().forEach((key, value) -> {
+                    if (!deleteKeys.contains(key)) {
+                        put.addColumn(NODE_FAMILY, Bytes.toBytes(key),
+                            PropertyValues.encode(value));
+                    }
+                });
+            }
+            addMutations(nodeMutations, put);
+
+            if (!deleteKeys.isEmpty()) {
+                Delete delete = withDurability(graphConf, new Delete(row));
+                deleteKeys.forEach(key -> delete.addColumns(NODE_FAMILY, Bytes.toBytes(key)));
+                addMutations(nodeMutations, delete);
+            }
+            rowMutations.add(nodeMutations);
+        }
 
+        boolean[] mutated = hbaseClient.checkAndMutate(rowMutations, NODE_FAMILY,
+            NODE_QUALIFIER_TYPE, CompareFilter.CompareOp.LESS, ONE_BYTE_ARRAY,
+            tables.nodeTableName());
+
+        List<String> ret = new ArrayList<>();
+        for (int i = 0; i < nodeIds.size(); i++) {
+            if (!mutated[i]) {
+                ret.add(nodeIds.get(i));
+            }
+        }
+        return ret;
+    }
+
+    // the properties are set and deleted by a single checkAndMutate, and the operators follow it
+    private String updateEntity(GraphConfiguration graphConf, TableName tableName, byte[] row,
+        byte[] family, byte[] markerQualifier, CompareFilter.CompareOp existsCompareOp,
+        byte[] existsValue, Mutation mutation, @Nullable String expectedVersion,
+        Supplier<GraphbaseException> notFound) {
+        Preconditions.checkArgument(expectedVersion == null || !mutation.hasOperators(),
+            "the operators can't be applied with an expected version");
+
+        byte[] version = null;
+        if (!mutation.hasOperators() || isNotEmpty(mutation.setProperties()) || (
+            mutation.deleteKeys() != null && !mutation.deleteKeys().isEmpty())) {
+            version = setProperties(graphConf, tableName, row, family, markerQualifier,
+                existsCompareOp, existsValue, mutation, expectedVersion, notFound);
+        }
+        if (mutation.hasOperators()) {
+            version = applyOperators(graphConf, tableName, row, family, markerQualifier, mutation,
+                notFound);
+        }
+        return formatVersion(version);
+    }
+
+    // without an expected version, the check is that the entity exists, and otherwise that its
+    // version is the expected one, which also fails when the entity doesn't exist. the entity is
+    // read to tell the failures apart, only when it fails
+    private byte[] setProperties(GraphConfiguration graphConf, TableName tableName, byte[] row,
+        byte[] family, byte[] markerQualifier, CompareFilter.CompareOp existsCompareOp,
+        byte[] existsValue, Mutation mutation, @Nullable String expectedVersion,
+        Supplier<GraphbaseException> notFound) {
+        byte[] version = createVersion();
+        RowMutations rowMutations = new RowMutations(row);
+
+        Put put = withDurability(graphConf, new Put(row));
+        put.addColumn(family, VERSION_QUALIFIER, version);
+        if (mutation.setProperties() != null) {
+            populatePutWithProperties(put, family, mutation.setProperties());
+        }
+        addMutations(rowMutations, put);
+
+        if (mutation.deleteKeys() != null && mutation.deleteKeys().size() > 0) {
+            Delete delete = withDurability(graphConf, new Delete(row));
+            mutation.deleteKeys().forEach(key -> delete.addColumns(family, Bytes.toBytes(key)));
             addMutations(rowMutations, delete);
         }
 
-        hbaseClient.mutateRow(rowMutations, getNodeTableName(graphConf.graphId()));
+        boolean mutated;
+        if (expectedVersion == null) {
+            mutated = hbaseClient.checkAndMutate(row, family, markerQualifier, existsCompareOp,
+                existsValue, rowMutations, tableName);
+        } else {
+            mutated = hbaseClient.checkAndMutate(row, family, VERSION_QUALIFIER,
+                CompareFilter.CompareOp.EQUAL, parseVersion(expectedVersion), rowMutations,
+                tableName);
+        }
+
+        if (!mutated) {
+            if (expectedVersion != null && hbaseClient
+                .exists(new Get(row).addColumn(family, markerQualifier), tableName)) {
+                throw new VersionMismatchException();
+            }
+            throw notFound.get();
+        }
+        return version;
+    }
+
+    // the operators take an Increment, which also increments the version, so that incrementing
+    // counters is a single RPC, then an Append and a checkAndPut for each max. each property is
+    // updated atomically, but the update isn't as a whole. as a version is otherwise random, the
+    // entity doesn't exist if the incremented version is 1, and the cells of the Increment are
+    // deleted again. the region server doesn't know the range of the counters, so the increments
+    // are taken back by another Increment when any counter left it
+    private byte[] applyOperators(GraphConfiguration graphConf, TableName tableName, byte[] row,
+        byte[] family, byte[] markerQualifier, Mutation mutation,
+        Supplier<GraphbaseException> notFound) {
+        Increment increment = withDurability(graphConf, new Increment(row));
+        increment.addColumn(family, VERSION_QUALIFIER, 1L);
+        if (mutation.incrementProperties() != null) {
+            mutation.incrementProperties().forEach((key, amount) -> {
+                Preconditions.checkArgument(PropertyValues.isInCounterRange(amount),
+                    "the increment of the property %s is out of range", key);
+                increment.addColumn(family, Bytes.toBytes(key), amount);
+            });
+        }
+
+        Result result = increment(graphConf, tableName, increment, family);
+        byte[] version = result.getValue(family, VERSION_QUALIFIER);
+        if (Bytes.toLong(version) == 1L && !hbaseClient
+            .exists(new Get(row).addColumn(family, markerQualifier), tableName)) {
+            Delete delete = withDurability(graphConf, new Delete(row));
+            for (Cell cell : result.rawCells()) {
+                delete.addColumn(family, CellUtil.cloneQualifier(cell), cell.getTimestamp());
+            }
+            hbaseClient.checkAndDelete(row, family, markerQualifier, null, delete, tableName);
+            throw notFound.get();
+        }
+
+        if (mutation.incrementProperties() != null) {
+            String outOfRange = mutation.incrementProperties().keySet().stream().filter(
+                key -> !PropertyValues
+                    .isInCounterRange(Bytes.toLong(result.getValue(family, Bytes.toBytes(key)))))
+                .findFirst().orElse(null);
+            if (outOfRange != null) {
+                Increment undo = withDurability(graphConf, new Increment(row));
+                mutation.incrementProperties().forEach(
+                    (key, amount) -> undo.addColumn(family, Bytes.toBytes(key), -amount));
+                hbaseClient.increment(undo, tableName);
+                throw new IllegalArgumentException(
+                    "the counter " + outOfRange + " would be out of range");
+            }
+        }
+
+        if (isNotEmpty(mutation.appendProperties())) {
+            Append append = withDurability(graphConf, new Append(row));
+            append.setReturnResults(false);
+            mutation.appendProperties().forEach((key, elements) -> {
+                if (!elements.isEmpty()) {
+                    append.add(family, Bytes.toBytes(key), PropertyValues.encodeAppended(elements));
+                }
+            });
+            if (!append.isEmpty()) {
+                hbaseClient.append(append, tableName);
+            }
+        }
+
+        if (mutation.maxProperties() != null) {
+            mutation.maxProperties().forEach((key, value) -> applyMax(graphConf, tableName, row,
+                family, Bytes.toBytes(key), value));
+        }
+        return version;
+    }
+
+    // a property written as a JSON integer isn't a counter, and the region server rejects
+    // incrementing it. such properties are rewritten as counters, and the increment is retried
+    private Result increment(GraphConfiguration graphConf, TableName tableName,
+        Increment increment, byte[] family) {
+        try {
+            return hbaseClient.increment(increment, tableName);
+        } catch (GraphbaseException e) {
+            if (!(e.getCause() instanceof DoNotRetryIOException)) {
+                throw e;
+            }
+
+            Get get = new Get(increment.getRow());
+            increment.getFamilyMapOfLongs().get(family).keySet().stream()
+                .filter(qualifier -> !Bytes.equals(qualifier, VERSION_QUALIFIER))
+                .forEach(qualifier -> get.addColumn(family, qualifier));
+            List<Cell> cells =
+                hbaseClient.get(get, tableName, result -> Optional.of(result.listCells()))
+                    .orElse(Collections.emptyList());
+
+            boolean converted = false;
+            for (Cell cell : cells) {
+                byte[] value = CellUtil.cloneValue(cell);
+                if (PropertyValues.isCounter(value)) {
+                    continue;
+                }
+
+                byte[] qualifier = CellUtil.cloneQualifier(cell);
+                Object decoded = PropertyValues.decode(value);
+                Preconditions.checkArgument(decoded instanceof Integer || decoded instanceof Long,
+                    "the property %s is not an integer", Bytes.toString(qualifier));
+
+                // only rewritten if it didn't change since it was read
+                Put put = withDurability(graphConf, new Put(increment.getRow())).addColumn(family,
+                    qualifier, PropertyValues.encodeCounter(((Number) decoded).longValue()));
+                hbaseClient.checkAndPut(increment.getRow(), family, qualifier, value, put,
+                    tableName);
+                converted = true;
+            }
+            if (!converted) {
+                throw e;
+            }
+            return hbaseClient.increment(increment, tableName);
+        }
+    }
+
+    // a single checkAndPut when the value isn't negative and the property is a counter less than
+    // it, as such counters compare as bytes. otherwise the property is read and compared, and
+    // written if it didn't change since
+    private void applyMax(GraphConfiguration graphConf, TableName tableName, byte[] row,
+        byte[] family, byte[] qualifier, long value) {
+        byte[] encoded = PropertyValues.encodeCounter(value);
+        Put put = withDurability(graphConf, new Put(row)).addColumn(family, qualifier, encoded);
+        if (value >= 0 && hbaseClient
+            .checkAndPut(row, family, qualifier, CompareFilter.CompareOp.GREATER, encoded, put,
+                tableName)) {
+            return;
+        }
+
+        for (int attempt = 0; attempt < conditionalWriteMaxAttempts; attempt++) {
+            Optional<byte[]> current = hbaseClient.get(new Get(row).addColumn(family, qualifier),
+                tableName, result -> Optional.of(result.getValue(family, qualifier)));
+            if (current.isPresent()) {
+                Object decoded = PropertyValues.decode(current.get());
+                Preconditions.checkArgument(decoded instanceof Number,
+                    "the property %s is not a number", Bytes.toString(qualifier));
+                if (compareToLong((Number) decoded, value) >= 0) {
+                    return;
+                }
+            }
+
+            if (hbaseClient
+                .checkAndPut(row, family, qualifier, current.orElse(null), put, tableName)) {
+                return;
+            }
+        }
+        throw new WriteConflictException();
+    }
+
+    private static int compareToLong(Number number, long value) {
+        if (number instanceof Double || number instanceof Float) {
+            return Double.compare(number.doubleValue(), value);
+        }
+        return Long.compare(number.longValue(), value);
+    }
+
+    private static boolean isNotEmpty(@Nullable Map<String, ?> map) {
+        return map != null && !map.isEmpty();
+    }
+
+    // random, so that a version is not reused by an entity deleted and written again
+    private static byte[] createVersion() {
+        return Bytes.toBytes(ThreadLocalRandom.current().nextLong());
+    }
+
+    @Nullable private static String formatVersion(@Nullable byte[] version) {
+        if (version == null) {
+            return null;
+        }
+        return Long.toHexString(Bytes.toLong(version));
+    }
+
+    private static byte[] parseVersion(String version) {
+        return Bytes.toBytes(Long.parseUnsignedLong(version, 16));
     }
 
     @Override public Optional<Node> getNode(GraphConfiguration graphConf, String nodeId,
         PropertyProjections propertyProjections) {
+        return getNode(graphConf, nodeId, propertyProjections, null).value()
+            .map(Versioned::entity);
+    }
 
-        byte[] nodeRow = createNodeRow(nodeId);
-        Get get = new Get(nodeRow).setFilter(NODE_EXISTS_FILTER);
+    @Override public Optional<Node> getNode(GraphConfiguration graphConf, String nodeId,
+        PropertyProjections propertyProjections, long asOf) {
+        return getNode(graphConf, nodeId, propertyProjections, Long.valueOf(asOf)).value()
+            .map(Versioned::entity);
+    }
 
-        boolean includeAddAt = true;
+    @Override public Optional<Versioned<Node>> getVersionedNode(GraphConfiguration graphConf,
+        String nodeId, PropertyProjections propertyProjections) {
+        return getNode(graphConf, nodeId, propertyProjections, null).value();
+    }
 
-        switch (propertyProjections.getType()) {
-            case NOTHING:
-                includeAddAt = false;
+    @Override public Timelined<Optional<Node>> getTimelinedNode(GraphConfiguration graphConf,
+        String nodeId, PropertyProjections propertyProjections) {
+        Timelined<Optional<Versioned<Node>>> node =
+            getNode(graphConf, nodeId, propertyProjections, null);
+        return new Timelined<>(node.value().map(Versioned::entity), node.stale());
+    }
 
-                get.addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE);
-                break;
-            case PARTIAL:
-                includeAddAt = propertyProjections.getPropertyKeys()
-                    .contains(GraphbaseConstants.PROPERTY_ADD_AT);
+    // a node not found can be stale too, when it was just added
+    private Timelined<Optional<Versioned<Node>>> getNode(GraphConfiguration graphConf,
+        String nodeId, PropertyProjections propertyProjections, @Nullable Long asOf) {
+        GraphTables tables = GraphTables.of(graphConf);
+
+        byte[] nodeRow = tables.nodeRow(nodeId);
+        Get get = withConsistency(graphConf,
+            new Get(nodeRow).addFamily(NODE_FAMILY).setFilter(NODE_EXISTS_FILTER));
+        if (asOf != null) {
+            try {
+                get.setTimeRange(asOfTimeRangeMin(graphConf, asOf), asOfTimeRangeMax(asOf));
+            } catch (IOException e) {
+                throw new GraphbaseException("an error occurred during setting the time range", e);
+            }
+        }
 
-                get.addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE);
-                propertyProjections.getPropertyKeys()
-                    .forEach(key -> get.addColumn(NODE_FAMILY, Bytes.toBytes(key)));
-                break;
+        boolean includeAddAt =
+            applyPropertyProjections(propertyProjections, NODE_FAMILY, NODE_QUALIFIER_TYPE,
+                get::addColumn);
+        applyVersionProjection(propertyProjections, NODE_FAMILY, get::addColumn);
+
+        Result result = hbaseClient.get(get, tables.nodeTableName());
+        Optional<Versioned<Node>> node = Optional.empty();
+        if (!result.isEmpty()) {
+            node = Optional.of(new Versioned<>(resultToNode(tables, result, includeAddAt),
+                formatVersion(result.getValue(NODE_FAMILY, VERSION_QUALIFIER))));
         }
+        return new Timelined<>(node, result.isStale());
+    }
 
-        boolean includeAddAt2 = includeAddAt; // too ugly
-        return hbaseClient.get(get, getNodeTableName(graphConf.graphId()),
-            result -> Optional.of(resultToNode(result, includeAddAt2)));
+    @Override public List<Node> getNodes(GraphConfiguration graphConf, Collection<String> nodeIds,
+        PropertyProjections propertyProjections) {
+        return getTimelinedNodes(graphConf, nodeIds, propertyProjections).value();
+    }
+
+    @Override public Timelined<List<Node>> getTimelinedNodes(GraphConfiguration graphConf,
+        Collection<String> nodeIds, PropertyProjections propertyProjections) {
+        GraphTables tables = GraphTables.of(graphConf);
+        List<Get> gets = new ArrayList<>();
+        boolean includeAddAt = false;
+        for (String nodeId : nodeIds) {
+            Get get = withConsistency(graphConf, new Get(tables.nodeRow(nodeId))
+                .addFamily(NODE_FAMILY).setFilter(NODE_EXISTS_FILTER));
+            includeAddAt = applyPropertyProjections(propertyProjections, NODE_FAMILY,
+                NODE_QUALIFIER_TYPE, get::addColumn);
+            gets.add(get);
+        }
+
+        boolean addAt = includeAddAt;
+        Result[] results = hbaseClient.get(gets, tables.nodeTableName());
+        List<Node> nodes = Arrays.stream(results).filter(result -> !result.isEmpty())
+            .map(result -> resultToNode(tables, result, addAt)).collect(Collectors.toList());
+        return new Timelined<>(nodes, Arrays.stream(results).anyMatch(Result::isStale));
     }
 
     @Override
     public Stream<Node> getNodes(GraphConfiguration graphConf, @Nullable List<String> nodeTypes,
         @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
         PropertyProjections propertyProjections) {
+        return getNodes(graphConf, nodeTypes, filter, sorts, propertyProjections, null,
+            new AtomicBoolean());
+    }
 
-        Pair<byte[], byte[]> nodeScanRows = createNodeScanRows();
+    @Override
+    public Stream<Node> getNodes(GraphConfiguration graphConf, @Nullable List<String> nodeTypes,
+        @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
+        PropertyProjections propertyProjections, long asOf) {
+        return getNodes(graphConf, nodeTypes, filter, sorts, propertyProjections,
+            Long.valueOf(asOf), new AtomicBoolean());
+    }
+
+    @Override public Timelined<List<Node>> getTimelinedNodes(GraphConfiguration graphConf,
+        @Nullable List<String> nodeTypes, @Nullable FilterPredicate filter,
+        @Nullable List<SortPredicate> sorts, PropertyProjections propertyProjections) {
+        AtomicBoolean stale = new AtomicBoolean();
+        try (Stream<Node> nodes = getNodes(graphConf, nodeTypes, filter, sorts,
+            propertyProjections, null, stale)) {
+            List<Node> ret = nodes.collect(Collectors.toList());
+            return new Timelined<>(ret, stale.get());
+        }
+    }
+
+    // stale is set once any of the rows scanned is stale
+    private Stream<Node> getNodes(GraphConfiguration graphConf, @Nullable List<String> nodeTypes,
+        @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
+        PropertyProjections propertyProjections, @Nullable Long asOf, AtomicBoolean stale) {
+        GraphTables tables = GraphTables.of(graphConf);
+
+        Pair<byte[], byte[]> nodeScanRows = tables.nodeScanRows();
         byte[] startRow = nodeScanRows.getFirst();
         byte[] stopRow = nodeScanRows.getSecond();
 
-        Scan scan = new Scan(startRow, stopRow);
+        Scan scan = withConsistency(graphConf, new Scan(startRow, stopRow).addFamily(NODE_FAMILY));
+        if (asOf != null) {
+            try {
+                scan.setTimeRange(asOfTimeRangeMin(graphConf, asOf), asOfTimeRangeMax(asOf));
+            } catch (IOException e) {
+                throw new GraphbaseException("an error occurred during setting the time range", e);
+            }
+        }
         if (nodeTypes != null && !nodeTypes.isEmpty()) {
             scan.setFilter(nodeTypesFilter(nodeTypes));
         }
@@ -326,36 +1104,23 @@ public class HBaseGraphStorage implements GraphStorage {
             propProjections = propertyProjections.merge(propertyKeys);
         }
 
-        boolean includeAddAt = true;
-
-        switch (propProjections.getType()) {
-            case NOTHING:
-                includeAddAt = false;
-
-                scan.addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE);
-                break;
-            case PARTIAL:
-                includeAddAt =
-                    propProjections.getPropertyKeys().contains(GraphbaseConstants.PROPERTY_ADD_AT);
-
-                scan.addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE);
-                propProjections.getPropertyKeys()
-                    .forEach(key -> scan.addColumn(NODE_FAMILY, Bytes.toBytes(key)));
-                break;
-        }
+        boolean includeAddAt =
+            applyPropertyProjections(propProjections, NODE_FAMILY, NODE_QUALIFIER_TYPE,
+                scan::addColumn);
 
-        boolean includeAddAt2 = includeAddAt; // too ugly
-        Stream<Node> ret = hbaseClient.scan(scan, getNodeTableName(graphConf.graphId()),
-            result -> resultToNode(result, includeAddAt2));
+        ScanStats stats = createScanStats(scan);
+        Function<Result, Node> decoder =
+            stats.decoder(result -> resultToNode(tables, recordStale(result, stale), includeAddAt));
+        Stream<Node> ret = hbaseClient.scan(scan, tables.nodeTableName(), decoder, stats);
 
         if (filter != null) {
             FilterExecutor filterExecutor = new FilterExecutor(filter);
-            ret = ret.filter(filterExecutor::execute);
+            ret = ret.filter(stats.filter(filterExecutor::execute));
         }
 
         if (sorts != null) {
             SortComparator sortComparator = new SortComparator(sorts);
-            ret = ret.sorted(sortComparator);
+            ret = ret.sorted(stats.comparator(sortComparator));
         }
 
         ret = ret.map(r -> {
@@ -364,30 +1129,55 @@ public class HBaseGraphStorage implements GraphStorage {
                 return new Node(r.id(), r.type(), properties);
             }
             return r;
+        }).map(stats::returned);
+
+        return ret.onClose(() -> {
+            recordScan(graphConf, "node", stats, filter != null);
+            slowQueryLog.log(graphConf, "node", nodeTypes, filter, sorts, propertyProjections,
+                stats, scan.getScanMetrics());
         });
+    }
 
-        return ret;
+    // the scan metrics of hbase are collected only for the slow query log
+    private ScanStats createScanStats(Scan scan) {
+        if (slowQueryLog.isEnabled()) {
+            scan.setScanMetricsEnabled(true);
+        }
+        return new ScanStats(slowQueryLog.isEnabled());
     }
 
-    @Override public boolean nodeExists(GraphConfiguration graphConf, String nodeId) {
-        return nodeExists(graphConf, createNodeRow(nodeId));
+    private void recordScan(GraphConfiguration graphConf, String entity, ScanStats stats,
+        boolean filtered) {
+        metrics.recordScan(graphConf.graphId(), entity, stats.rowsScanned(), stats.rowsReturned(),
+            stats.bytesDecoded(), filtered);
+        notifyScannedRows(graphConf, stats.rowsScanned());
     }
 
-    private boolean nodeExists(GraphConfiguration graphConf, byte[] row) {
-        Get get = new Get(row).addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE);
-        return hbaseClient.exists(get, getNodeTableName(graphConf.graphId()));
+    // the time ranges are half-open, so the cells written at asOf are included. the families keep
+    // the deleted cells, which the reads with a time range ending before the delete see
+    private static long asOfTimeRangeMax(long asOf) {
+        Preconditions.checkArgument(asOf >= 0 && asOf < HConstants.LATEST_TIMESTAMP,
+            "asOf is out of range");
+        return asOf + 1;
     }
 
-    private byte[] createNodeRow(String nodeId) {
-        Object[] values = new Object[] {NODE_ROW_TYPE, HASH.hash(Bytes.toBytes(nodeId)), nodeId};
-        PositionedByteRange byteRange =
-            new SimplePositionedMutableByteRange(NODE_ROW_STRUCT.encodedLength(values));
-        NODE_ROW_STRUCT.encode(byteRange, values);
-        return byteRange.getBytes();
+    // the history of a shared graph starts when it was created. the range is empty when asOf is
+    // before it
+    private static long asOfTimeRangeMin(GraphConfiguration graphConf, long asOf) {
+        if (graphConf.createdAt() == null) {
+            return 0;
+        }
+        return Math.min(graphConf.createdAt(), asOfTimeRangeMax(asOf));
     }
 
-    private Pair<byte[], byte[]> createNodeScanRows() {
-        return NODE_SCAN_ROWS;
+    @Override public boolean nodeExists(GraphConfiguration graphConf, String nodeId) {
+        GraphTables tables = GraphTables.of(graphConf);
+        return nodeExists(tables, tables.nodeRow(nodeId));
+    }
+
+    private boolean nodeExists(GraphTables tables, byte[] row) {
+        Get get = new Get(row).addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE);
+        return hbaseClient.exists(get, tables.nodeTableName());
     }
 
     private Filter nodeTypesFilter(List<String> nodeTypes) {
@@ -397,14 +1187,41 @@ public class HBaseGraphStorage implements GraphStorage {
         return new FilterList(FilterList.Operator.MUST_PASS_ONE, filters);
     }
 
-    private void populatePutWithProperties(Put put, byte[] family, Map<String, Object> properties) {
+    private static void populatePutWithProperties(Put put, byte[] family,
+        Map<String, Object> properties) {
         properties.forEach((key, value) -> put
-            .addColumn(family, Bytes.toBytes(key), JSON.writeValueAsBytes(value)));
+            .addColumn(family, Bytes.toBytes(key), PropertyValues.encode(value)));
     }
 
-    private Node resultToNode(Result result, boolean includeAddAt) {
-        PositionedByteRange byteRange = new SimplePositionedByteRange(result.getRow());
-        String nodeId = (String) NODE_ROW_STRUCT.decode(byteRange, 2);
+    // returns whether the addAt property should be included in the results
+    private static boolean applyPropertyProjections(PropertyProjections propertyProjections,
+        byte[] family, byte[] markerQualifier, BiConsumer<byte[], byte[]> columnAdder) {
+        switch (propertyProjections.getType()) {
+            case NOTHING:
+                columnAdder.accept(family, markerQualifier);
+                return false;
+            case PARTIAL:
+                columnAdder.accept(family, markerQualifier);
+                propertyProjections.getPropertyKeys()
+                    .forEach(key -> columnAdder.accept(family, Bytes.toBytes(key)));
+                return propertyProjections.getPropertyKeys()
+                    .contains(GraphbaseConstants.PROPERTY_ADD_AT);
+            default:
+                return true;
+        }
+    }
+
+    // the version is read with all the properties, and otherwise needs its own column. a column
+    // added after the whole family would replace it
+    private static void applyVersionProjection(PropertyProjections propertyProjections,
+        byte[] family, BiConsumer<byte[], byte[]> columnAdder) {
+        if (propertyProjections.getType() != PropertyProjections.Type.ALL) {
+            columnAdder.accept(family, VERSION_QUALIFIER);
+        }
+    }
+
+    private Node resultToNode(GraphTables tables, Result result, boolean includeAddAt) {
+        String nodeId = tables.nodeId(result.getRow());
         String nodeType = Bytes.toString(result.getValue(NODE_FAMILY, NODE_QUALIFIER_TYPE));
         return new Node(nodeId, nodeType, resultToProperties(result, NODE_FAMILY, includeAddAt));
     }
@@ -414,9 +1231,11 @@ public class HBaseGraphStorage implements GraphStorage {
         Map<String, Object> ret = new HashMap<>();
 
         result.getMap().get(family).forEach((key, value) -> {
+            if (Bytes.equals(key, VERSION_QUALIFIER)) {
+                return;
+            }
             if (key.length > 0) {
-                ret.put(Bytes.toString(key),
-                    JSON.readValue(value.firstEntry().getValue(), Object.class));
+                ret.put(Bytes.toString(key), PropertyValues.decode(value.firstEntry().getValue()));
             } else {
                 // case of NODE_QUALIFIER_TYPE or REL_QUALIFIER_EXISTENCE_MARKER
 
@@ -432,94 +1251,534 @@ public class HBaseGraphStorage implements GraphStorage {
     @Override
     public void createRelationship(GraphConfiguration graphConf, String outNodeId, String relType,
         String inNodeId, Map<String, Object> properties) {
-        Put put = new Put(createRelRow(outNodeId, relType, inNodeId));
-        put.addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER, EXISTENCE_MARKER);
-        populatePutWithProperties(put, REL_FAMILY, properties);
+        GraphTables tables = GraphTables.of(graphConf);
+        Put put = withDurability(graphConf, createRelPut(tables, outNodeId, relType, inNodeId,
+            properties, HConstants.LATEST_TIMESTAMP));
 
         if (!hbaseClient
             .checkAndPut(put.getRow(), REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER, null, put,
-                getRelTableName(graphConf.graphId()))) {
+                tables.relTableName())) {
             throw new RelationshipAlreadyExistsException();
         }
+
+        incrementDegrees(graphConf, tables, outNodeId, relType, inNodeId, 1L);
+    }
+
+    // MERGE is one checkAndPut when the relationship exists. otherwise it's created like
+    // createRelationship, so that the degree counters are incremented only by the upsert which
+    // creates it, and the upsert starts over if another one creates it first. REPLACE creates it
+    // or not in its checkAndMutate
+    @Override public String upsertRelationship(GraphConfiguration graphConf, Relationship rel,
+        UpsertMode mode) {
+        GraphTables tables = GraphTables.of(graphConf);
+        TableName relTableName = tables.relTableName();
+        Put put = createRelUpsertPut(graphConf, tables, rel);
+
+        if (mode == UpsertMode.REPLACE) {
+            if (replaceRow(graphConf, put, REL_FAMILY, relTableName)) {
+                incrementDegrees(graphConf, tables, rel.outNodeId(), rel.type(),
+                    rel.inNodeId(), 1L);
+            }
+            return formatVersion(putVersion(put, REL_FAMILY));
+        }
+
+        for (int attempt = 0; attempt < conditionalWriteMaxAttempts; attempt++) {
+            if (hbaseClient.checkAndPut(put.getRow(), REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER,
+                EXISTENCE_MARKER, put, relTableName)) {
+                return formatVersion(putVersion(put, REL_FAMILY));
+            }
+
+            if (hbaseClient.checkAndPut(put.getRow(), REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER,
+                null, put, relTableName)) {
+                incrementDegrees(graphConf, tables, rel.outNodeId(), rel.type(),
+                    rel.inNodeId(), 1L);
+                return formatVersion(putVersion(put, REL_FAMILY));
+            }
+        }
+        throw new WriteConflictException();
+    }
+
+    // like importing, the check of which relationships exist and the writes are not atomic, so a
+    // relationship created concurrently by another write has its degree counters incremented twice
+    @Override public void upsertRelationships(GraphConfiguration graphConf,
+        List<Relationship> rels, UpsertMode mode) {
+        GraphTables tables = GraphTables.of(graphConf);
+
+        Map<String, Relationship> lastRels = new LinkedHashMap<>();
+        rels.forEach(rel -> lastRels.put(relId(rel), rel));
+        if (lastRels.isEmpty()) {
+            return;
+        }
+
+        List<Relationship> candidates = new ArrayList<>(lastRels.values());
+        List<Put> puts = candidates.stream().map(rel -> createRelUpsertPut(graphConf, tables, rel))
+            .collect(Collectors.toList());
+
+        List<org.apache.hadoop.hbase.client.Mutation> mutations = new ArrayList<>();
+        boolean[] exists = new boolean[puts.size()];
+        if (mode == UpsertMode.REPLACE) {
+            Result[] current = getCurrentRows(puts, REL_FAMILY, tables.relTableName());
+            for (int i = 0; i < puts.size(); i++) {
+                exists[i] = current[i].containsColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER);
+                Delete delete = createReplaceDelete(graphConf, puts.get(i), REL_FAMILY,
+                    current[i]);
+                if (delete != null) {
+                    mutations.add(delete);
+                }
+            }
+        } else {
+            exists = hbaseClient.exists(puts.stream().map(
+                put -> new Get(put.getRow()).addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER))
+                .collect(Collectors.toList()), tables.relTableName());
+        }
+        mutations.addAll(puts);
+        ensureDegreeFamily(tables);
+
+        List<Increment> increments = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            Relationship rel = candidates.get(i);
+            if (!exists[i]) {
+                increments.addAll(createDegreeIncrements(graphConf, tables, rel.outNodeId(),
+                    rel.type(), rel.inNodeId(), 1L));
+            }
+        }
+
+        hbaseClient.batch(mutations, tables.relTableName());
+        if (!increments.isEmpty()) {
+            hbaseClient.batch(increments, tables.nodeTableName());
+        }
+    }
+
+    private static Put createRelUpsertPut(GraphConfiguration graphConf, GraphTables tables,
+        Relationship rel) {
+        Preconditions.checkArgument(rel.type() != null && rel.inNodeId() != null,
+            "the type and the in node of a relationship must be set");
+        return withDurability(graphConf,
+            createRelPut(tables, rel.outNodeId(), rel.type(), rel.inNodeId(),
+                propertiesOrEmpty(rel.properties()), HConstants.LATEST_TIMESTAMP));
     }
 
     @Override
     public void deleteRelationship(GraphConfiguration graphConf, String outNodeId, String relType,
         String inNodeId) {
-        Delete delete = new Delete(createRelRow(outNodeId, relType, inNodeId));
+        GraphTables tables = GraphTables.of(graphConf);
+        Delete delete =
+            withDurability(graphConf, new Delete(tables.relRow(outNodeId, relType, inNodeId)));
 
         if (!hbaseClient.checkAndDelete(delete.getRow(), REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER,
-            EXISTENCE_MARKER, delete, getRelTableName(graphConf.graphId()))) {
+            EXISTENCE_MARKER, delete, tables.relTableName())) {
             throw new RelationshipNotFoundException();
         }
+
+        incrementDegrees(graphConf, tables, outNodeId, relType, inNodeId, -1L);
     }
 
-    @Override
-    public void updateRelationship(GraphConfiguration graphConf, String outNodeId, String relType,
-        String inNodeId, Mutation mutation) {
+    // the cells of a relationship, also written by HBaseBulkLoader
+    static Put createRelPut(GraphTables tables, String outNodeId, String relType, String inNodeId,
+        Map<String, Object> properties, long timestamp) {
+        Put put = new Put(tables.relRow(outNodeId, relType, inNodeId), timestamp);
+        put.addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER, EXISTENCE_MARKER);
+        put.addColumn(REL_FAMILY, VERSION_QUALIFIER, createVersion());
+        populatePutWithProperties(put, REL_FAMILY, properties);
+        return put;
+    }
 
-        byte[] row = createRelRow(outNodeId, relType, inNodeId);
+    // a degree counter holding an absolute value, for HBaseBulkLoader
+    static KeyValue createDegreeCell(GraphTables tables, String nodeId, Direction direction,
+        String relType, long degree, long timestamp) {
+        Preconditions.checkArgument(direction != Direction.BOTH);
+        byte qualifierPrefix =
+            direction == Direction.OUT ? DEGREE_QUALIFIER_OUT : DEGREE_QUALIFIER_IN;
+        return new KeyValue(tables.nodeRow(nodeId), DEGREE_FAMILY,
+            createDegreeQualifier(qualifierPrefix, relType), timestamp, Bytes.toBytes(degree));
+    }
 
-        if (!relExists(graphConf, row))
-            throw new RelationshipNotFoundException();
+    static boolean isDegreeCell(Cell cell) {
+        return CellUtil.matchingFamily(cell, DEGREE_FAMILY);
+    }
 
-        RowMutations rowMutations = new RowMutations(row);
+    // the counters are updated after the relationship itself, so they can be briefly behind it
+    private void incrementDegrees(GraphConfiguration graphConf, GraphTables tables,
+        String outNodeId, String relType, String inNodeId, long amount) {
+        ensureDegreeFamily(tables);
+        hbaseClient.batch(
+            createDegreeIncrements(graphConf, tables, outNodeId, relType, inNodeId, amount),
+            tables.nodeTableName());
+    }
+
+    private static List<Increment> createDegreeIncrements(GraphConfiguration graphConf,
+        GraphTables tables, String outNodeId, String relType, String inNodeId, long amount) {
+        Increment outIncrement = new Increment(tables.nodeRow(outNodeId))
+            .addColumn(DEGREE_FAMILY, createDegreeQualifier(DEGREE_QUALIFIER_OUT, relType), amount);
+        Increment inIncrement = new Increment(tables.nodeRow(inNodeId))
+            .addColumn(DEGREE_FAMILY, createDegreeQualifier(DEGREE_QUALIFIER_IN, relType), amount);
+        return Arrays.asList(withDurability(graphConf, outIncrement),
+            withDurability(graphConf, inIncrement));
+    }
 
-        if (mutation.setProperties() != null && mutation.setProperties().size() > 0) {
-            Put put = new Put(row);
-            populatePutWithProperties(put, REL_FAMILY, mutation.setProperties());
-            addMutations(rowMutations, put);
+    // the reads of a graph use its consistency, while the reads done for the writes, like the
+    // existence checks, stay STRONG
+    private static <T extends Query> T withConsistency(GraphConfiguration graphConf, T query) {
+        if (graphConf.consistency() != null) {
+            query.setConsistency(graphConf.consistency());
         }
+        return query;
+    }
 
-        if (mutation.deleteKeys() != null && mutation.deleteKeys().size() > 0) {
-            Delete delete = new Delete(row);
-            mutation.deleteKeys().forEach(key -> delete.addColumns(REL_FAMILY, Bytes.toBytes(key)));
-            addMutations(rowMutations, delete);
+    private static Result recordStale(Result result, AtomicBoolean stale) {
+        if (result.isStale()) {
+            stale.set(true);
+        }
+        return result;
+    }
+
+    // every mutation of a graph is written with its durability, which is the one of the tables
+    // unless set. the RowMutations take the durability of the mutations in them
+    private static <T extends org.apache.hadoop.hbase.client.Mutation> T withDurability(
+        GraphConfiguration graphConf, T mutation) {
+        if (graphConf.durability() != null) {
+            mutation.setDurability(toHBaseDurability(graphConf.durability()));
+        }
+        return mutation;
+    }
+
+    // the model enums have the names of the hbase ones
+    private static org.apache.hadoop.hbase.client.Durability toHBaseDurability(
+        Durability durability) {
+        return org.apache.hadoop.hbase.client.Durability.valueOf(durability.name());
+    }
+
+    @Override public ImportResult importNodes(GraphConfiguration graphConf,
+        Stream<EntityRecord<Node>> records) {
+        GraphTables tables = GraphTables.of(graphConf);
+        TableName nodeTableName = tables.nodeTableName();
+        return importer.importEntities(records, nodeTableName,
+            new HBaseImporter.EntityWriter<Node>() {
+                @Override public String id(Node node) {
+                    return node.id();
+                }
+
+                @Override public Get existenceGet(Node node) {
+                    return new Get(tables.nodeRow(node.id()))
+                        .addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE);
+                }
+
+                @Override public List<HBaseImporter.TableMutation> mutations(Node node) {
+                    return Collections.singletonList(new HBaseImporter.TableMutation(nodeTableName,
+                        withDurability(graphConf, createNodePut(tables, node.id(), node.type(),
+                            node.properties(), HConstants.LATEST_TIMESTAMP))));
+                }
+            }, Collections.singletonMap(nodeTableName, tables::nodeId));
+    }
+
+    @Override public ImportResult importRelationships(GraphConfiguration graphConf,
+        Stream<EntityRecord<Relationship>> records) {
+        GraphTables tables = GraphTables.of(graphConf);
+        TableName nodeTableName = tables.nodeTableName();
+        TableName relTableName = tables.relTableName();
+        ensureDegreeFamily(tables);
+
+        Map<TableName, Function<byte[], String>> rowDescribers = new HashMap<>();
+        rowDescribers.put(nodeTableName, tables::nodeId);
+        rowDescribers.put(relTableName, row -> relId(tables.rel(row)));
+
+        return importer.importEntities(records, relTableName,
+            new HBaseImporter.EntityWriter<Relationship>() {
+                @Override public String id(Relationship rel) {
+                    return relId(rel);
+                }
+
+                @Override public Get existenceGet(Relationship rel) {
+                    return new Get(tables.relRow(rel.outNodeId(), rel.type(), rel.inNodeId()))
+                        .addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER);
+                }
+
+                @Override public List<HBaseImporter.TableMutation> mutations(Relationship rel) {
+                    List<HBaseImporter.TableMutation> ret = new ArrayList<>();
+                    ret.add(new HBaseImporter.TableMutation(relTableName,
+                        withDurability(graphConf, createRelPut(tables, rel.outNodeId(),
+                            rel.type(), rel.inNodeId(), rel.properties(),
+                            HConstants.LATEST_TIMESTAMP))));
+                    createDegreeIncrements(graphConf, tables, rel.outNodeId(), rel.type(),
+                        rel.inNodeId(), 1)
+                        .forEach(increment -> ret
+                            .add(new HBaseImporter.TableMutation(nodeTableName, increment)));
+                    return ret;
+                }
+            }, rowDescribers);
+    }
+
+    // the scans and encoders of HBaseExporter, which writes the property values as they are
+    // stored, without decoding them, except the ones written by the operators
+    static Scan createNodeExportScan(GraphTables tables) {
+        return createScan(tables.nodeScanRows()).addFamily(NODE_FAMILY)
+            .setCaching(1000).setCacheBlocks(false);
+    }
+
+    static Scan createRelExportScan(GraphTables tables) {
+        return createScan(tables.relScanRows()).addFamily(REL_FAMILY)
+            .setCaching(1000).setCacheBlocks(false);
+    }
+
+    static void writeRawNode(GraphTables tables, Result result, RawEntityWriter writer)
+        throws IOException {
+        writer.writeNode(tables.nodeId(result.getRow()),
+            Bytes.toString(result.getValue(NODE_FAMILY, NODE_QUALIFIER_TYPE)),
+            rawProperties(result, NODE_FAMILY));
+    }
+
+    static void writeRawRelationship(GraphTables tables, Result result, RawEntityWriter writer)
+        throws IOException {
+        Relationship rel = tables.rel(result.getRow());
+        writer.writeRelationship(rel.outNodeId(), rel.type(), rel.inNodeId(),
+            rawProperties(result, REL_FAMILY));
+    }
+
+    private static Map<String, byte[]> rawProperties(Result result, byte[] family) {
+        Map<String, byte[]> ret = new LinkedHashMap<>();
+        result.getFamilyMap(family).forEach((qualifier, value) -> {
+            // skipping NODE_QUALIFIER_TYPE or REL_QUALIFIER_EXISTENCE_MARKER, and the version
+            if (qualifier.length > 0 && !Bytes.equals(qualifier, VERSION_QUALIFIER)) {
+                ret.put(Bytes.toString(qualifier), PropertyValues.toJson(value));
+            }
+        });
+        return ret;
+    }
+
+    private static String relId(Relationship rel) {
+        return rel.outNodeId() + "-[" + rel.type() + "]->" + rel.inNodeId();
+    }
+
+    private static byte[] createDegreeQualifier(byte direction, String relType) {
+        return Bytes.add(new byte[] {direction}, Bytes.toBytes(relType));
+    }
+
+    @Override public long degree(GraphConfiguration graphConf, String nodeId, Direction direction,
+        @Nullable List<String> relTypes) {
+        return degrees(graphConf, Collections.singletonList(nodeId), direction, relTypes)
+            .get(nodeId);
+    }
+
+    @Override public Map<String, Long> degrees(GraphConfiguration graphConf,
+        Collection<String> nodeIds, Direction direction, @Nullable List<String> relTypes) {
+        Map<String, Long> ret = new HashMap<>();
+        nodeIds.forEach(nodeId -> ret.put(nodeId, 0L));
+        if (ret.isEmpty()) {
+            return ret;
+        }
+
+        GraphTables tables = GraphTables.of(graphConf);
+        ensureDegreeFamily(tables);
+        List<byte[]> directions = new ArrayList<>();
+        if (direction != Direction.IN) {
+            directions.add(new byte[] {DEGREE_QUALIFIER_OUT});
+        }
+        if (direction != Direction.OUT) {
+            directions.add(new byte[] {DEGREE_QUALIFIER_IN});
+        }
+
+        List<Get> gets = new ArrayList<>();
+        for (String nodeId : ret.keySet()) {
+            Get get = withConsistency(graphConf, new Get(tables.nodeRow(nodeId)));
+            if (relTypes == null || relTypes.isEmpty()) {
+                get.addFamily(DEGREE_FAMILY);
+                if (directions.size() == 1) {
+                    get.setFilter(new ColumnPrefixFilter(directions.get(0)));
+                }
+            } else {
+                for (byte[] d : directions) {
+                    new HashSet<>(relTypes).forEach(relType -> get
+                        .addColumn(DEGREE_FAMILY, createDegreeQualifier(d[0], relType)));
+                }
+            }
+            gets.add(get);
         }
 
-        hbaseClient.mutateRow(rowMutations, getRelTableName(graphConf.graphId()));
+        hbaseClient.get(gets, tables.nodeTableName(), result -> {
+            String nodeId = tables.nodeId(result.getRow());
+            long degree = result.getFamilyMap(DEGREE_FAMILY).values().stream()
+                .mapToLong(Bytes::toLong).sum();
+            return new Pair<>(nodeId, degree);
+        }).forEach(pair -> ret.put(pair.getFirst(), pair.getSecond()));
+
+        return ret;
+    }
+
+    // counts the relationships again and writes the counters which are off, and returns how many
+    // there were. the counters of all the nodes are held in memory, and the relationships written
+    // meanwhile may be counted or not, so it's meant for when the graph isn't being written
+    @Override public long recomputeDegrees(GraphConfiguration graphConf) {
+        GraphTables tables = GraphTables.of(graphConf);
+        ensureDegreeFamily(tables);
+
+        // the qualifiers are kept as strings, as they are the direction and the UTF-8 type
+        Map<String, Map<String, Long>> degrees = new HashMap<>();
+        Scan relScan = createScan(tables.relScanRows())
+            .addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER).setFilter(new KeyOnlyFilter())
+            .setCaching(cascadeBatchSize);
+        try (Stream<Relationship> rels = hbaseClient
+            .scan(relScan, tables.relTableName(), result -> tables.rel(result.getRow()))) {
+            rels.forEach(rel -> {
+                degrees.computeIfAbsent(rel.outNodeId(), k -> new HashMap<>()).merge(
+                    Bytes.toString(createDegreeQualifier(DEGREE_QUALIFIER_OUT, rel.type())), 1L,
+                    Long::sum);
+                degrees.computeIfAbsent(rel.inNodeId(), k -> new HashMap<>()).merge(
+                    Bytes.toString(createDegreeQualifier(DEGREE_QUALIFIER_IN, rel.type())), 1L,
+                    Long::sum);
+            });
+        }
+
+        long ret = 0;
+        List<org.apache.hadoop.hbase.client.Mutation> mutations = new ArrayList<>();
+        Scan nodeScan =
+            createScan(tables.nodeScanRows()).addFamily(DEGREE_FAMILY).setCaching(cascadeBatchSize);
+        try (Stream<Result> results = hbaseClient
+            .scan(nodeScan, tables.nodeTableName(), Function.identity())) {
+            Iterator<Result> it = results.iterator();
+            while (it.hasNext()) {
+                Result result = it.next();
+                Map<String, Long> expected = degrees.remove(tables.nodeId(result.getRow()));
+                if (expected == null) {
+                    expected = new HashMap<>();
+                }
+
+                Put put = new Put(result.getRow());
+                Delete delete = new Delete(result.getRow());
+                for (Cell cell : result.rawCells()) {
+                    byte[] qualifier = CellUtil.cloneQualifier(cell);
+                    Long degree = expected.remove(Bytes.toString(qualifier));
+                    long actual = Bytes.toLong(CellUtil.cloneValue(cell));
+                    if (degree == null && actual != 0) {
+                        // up to the timestamp read, so that a later increment isn't masked
+                        delete.addColumns(DEGREE_FAMILY, qualifier, cell.getTimestamp());
+                    } else if (degree != null && degree != actual) {
+                        put.addColumn(DEGREE_FAMILY, qualifier, Bytes.toBytes(degree));
+                    }
+                }
+                expected.forEach((qualifier, degree) -> put
+                    .addColumn(DEGREE_FAMILY, Bytes.toBytes(qualifier), Bytes.toBytes(degree)));
+
+                ret += put.size() + delete.size();
+                addRecomputedDegrees(graphConf, tables, mutations, put, delete);
+            }
+        }
+
+        // the nodes whose counters were never written
+        for (Map.Entry<String, Map<String, Long>> entry : degrees.entrySet()) {
+            Put put = new Put(tables.nodeRow(entry.getKey()));
+            entry.getValue().forEach((qualifier, degree) -> put
+                .addColumn(DEGREE_FAMILY, Bytes.toBytes(qualifier), Bytes.toBytes(degree)));
+            ret += put.size();
+            addRecomputedDegrees(graphConf, tables, mutations, put, new Delete(put.getRow()));
+        }
+
+        if (!mutations.isEmpty()) {
+            hbaseClient.batch(mutations, tables.nodeTableName());
+        }
+        return ret;
+    }
+
+    private void addRecomputedDegrees(GraphConfiguration graphConf, GraphTables tables,
+        List<org.apache.hadoop.hbase.client.Mutation> mutations, Put put, Delete delete) {
+        if (!put.isEmpty()) {
+            mutations.add(withDurability(graphConf, put));
+        }
+        if (!delete.isEmpty()) {
+            mutations.add(withDurability(graphConf, delete));
+        }
+        if (mutations.size() >= cascadeBatchSize) {
+            hbaseClient.batch(new ArrayList<>(mutations), tables.nodeTableName());
+            mutations.clear();
+        }
+    }
+
+    @Override
+    public String updateRelationship(GraphConfiguration graphConf, String outNodeId,
+        String relType, String inNodeId, Mutation mutation, @Nullable String expectedVersion) {
+        GraphTables tables = GraphTables.of(graphConf);
+
+        return updateEntity(graphConf, tables.relTableName(),
+            tables.relRow(outNodeId, relType, inNodeId), REL_FAMILY,
+            REL_QUALIFIER_EXISTENCE_MARKER, CompareFilter.CompareOp.EQUAL, EXISTENCE_MARKER,
+            mutation, expectedVersion, RelationshipNotFoundException::new);
     }
 
     @Override
     public Optional<Relationship> getRelationship(GraphConfiguration graphConf, String outNodeId,
         String relType, String inNodeId, PropertyProjections propertyProjections) {
+        return getVersionedRelationship(graphConf, outNodeId, relType, inNodeId,
+            propertyProjections).map(Versioned::entity);
+    }
 
-        byte[] row = createRelRow(outNodeId, relType, inNodeId);
+    @Override public Optional<Versioned<Relationship>> getVersionedRelationship(
+        GraphConfiguration graphConf, String outNodeId, String relType, String inNodeId,
+        PropertyProjections propertyProjections) {
+        return getRelationship(graphConf, outNodeId, relType, inNodeId, propertyProjections)
+            .value();
+    }
 
-        Get get = new Get(row).setFilter(REL_EXISTS_FILTER);
+    @Override public Timelined<Optional<Relationship>> getTimelinedRelationship(
+        GraphConfiguration graphConf, String outNodeId, String relType, String inNodeId,
+        PropertyProjections propertyProjections) {
+        Timelined<Optional<Versioned<Relationship>>> rel =
+            getRelationship(graphConf, outNodeId, relType, inNodeId, propertyProjections);
+        return new Timelined<>(rel.value().map(Versioned::entity), rel.stale());
+    }
 
-        boolean includeAddAt = true;
+    private Timelined<Optional<Versioned<Relationship>>> getRelationship(
+        GraphConfiguration graphConf, String outNodeId, String relType, String inNodeId,
+        PropertyProjections propertyProjections) {
+        GraphTables tables = GraphTables.of(graphConf);
 
-        switch (propertyProjections.getType()) {
-            case NOTHING:
-                includeAddAt = false;
+        byte[] row = tables.relRow(outNodeId, relType, inNodeId);
 
-                get.addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER);
-                break;
-            case PARTIAL:
-                includeAddAt = propertyProjections.getPropertyKeys()
-                    .contains(GraphbaseConstants.PROPERTY_ADD_AT);
+        Get get = withConsistency(graphConf, new Get(row).setFilter(REL_EXISTS_FILTER));
 
-                get.addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER);
-                propertyProjections.getPropertyKeys()
-                    .forEach(key -> get.addColumn(REL_FAMILY, Bytes.toBytes(key)));
-                break;
-        }
+        boolean includeAddAt =
+            applyPropertyProjections(propertyProjections, REL_FAMILY,
+                REL_QUALIFIER_EXISTENCE_MARKER, get::addColumn);
+        applyVersionProjection(propertyProjections, REL_FAMILY, get::addColumn);
 
-        boolean includeAddAt2 = includeAddAt; // too ugly
-        return hbaseClient.get(get, getRelTableName(graphConf.graphId()),
-            result -> Optional.of(resultToRel(result, includeAddAt2)));
+        Result result = hbaseClient.get(get, tables.relTableName());
+        Optional<Versioned<Relationship>> rel = Optional.empty();
+        if (!result.isEmpty()) {
+            rel = Optional.of(new Versioned<>(resultToRel(tables, result, includeAddAt),
+                formatVersion(result.getValue(REL_FAMILY, VERSION_QUALIFIER))));
+        }
+        return new Timelined<>(rel, result.isStale());
     }
 
     @Override public Stream<Relationship> getRelationships(GraphConfiguration graphConf,
         @Nullable List<String> relTypes, @Nullable FilterPredicate filter,
         @Nullable List<SortPredicate> sorts, PropertyProjections propertyProjections) {
+        return getRelationships(graphConf, relTypes, filter, sorts, propertyProjections,
+            new AtomicBoolean());
+    }
+
+    @Override public Timelined<List<Relationship>> getTimelinedRelationships(
+        GraphConfiguration graphConf, @Nullable List<String> relTypes,
+        @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
+        PropertyProjections propertyProjections) {
+        AtomicBoolean stale = new AtomicBoolean();
+        try (Stream<Relationship> rels = getRelationships(graphConf, relTypes, filter, sorts,
+            propertyProjections, stale)) {
+            List<Relationship> ret = rels.collect(Collectors.toList());
+            return new Timelined<>(ret, stale.get());
+        }
+    }
 
-        Pair<byte[], byte[]> relScanRows = createRelScanRows();
+    private Stream<Relationship> getRelationships(GraphConfiguration graphConf,
+        @Nullable List<String> relTypes, @Nullable FilterPredicate filter,
+        @Nullable List<SortPredicate> sorts, PropertyProjections propertyProjections,
+        AtomicBoolean stale) {
+        GraphTables tables = GraphTables.of(graphConf);
+
+        Pair<byte[], byte[]> relScanRows = tables.relScanRows();
         byte[] startRow = relScanRows.getFirst();
         byte[] stopRow = relScanRows.getSecond();
 
-        Scan scan = new Scan(startRow, stopRow).setFilter(REL_EXISTS_FILTER);
+        Scan scan =
+            withConsistency(graphConf, new Scan(startRow, stopRow).setFilter(REL_EXISTS_FILTER));
 
         PropertyProjections propProjections = propertyProjections;
         if (filter != null || sorts != null) {
@@ -536,41 +1795,28 @@ public class HBaseGraphStorage implements GraphStorage {
             propProjections = propertyProjections.merge(propertyKeys);
         }
 
-        boolean includeAddAt = true;
-
-        switch (propProjections.getType()) {
-            case NOTHING:
-                includeAddAt = false;
-
-                scan.addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER);
-                break;
-            case PARTIAL:
-                includeAddAt =
-                    propProjections.getPropertyKeys().contains(GraphbaseConstants.PROPERTY_ADD_AT);
-
-                scan.addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER);
-                propProjections.getPropertyKeys()
-                    .forEach(key -> scan.addColumn(REL_FAMILY, Bytes.toBytes(key)));
-                break;
-        }
+        boolean includeAddAt =
+            applyPropertyProjections(propProjections, REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER,
+                scan::addColumn);
 
-        boolean includeAddAt2 = includeAddAt; // too ugly
-        Stream<Relationship> ret = hbaseClient.scan(scan, getRelTableName(graphConf.graphId()),
-            result -> resultToRel(result, includeAddAt2));
+        ScanStats stats = createScanStats(scan);
+        Function<Result, Relationship> decoder =
+            stats.decoder(result -> resultToRel(tables, recordStale(result, stale), includeAddAt));
+        Stream<Relationship> ret = hbaseClient.scan(scan, tables.relTableName(), decoder, stats);
 
         if (relTypes != null && !relTypes.isEmpty()) {
             Set<String> typesSet = new HashSet<>(relTypes);
-            ret = ret.filter(r -> typesSet.contains(r.type()));
+            ret = ret.filter(stats.filter(r -> typesSet.contains(r.type())));
         }
 
         if (filter != null) {
             FilterExecutor filterExecutor = new FilterExecutor(filter);
-            ret = ret.filter(filterExecutor::execute);
+            ret = ret.filter(stats.filter(filterExecutor::execute));
         }
 
         if (sorts != null) {
             SortComparator sortComparator = new SortComparator(sorts);
-            ret = ret.sorted(sortComparator);
+            ret = ret.sorted(stats.comparator(sortComparator));
         }
 
         ret = ret.map(r -> {
@@ -579,41 +1825,334 @@ public class HBaseGraphStorage implements GraphStorage {
                 return new Relationship(r.outNodeId(), r.type(), r.inNodeId(), properties);
             }
             return r;
+        }).map(stats::returned);
+
+        boolean filtered = filter != null || (relTypes != null && !relTypes.isEmpty());
+        return ret.onClose(() -> {
+            recordScan(graphConf, "relationship", stats, filtered);
+            slowQueryLog.log(graphConf, "relationship", relTypes, filter, sorts,
+                propertyProjections, stats, scan.getScanMetrics());
         });
+    }
 
-        return ret;
+    @Override public long countNodes(GraphConfiguration graphConf,
+        @Nullable List<String> nodeTypes, @Nullable FilterPredicate filter) {
+        GraphTables tables = GraphTables.of(graphConf);
+        if (filter == null) {
+            return countInParallel(graphConf,
+                withConsistency(graphConf, createNodeKeyOnlyScan(tables, nodeTypes)),
+                tables.nodeTableName(), result -> true);
+        }
+
+        Scan scan = withConsistency(graphConf,
+            createScan(tables.nodeScanRows()).addFamily(NODE_FAMILY));
+        if (nodeTypes != null && !nodeTypes.isEmpty()) {
+            scan.setFilter(nodeTypesFilter(nodeTypes));
+        }
+        applyPropertyProjections(
+            withProperties(new FilterPropertyKeysExtractor(filter).extract()), NODE_FAMILY,
+            NODE_QUALIFIER_TYPE, scan::addColumn);
+
+        FilterExecutor filterExecutor = new FilterExecutor(filter);
+        return countInParallel(graphConf, scan, tables.nodeTableName(),
+            result -> filterExecutor.execute(resultToNode(tables, result, false)));
     }
 
-    @Override public boolean relationshipExists(GraphConfiguration graphConf, String outNodeId,
-        String relType, String inNodeId) {
-        return relExists(graphConf, createRelRow(outNodeId, relType, inNodeId));
+    @Override public Stream<String> getNodeIds(GraphConfiguration graphConf,
+        @Nullable List<String> nodeTypes, @Nullable FilterPredicate filter) {
+        if (filter != null) {
+            return getNodes(graphConf, nodeTypes, filter, null, withoutProperties())
+                .map(Node::id);
+        }
+
+        GraphTables tables = GraphTables.of(graphConf);
+        return scan(graphConf, withConsistency(graphConf, createNodeKeyOnlyScan(tables, nodeTypes)),
+            tables.nodeTableName(), result -> tables.nodeId(result.getRow()));
     }
 
-    private boolean relExists(GraphConfiguration graphConf, byte[] row) {
-        Get get = new Get(row).addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER);
-        return hbaseClient.exists(get, getRelTableName(graphConf.graphId()));
+    private Scan createNodeKeyOnlyScan(GraphTables tables, @Nullable List<String> nodeTypes) {
+        Scan scan = createScan(tables.nodeScanRows());
+        if (nodeTypes == null || nodeTypes.isEmpty()) {
+            // the type is the first cell of the node family
+            scan.addFamily(NODE_FAMILY)
+                .setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+        } else {
+            scan.addColumn(NODE_FAMILY, NODE_QUALIFIER_TYPE).setFilter(nodeTypesFilter(nodeTypes));
+        }
+        return scan;
     }
 
-    private byte[] createRelRow(String outNodeId, String relType, String inNodeId) {
-        Object[] values =
-            new Object[] {REL_ROW_TYPE, HASH.hash(Bytes.toBytes(outNodeId)), outNodeId, relType,
-                inNodeId};
-        PositionedByteRange byteRange =
-            new SimplePositionedMutableByteRange(REL_STRUCT.encodedLength(values));
-        REL_STRUCT.encode(byteRange, values);
-        return byteRange.getBytes();
+    @Override public long countRelationships(GraphConfiguration graphConf,
+        @Nullable List<String> relTypes, @Nullable FilterPredicate filter) {
+        GraphTables tables = GraphTables.of(graphConf);
+        Predicate<Result> typePredicate = relTypesPredicate(tables, relTypes);
+        if (filter == null) {
+            return countInParallel(graphConf,
+                withConsistency(graphConf, createRelKeyOnlyScan(tables)), tables.relTableName(),
+                typePredicate);
+        }
+
+        Scan scan = withConsistency(graphConf,
+            createScan(tables.relScanRows()).setFilter(REL_EXISTS_FILTER));
+        applyPropertyProjections(
+            withProperties(new FilterPropertyKeysExtractor(filter).extract()), REL_FAMILY,
+            REL_QUALIFIER_EXISTENCE_MARKER, scan::addColumn);
+
+        FilterExecutor filterExecutor = new FilterExecutor(filter);
+        return countInParallel(graphConf, scan, tables.relTableName(),
+            typePredicate
+                .and(result -> filterExecutor.execute(resultToRel(tables, result, false))));
+    }
+
+    // the relationships are returned without properties
+    @Override public Stream<Relationship> getRelationshipIds(GraphConfiguration graphConf,
+        @Nullable List<String> relTypes, @Nullable FilterPredicate filter) {
+        if (filter != null) {
+            return getRelationships(graphConf, relTypes, filter, null, withoutProperties());
+        }
+
+        GraphTables tables = GraphTables.of(graphConf);
+        return scan(graphConf, withConsistency(graphConf, createRelKeyOnlyScan(tables)),
+            tables.relTableName(), Function.identity()).filter(relTypesPredicate(tables, relTypes))
+            .map(result -> resultToRel(tables, result, false));
     }
 
-    private Pair<byte[], byte[]> createRelScanRows() {
-        return REL_SCAN_ROWS;
+    private Scan createRelKeyOnlyScan(GraphTables tables) {
+        // the existence marker is the first cell of the relationship family
+        return createScan(tables.relScanRows()).addFamily(REL_FAMILY)
+            .setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+    }
+
+    // the relationship type is in the row key, so it is checked without reading any cell
+    private static Predicate<Result> relTypesPredicate(GraphTables tables,
+        @Nullable List<String> relTypes) {
+        if (relTypes == null || relTypes.isEmpty()) {
+            return result -> true;
+        }
+
+        Set<String> typesSet = new HashSet<>(relTypes);
+        return result -> typesSet.contains(tables.relType(result.getRow()));
+    }
+
+    @Override public <A, R> R collectNodes(GraphConfiguration graphConf,
+        @Nullable List<String> nodeTypes, @Nullable FilterPredicate filter,
+        PropertyProjections propertyProjections, Collector<? super Node, A, R> collector) {
+        GraphTables tables = GraphTables.of(graphConf);
+        Scan scan = withConsistency(graphConf,
+            createScan(tables.nodeScanRows()).addFamily(NODE_FAMILY));
+        if (nodeTypes != null && !nodeTypes.isEmpty()) {
+            scan.setFilter(nodeTypesFilter(nodeTypes));
+        }
+
+        PropertyProjections propProjections = propertyProjections;
+        if (filter != null) {
+            propProjections =
+                propertyProjections.merge(new FilterPropertyKeysExtractor(filter).extract());
+        }
+        boolean includeAddAt =
+            applyPropertyProjections(propProjections, NODE_FAMILY, NODE_QUALIFIER_TYPE,
+                scan::addColumn);
+
+        FilterExecutor filterExecutor = filter != null ? new FilterExecutor(filter) : null;
+        return collectInParallel(graphConf, scan, tables.nodeTableName(), results -> {
+            Stream<Node> nodes =
+                results.map(result -> resultToNode(tables, result, includeAddAt));
+            if (filterExecutor != null) {
+                nodes = nodes.filter(filterExecutor::execute);
+            }
+            return nodes;
+        }, collector);
+    }
+
+    @Override public <A, R> R collectRelationships(GraphConfiguration graphConf,
+        @Nullable List<String> relTypes, @Nullable FilterPredicate filter,
+        PropertyProjections propertyProjections,
+        Collector<? super Relationship, A, R> collector) {
+        GraphTables tables = GraphTables.of(graphConf);
+        Scan scan = withConsistency(graphConf,
+            createScan(tables.relScanRows()).setFilter(REL_EXISTS_FILTER));
+
+        PropertyProjections propProjections = propertyProjections;
+        if (filter != null) {
+            propProjections =
+                propertyProjections.merge(new FilterPropertyKeysExtractor(filter).extract());
+        }
+        boolean includeAddAt =
+            applyPropertyProjections(propProjections, REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER,
+                scan::addColumn);
+
+        Predicate<Result> typePredicate = relTypesPredicate(tables, relTypes);
+        FilterExecutor filterExecutor = filter != null ? new FilterExecutor(filter) : null;
+        return collectInParallel(graphConf, scan, tables.relTableName(), results -> {
+            Stream<Relationship> rels = results.filter(typePredicate)
+                .map(result -> resultToRel(tables, result, includeAddAt));
+            if (filterExecutor != null) {
+                rels = rels.filter(filterExecutor::execute);
+            }
+            return rels;
+        }, collector);
+    }
+
+    // each region is folded into its own container, and the containers are combined at the end.
+    // each region counts its rows in stats of its own, as the stats aren't synchronized
+    private <T, A, R> R collectInParallel(GraphConfiguration graphConf, Scan scan,
+        TableName tableName, Function<Stream<Result>, Stream<T>> decoder,
+        Collector<? super T, A, R> collector) {
+        List<Scan> scans = hbaseClient.splitScanByRegion(scan, tableName);
+        LongAdder scannedRows = new LongAdder();
+        List<A> partials;
+        try {
+            partials = hbaseClient.parallelScan(scans, tableName, results -> {
+                ScanStats stats = new ScanStats();
+                A container = collector.supplier().get();
+                try {
+                    decoder.apply(results.map(stats.decoder(Function.identity())))
+                        .forEach(entity -> collector.accumulator().accept(container, entity));
+                } finally {
+                    scannedRows.add(stats.rowsScanned());
+                }
+                return container;
+            });
+        } finally {
+            notifyScannedRows(graphConf, scannedRows.sum());
+        }
+
+        A merged = partials.stream().reduce(collector.combiner())
+            .orElseGet(collector.supplier());
+        return collector.finisher().apply(merged);
+    }
+
+    private long countInParallel(GraphConfiguration graphConf, Scan scan, TableName tableName,
+        Predicate<Result> predicate) {
+        return collectInParallel(graphConf, scan, tableName, results -> results.filter(predicate),
+            Collectors.counting());
+    }
+
+    @Override public Stream<Relationship> getOutgoingRelationships(GraphConfiguration graphConf,
+        Collection<String> outNodeIds, @Nullable List<String> relTypes,
+        PropertyProjections propertyProjections) {
+
+        if (outNodeIds.isEmpty()) {
+            return Stream.empty();
+        }
+
+        GraphTables tables = GraphTables.of(graphConf);
+        List<byte[]> prefixes = new ArrayList<>();
+        for (String outNodeId : new HashSet<>(outNodeIds)) {
+            if (relTypes == null || relTypes.isEmpty()) {
+                prefixes.add(tables.relPrefix(outNodeId));
+            } else {
+                new HashSet<>(relTypes)
+                    .forEach(relType -> prefixes.add(tables.relPrefix(outNodeId, relType)));
+            }
+        }
+
+        // all the ranges are read by a single scan, so the outgoing relationships of each node
+        // come back contiguously and ordered by the relationship type and inNodeId
+        Scan scan =
+            withConsistency(graphConf, HBaseClient.createPrefixScan(prefixes, REL_EXISTS_FILTER));
+
+        boolean includeAddAt =
+            applyPropertyProjections(propertyProjections, REL_FAMILY,
+                REL_QUALIFIER_EXISTENCE_MARKER, scan::addColumn);
+
+        return scan(graphConf, scan, tables.relTableName(),
+            result -> resultToRel(tables, result, includeAddAt));
+    }
+
+    @Override public Stream<Relationship> getIncomingRelationships(GraphConfiguration graphConf,
+        Collection<String> inNodeIds, @Nullable List<String> relTypes,
+        PropertyProjections propertyProjections) {
+
+        if (inNodeIds.isEmpty()) {
+            return Stream.empty();
+        }
+
+        GraphTables tables = GraphTables.of(graphConf);
+        RegexStringComparator comparator = new RegexStringComparator(
+            GraphTables.relInNodeRowRegex(inNodeIds, relTypes), Pattern.DOTALL);
+        comparator.setCharset(StandardCharsets.ISO_8859_1);
+        Filter filter = new FilterList(new RowFilter(CompareFilter.CompareOp.EQUAL, comparator),
+            REL_EXISTS_FILTER);
+        Scan scan = withConsistency(graphConf, createScan(tables.relScanRows()).setFilter(filter));
+
+        boolean includeAddAt =
+            applyPropertyProjections(propertyProjections, REL_FAMILY,
+                REL_QUALIFIER_EXISTENCE_MARKER, scan::addColumn);
+
+        return scan(graphConf, scan, tables.relTableName(),
+            result -> resultToRel(tables, result, includeAddAt));
+    }
+
+    @Override public Stream<String> getOutgoingNodeIds(GraphConfiguration graphConf,
+        String outNodeId, String relType) {
+        GraphTables tables = GraphTables.of(graphConf);
+        Scan scan = withConsistency(graphConf, createOutgoingNodeIdsScan(
+            Collections.singletonList(tables.relPrefix(outNodeId, relType))));
+
+        return scan(graphConf, scan, tables.relTableName(),
+            result -> tables.relInNodeId(result.getRow()));
+    }
+
+    @Override public Map<String, List<String>> getOutgoingNodeIds(GraphConfiguration graphConf,
+        Collection<String> outNodeIds, String relType) {
+        Map<String, List<String>> ret = new HashMap<>();
+        outNodeIds.forEach(outNodeId -> ret.put(outNodeId, new ArrayList<>()));
+        if (ret.isEmpty()) {
+            return ret;
+        }
+
+        GraphTables tables = GraphTables.of(graphConf);
+        List<byte[]> prefixes = ret.keySet().stream()
+            .map(outNodeId -> tables.relPrefix(outNodeId, relType)).sorted(Bytes.BYTES_COMPARATOR)
+            .collect(Collectors.toList());
+
+        // one scan per region. a range crossing a region boundary is read entirely by the scan of
+        // the region it starts in, so the list of each node is still sorted by inNodeId
+        TableName tableName = tables.relTableName();
+        List<Scan> scans = hbaseClient.groupRowsByRegion(tableName, prefixes).stream()
+            .map(rows -> withConsistency(graphConf, createOutgoingNodeIdsScan(rows)))
+            .collect(Collectors.toList());
+
+        LongAdder scannedRows = new LongAdder();
+        try {
+            hbaseClient.parallelScan(scans, tableName, results -> {
+                Map<String, List<String>> partial = new HashMap<>();
+                results.forEach(result -> {
+                    scannedRows.increment();
+                    partial.computeIfAbsent(tables.relOutNodeId(result.getRow()),
+                        outNodeId -> new ArrayList<>()).add(tables.relInNodeId(result.getRow()));
+                });
+                return partial;
+            }).forEach(ret::putAll);
+        } finally {
+            notifyScannedRows(graphConf, scannedRows.sum());
+        }
+
+        return ret;
+    }
+
+    private Scan createOutgoingNodeIdsScan(List<byte[]> prefixes) {
+        // only the row keys are needed, and every relationship row has the existence marker
+        Scan scan = HBaseClient.createPrefixScan(prefixes, new KeyOnlyFilter());
+        scan.addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER);
+        return scan;
+    }
+
+    @Override public boolean relationshipExists(GraphConfiguration graphConf, String outNodeId,
+        String relType, String inNodeId) {
+        GraphTables tables = GraphTables.of(graphConf);
+        return relExists(tables, tables.relRow(outNodeId, relType, inNodeId));
+    }
+
+    private boolean relExists(GraphTables tables, byte[] row) {
+        Get get = new Get(row).addColumn(REL_FAMILY, REL_QUALIFIER_EXISTENCE_MARKER);
+        return hbaseClient.exists(get, tables.relTableName());
     }
 
-    private Relationship resultToRel(Result result, boolean includeAddAt) {
-        PositionedByteRange byteRange = new SimplePositionedByteRange(result.getRow());
-        String outNodeId = (String) REL_STRUCT.decode(byteRange, 2);
-        String relationshipType = (String) REL_STRUCT.decode(byteRange, 3);
-        String inNodeId = (String) REL_STRUCT.decode(byteRange, 4);
-        return new Relationship(outNodeId, relationshipType, inNodeId,
+    private Relationship resultToRel(GraphTables tables, Result result, boolean includeAddAt) {
+        Relationship rel = tables.rel(result.getRow());
+        return new Relationship(rel.outNodeId(), rel.type(), rel.inNodeId(),
             resultToProperties(result, REL_FAMILY, includeAddAt));
     }
 }
@@ -0,0 +1,298 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import com.github.brfrn169.graphbase.exception.GraphbaseException;
+import com.github.brfrn169.graphbase.io.EntityRecord;
+import com.github.brfrn169.graphbase.io.ImportFailure;
+import com.github.brfrn169.graphbase.io.ImportResult;
+import com.github.brfrn169.graphbase.util.FingerprintSet;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// imports entities through BufferedMutators. the calling thread parses the input, drops the
+// duplicates and checks which entities already exist, a batch at a time, and routes the mutations
+// by region to writer threads, each of which has a BufferedMutator per table. so the mutations of
+// a region are sent in order by one writer, while the regions are written in parallel
+final class HBaseImporter {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int QUEUE_CAPACITY = 10000;
+
+    // a mutation and the table it goes to
+    static final class TableMutation {
+        private final TableName tableName;
+        private final Mutation mutation;
+
+        TableMutation(TableName tableName, Mutation mutation) {
+            this.tableName = tableName;
+            this.mutation = mutation;
+        }
+    }
+
+    private static final TableMutation END_OF_WRITES = new TableMutation(null, null);
+
+    // how an entity is checked and written
+    interface EntityWriter<T> {
+        String id(T entity);
+
+        // the entity exists if the get finds anything. its row also identifies the entity in
+        // the input
+        Get existenceGet(T entity);
+
+        // the mutations of the entity table write the entity, and the others are secondary,
+        // like the degree counters
+        List<TableMutation> mutations(T entity);
+    }
+
+    private final HBaseClient hbaseClient;
+    private final int writerCount;
+    private final int maxReportedFailures;
+
+    HBaseImporter(HBaseClient hbaseClient, int writerCount, int maxReportedFailures) {
+        this.hbaseClient = hbaseClient;
+        this.writerCount = writerCount;
+        this.maxReportedFailures = maxReportedFailures;
+    }
+
+    // the failed secondary writes are counted apart, as their entities are still imported
+    private final class Failures {
+        private final List<ImportFailure> reported = new ArrayList<>();
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong secondaryCount = new AtomicLong();
+
+        private void add(Long line, String id, String message) {
+            count.incrementAndGet();
+            report(line, id, message);
+        }
+
+        private void addSecondary(String id, String message) {
+            secondaryCount.incrementAndGet();
+            report(null, id, message);
+        }
+
+        private void report(Long line, String id, String message) {
+            synchronized (reported) {
+                if (reported.size() < maxReportedFailures) {
+                    reported.add(new ImportFailure(line, id, message));
+                }
+            }
+        }
+    }
+
+    <T> ImportResult importEntities(Stream<EntityRecord<T>> records, TableName entityTableName,
+        EntityWriter<T> writer, Map<TableName, Function<byte[], String>> rowDescribers) {
+        long start = System.nanoTime();
+
+        Failures failures = new Failures();
+        AtomicLong failedEntityWrites = new AtomicLong();
+        Writers writers = new Writers(failures, failedEntityWrites, entityTableName, rowDescribers);
+        FingerprintSet seen = new FingerprintSet(1 << 16);
+        long submitted = 0;
+        long recordCount = 0;
+
+        try {
+            Iterator<List<EntityRecord<T>>> batches =
+                Iterators.partition(records.iterator(), BATCH_SIZE);
+            while (batches.hasNext()) {
+                List<EntityRecord<T>> batch = batches.next();
+                recordCount += batch.size();
+
+                List<EntityRecord<T>> candidates = new ArrayList<>();
+                List<Get> gets = new ArrayList<>();
+                for (EntityRecord<T> record : batch) {
+                    if (record.entity() == null) {
+                        failures.add(record.line(), null, record.error());
+                        continue;
+                    }
+
+                    Get get = writer.existenceGet(record.entity());
+                    if (!seen.add(get.getRow())) {
+                        failures.add(record.line(), writer.id(record.entity()),
+                            "duplicated in the input");
+                        continue;
+                    }
+                    candidates.add(record);
+                    gets.add(get);
+                }
+
+                // the check and the write are not atomic, unlike the single entity writes
+                boolean[] exists = hbaseClient.exists(gets, entityTableName);
+                for (int i = 0; i < candidates.size(); i++) {
+                    T entity = candidates.get(i).entity();
+                    if (exists[i]) {
+                        failures.add(candidates.get(i).line(), writer.id(entity),
+                            "already exists");
+                        continue;
+                    }
+                    writer.mutations(entity).forEach(writers::submit);
+                    submitted++;
+                }
+            }
+        } finally {
+            writers.close();
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        double recordsPerSecond = 0.0;
+        if (elapsedNanos > 0) {
+            recordsPerSecond = recordCount * 1e9 / elapsedNanos;
+        }
+
+        List<ImportFailure> reported;
+        synchronized (failures.reported) {
+            reported = Collections.unmodifiableList(new ArrayList<>(failures.reported));
+        }
+        return new ImportResult(submitted - failedEntityWrites.get(), failures.count.get(),
+            failures.secondaryCount.get(), reported, elapsedMillis, recordsPerSecond);
+    }
+
+    private final class Writers {
+        private final Failures failures;
+        private final AtomicLong failedEntityWrites;
+        private final TableName entityTableName;
+        private final Map<TableName, Function<byte[], String>> rowDescribers;
+
+        private final Map<TableName, List<byte[]>> regionStartKeys = new HashMap<>();
+        private final List<BlockingQueue<TableMutation>> queues = new ArrayList<>();
+        private final ExecutorService executor;
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        private Writers(Failures failures, AtomicLong failedEntityWrites,
+            TableName entityTableName, Map<TableName, Function<byte[], String>> rowDescribers) {
+            this.failures = failures;
+            this.failedEntityWrites = failedEntityWrites;
+            this.entityTableName = entityTableName;
+            this.rowDescribers = rowDescribers;
+
+            rowDescribers.keySet().forEach(tableName -> regionStartKeys
+                .put(tableName, hbaseClient.getRegionStartKeys(tableName)));
+
+            executor = Executors.newFixedThreadPool(writerCount,
+                new ThreadFactoryBuilder().setNameFormat("graphbase-import-%d").setDaemon(true)
+                    .build());
+            for (int i = 0; i < writerCount; i++) {
+                BlockingQueue<TableMutation> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+                queues.add(queue);
+                futures.add(executor.submit(() -> {
+                    write(queue);
+                    return null;
+                }));
+            }
+        }
+
+        // the region boundaries are taken at the start, so a split during the import only makes
+        // the routing less even
+        private void submit(TableMutation mutation) {
+            List<byte[]> startKeys = regionStartKeys.get(mutation.tableName);
+            int region = Collections.binarySearch(startKeys, mutation.mutation.getRow(),
+                Bytes.BYTES_COMPARATOR);
+            if (region < 0) {
+                region = -region - 2;
+            }
+            int writer = Math.floorMod(region * 31 + mutation.tableName.hashCode(), writerCount);
+
+            try {
+                queues.get(writer).put(mutation);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GraphbaseException("interrupted during importing", e);
+            }
+        }
+
+        private void write(BlockingQueue<TableMutation> queue) throws Exception {
+            Map<TableName, BufferedMutator> mutators = new HashMap<>();
+            Exception error = null;
+            try {
+                while (true) {
+                    TableMutation mutation = queue.take();
+                    if (mutation == END_OF_WRITES) {
+                        break;
+                    }
+                    // after an error the queue is still drained, so that submit doesn't block
+                    if (error != null) {
+                        continue;
+                    }
+
+                    try {
+                        mutators.computeIfAbsent(mutation.tableName,
+                            tableName -> hbaseClient.getBufferedMutator(tableName,
+                                (e, mutator) -> onFailedWrites(tableName, e)))
+                            .mutate(mutation.mutation);
+                    } catch (Exception e) {
+                        error = e;
+                    }
+                }
+            } finally {
+                for (BufferedMutator mutator : mutators.values()) {
+                    try {
+                        mutator.close();
+                    } catch (IOException e) {
+                        if (error == null) {
+                            error = e;
+                        }
+                    }
+                }
+            }
+
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        private void onFailedWrites(TableName tableName, RetriesExhaustedWithDetailsException e) {
+            Function<byte[], String> rowDescriber = rowDescribers.get(tableName);
+            for (int i = 0; i < e.getNumExceptions(); i++) {
+                String id = rowDescriber.apply(e.getRow(i).getRow());
+                if (tableName.equals(entityTableName)) {
+                    failedEntityWrites.incrementAndGet();
+                    failures.add(null, id, "failed to write: " + e.getCause(i));
+                } else {
+                    failures.addSecondary(id,
+                        "failed to write the degree counters: " + e.getCause(i));
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                for (BlockingQueue<TableMutation> queue : queues) {
+                    queue.put(END_OF_WRITES);
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GraphbaseException("interrupted during importing", e);
+            } catch (ExecutionException e) {
+                throw new GraphbaseException("an error occurred during importing", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import com.github.brfrn169.graphbase.exception.GraphbaseException;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import org.apache.hadoop.hbase.KeyValue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// sorts KeyValues that may not fit in memory. they are buffered up to bufferSize bytes, and each
+// full buffer is sorted and spilled to a file. sorted() merges the spills with what is left in
+// the buffer
+final class KeyValueSorter implements Closeable {
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final long bufferSize;
+    private final File spillDir;
+
+    private final List<KeyValue> buffer = new ArrayList<>();
+    private long bufferedBytes;
+
+    private final List<File> spills = new ArrayList<>();
+    private final List<DataInputStream> spillInputs = new ArrayList<>();
+
+    KeyValueSorter(long bufferSize, File spillDir) {
+        this.bufferSize = bufferSize;
+        this.spillDir = spillDir;
+    }
+
+    void add(KeyValue kv) {
+        buffer.add(kv);
+        bufferedBytes += kv.heapSize();
+        if (bufferedBytes >= bufferSize) {
+            spill();
+        }
+    }
+
+    int spillCount() {
+        return spills.size();
+    }
+
+    private void spill() {
+        buffer.sort(KeyValue.COMPARATOR);
+        try {
+            File file = File.createTempFile("graphbase-sort-", ".spill", spillDir);
+            spills.add(file);
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE))) {
+                for (KeyValue kv : buffer) {
+                    out.writeInt(kv.getLength());
+                    out.write(kv.getBuffer(), kv.getOffset(), kv.getLength());
+                }
+            }
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during spilling", e);
+        }
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    // the KeyValues in KeyValue.COMPARATOR order. no more KeyValues can be added after this
+    Iterator<KeyValue> sorted() {
+        buffer.sort(KeyValue.COMPARATOR);
+
+        List<Iterator<KeyValue>> sources = new ArrayList<>();
+        sources.add(buffer.iterator());
+        for (File spill : spills) {
+            try {
+                DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(spill), IO_BUFFER_SIZE));
+                spillInputs.add(in);
+                sources.add(readSpill(in));
+            } catch (IOException e) {
+                throw new GraphbaseException("an error occurred during opening a spill", e);
+            }
+        }
+        return Iterators.mergeSorted(sources, KeyValue.COMPARATOR);
+    }
+
+    private static Iterator<KeyValue> readSpill(DataInputStream in) {
+        return new AbstractIterator<KeyValue>() {
+            @Override protected KeyValue computeNext() {
+                try {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        return endOfData();
+                    }
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    return new KeyValue(bytes, 0, length);
+                } catch (IOException e) {
+                    throw new GraphbaseException("an error occurred during reading a spill", e);
+                }
+            }
+        };
+    }
+
+    @Override public void close() throws IOException {
+        for (DataInputStream in : spillInputs) {
+            in.close();
+        }
+        for (File spill : spills) {
+            if (!spill.delete()) {
+                spill.deleteOnExit();
+            }
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.brfrn169.graphbase.util.Json;
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// the encodings of the property values. a value is JSON, except the ones written by the atomic
+// operators, which the region servers write without decoding them:
+// - a counter written by Increment is an 8-byte long, which starts with 0x00 or 0xFF. JSON never
+//   starts with either, so a counter has to stay within 2^56 either way from zero
+// - a list written by Append is a sequence of JSON values, each preceded by the record separator
+//   0x1E as in JSON text sequences, which JSON never contains unescaped. it can follow the value
+//   which was there before the first append, which is a list the elements are appended to, or
+//   otherwise the first element
+final class PropertyValues {
+
+    private static final Json JSON = new Json(JsonInclude.Include.NON_EMPTY);
+
+    private static final byte RECORD_SEPARATOR = (byte) 0x1E;
+
+    private static final int COUNTER_LENGTH = 8;
+
+    // the counters whose first byte is 0x00 or 0xFF
+    static final long COUNTER_MIN = -(1L << 56);
+    static final long COUNTER_MAX = (1L << 56) - 1;
+
+    private PropertyValues() {
+    }
+
+    static byte[] encode(Object value) {
+        return JSON.writeValueAsBytes(value);
+    }
+
+    static byte[] encodeCounter(long value) {
+        Preconditions.checkArgument(isInCounterRange(value), "the counter %s is out of range",
+            value);
+        return Bytes.toBytes(value);
+    }
+
+    static boolean isInCounterRange(long value) {
+        return value >= COUNTER_MIN && value <= COUNTER_MAX;
+    }
+
+    static byte[] encodeAppended(List<?> elements) {
+        ByteArrayOutputStream ret = new ByteArrayOutputStream();
+        for (Object element : elements) {
+            byte[] json = JSON.writeValueAsBytes(element);
+            ret.write(RECORD_SEPARATOR);
+            ret.write(json, 0, json.length);
+        }
+        return ret.toByteArray();
+    }
+
+    static Object decode(byte[] value) {
+        int baseLength = baseLength(value);
+        if (baseLength == value.length) {
+            return decodeBase(value);
+        }
+
+        List<Object> ret = new ArrayList<>();
+        if (baseLength > 0) {
+            Object base = decodeBase(Arrays.copyOf(value, baseLength));
+            if (base instanceof List) {
+                ret.addAll((List<?>) base);
+            } else {
+                ret.add(base);
+            }
+        }
+
+        // each element runs from a separator to the next one
+        int start = baseLength + 1;
+        for (int i = start; i <= value.length; i++) {
+            if (i == value.length || value[i] == RECORD_SEPARATOR) {
+                ret.add(JSON.readValue(Arrays.copyOfRange(value, start, i), Object.class));
+                start = i + 1;
+            }
+        }
+        return ret;
+    }
+
+    // the value as JSON, for the writers which don't decode it
+    static byte[] toJson(byte[] value) {
+        if (isCounter(value) || baseLength(value) < value.length) {
+            return JSON.writeValueAsBytes(decode(value));
+        }
+        return value;
+    }
+
+    static boolean isCounter(byte[] value) {
+        return value.length == COUNTER_LENGTH && startsLikeCounter(value);
+    }
+
+    private static boolean startsLikeCounter(byte[] value) {
+        return value.length >= COUNTER_LENGTH && (value[0] == 0 || value[0] == (byte) 0xFF);
+    }
+
+    // the length of the value before the appended elements. a counter can contain the separator
+    private static int baseLength(byte[] value) {
+        if (startsLikeCounter(value)) {
+            return COUNTER_LENGTH;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] == RECORD_SEPARATOR) {
+                return i;
+            }
+        }
+        return value.length;
+    }
+
+    private static Object decodeBase(byte[] value) {
+        if (isCounter(value)) {
+            return Bytes.toLong(value);
+        }
+        return JSON.readValue(value, Object.class);
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Result;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// the rows of an entity scan, counted as the stream is consumed, and the time spent in each phase
+// of it when timed. the streams are sequential, so the counts aren't synchronized
+final class ScanStats {
+
+    private final boolean timed;
+    private final long startNanos = System.nanoTime();
+
+    private long rowsScanned;
+    private long rowsFiltered;
+    private long rowsReturned;
+    private long cellsDecoded;
+    private long bytesDecoded;
+
+    private long hbaseNanos;
+    private long decodeNanos;
+    private long filterNanos;
+    private long sortNanos;
+
+    ScanStats() {
+        this(false);
+    }
+
+    ScanStats(boolean timed) {
+        this.timed = timed;
+    }
+
+    // the time waiting for the scanner, which includes the rpcs
+    <T> Iterator<T> timed(Iterator<T> iterator) {
+        if (!timed) {
+            return iterator;
+        }
+        return new Iterator<T>() {
+            @Override public boolean hasNext() {
+                long start = System.nanoTime();
+                try {
+                    return iterator.hasNext();
+                } finally {
+                    hbaseNanos += System.nanoTime() - start;
+                }
+            }
+
+            @Override public T next() {
+                long start = System.nanoTime();
+                try {
+                    return iterator.next();
+                } finally {
+                    hbaseNanos += System.nanoTime() - start;
+                }
+            }
+        };
+    }
+
+    <T> Function<Result, T> decoder(Function<Result, T> decoder) {
+        return result -> {
+            rowsScanned++;
+            cellsDecoded += result.rawCells().length;
+            for (Cell cell : result.rawCells()) {
+                bytesDecoded += cell.getValueLength();
+            }
+            if (!timed) {
+                return decoder.apply(result);
+            }
+
+            long start = System.nanoTime();
+            try {
+                return decoder.apply(result);
+            } finally {
+                decodeNanos += System.nanoTime() - start;
+            }
+        };
+    }
+
+    <T> Predicate<T> filter(Predicate<T> filter) {
+        return entity -> {
+            long start = timed ? System.nanoTime() : 0L;
+            boolean ret = filter.test(entity);
+            if (timed) {
+                filterNanos += System.nanoTime() - start;
+            }
+            if (!ret) {
+                rowsFiltered++;
+            }
+            return ret;
+        };
+    }
+
+    <T> Comparator<T> comparator(Comparator<T> comparator) {
+        if (!timed) {
+            return comparator;
+        }
+        return (o1, o2) -> {
+            long start = System.nanoTime();
+            try {
+                return comparator.compare(o1, o2);
+            } finally {
+                sortNanos += System.nanoTime() - start;
+            }
+        };
+    }
+
+    <T> T returned(T entity) {
+        rowsReturned++;
+        return entity;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    // the time spent in the phases of the scan, without the time the consumer of the stream took
+    // between the rows
+    long workNanos() {
+        return hbaseNanos + decodeNanos + filterNanos + sortNanos;
+    }
+
+    long rowsScanned() {
+        return rowsScanned;
+    }
+
+    long rowsFiltered() {
+        return rowsFiltered;
+    }
+
+    long rowsReturned() {
+        return rowsReturned;
+    }
+
+    long cellsDecoded() {
+        return cellsDecoded;
+    }
+
+    long bytesDecoded() {
+        return bytesDecoded;
+    }
+
+    long hbaseNanos() {
+        return hbaseNanos;
+    }
+
+    long decodeNanos() {
+        return decodeNanos;
+    }
+
+    long filterNanos() {
+        return filterNanos;
+    }
+
+    long sortNanos() {
+        return sortNanos;
+    }
+}
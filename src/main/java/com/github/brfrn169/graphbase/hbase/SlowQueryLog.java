@@ -0,0 +1,111 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.PropertyProjections;
+import com.github.brfrn169.graphbase.filter.FilterPredicate;
+import com.github.brfrn169.graphbase.filter.FilterShapeExtractor;
+import com.github.brfrn169.graphbase.sort.SortPredicate;
+import com.github.brfrn169.graphbase.util.Json;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// logs the entity scans whose work took at least the threshold as a json line each, with the
+// shape of the query, the rows read and dropped by the filters, the hbase scan metrics and the
+// time spent in each phase: waiting for the scanner, decoding the rows, filtering and sorting
+// them. the work is the sum of the phases, as the scans are timed until their streams are closed,
+// which includes the time their consumers took between the rows
+final class SlowQueryLog {
+
+    private static final Log LOG = LogFactory.getLog(SlowQueryLog.class);
+
+    private static final Json JSON = new Json(JsonInclude.Include.NON_NULL);
+
+    private final long thresholdNanos;
+
+    SlowQueryLog(long thresholdMillis) {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    boolean isEnabled() {
+        return thresholdNanos >= 0;
+    }
+
+    void log(GraphConfiguration graphConf, String entity, @Nullable List<String> types,
+        @Nullable FilterPredicate filter, @Nullable List<SortPredicate> sorts,
+        PropertyProjections propertyProjections, ScanStats stats,
+        @Nullable ScanMetrics scanMetrics) {
+        if (!isSlow(stats)) {
+            return;
+        }
+        LOG.warn(JSON.writeValueAsString(
+            toEntry(graphConf, entity, types, filter, sorts, propertyProjections, stats,
+                scanMetrics, stats.elapsedNanos())));
+    }
+
+    boolean isSlow(ScanStats stats) {
+        return isEnabled() && stats.workNanos() >= thresholdNanos;
+    }
+
+    static Map<String, Object> toEntry(GraphConfiguration graphConf, String entity,
+        @Nullable List<String> types, @Nullable FilterPredicate filter,
+        @Nullable List<SortPredicate> sorts, PropertyProjections propertyProjections,
+        ScanStats stats, @Nullable ScanMetrics scanMetrics, long elapsedNanos) {
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("graph", graphConf.graphId());
+        query.put("entity", entity);
+        query.put("types", types);
+        if (filter != null) {
+            // the values of the conditions aren't logged
+            query.put("filter", new FilterShapeExtractor(filter).extract());
+        }
+        if (sorts != null) {
+            query.put("sorts", sorts.stream().map(s -> s.getPropertyKey() + " " + s.getOperator())
+                .collect(Collectors.toList()));
+        }
+        Map<String, Object> projections = new LinkedHashMap<>();
+        projections.put("type", propertyProjections.getType());
+        if (propertyProjections.getType() == PropertyProjections.Type.PARTIAL) {
+            projections.put("propertyKeys", propertyProjections.getPropertyKeys());
+        }
+        query.put("projections", projections);
+
+        Map<String, Object> rows = new LinkedHashMap<>();
+        rows.put("scanned", stats.rowsScanned());
+        rows.put("filtered", stats.rowsFiltered());
+        rows.put("returned", stats.rowsReturned());
+        rows.put("cellsDecoded", stats.cellsDecoded());
+        // the bytes of the values of the cells
+        rows.put("bytesDecoded", stats.bytesDecoded());
+
+        Map<String, Object> phases = new LinkedHashMap<>();
+        phases.put("hbaseMs", toMillis(stats.hbaseNanos()));
+        phases.put("decodeMs", toMillis(stats.decodeNanos()));
+        phases.put("filterMs", toMillis(stats.filterNanos()));
+        phases.put("sortMs", toMillis(stats.sortNanos()));
+
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("elapsedMs", toMillis(elapsedNanos));
+        ret.put("workMs", toMillis(stats.workNanos()));
+        ret.put("query", query);
+        ret.put("rows", rows);
+        ret.put("phases", phases);
+        if (scanMetrics != null) {
+            // like REGIONS_SCANNED, RPC_CALLS and BYTES_IN_RESULTS
+            ret.put("scanMetrics", scanMetrics.getMetricsMap());
+        }
+        return ret;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
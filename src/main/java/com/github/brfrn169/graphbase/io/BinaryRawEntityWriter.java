@@ -0,0 +1,62 @@
+package com.github.brfrn169.graphbase.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+// see EntityFiles for the format. the property values are copied as they are
+class BinaryRawEntityWriter implements RawEntityWriter {
+
+    private final DataOutputStream out;
+
+    // a record is built here first, as it is prefixed with its length
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+    BinaryRawEntityWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    @Override public void writeNode(String id, String type, Map<String, byte[]> properties)
+        throws IOException {
+        recordBytes.reset();
+        EntityFiles.writeBinaryString(record, id);
+        EntityFiles.writeBinaryString(record, type);
+        writeProperties(properties);
+        writeRecord();
+    }
+
+    @Override public void writeRelationship(String outNodeId, String type, String inNodeId,
+        Map<String, byte[]> properties) throws IOException {
+        recordBytes.reset();
+        EntityFiles.writeBinaryString(record, outNodeId);
+        EntityFiles.writeBinaryString(record, type);
+        EntityFiles.writeBinaryString(record, inNodeId);
+        writeProperties(properties);
+        writeRecord();
+    }
+
+    private void writeProperties(Map<String, byte[]> properties) throws IOException {
+        record.writeInt(properties.size());
+        for (Map.Entry<String, byte[]> entry : properties.entrySet()) {
+            EntityFiles.writeBinaryString(record, entry.getKey());
+            record.writeInt(entry.getValue().length);
+            record.write(entry.getValue());
+        }
+    }
+
+    private void writeRecord() throws IOException {
+        out.writeInt(recordBytes.size());
+        recordBytes.writeTo(out);
+    }
+
+    @Override public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override public void close() throws IOException {
+        out.close();
+    }
+}
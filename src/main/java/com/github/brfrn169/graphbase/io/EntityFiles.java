@@ -0,0 +1,401 @@
+package com.github.brfrn169.graphbase.io;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.brfrn169.graphbase.Node;
+import com.github.brfrn169.graphbase.Relationship;
+import com.github.brfrn169.graphbase.exception.GraphbaseException;
+import com.github.brfrn169.graphbase.util.Json;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import lombok.experimental.UtilityClass;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// reads nodes and relationships in one of the following formats:
+//
+// - NDJSON: one entity per line, in the same JSON as the REST API
+// - CSV: a header line followed by one entity per line. the header of nodes starts with "id,type"
+//   and the header of relationships with "outNodeId,type,inNodeId". the rest of the columns are
+//   properties, and an empty value means the property is absent
+// - BINARY: length-prefixed records, written by HBaseExporter. a record is the strings of the
+//   id and type of a node, or of the outNodeId, type and inNodeId of a relationship, followed by
+//   the number of properties and the key string and JSON bytes of each. the lengths are 4-byte
+//   big-endian integers, and the strings are length-prefixed UTF-8. the "line" of a record is its
+//   position in the input
+@UtilityClass public class EntityFiles {
+
+    public enum Format {
+        CSV, NDJSON, BINARY;
+
+        // by the file extension: ".csv", ".ndjson", ".jsonl" or ".json", or ".bin"
+        public static Format of(File file) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+                return NDJSON;
+            }
+            if (name.endsWith(".bin")) {
+                return BINARY;
+            }
+            throw new IllegalArgumentException("unknown file format. file=" + file);
+        }
+
+        public String extension() {
+            switch (this) {
+                case CSV:
+                    return ".csv";
+                case NDJSON:
+                    return ".ndjson";
+                default:
+                    return ".bin";
+            }
+        }
+    }
+
+    private static final Json JSON = new Json(JsonInclude.Include.NON_EMPTY);
+
+    private static final List<String> NODE_COLUMNS = Arrays.asList("id", "type");
+    private static final List<String> REL_COLUMNS = Arrays.asList("outNodeId", "type", "inNodeId");
+
+    private static final Pattern JSON_NUMBER =
+        Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    // the returned stream reads the file lazily, so it should be closed after use. a malformed
+    // line fails the stream
+    public static Stream<Node> readNodes(File file) {
+        return readNodes(open(file), Format.of(file)).map(EntityRecord::get);
+    }
+
+    public static Stream<Relationship> readRelationships(File file) {
+        return readRelationships(open(file), Format.of(file)).map(EntityRecord::get);
+    }
+
+    // the returned stream reads the input lazily and closes it on close. a malformed line becomes
+    // a record with the error, and only a malformed CSV header fails the whole input
+    public static Stream<EntityRecord<Node>> readNodes(InputStream in, Format format) {
+        if (format == Format.CSV) {
+            return readCsv(in, NODE_COLUMNS,
+                (values, properties) -> new Node(values.get(0), values.get(1), properties));
+        }
+        if (format == Format.BINARY) {
+            return readBinary(in, record -> new Node(readBinaryString(record),
+                readBinaryString(record), readBinaryProperties(record)));
+        }
+        return readNdjson(in, line -> {
+            Node node = JSON.readValue(line, Node.class);
+            checkPresent(node.type(), "type");
+            return new Node(node.id(), node.type(), nonNull(node.properties()));
+        });
+    }
+
+    public static Stream<EntityRecord<Relationship>> readRelationships(InputStream in,
+        Format format) {
+        if (format == Format.CSV) {
+            return readCsv(in, REL_COLUMNS,
+                (values, properties) -> new Relationship(values.get(0), values.get(1),
+                    values.get(2), properties));
+        }
+        if (format == Format.BINARY) {
+            return readBinary(in, record -> new Relationship(readBinaryString(record),
+                readBinaryString(record), readBinaryString(record),
+                readBinaryProperties(record)));
+        }
+        return readNdjson(in, line -> {
+            Relationship rel = JSON.readValue(line, Relationship.class);
+            checkPresent(rel.type(), "type");
+            checkPresent(rel.inNodeId(), "inNodeId");
+            return new Relationship(rel.outNodeId(), rel.type(), rel.inNodeId(),
+                nonNull(rel.properties()));
+        });
+    }
+
+    // CSV can't be written, as its columns would have to be known in advance
+    public static RawEntityWriter createRawWriter(OutputStream out, Format format)
+        throws IOException {
+        switch (format) {
+            case NDJSON:
+                return new NdjsonRawEntityWriter(out);
+            case BINARY:
+                return new BinaryRawEntityWriter(out);
+            default:
+                throw new IllegalArgumentException("unsupported format. format=" + format);
+        }
+    }
+
+    private static InputStream open(File file) {
+        try {
+            return new FileInputStream(file);
+        } catch (IOException e) {
+            throw new GraphbaseException("an error occurred during opening a file", e);
+        }
+    }
+
+    private static void checkPresent(Object value, String name) {
+        if (value == null) {
+            throw new IllegalArgumentException(name + " is missing");
+        }
+    }
+
+    private static Map<String, Object> nonNull(Map<String, Object> properties) {
+        return properties != null ? properties : Collections.emptyMap();
+    }
+
+    private static <T> Stream<EntityRecord<T>> readNdjson(InputStream in,
+        Function<String, T> parser) {
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return toStream(reader, 0, parser);
+    }
+
+    private interface CsvRowMapper<T> {
+        T map(List<String> values, Map<String, Object> properties);
+    }
+
+    private static <T> Stream<EntityRecord<T>> readCsv(InputStream in, List<String> fixedColumns,
+        CsvRowMapper<T> mapper) {
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                reader.close();
+                return Stream.empty();
+            }
+
+            List<String> header = parseCsvLine(headerLine);
+            if (header.size() < fixedColumns.size() || !header.subList(0, fixedColumns.size())
+                .equals(fixedColumns)) {
+                throw new IllegalArgumentException(
+                    "the header should start with " + String.join(",", fixedColumns));
+            }
+
+            return toStream(reader, 1, line -> {
+                List<String> values = parseCsvLine(line);
+                if (values.size() < fixedColumns.size() || values.size() > header.size()) {
+                    throw new IllegalArgumentException("wrong number of values");
+                }
+
+                Map<String, Object> properties = new HashMap<>();
+                for (int i = fixedColumns.size(); i < values.size(); i++) {
+                    if (!values.get(i).isEmpty()) {
+                        properties.put(header.get(i), parseCsvValue(values.get(i)));
+                    }
+                }
+                return mapper.map(values, properties);
+            });
+        } catch (IOException e) {
+            closeQuietly(reader);
+            throw new GraphbaseException("an error occurred during reading a header", e);
+        } catch (RuntimeException e) {
+            closeQuietly(reader);
+            throw e;
+        }
+    }
+
+    // parses the lines after the first skippedLines ones, skipping the blank lines
+    private static <T> Stream<EntityRecord<T>> toStream(BufferedReader reader, long skippedLines,
+        Function<String, T> parser) {
+        Iterator<EntityRecord<T>> records = new AbstractIterator<EntityRecord<T>>() {
+            private long lineNumber = skippedLines;
+
+            @Override protected EntityRecord<T> computeNext() {
+                while (true) {
+                    String line;
+                    try {
+                        line = reader.readLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (line == null) {
+                        return endOfData();
+                    }
+
+                    lineNumber++;
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        return new EntityRecord<>(lineNumber, parser.apply(line), null);
+                    } catch (RuntimeException e) {
+                        return new EntityRecord<>(lineNumber, null,
+                            Throwables.getRootCause(e).getMessage());
+                    }
+                }
+            }
+        };
+
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED), false)
+            .onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    private interface BinaryRecordParser<T> {
+        T parse(DataInputStream record) throws IOException;
+    }
+
+    private static <T> Stream<EntityRecord<T>> readBinary(InputStream in,
+        BinaryRecordParser<T> parser) {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(in));
+        Iterator<EntityRecord<T>> records = new AbstractIterator<EntityRecord<T>>() {
+            private long position;
+            private boolean truncated;
+
+            @Override protected EntityRecord<T> computeNext() {
+                if (truncated) {
+                    return endOfData();
+                }
+
+                byte[] bytes;
+                try {
+                    int length;
+                    try {
+                        length = input.readInt();
+                    } catch (EOFException e) {
+                        return endOfData();
+                    }
+                    position++;
+                    bytes = new byte[length];
+                    input.readFully(bytes);
+                } catch (EOFException e) {
+                    truncated = true;
+                    return new EntityRecord<>(position, null, "truncated record");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                try {
+                    return new EntityRecord<>(position,
+                        parser.parse(new DataInputStream(new ByteArrayInputStream(bytes))), null);
+                } catch (IOException | RuntimeException e) {
+                    return new EntityRecord<>(position, null,
+                        Throwables.getRootCause(e).getMessage());
+                }
+            }
+        };
+
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED), false)
+            .onClose(() -> {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    static void writeBinaryString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readBinaryString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Object> readBinaryProperties(DataInputStream in)
+        throws IOException {
+        int size = in.readInt();
+        Map<String, Object> ret = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = readBinaryString(in);
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            ret.put(key, JSON.readValue(value, Object.class));
+        }
+        return ret;
+    }
+
+    private static void closeQuietly(BufferedReader reader) {
+        try {
+            reader.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // splits a line on commas. a value can be quoted with double quotes, and a double quote in a
+    // quoted value is escaped by doubling it
+    static List<String> parseCsvLine(String line) {
+        List<String> ret = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                ret.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        ret.add(value.toString());
+        return ret;
+    }
+
+    // numbers, booleans, objects and arrays are parsed as JSON, and anything else is a string
+    static Object parseCsvValue(String value) {
+        if (value.equals("true") || value.equals("false")) {
+            return Boolean.valueOf(value);
+        }
+        if (JSON_NUMBER.matcher(value).matches() || value.startsWith("{") || value
+            .startsWith("[")) {
+            try {
+                return JSON.readValue(value, Object.class);
+            } catch (GraphbaseException e) {
+                return value;
+            }
+        }
+        return value;
+    }
+}
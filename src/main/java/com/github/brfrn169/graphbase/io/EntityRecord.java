@@ -0,0 +1,20 @@
+package com.github.brfrn169.graphbase.io;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+
+// an entity read from a line of the input, or the reason it couldn't be read
+@Data @Accessors(fluent = true) public class EntityRecord<T> {
+    private final long line;
+    @Nullable private final T entity;
+    @Nullable private final String error;
+
+    public T get() {
+        if (entity == null) {
+            throw new IllegalArgumentException("malformed line. line=" + line + ", error=" + error);
+        }
+        return entity;
+    }
+}
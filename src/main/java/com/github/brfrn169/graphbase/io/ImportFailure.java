@@ -0,0 +1,24 @@
+package com.github.brfrn169.graphbase.io;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+
+// a record which wasn't imported. line is null when the record failed after it left the
+// input, on the write, and id is null when the line couldn't be parsed
+@Data @Accessors(fluent = true) public class ImportFailure {
+    @Nullable @JsonProperty("line") private final Long line;
+    @Nullable @JsonProperty("id") private final String id;
+    @NonNull @JsonProperty("message") private final String message;
+
+    @JsonCreator public ImportFailure(@JsonProperty("line") Long line,
+        @JsonProperty("id") String id, @NonNull @JsonProperty("message") String message) {
+        this.line = line;
+        this.id = id;
+        this.message = message;
+    }
+}
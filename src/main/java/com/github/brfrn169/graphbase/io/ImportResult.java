@@ -0,0 +1,35 @@
+package com.github.brfrn169.graphbase.io;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+// failureCount counts the entities which failed to be imported, and secondaryFailureCount the
+// failed writes of the degree counters of the imported entities, which are left off until the
+// degrees are recomputed. failures has the first failures of both only, up to a configured number
+@Data @Accessors(fluent = true) public class ImportResult {
+    @JsonProperty("imported") private final long imported;
+    @JsonProperty("failureCount") private final long failureCount;
+    @JsonProperty("secondaryFailureCount") private final long secondaryFailureCount;
+    @NonNull @JsonProperty("failures") private final List<ImportFailure> failures;
+    @JsonProperty("elapsedMillis") private final long elapsedMillis;
+    @JsonProperty("recordsPerSecond") private final double recordsPerSecond;
+
+    @JsonCreator public ImportResult(@JsonProperty("imported") long imported,
+        @JsonProperty("failureCount") long failureCount,
+        @JsonProperty("secondaryFailureCount") long secondaryFailureCount,
+        @NonNull @JsonProperty("failures") List<ImportFailure> failures,
+        @JsonProperty("elapsedMillis") long elapsedMillis,
+        @JsonProperty("recordsPerSecond") double recordsPerSecond) {
+        this.imported = imported;
+        this.failureCount = failureCount;
+        this.secondaryFailureCount = secondaryFailureCount;
+        this.failures = failures;
+        this.elapsedMillis = elapsedMillis;
+        this.recordsPerSecond = recordsPerSecond;
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.brfrn169.graphbase.io;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// the property values are copied into the JSON as they are
+class NdjsonRawEntityWriter implements RawEntityWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonGenerator generator;
+
+    NdjsonRawEntityWriter(OutputStream out) throws IOException {
+        generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        generator.setRootValueSeparator(null);
+    }
+
+    @Override public void writeNode(String id, String type, Map<String, byte[]> properties)
+        throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", id);
+        generator.writeStringField("type", type);
+        writeProperties(properties);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override public void writeRelationship(String outNodeId, String type, String inNodeId,
+        Map<String, byte[]> properties) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("outNodeId", outNodeId);
+        generator.writeStringField("type", type);
+        generator.writeStringField("inNodeId", inNodeId);
+        writeProperties(properties);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private void writeProperties(Map<String, byte[]> properties) throws IOException {
+        generator.writeObjectFieldStart("properties");
+        for (Map.Entry<String, byte[]> entry : properties.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            generator.writeRawValue(new String(entry.getValue(), StandardCharsets.UTF_8));
+        }
+        generator.writeEndObject();
+    }
+
+    @Override public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.brfrn169.graphbase.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Map;
+
+// writes entities whose property values are still the JSON bytes they are stored as, so that
+// they don't need to be decoded and encoded again. see EntityFiles.createRawWriter
+public interface RawEntityWriter extends Flushable, Closeable {
+    void writeNode(String id, String type, Map<String, byte[]> properties) throws IOException;
+
+    void writeRelationship(String outNodeId, String type, String inNodeId,
+        Map<String, byte[]> properties) throws IOException;
+}
@@ -0,0 +1,27 @@
+package com.github.brfrn169.graphbase.query;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.brfrn169.graphbase.filter.PropertyCondition;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+@Data @Accessors(fluent = true) public class NodePattern {
+    @NonNull @JsonProperty("variable") private final String variable;
+    @Nullable @JsonProperty("types") private final List<String> types;
+    @Nullable @JsonProperty("ids") private final List<String> ids;
+    @Nullable @JsonProperty("where") private final List<PropertyCondition> where;
+
+    @JsonCreator public NodePattern(@NonNull @JsonProperty("variable") String variable,
+        @JsonProperty("types") List<String> types, @JsonProperty("ids") List<String> ids,
+        @JsonProperty("where") List<PropertyCondition> where) {
+        this.variable = variable;
+        this.types = types;
+        this.ids = ids;
+        this.where = where;
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.brfrn169.graphbase.query;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// e.g. (a:User)-[:FOLLOWS]->(b:User)-[:LIKES]->(p:Post {lang:'en'}) is
+// {
+//   "nodes": [
+//     {"variable": "a", "types": ["User"]},
+//     {"variable": "b", "types": ["User"]},
+//     {"variable": "p", "types": ["Post"], "where": [{"key": "lang", "op": "EQ", "value": "en"}]}
+//   ],
+//   "relationships": [
+//     {"from": "a", "to": "b", "types": ["FOLLOWS"]},
+//     {"from": "b", "to": "p", "types": ["LIKES"]}
+//   ]
+// }
+@Data @Accessors(fluent = true) public class PatternQuery {
+    @NonNull @JsonProperty("nodes") private final List<NodePattern> nodes;
+    @NonNull @JsonProperty("relationships") private final List<RelationshipPattern> relationships;
+    @Nullable @JsonProperty("limit") private final Integer limit;
+
+    @JsonCreator public PatternQuery(@NonNull @JsonProperty("nodes") List<NodePattern> nodes,
+        @JsonProperty("relationships") List<RelationshipPattern> relationships,
+        @JsonProperty("limit") Integer limit) {
+        this.nodes = nodes;
+        this.relationships = relationships != null ? relationships : Collections.emptyList();
+        this.limit = limit;
+
+        validate();
+    }
+
+    private void validate() {
+        Preconditions.checkArgument(!nodes.isEmpty(), "nodes must not be empty");
+        Preconditions.checkArgument(limit == null || limit > 0, "limit must be positive");
+
+        Set<String> nodeVariables = new HashSet<>();
+        nodes.forEach(node -> Preconditions.checkArgument(nodeVariables.add(node.variable()),
+            "duplicate variable: %s", node.variable()));
+
+        Set<String> variables = new HashSet<>(nodeVariables);
+        relationships.forEach(rel -> {
+            Preconditions.checkArgument(nodeVariables.contains(rel.from()),
+                "undefined node variable: %s", rel.from());
+            Preconditions.checkArgument(nodeVariables.contains(rel.to()),
+                "undefined node variable: %s", rel.to());
+            Preconditions.checkArgument(rel.variable() == null || variables.add(rel.variable()),
+                "duplicate variable: %s", rel.variable());
+        });
+
+        // a disconnected pattern would be a cartesian product, which is not supported
+        Set<String> reached = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(nodes.get(0).variable());
+        while (!queue.isEmpty()) {
+            String variable = queue.poll();
+            if (reached.add(variable)) {
+                relationships.forEach(rel -> {
+                    if (rel.from().equals(variable)) {
+                        queue.add(rel.to());
+                    } else if (rel.to().equals(variable)) {
+                        queue.add(rel.from());
+                    }
+                });
+            }
+        }
+        Preconditions.checkArgument(reached.size() == nodeVariables.size(),
+            "the pattern must be connected");
+    }
+}
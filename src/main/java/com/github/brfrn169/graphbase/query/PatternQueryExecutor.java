@@ -0,0 +1,275 @@
+package com.github.brfrn169.graphbase.query;
+
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphStorage;
+import com.github.brfrn169.graphbase.Node;
+import com.github.brfrn169.graphbase.Relationship;
+import com.github.brfrn169.graphbase.filter.FilterExecutor;
+import com.github.brfrn169.graphbase.filter.FilterPredicate;
+import com.github.brfrn169.graphbase.filter.PropertyCondition;
+import com.google.common.collect.Iterators;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withAllProperties;
+
+// executes a PatternQuery. the most selective node pattern is matched first, and the other
+// variables are bound by expanding the relationship patterns one by one. the bindings are
+// processed in batches, and each expansion fetches the adjacency of a whole batch with one scan
+// and hash-joins it with the batch on the shared variable
+public class PatternQueryExecutor {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final class Expansion {
+        private final RelationshipPattern rel;
+        @Nullable private final FilterPredicate relFilter;
+
+        // whether the expansion follows the relationship from "from" to "to"
+        private final boolean forward;
+        private final boolean otherBound;
+
+        private Expansion(RelationshipPattern rel, boolean forward, boolean otherBound) {
+            this.rel = rel;
+            this.forward = forward;
+            this.otherBound = otherBound;
+            relFilter = PropertyCondition.toFilter(rel.where());
+        }
+
+        private List<Map<String, Object>> expand(List<Map<String, Object>> bindings) {
+            String boundVariable = forward ? rel.from() : rel.to();
+            String otherVariable = forward ? rel.to() : rel.from();
+            Function<Relationship, String> otherNodeId =
+                forward ? Relationship::inNodeId : Relationship::outNodeId;
+
+            Set<String> boundNodeIds = bindings.stream()
+                .map(binding -> ((Node) binding.get(boundVariable)).id())
+                .collect(Collectors.toSet());
+            Map<String, List<Relationship>> adjacency =
+                forward ? outgoing(boundNodeIds) : incoming(boundNodeIds);
+
+            Map<String, Node> otherNodes = Collections.emptyMap();
+            if (!otherBound) {
+                Set<String> otherNodeIds = new HashSet<>();
+                adjacency.values().forEach(rels -> rels.forEach(
+                    relationship -> otherNodeIds.add(otherNodeId.apply(relationship))));
+                otherNodes = matchNodes(nodePatterns.get(otherVariable), otherNodeIds);
+            }
+
+            List<Map<String, Object>> ret = new ArrayList<>();
+            for (Map<String, Object> binding : bindings) {
+                List<Relationship> rels =
+                    adjacency.get(((Node) binding.get(boundVariable)).id());
+                if (rels == null) {
+                    continue;
+                }
+
+                for (Relationship relationship : rels) {
+                    Node otherNode;
+                    if (otherBound) {
+                        otherNode = (Node) binding.get(otherVariable);
+                        if (!otherNode.id().equals(otherNodeId.apply(relationship))) {
+                            continue;
+                        }
+                    } else {
+                        otherNode = otherNodes.get(otherNodeId.apply(relationship));
+                        if (otherNode == null) {
+                            continue;
+                        }
+                    }
+
+                    Map<String, Object> extended = new LinkedHashMap<>(binding);
+                    extended.put(otherVariable, otherNode);
+                    if (rel.variable() != null) {
+                        extended.put(rel.variable(), relationship);
+                    }
+                    ret.add(extended);
+                }
+            }
+            return ret;
+        }
+
+        private Map<String, List<Relationship>> outgoing(Set<String> outNodeIds) {
+            try (Stream<Relationship> rels = graphStorage
+                .getOutgoingRelationships(graphConf, outNodeIds, rel.types(),
+                    withAllProperties())) {
+                return filterRels(rels).collect(Collectors.groupingBy(Relationship::outNodeId));
+            }
+        }
+
+        private Map<String, List<Relationship>> incoming(Set<String> inNodeIds) {
+            try (Stream<Relationship> rels = graphStorage
+                .getIncomingRelationships(graphConf, inNodeIds, rel.types(),
+                    withAllProperties())) {
+                return filterRels(rels).collect(Collectors.groupingBy(Relationship::inNodeId));
+            }
+        }
+
+        private Stream<Relationship> filterRels(Stream<Relationship> rels) {
+            if (relFilter == null) {
+                return rels;
+            }
+            FilterExecutor filterExecutor = new FilterExecutor(relFilter);
+            return rels.filter(filterExecutor::execute);
+        }
+    }
+
+
+    private final GraphStorage graphStorage;
+    private final GraphConfiguration graphConf;
+    private final PatternQuery query;
+    private final Map<String, NodePattern> nodePatterns = new HashMap<>();
+
+    public PatternQueryExecutor(GraphStorage graphStorage, GraphConfiguration graphConf,
+        PatternQuery query) {
+        this.graphStorage = graphStorage;
+        this.graphConf = graphConf;
+        this.query = query;
+        query.nodes().forEach(node -> nodePatterns.put(node.variable(), node));
+    }
+
+    // the returned stream matches the pattern lazily, so it should be closed after use
+    public Stream<Map<String, Object>> execute() {
+        NodePattern start = query.nodes().stream()
+            .min(Comparator.comparingDouble(PatternQueryExecutor::estimateCardinality)).get();
+        List<Expansion> plan = plan(start.variable());
+
+        Stream<Node> startNodes = matchStartNodes(start);
+        Iterator<List<Node>> batches = Iterators.partition(startNodes.iterator(), BATCH_SIZE);
+
+        Stream<Map<String, Object>> ret = StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED), false)
+            .flatMap(batch -> {
+                List<Map<String, Object>> bindings = batch.stream().map(node -> {
+                    Map<String, Object> binding = new LinkedHashMap<>();
+                    binding.put(start.variable(), node);
+                    return binding;
+                }).collect(Collectors.toList());
+
+                for (Expansion expansion : plan) {
+                    if (bindings.isEmpty()) {
+                        break;
+                    }
+                    bindings = expansion.expand(bindings);
+                }
+                return bindings.stream();
+            }).onClose(startNodes::close);
+
+        if (query.limit() != null) {
+            ret = ret.limit(query.limit());
+        }
+        return ret;
+    }
+
+    // greedily picks the next relationship pattern connected to the bound variables. the ones
+    // closing a cycle only check the bindings, so they come first. forward expansions come
+    // before the backward ones, whose relationships aren't indexed and are read on the server side
+    // for each batch, and among them the most selective target goes first
+    private List<Expansion> plan(String startVariable) {
+        Set<String> bound = new HashSet<>(Collections.singleton(startVariable));
+        List<RelationshipPattern> remaining = new ArrayList<>(query.relationships());
+        List<Expansion> ret = new ArrayList<>();
+
+        while (!remaining.isEmpty()) {
+            RelationshipPattern best = null;
+            double bestCost = Double.MAX_VALUE;
+            for (RelationshipPattern rel : remaining) {
+                boolean fromBound = bound.contains(rel.from());
+                boolean toBound = bound.contains(rel.to());
+
+                double cost;
+                if (fromBound && toBound) {
+                    cost = 0.0;
+                } else if (fromBound) {
+                    cost = 1.0 + estimateCardinality(nodePatterns.get(rel.to()));
+                } else if (toBound) {
+                    cost = Double.MAX_VALUE / 2 + estimateCardinality(nodePatterns.get(rel.from()));
+                } else {
+                    continue;
+                }
+
+                if (cost < bestCost) {
+                    best = rel;
+                    bestCost = cost;
+                }
+            }
+
+            // the pattern is validated to be connected
+            assert best != null;
+            remaining.remove(best);
+
+            boolean forward = bound.contains(best.from());
+            ret.add(new Expansion(best, forward,
+                bound.contains(forward ? best.to() : best.from())));
+            bound.add(best.from());
+            bound.add(best.to());
+        }
+        return ret;
+    }
+
+    // a rough estimate without any statistics: the ids are exact, and each type or condition is
+    // assumed to narrow the nodes down
+    private static double estimateCardinality(NodePattern node) {
+        if (node.ids() != null) {
+            return node.ids().size();
+        }
+
+        double ret = 1e9;
+        if (node.types() != null && !node.types().isEmpty()) {
+            ret /= 10;
+        }
+        if (node.where() != null) {
+            for (PropertyCondition condition : node.where()) {
+                ret /= condition.op() == PropertyCondition.Operator.EQ ? 100 : 3;
+            }
+        }
+        return ret;
+    }
+
+    private Stream<Node> matchStartNodes(NodePattern node) {
+        if (node.ids() != null) {
+            return matchNodes(node, node.ids()).values().stream();
+        }
+        return graphStorage
+            .getNodes(graphConf, node.types(), PropertyCondition.toFilter(node.where()), null,
+                withAllProperties());
+    }
+
+    private Map<String, Node> matchNodes(NodePattern node, Collection<String> nodeIds) {
+        Set<String> types = null;
+        if (node.types() != null && !node.types().isEmpty()) {
+            types = new HashSet<>(node.types());
+        }
+        FilterPredicate filter = PropertyCondition.toFilter(node.where());
+        FilterExecutor filterExecutor = filter != null ? new FilterExecutor(filter) : null;
+
+        Map<String, Node> ret = new LinkedHashMap<>();
+        for (Node n : graphStorage
+            .getNodes(graphConf, new HashSet<>(nodeIds), withAllProperties())) {
+            if (types != null && !types.contains(n.type())) {
+                continue;
+            }
+            if (filterExecutor == null || filterExecutor.execute(n)) {
+                ret.put(n.id(), n);
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.brfrn169.graphbase.query;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.brfrn169.graphbase.filter.PropertyCondition;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+// a relationship from the node bound to "from" to the node bound to "to". the variable is
+// optional, and the relationship is not included in the bindings without it
+@Data @Accessors(fluent = true) public class RelationshipPattern {
+    @Nullable @JsonProperty("variable") private final String variable;
+    @NonNull @JsonProperty("from") private final String from;
+    @NonNull @JsonProperty("to") private final String to;
+    @Nullable @JsonProperty("types") private final List<String> types;
+    @Nullable @JsonProperty("where") private final List<PropertyCondition> where;
+
+    @JsonCreator public RelationshipPattern(@JsonProperty("variable") String variable,
+        @NonNull @JsonProperty("from") String from, @NonNull @JsonProperty("to") String to,
+        @JsonProperty("types") List<String> types,
+        @JsonProperty("where") List<PropertyCondition> where) {
+        this.variable = variable;
+        this.from = from;
+        this.to = to;
+        this.types = types;
+        this.where = where;
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.brfrn169.graphbase.rest;
+
+import com.github.brfrn169.graphbase.ClientContext;
+import com.github.brfrn169.graphbase.WorkloadClass;
+import org.apache.hadoop.conf.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// the client of a request is given by its header, and the calls without it are limited by the
+// quotas of the graph only. the workload class is given by its header too, and the requests of a
+// class run at most max.concurrent.requests at a time, like
+// graphbase.workload.analytics.max.concurrent.requests=4 in the configuration of the server, so
+// that the heavy requests can't take all the servlet threads. a request waits up to max.wait.ms
+// for its turn and is rejected with 503 otherwise. a streamed response holds its turn until it's
+// written
+@Component public class ClientContextFilter extends OncePerRequestFilter {
+
+    public static final String CLIENT_HEADER = "X-Graphbase-Client";
+
+    public static final String WORKLOAD_HEADER = "X-Graphbase-Workload";
+
+    public static final String MAX_CONCURRENT_REQUESTS_CONF_KEY = "max.concurrent.requests";
+
+    public static final String MAX_WAIT_MS_CONF_KEY = "max.wait.ms";
+
+    private final Map<WorkloadClass, Semaphore> permits = new EnumMap<>(WorkloadClass.class);
+    private final Map<WorkloadClass, Long> maxWaitMillis = new EnumMap<>(WorkloadClass.class);
+
+    public ClientContextFilter(Configuration conf) {
+        for (WorkloadClass workloadClass : WorkloadClass.values()) {
+            int maxConcurrentRequests =
+                conf.getInt(workloadClass.confKey(MAX_CONCURRENT_REQUESTS_CONF_KEY), 0);
+            if (maxConcurrentRequests > 0) {
+                permits.put(workloadClass, new Semaphore(maxConcurrentRequests, true));
+            }
+            maxWaitMillis.put(workloadClass,
+                conf.getLong(workloadClass.confKey(MAX_WAIT_MS_CONF_KEY), 100L));
+        }
+    }
+
+    @Override protected void doFilterInternal(HttpServletRequest request,
+        HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        WorkloadClass workloadClass;
+        try {
+            workloadClass = toWorkloadClass(request.getHeader(WORKLOAD_HEADER));
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "unknown workload class");
+            return;
+        }
+
+        Semaphore semaphore = permits.get(workloadClass);
+        if (semaphore != null && !tryAcquire(semaphore, maxWaitMillis.get(workloadClass))) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "too many concurrent requests of the workload class");
+            return;
+        }
+
+        boolean released = false;
+        ClientContext.set(request.getHeader(CLIENT_HEADER));
+        ClientContext.setWorkloadClass(workloadClass);
+        try {
+            filterChain.doFilter(request, response);
+            if (semaphore != null && isAsyncStarted(request)) {
+                // the permit is released when the response is written
+                request.getAsyncContext().addListener(new ReleasingListener(semaphore));
+                released = true;
+            }
+        } finally {
+            ClientContext.clear();
+            if (semaphore != null && !released) {
+                semaphore.release();
+            }
+        }
+    }
+
+    private static WorkloadClass toWorkloadClass(String workloadClassStr) {
+        if (workloadClassStr == null || workloadClassStr.isEmpty()) {
+            return WorkloadClass.INTERACTIVE;
+        }
+        return WorkloadClass.valueOf(workloadClassStr.toUpperCase(Locale.ROOT));
+    }
+
+    private static boolean tryAcquire(Semaphore semaphore, long maxWaitMillis) {
+        try {
+            return semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // onComplete is called after an error or a timeout too
+    private static final class ReleasingListener implements AsyncListener {
+        private final Semaphore semaphore;
+
+        private ReleasingListener(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        @Override public void onComplete(AsyncEvent event) {
+            semaphore.release();
+        }
+
+        @Override public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override public void onError(AsyncEvent event) {
+        }
+
+        @Override public void onStartAsync(AsyncEvent event) {
+            // the listeners are removed when the async processing is restarted
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
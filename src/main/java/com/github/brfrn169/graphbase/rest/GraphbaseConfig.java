@@ -0,0 +1,45 @@
+package com.github.brfrn169.graphbase.rest;
+
+import com.github.brfrn169.graphbase.hbase.HBaseGraphStorage;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// the configuration of the server, read from the system properties once and shared by the
+// controller and the filters
+@Configuration public class GraphbaseConfig {
+
+    private static final String WORKLOAD_CONF_KEY_PREFIX = "graphbase.workload.";
+
+    @Bean public org.apache.hadoop.conf.Configuration graphbaseConfiguration() {
+        org.apache.hadoop.conf.Configuration conf = HBaseConfiguration.create();
+
+        String zookeeperQuorum = System.getProperty(HConstants.ZOOKEEPER_QUORUM);
+        if (zookeeperQuorum != null) {
+            conf.set(HConstants.ZOOKEEPER_QUORUM, zookeeperQuorum);
+        }
+
+        String zookeeperClientPort = System.getProperty(HConstants.ZOOKEEPER_CLIENT_PORT);
+        if (zookeeperClientPort != null) {
+            conf.setInt(HConstants.ZOOKEEPER_CLIENT_PORT, Integer.valueOf(zookeeperClientPort));
+        }
+
+        String zookeeperZnodeParent = System.getProperty(HConstants.ZOOKEEPER_ZNODE_PARENT);
+        if (zookeeperZnodeParent != null) {
+            conf.set(HConstants.ZOOKEEPER_ZNODE_PARENT, zookeeperZnodeParent);
+        }
+
+        String tableCompression = System.getProperty(HBaseGraphStorage.TABLE_COMPRESSION_CONF_KEY);
+        if (tableCompression != null) {
+            conf.setBoolean(HBaseGraphStorage.TABLE_COMPRESSION_CONF_KEY,
+                Boolean.valueOf(tableCompression));
+        }
+
+        // like -Dgraphbase.workload.analytics.scan.caching=1000
+        System.getProperties().stringPropertyNames().stream()
+            .filter(key -> key.startsWith(WORKLOAD_CONF_KEY_PREFIX))
+            .forEach(key -> conf.set(key, System.getProperty(key)));
+        return conf;
+    }
+}
@@ -1,37 +1,73 @@
 package com.github.brfrn169.graphbase.rest;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.brfrn169.graphbase.ClientContext;
+import com.github.brfrn169.graphbase.Direction;
+import com.github.brfrn169.graphbase.Durability;
 import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphMetrics;
 import com.github.brfrn169.graphbase.GraphService;
 import com.github.brfrn169.graphbase.GraphStorage;
 import com.github.brfrn169.graphbase.Mutation;
 import com.github.brfrn169.graphbase.Node;
 import com.github.brfrn169.graphbase.PropertyProjections;
+import com.github.brfrn169.graphbase.Quotas;
 import com.github.brfrn169.graphbase.Relationship;
+import com.github.brfrn169.graphbase.StorageOptions;
+import com.github.brfrn169.graphbase.Timelined;
+import com.github.brfrn169.graphbase.UpsertMode;
+import com.github.brfrn169.graphbase.WorkloadClass;
+import com.github.brfrn169.graphbase.aggregation.AggregationQuery;
+import com.github.brfrn169.graphbase.aggregation.AggregationResult;
+import com.github.brfrn169.graphbase.algorithm.NeighborSample;
+import com.github.brfrn169.graphbase.algorithm.NeighborSampleParameters;
+import com.github.brfrn169.graphbase.algorithm.NodePair;
+import com.github.brfrn169.graphbase.algorithm.NodeSimilarity;
+import com.github.brfrn169.graphbase.algorithm.PersonalizedPageRankParameters;
+import com.github.brfrn169.graphbase.algorithm.RandomWalkParameters;
+import com.github.brfrn169.graphbase.algorithm.ScoredNode;
 import com.github.brfrn169.graphbase.exception.GraphAlreadyExistsException;
 import com.github.brfrn169.graphbase.exception.GraphNotFoundException;
 import com.github.brfrn169.graphbase.exception.NodeNotFoundException;
+import com.github.brfrn169.graphbase.exception.QuotaExceededException;
+import com.github.brfrn169.graphbase.exception.RelationshipNotFoundException;
+import com.github.brfrn169.graphbase.exception.VersionMismatchException;
+import com.github.brfrn169.graphbase.exception.WriteConflictException;
+import com.github.brfrn169.graphbase.filter.PropertyCondition;
+import com.github.brfrn169.graphbase.io.EntityFiles;
+import com.github.brfrn169.graphbase.io.ImportResult;
 import com.github.brfrn169.graphbase.hbase.HBaseGraphStorage;
+import com.github.brfrn169.graphbase.query.PatternQuery;
+import com.github.brfrn169.graphbase.util.Json;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.HBaseConfiguration;
-import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Consistency;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withAllProperties;
 import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withProperties;
@@ -39,35 +75,30 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
 
 @RestController @RequestMapping("/v1/graphs") public class GraphbaseV1RestController {
 
-    private GraphService graphService;
-    private GraphStorage graphStorage;
+    private static final MediaType NDJSON_MEDIA_TYPE = MediaType.valueOf("application/x-ndjson");
 
-    @PostConstruct public void postConstruct() throws IOException {
-        Configuration conf = HBaseConfiguration.create();
+    private static final Json NDJSON = new Json(JsonInclude.Include.ALWAYS);
 
-        String zookeeperQuorum = System.getProperty(HConstants.ZOOKEEPER_QUORUM);
-        if (zookeeperQuorum != null) {
-            conf.set(HConstants.ZOOKEEPER_QUORUM, zookeeperQuorum);
-        }
+    // whether the result of a read with a consistency was read from a secondary region replica
+    public static final String STALE_HEADER = "X-Graphbase-Stale";
 
-        String zookeeperClientPort = System.getProperty(HConstants.ZOOKEEPER_CLIENT_PORT);
-        if (zookeeperClientPort != null) {
-            conf.setInt(HConstants.ZOOKEEPER_CLIENT_PORT, Integer.valueOf(zookeeperClientPort));
-        }
+    private final MeterRegistry meterRegistry;
+    private final Configuration conf;
 
-        String zookeeperZnodeParent = System.getProperty(HConstants.ZOOKEEPER_ZNODE_PARENT);
-        if (zookeeperZnodeParent != null) {
-            conf.set(HConstants.ZOOKEEPER_ZNODE_PARENT, zookeeperZnodeParent);
-        }
+    private GraphService graphService;
+    private GraphStorage graphStorage;
 
-        String tableCompression = System.getProperty(HBaseGraphStorage.TABLE_COMPRESSION_CONF_KEY);
-        if (tableCompression != null) {
-            conf.setBoolean(HBaseGraphStorage.TABLE_COMPRESSION_CONF_KEY,
-                Boolean.valueOf(tableCompression));
-        }
+    // the meters are published by the actuator
+    public GraphbaseV1RestController(MeterRegistry meterRegistry, Configuration conf) {
+        this.meterRegistry = meterRegistry;
+        this.conf = conf;
+    }
 
-        graphStorage = new HBaseGraphStorage(conf);
-        graphService = new GraphService(conf, graphStorage);
+    @PostConstruct public void postConstruct() throws IOException {
+        GraphMetrics metrics = new GraphMetrics(meterRegistry,
+            conf.getBoolean(GraphMetrics.PERCENTILE_HISTOGRAMS_CONF_KEY, false));
+        graphStorage = new HBaseGraphStorage(conf, metrics);
+        graphService = new GraphService(conf, graphStorage, metrics);
     }
 
     @PreDestroy public void preDestroy() throws IOException {
@@ -75,6 +106,15 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
         graphStorage.close();
     }
 
+    // a call over the quota of its graph is rejected by any endpoint, after waiting for it for a
+    // while, and can be retried a second later when the bucket is full again
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<Void> quotaExceeded(QuotaExceededException e) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return new ResponseEntity<>(headers, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
     @RequestMapping(path = "", method = RequestMethod.POST)
     public ResponseEntity<Void> createGraph(@RequestBody GraphConfiguration graphConf) {
         try {
@@ -86,6 +126,8 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
             return new ResponseEntity<>(headers, HttpStatus.CREATED);
         } catch (GraphAlreadyExistsException e) {
             return new ResponseEntity<>(HttpStatus.CONFLICT);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
     }
 
@@ -99,6 +141,44 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
         }
     }
 
+    @RequestMapping(path = "/{graphId}/storageOptions", method = RequestMethod.PUT)
+    public ResponseEntity<Void> alterGraph(@PathVariable String graphId,
+        @RequestBody StorageOptions storageOptions) {
+        try {
+            graphService.alterGraph(graphId, storageOptions);
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // the body is a durability like "SKIP_WAL", and the durability of the graph is removed by an
+    // empty body
+    @RequestMapping(path = "/{graphId}/durability", method = RequestMethod.PUT)
+    public ResponseEntity<Void> setDurability(@PathVariable String graphId,
+        @RequestBody(required = false) Durability durability) {
+        try {
+            graphService.setDurability(graphId, durability);
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    // the quotas are removed by an empty body
+    @RequestMapping(path = "/{graphId}/quotas", method = RequestMethod.PUT)
+    public ResponseEntity<Void> setQuotas(@PathVariable String graphId,
+        @RequestBody(required = false) Quotas quotas) {
+        try {
+            graphService.setQuotas(graphId, quotas);
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
     @RequestMapping(path = "/{graphId}", method = RequestMethod.GET)
     public ResponseEntity<GraphConfiguration> getGraph(@PathVariable String graphId) {
         return graphService.getGraphConfiguration(graphId)
@@ -116,9 +196,10 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
     }
 
     @RequestMapping(path = "/{graphId}/nodes", method = RequestMethod.POST)
-    public ResponseEntity<Void> addNode(@PathVariable String graphId, @RequestBody Node node) {
+    public ResponseEntity<Void> addNode(@PathVariable String graphId, @RequestBody Node node,
+        @RequestParam(required = false) Durability durability) {
         try {
-            graphService.addNode(graphId, node.id(), node.type(), node.properties());
+            graphService.addNode(graphId, node.id(), node.type(), node.properties(), durability);
 
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.LOCATION, "/v1/graphs/" + graphId + "/nodes/" + node.id());
@@ -129,12 +210,61 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
         }
     }
 
+    @RequestMapping(path = "/{graphId}/nodes/upsert", method = RequestMethod.POST)
+    public ResponseEntity<Void> upsertNode(@PathVariable String graphId, @RequestBody Node node,
+        @RequestParam(defaultValue = "MERGE") UpsertMode mode,
+        @RequestParam(required = false) Durability durability) {
+        try {
+            String version = graphService.upsertNode(graphId, node, mode, durability);
+            return new ResponseEntity<>(toETagHeaders(version), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (WriteConflictException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/nodes/upsert/batch", method = RequestMethod.POST)
+    public ResponseEntity<Void> upsertNodes(@PathVariable String graphId,
+        @RequestBody List<Node> nodes, @RequestParam(defaultValue = "MERGE") UpsertMode mode,
+        @RequestParam(required = false) Durability durability) {
+        try {
+            graphService.upsertNodes(graphId, nodes, mode, durability);
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
     @RequestMapping(path = "/{graphId}/nodes/{nodeId}", method = RequestMethod.PUT)
     public ResponseEntity<Void> updateNode(@PathVariable String graphId,
-        @PathVariable String nodeId, @RequestBody Mutation mutation) {
+        @PathVariable String nodeId, @RequestBody Mutation mutation,
+        @RequestParam(required = false) Durability durability,
+        @RequestParam(defaultValue = "false") boolean writeBehind,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            graphService.updateNode(graphId, nodeId, mutation);
-            return new ResponseEntity<>(HttpStatus.OK);
+            // buffered, so without a version and whether the node exists
+            if (writeBehind) {
+                if (ifMatch != null || durability != null) {
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                graphService.updateNodeBehind(graphId, nodeId, mutation);
+                return new ResponseEntity<>(HttpStatus.ACCEPTED);
+            }
+
+            String version = graphService
+                .updateNode(graphId, nodeId, mutation, durability, toExpectedVersion(ifMatch));
+            return new ResponseEntity<>(toETagHeaders(version), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (VersionMismatchException e) {
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        } catch (WriteConflictException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         } catch (GraphNotFoundException | NodeNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -142,9 +272,14 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
 
     @RequestMapping(path = "/{graphId}/nodes/{nodeId}", method = RequestMethod.DELETE)
     public ResponseEntity<Void> deleteNode(@PathVariable String graphId,
-        @PathVariable String nodeId) {
+        @PathVariable String nodeId, @RequestParam(defaultValue = "false") boolean cascade,
+        @RequestParam(required = false) Durability durability) {
         try {
-            graphService.deleteNode(graphId, nodeId);
+            if (cascade) {
+                graphService.deleteNodeWithRelationships(graphId, nodeId, durability);
+            } else {
+                graphService.deleteNode(graphId, nodeId, durability);
+            }
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         } catch (GraphNotFoundException | NodeNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
@@ -153,11 +288,37 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
 
     @RequestMapping(path = "/{graphId}/nodes/{nodeId}", method = RequestMethod.GET)
     public ResponseEntity<Node> getNode(@PathVariable String graphId, @PathVariable String nodeId,
-        @RequestParam(required = false) String projections) {
+        @RequestParam(required = false) String projections,
+        @RequestParam(required = false) Long asOf,
+        @RequestParam(required = false) Consistency consistency) {
         try {
-            return graphService.getNode(graphId, nodeId, toPropertyProjections(projections))
-                .map(node -> new ResponseEntity<>(node, HttpStatus.OK))
-                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            // the timeline reads have no ETag, as a stale version would only fail the conditional
+            // updates. the reads with an ETag are strong whatever the consistency of the graph is
+            if (consistency != null) {
+                if (asOf != null) {
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                Timelined<Optional<Node>> node = graphService
+                    .getTimelinedNode(graphId, nodeId, toPropertyProjections(projections),
+                        consistency);
+                HttpHeaders headers = toStaleHeaders(node);
+                return node.value().map(n -> new ResponseEntity<>(n, headers, HttpStatus.OK))
+                    .orElse(new ResponseEntity<>(headers, HttpStatus.NOT_FOUND));
+            }
+
+            // the past states of a node have no version
+            if (asOf != null) {
+                return graphService
+                    .getNode(graphId, nodeId, toPropertyProjections(projections), asOf)
+                    .map(n -> new ResponseEntity<>(n, HttpStatus.OK))
+                    .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            }
+            return graphService
+                .getVersionedNode(graphId, nodeId, toPropertyProjections(projections))
+                .map(n -> new ResponseEntity<>(n.entity(), toETagHeaders(n.version()),
+                    HttpStatus.OK)).orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         } catch (GraphNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -181,11 +342,60 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
     @RequestMapping(path = "/{graphId}/nodes", method = RequestMethod.GET)
     public ResponseEntity<List<Node>> getNodes(@PathVariable String graphId,
         @RequestParam(required = false) String types,
-        @RequestParam(required = false) String projections) {
+        @RequestParam(required = false) String projections,
+        @RequestParam(required = false) Long asOf,
+        @RequestParam(required = false) Consistency consistency) {
         try {
-            List<Node> nodes = graphService
-                .getNodes(graphId, toTypes(types), null, null, toPropertyProjections(projections));
+            if (consistency != null) {
+                if (asOf != null) {
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                }
+                Timelined<List<Node>> nodes = graphService
+                    .getTimelinedNodes(graphId, toTypes(types), null, null,
+                        toPropertyProjections(projections), consistency);
+                return new ResponseEntity<>(nodes.value(), toStaleHeaders(nodes), HttpStatus.OK);
+            }
+
+            List<Node> nodes;
+            if (asOf != null) {
+                nodes = graphService.getNodes(graphId, toTypes(types), null, null,
+                    toPropertyProjections(projections), asOf);
+            } else {
+                nodes = graphService.getNodes(graphId, toTypes(types), null, null,
+                    toPropertyProjections(projections));
+            }
             return new ResponseEntity<>(nodes, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/nodes/_count", method = RequestMethod.GET)
+    public ResponseEntity<Long> countNodes(@PathVariable String graphId,
+        @RequestParam(required = false) String types) {
+        return countNodes(graphId, types, null);
+    }
+
+    @RequestMapping(path = "/{graphId}/nodes/_count", method = RequestMethod.POST)
+    public ResponseEntity<Long> countNodes(@PathVariable String graphId,
+        @RequestParam(required = false) String types,
+        @RequestBody(required = false) List<PropertyCondition> where) {
+        try {
+            return new ResponseEntity<>(
+                graphService.countNodes(graphId, toTypes(types), PropertyCondition.toFilter(where)),
+                HttpStatus.OK);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/nodes/_ids", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> getNodeIds(@PathVariable String graphId,
+        @RequestParam(required = false) String types) {
+        try {
+            return toNdjsonResponse(graphService.getNodeIds(graphId, toTypes(types), null));
         } catch (GraphNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -193,10 +403,11 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
 
     @RequestMapping(path = "/{graphId}/relationships", method = RequestMethod.POST)
     public ResponseEntity<Void> addRelationship(@PathVariable String graphId,
-        @RequestBody Relationship relationship) {
+        @RequestBody Relationship relationship,
+        @RequestParam(required = false) Durability durability) {
         try {
             graphService.addRelationship(graphId, relationship.outNodeId(), relationship.type(),
-                relationship.inNodeId(), relationship.properties());
+                relationship.inNodeId(), relationship.properties(), durability);
 
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.LOCATION,
@@ -209,15 +420,57 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
         }
     }
 
+    @RequestMapping(path = "/{graphId}/relationships/upsert", method = RequestMethod.POST)
+    public ResponseEntity<Void> upsertRelationship(@PathVariable String graphId,
+        @RequestBody Relationship relationship,
+        @RequestParam(defaultValue = "MERGE") UpsertMode mode,
+        @RequestParam(required = false) Durability durability) {
+        try {
+            String version =
+                graphService.upsertRelationship(graphId, relationship, mode, durability);
+            return new ResponseEntity<>(toETagHeaders(version), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (WriteConflictException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/relationships/upsert/batch", method = RequestMethod.POST)
+    public ResponseEntity<Void> upsertRelationships(@PathVariable String graphId,
+        @RequestBody List<Relationship> relationships,
+        @RequestParam(defaultValue = "MERGE") UpsertMode mode,
+        @RequestParam(required = false) Durability durability) {
+        try {
+            graphService.upsertRelationships(graphId, relationships, mode, durability);
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
     @RequestMapping(path = "/{graphId}/relationships/{outNodeId}/{relationshipType}/{inNodeId}", method = RequestMethod.PUT)
     public ResponseEntity<Void> updateRelationship(@PathVariable String graphId,
         @PathVariable String outNodeId, @PathVariable String relationshipType,
-        @PathVariable String inNodeId, @RequestBody Mutation mutation) {
+        @PathVariable String inNodeId, @RequestBody Mutation mutation,
+        @RequestParam(required = false) Durability durability,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            graphService
-                .updateRelationship(graphId, outNodeId, relationshipType, inNodeId, mutation);
-            return new ResponseEntity<>(HttpStatus.OK);
-        } catch (GraphNotFoundException | NodeNotFoundException e) {
+            String version = graphService.updateRelationship(graphId, outNodeId,
+                relationshipType, inNodeId, mutation, durability, toExpectedVersion(ifMatch));
+            return new ResponseEntity<>(toETagHeaders(version), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (VersionMismatchException e) {
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        } catch (WriteConflictException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        } catch (GraphNotFoundException | NodeNotFoundException
+            | RelationshipNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
@@ -225,9 +478,10 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
     @RequestMapping(path = "/{graphId}/relationships/{outNodeId}/{relationshipType}/{inNodeId}", method = RequestMethod.DELETE)
     public ResponseEntity<Void> deleteRelationship(@PathVariable String graphId,
         @PathVariable String outNodeId, @PathVariable String relationshipType,
-        @PathVariable String inNodeId) {
+        @PathVariable String inNodeId, @RequestParam(required = false) Durability durability) {
         try {
-            graphService.deleteRelationship(graphId, outNodeId, relationshipType, inNodeId);
+            graphService
+                .deleteRelationship(graphId, outNodeId, relationshipType, inNodeId, durability);
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         } catch (GraphNotFoundException | NodeNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
@@ -237,12 +491,22 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
     @RequestMapping(path = "/{graphId}/relationships/{outNodeId}/{relationshipType}/{inNodeId}", method = RequestMethod.GET)
     public ResponseEntity<Relationship> getRelationship(@PathVariable String graphId,
         @PathVariable String outNodeId, @PathVariable String relationshipType,
-        @PathVariable String inNodeId, @RequestParam(required = false) String projections) {
+        @PathVariable String inNodeId, @RequestParam(required = false) String projections,
+        @RequestParam(required = false) Consistency consistency) {
         try {
-            return graphService.getRelationship(graphId, outNodeId, relationshipType, inNodeId,
-                toPropertyProjections(projections))
-                .map(rel -> new ResponseEntity<>(rel, HttpStatus.OK))
-                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            if (consistency != null) {
+                Timelined<Optional<Relationship>> rel = graphService
+                    .getTimelinedRelationship(graphId, outNodeId, relationshipType, inNodeId,
+                        toPropertyProjections(projections), consistency);
+                HttpHeaders headers = toStaleHeaders(rel);
+                return rel.value().map(r -> new ResponseEntity<>(r, headers, HttpStatus.OK))
+                    .orElse(new ResponseEntity<>(headers, HttpStatus.NOT_FOUND));
+            }
+
+            return graphService.getVersionedRelationship(graphId, outNodeId, relationshipType,
+                inNodeId, toPropertyProjections(projections))
+                .map(rel -> new ResponseEntity<>(rel.entity(), toETagHeaders(rel.version()),
+                    HttpStatus.OK)).orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
         } catch (GraphNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -268,8 +532,16 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
     @RequestMapping(path = "/{graphId}/relationships", method = RequestMethod.GET)
     public ResponseEntity<List<Relationship>> getRelationships(@PathVariable String graphId,
         @RequestParam(required = false) String types,
-        @RequestParam(required = false) String projections) {
+        @RequestParam(required = false) String projections,
+        @RequestParam(required = false) Consistency consistency) {
         try {
+            if (consistency != null) {
+                Timelined<List<Relationship>> rels = graphService
+                    .getTimelinedRelationships(graphId, toTypes(types), null, null,
+                        toPropertyProjections(projections), consistency);
+                return new ResponseEntity<>(rels.value(), toStaleHeaders(rels), HttpStatus.OK);
+            }
+
             List<Relationship> nodes = graphService
                 .getRelationships(graphId, toTypes(types), null, null,
                     toPropertyProjections(projections));
@@ -279,6 +551,209 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
         }
     }
 
+    @RequestMapping(path = "/{graphId}/relationships/_count", method = RequestMethod.GET)
+    public ResponseEntity<Long> countRelationships(@PathVariable String graphId,
+        @RequestParam(required = false) String types) {
+        return countRelationships(graphId, types, null);
+    }
+
+    @RequestMapping(path = "/{graphId}/relationships/_count", method = RequestMethod.POST)
+    public ResponseEntity<Long> countRelationships(@PathVariable String graphId,
+        @RequestParam(required = false) String types,
+        @RequestBody(required = false) List<PropertyCondition> where) {
+        try {
+            return new ResponseEntity<>(graphService
+                .countRelationships(graphId, toTypes(types), PropertyCondition.toFilter(where)),
+                HttpStatus.OK);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/relationships/_ids", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> getRelationshipIds(@PathVariable String graphId,
+        @RequestParam(required = false) String types) {
+        try {
+            return toNdjsonResponse(
+                graphService.getRelationshipIds(graphId, toTypes(types), null));
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/aggregate", method = RequestMethod.POST)
+    public ResponseEntity<List<AggregationResult>> aggregate(@PathVariable String graphId,
+        @RequestBody AggregationQuery query) {
+        try {
+            return new ResponseEntity<>(graphService.aggregate(graphId, query), HttpStatus.OK);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    // the body is CSV or NDJSON, read as it arrives
+    @RequestMapping(path = "/{graphId}/import/nodes", method = RequestMethod.POST)
+    public ResponseEntity<ImportResult> importNodes(@PathVariable String graphId,
+        @RequestParam(defaultValue = "NDJSON") EntityFiles.Format format,
+        @RequestParam(required = false) Durability durability, InputStream body) {
+        try {
+            return new ResponseEntity<>(
+                graphService.importNodes(graphId, body, format, durability), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/import/relationships", method = RequestMethod.POST)
+    public ResponseEntity<ImportResult> importRelationships(@PathVariable String graphId,
+        @RequestParam(defaultValue = "NDJSON") EntityFiles.Format format,
+        @RequestParam(required = false) Durability durability, InputStream body) {
+        try {
+            return new ResponseEntity<>(
+                graphService.importRelationships(graphId, body, format, durability),
+                HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/nodes/{nodeId}/degree", method = RequestMethod.GET)
+    public ResponseEntity<Long> degree(@PathVariable String graphId, @PathVariable String nodeId,
+        @RequestParam(defaultValue = "BOTH") Direction direction,
+        @RequestParam(required = false) String types) {
+        try {
+            return new ResponseEntity<>(
+                graphService.degree(graphId, nodeId, direction, toTypes(types)), HttpStatus.OK);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    // returns how many degree counters were off
+    @RequestMapping(path = "/{graphId}/degrees/recompute", method = RequestMethod.POST)
+    public ResponseEntity<Long> recomputeDegrees(@PathVariable String graphId) {
+        try {
+            return new ResponseEntity<>(graphService.recomputeDegrees(graphId), HttpStatus.OK);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/samples", method = RequestMethod.POST)
+    public ResponseEntity<StreamingResponseBody> sampleNeighbors(@PathVariable String graphId,
+        @RequestBody NeighborSampleParameters parameters) {
+        try {
+            List<NeighborSample> samples = graphService.sampleNeighbors(graphId, parameters);
+            return toNdjsonResponse(samples.stream());
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/walks", method = RequestMethod.POST)
+    public ResponseEntity<StreamingResponseBody> randomWalks(@PathVariable String graphId,
+        @RequestBody RandomWalkParameters parameters) {
+        try {
+            return toNdjsonResponse(graphService.randomWalks(graphId, parameters));
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/nodes/{nodeId}/recommendations", method = RequestMethod.GET)
+    public ResponseEntity<List<ScoredNode>> recommendNodes(@PathVariable String graphId,
+        @PathVariable String nodeId, @RequestParam(required = false) String types,
+        @RequestParam(required = false) Double alpha,
+        @RequestParam(required = false) Double epsilon,
+        @RequestParam(required = false) Integer limit,
+        @RequestParam(required = false) Integer maxVisits,
+        @RequestParam(required = false) Long timeoutMillis,
+        @RequestParam(required = false) Boolean excludeNeighbors) {
+        try {
+            PersonalizedPageRankParameters parameters =
+                new PersonalizedPageRankParameters(toTypes(types), alpha, epsilon, limit,
+                    maxVisits, timeoutMillis, excludeNeighbors, null);
+            return new ResponseEntity<>(
+                graphService.personalizedPageRank(graphId, nodeId, parameters), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/nodes/{nodeId}/commonNeighbors/{otherNodeId}",
+        method = RequestMethod.GET)
+    public ResponseEntity<List<String>> commonNeighbors(@PathVariable String graphId,
+        @PathVariable String nodeId, @PathVariable String otherNodeId, @RequestParam String type) {
+        try {
+            return new ResponseEntity<>(
+                graphService.commonNeighbors(graphId, nodeId, otherNodeId, type), HttpStatus.OK);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/nodes/{nodeId}/similarity/{otherNodeId}",
+        method = RequestMethod.GET)
+    public ResponseEntity<NodeSimilarity> similarity(@PathVariable String graphId,
+        @PathVariable String nodeId, @PathVariable String otherNodeId, @RequestParam String type) {
+        try {
+            return new ResponseEntity<>(
+                graphService.similarity(graphId, nodeId, otherNodeId, type), HttpStatus.OK);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/similarities", method = RequestMethod.POST)
+    public ResponseEntity<List<NodeSimilarity>> similarities(@PathVariable String graphId,
+        @RequestParam String type, @RequestBody List<NodePair> pairs) {
+        try {
+            return new ResponseEntity<>(graphService.similarities(graphId, pairs, type),
+                HttpStatus.OK);
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @RequestMapping(path = "/{graphId}/query", method = RequestMethod.POST)
+    public ResponseEntity<StreamingResponseBody> query(@PathVariable String graphId,
+        @RequestBody PatternQuery query) {
+        try {
+            return toNdjsonResponse(graphService.query(graphId, query));
+        } catch (GraphNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+    }
+
+    // the body is written by another thread, which makes the calls in the context of the request
+    private static <T> ResponseEntity<StreamingResponseBody> toNdjsonResponse(Stream<T> stream) {
+        String clientId = ClientContext.get();
+        WorkloadClass workloadClass = ClientContext.getWorkloadClass();
+        StreamingResponseBody body = outputStream -> {
+            ClientContext.set(clientId);
+            ClientContext.setWorkloadClass(workloadClass);
+            try (Stream<T> s = stream) {
+                Iterator<T> iterator = s.iterator();
+                while (iterator.hasNext()) {
+                    outputStream.write(NDJSON.writeValueAsBytes(iterator.next()));
+                    outputStream.write('\n');
+                }
+            } finally {
+                ClientContext.clear();
+            }
+        };
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(NDJSON_MEDIA_TYPE);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
     private static List<String> toTypes(@Nullable String typesStr) {
         if (typesStr == null || typesStr.isEmpty()) {
             return null;
@@ -299,4 +774,30 @@ import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withoutP
             return withProperties(properties);
         }
     }
+
+    // the versions are strong ETags. "*" matches any existing entity, as an update does anyway
+    @Nullable private static String toExpectedVersion(@Nullable String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String etag = ifMatch.trim();
+        if (etag.length() < 2 || !etag.startsWith("\"") || !etag.endsWith("\"")) {
+            throw new IllegalArgumentException("If-Match must be a single strong ETag");
+        }
+        return etag.substring(1, etag.length() - 1);
+    }
+
+    private static HttpHeaders toStaleHeaders(Timelined<?> result) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(STALE_HEADER, String.valueOf(result.stale()));
+        return headers;
+    }
+
+    private static HttpHeaders toETagHeaders(@Nullable String version) {
+        HttpHeaders headers = new HttpHeaders();
+        if (version != null) {
+            headers.setETag("\"" + version + "\"");
+        }
+        return headers;
+    }
 }
@@ -0,0 +1,99 @@
+package com.github.brfrn169.graphbase.util;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+
+// a set of byte strings, which keeps a 128-bit fingerprint of each key in an open addressing table
+// off the heap. it takes 16 bytes per slot whatever the key length is, and two different keys
+// share a fingerprint with a negligible probability (about n^2 / 2^129 for n keys). not thread safe
+public final class FingerprintSet {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private static final int SLOT_BYTES = 16;
+
+    // 2^26 slots, 1GB, per buffer
+    private static final int SEGMENT_SLOTS_BITS = 26;
+    private static final long SEGMENT_SLOTS_MASK = (1L << SEGMENT_SLOTS_BITS) - 1;
+
+    private static final double LOAD_FACTOR = 0.75;
+
+    private ByteBuffer[] segments;
+    private long capacity;
+    private long size;
+
+    public FingerprintSet(long expectedSize) {
+        long capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(long capacity) {
+        this.capacity = capacity;
+        long segmentSlots = Math.min(capacity, 1L << SEGMENT_SLOTS_BITS);
+        segments = new ByteBuffer[(int) (capacity / segmentSlots)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect((int) (segmentSlots * SLOT_BYTES));
+        }
+    }
+
+    // returns false if the key is already in the set
+    public boolean add(byte[] key) {
+        ByteBuffer hash = ByteBuffer.wrap(HASH.hashBytes(key).asBytes());
+        long high = hash.getLong(0);
+        long low = hash.getLong(8);
+        // all zeros mark an empty slot
+        if (high == 0 && low == 0) {
+            low = 1;
+        }
+
+        if (size + 1 > capacity * LOAD_FACTOR) {
+            grow();
+        }
+        if (insert(high, low)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    private boolean insert(long high, long low) {
+        long mask = capacity - 1;
+        for (long slot = high & mask; ; slot = (slot + 1) & mask) {
+            ByteBuffer segment = segments[(int) (slot >>> SEGMENT_SLOTS_BITS)];
+            int offset = (int) (slot & SEGMENT_SLOTS_MASK) * SLOT_BYTES;
+            long slotHigh = segment.getLong(offset);
+            long slotLow = segment.getLong(offset + 8);
+            if (slotHigh == 0 && slotLow == 0) {
+                segment.putLong(offset, high);
+                segment.putLong(offset + 8, low);
+                return true;
+            }
+            if (slotHigh == high && slotLow == low) {
+                return false;
+            }
+        }
+    }
+
+    private void grow() {
+        ByteBuffer[] oldSegments = segments;
+        allocate(capacity * 2);
+        for (ByteBuffer segment : oldSegments) {
+            for (int offset = 0; offset < segment.capacity(); offset += SLOT_BYTES) {
+                long high = segment.getLong(offset);
+                long low = segment.getLong(offset + 8);
+                if (high != 0 || low != 0) {
+                    insert(high, low);
+                }
+            }
+        }
+    }
+}
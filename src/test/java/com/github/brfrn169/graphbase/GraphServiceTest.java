@@ -1,19 +1,87 @@
 package com.github.brfrn169.graphbase;
 
+import com.github.brfrn169.graphbase.aggregation.Aggregation;
+import com.github.brfrn169.graphbase.aggregation.AggregationQuery;
+import com.github.brfrn169.graphbase.aggregation.AggregationResult;
+import com.github.brfrn169.graphbase.algorithm.NeighborSample;
+import com.github.brfrn169.graphbase.algorithm.NeighborSampleParameters;
+import com.github.brfrn169.graphbase.algorithm.NodePair;
+import com.github.brfrn169.graphbase.algorithm.NodeSimilarity;
+import com.github.brfrn169.graphbase.algorithm.PersonalizedPageRankParameters;
+import com.github.brfrn169.graphbase.algorithm.RandomWalkParameters;
+import com.github.brfrn169.graphbase.algorithm.ScoredNode;
+import com.github.brfrn169.graphbase.exception.GraphNotFoundException;
 import com.github.brfrn169.graphbase.exception.NodeAlreadyExistsException;
 import com.github.brfrn169.graphbase.exception.NodeNotFoundException;
+import com.github.brfrn169.graphbase.exception.QuotaExceededException;
 import com.github.brfrn169.graphbase.exception.RelationshipAlreadyExistsException;
 import com.github.brfrn169.graphbase.exception.RelationshipNotFoundException;
+import com.github.brfrn169.graphbase.exception.VersionMismatchException;
+import com.github.brfrn169.graphbase.exception.WriteConflictException;
+import com.github.brfrn169.graphbase.filter.PropertyCondition;
+import com.github.brfrn169.graphbase.hbase.HBaseBulkLoader;
+import com.github.brfrn169.graphbase.hbase.HBaseClient;
+import com.github.brfrn169.graphbase.hbase.HBaseExporter;
 import com.github.brfrn169.graphbase.hbase.HBaseGraphStorage;
+import com.github.brfrn169.graphbase.io.EntityFiles;
+import com.github.brfrn169.graphbase.io.ImportFailure;
+import com.github.brfrn169.graphbase.io.ImportResult;
+import com.github.brfrn169.graphbase.query.NodePattern;
+import com.github.brfrn169.graphbase.query.PatternQuery;
+import com.github.brfrn169.graphbase.query.PatternQueryExecutor;
+import com.github.brfrn169.graphbase.query.RelationshipPattern;
 import com.github.brfrn169.graphbase.util.Properties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.retry.RetryNTimes;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeepDeletedCells;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.coprocessor.BaseRegionObserver;
+import org.apache.hadoop.hbase.coprocessor.ObserverContext;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Threads;
+import org.apache.zookeeper.data.Stat;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -22,7 +90,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -36,10 +108,13 @@ import static com.github.brfrn169.graphbase.sort.SortPredicate.Builder.asc;
 import static com.github.brfrn169.graphbase.sort.SortPredicate.Builder.desc;
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.junit.Assert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -50,16 +125,34 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
     private static HBaseTestingUtility testUtil;
     private static GraphService graphService;
     private static GraphStorage graphStorage;
+    private static MeterRegistry registry;
+
+    // the quotas of graphService refill only when the tests move this clock
+    private static final AtomicLong nanoClock = new AtomicLong();
 
     private static void createGraph(String graphId) {
-        graphService.createGraph(new GraphConfiguration(graphId));
+        createGraph(new GraphConfiguration(graphId));
+    }
 
-        // waiting for synchronizing with zookeeper
-        while (true) {
-            if (graphService.getGraphConfiguration(graphId).isPresent()) {
-                return;
-            }
+    private static void createGraph(GraphConfiguration graphConf) {
+        graphService.createGraph(graphConf);
+    }
 
+    private static <M extends Meter> M meter(MeterRegistry registry, String name,
+        Class<M> meterClass, String... tags) {
+        return registry.getMeters().stream().filter(meter -> meter.getId().getName().equals(name))
+            .filter(meter -> {
+                for (int i = 0; i < tags.length; i += 2) {
+                    if (!tags[i + 1].equals(meter.getId().getTag(tags[i]))) {
+                        return false;
+                    }
+                }
+                return true;
+            }).map(meterClass::cast).findFirst().get();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        while (!condition.getAsBoolean()) {
             try {
                 TimeUnit.MILLISECONDS.sleep(100);
             } catch (InterruptedException e) {
@@ -68,14 +161,61 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
         }
     }
 
+    // records the durability of the puts by their row
+    public static class DurabilityObserver extends BaseRegionObserver {
+        private static final Map<String, org.apache.hadoop.hbase.client.Durability> DURABILITIES =
+            new ConcurrentHashMap<>();
+
+        @Override public void prePut(ObserverContext<RegionCoprocessorEnvironment> e, Put put,
+            WALEdit edit, org.apache.hadoop.hbase.client.Durability durability) {
+            DURABILITIES.put(Bytes.toString(put.getRow()), durability);
+        }
+
+        // the node rows end with the node id
+        private static org.apache.hadoop.hbase.client.Durability durability(String nodeId) {
+            return DURABILITIES.entrySet().stream().filter(e -> e.getKey().endsWith(nodeId))
+                .map(Map.Entry::getValue).findFirst().orElse(null);
+        }
+    }
+
+    // delays the gets served by the primary replicas while enabled, so that the timeline gets are
+    // served by the secondary ones
+    public static class SlowPrimaryObserver extends BaseRegionObserver {
+        private static volatile boolean enabled;
+
+        public static void setEnabled(boolean enabled) {
+            SlowPrimaryObserver.enabled = enabled;
+        }
+
+        @Override public void preGetOp(ObserverContext<RegionCoprocessorEnvironment> e, Get get,
+            List<Cell> results) {
+            if (enabled && e.getEnvironment().getRegionInfo().getReplicaId() == 0) {
+                Threads.sleep(1000);
+            }
+        }
+    }
+
+    public static void addCoprocessor(HBaseTestingUtility testUtil, TableName tableName,
+        Class<?> coprocessorClass) throws IOException {
+        HTableDescriptor tableDescriptor = testUtil.getHBaseAdmin().getTableDescriptor(tableName);
+        tableDescriptor.addCoprocessor(coprocessorClass.getName());
+        testUtil.getHBaseAdmin().disableTable(tableName);
+        testUtil.getHBaseAdmin().modifyTable(tableName, tableDescriptor);
+        testUtil.getHBaseAdmin().enableTable(tableName);
+    }
+
     @BeforeAll public static void beforeAll() throws Exception {
         testUtil = new HBaseTestingUtility();
         Configuration conf = testUtil.getConfiguration();
         conf.setBoolean(HBaseGraphStorage.TABLE_COMPRESSION_CONF_KEY, false);
+        // small, so that cascading deletes take several batches
+        conf.setInt(HBaseGraphStorage.CASCADE_BATCH_SIZE_CONF_KEY, 10);
         testUtil.startMiniCluster();
 
-        graphStorage = new HBaseGraphStorage(conf);
-        graphService = new GraphService(conf, graphStorage);
+        registry = new SimpleMeterRegistry();
+        GraphMetrics metrics = new GraphMetrics(registry);
+        graphStorage = new HBaseGraphStorage(conf, metrics);
+        graphService = new GraphService(conf, graphStorage, metrics, nanoClock::get);
     }
 
     @AfterAll public static void afterAll() throws Exception {
@@ -105,6 +245,181 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
             assertThat(graphService.graphExists(graphId), is(false));
         }
+
+        @Test @DisplayName("Test for synchronizing the catalog between the managers")
+        public void synchronizeCatalog() throws IOException {
+            final String graphId1 = "GraphCatalogRelatedTest-synchronizeCatalog1";
+            final String graphId2 = "GraphCatalogRelatedTest-synchronizeCatalog2";
+
+            createGraph(graphId1);
+
+            try (GraphCatalogManager graphCatalogManager =
+                new GraphCatalogManager(testUtil.getConfiguration())) {
+                // loaded at the start
+                assertThat(graphCatalogManager.graphExists(graphId1), is(true));
+
+                createGraph(graphId2);
+                waitUntil(() -> graphCatalogManager.graphExists(graphId2));
+
+                graphService.dropGraph(graphId1);
+                waitUntil(() -> !graphCatalogManager.graphExists(graphId1));
+                assertThat(graphCatalogManager.graphExists(graphId2), is(true));
+            }
+        }
+
+        @Test @DisplayName("Test for dropping the graph remotely after updating it locally")
+        public void dropAfterLocalUpdate() throws Exception {
+            final String graphId = "GraphCatalogRelatedTest-dropAfterLocalUpdate";
+            final String path = catalogPath(graphId);
+
+            try (GraphCatalogManager graphCatalogManager =
+                new GraphCatalogManager(testUtil.getConfiguration());
+                CuratorFramework client = newZooKeeperClient()) {
+                graphCatalogManager.createGraph(new GraphConfiguration(graphId));
+                Stat created = client.checkExists().forPath(path);
+
+                graphCatalogManager.updateGraph(new GraphConfiguration(graphId));
+
+                // the removal comes with the stat the cache saw last, older than the update
+                graphCatalogManager.onChildRemoved(new ChildData(path, created, null));
+                assertThat(graphCatalogManager.graphExists(graphId), is(false));
+
+                graphCatalogManager.dropGraph(graphId);
+            }
+        }
+
+        @Test @DisplayName("Test for the late events of a dropped graph")
+        public void lateEventsAfterDrop() throws Exception {
+            final String graphId = "GraphCatalogRelatedTest-lateEventsAfterDrop";
+            final String path = catalogPath(graphId);
+
+            try (GraphCatalogManager graphCatalogManager =
+                new GraphCatalogManager(testUtil.getConfiguration());
+                CuratorFramework client = newZooKeeperClient()) {
+                graphCatalogManager.createGraph(new GraphConfiguration(graphId));
+                Stat created = client.checkExists().forPath(path);
+                byte[] data = client.getData().forPath(path);
+
+                graphCatalogManager.dropGraph(graphId);
+
+                // an event of the dropped znode which comes late
+                graphCatalogManager.onChildChanged(new ChildData(path, created, data));
+                assertThat(graphCatalogManager.graphExists(graphId), is(false));
+
+                // the late removal of the old znode doesn't drop the graph created again
+                graphCatalogManager.createGraph(new GraphConfiguration(graphId));
+                graphCatalogManager.onChildRemoved(new ChildData(path, created, null));
+                assertThat(graphCatalogManager.graphExists(graphId), is(true));
+
+                graphCatalogManager.dropGraph(graphId);
+            }
+        }
+
+        private String catalogPath(String graphId) {
+            return testUtil.getConfiguration()
+                .get(GraphCatalogManager.ZOOKEEPER_BASE_PATH_CONF_KEY, "/graphbase/catalog") + "/"
+                + graphId;
+        }
+
+        private CuratorFramework newZooKeeperClient() {
+            Configuration conf = testUtil.getConfiguration();
+            CuratorFramework client = CuratorFrameworkFactory.newClient(
+                conf.get(HConstants.ZOOKEEPER_QUORUM) + ":" + conf
+                    .getInt(HConstants.ZOOKEEPER_CLIENT_PORT, 2181), new RetryNTimes(10, 100));
+            client.start();
+            return client;
+        }
+
+        @Test @DisplayName("Test for the storage options of the graph")
+        public void storageOptions() throws IOException {
+            final String graphId = "GraphCatalogRelatedTest-storageOptions";
+
+            StorageOptions storageOptions =
+                new StorageOptions(CompressionAlgorithm.NONE, BlockEncoding.PREFIX, 16384,
+                    BloomFilterType.ROWCOL, true, null, null, Durability.ASYNC_WAL, 3, 86400,
+                    null);
+            createGraph(new GraphConfiguration(graphId, storageOptions));
+
+            HTableDescriptor nodeTableDescriptor = testUtil.getHBaseAdmin()
+                .getTableDescriptor(TableName.valueOf("graphbase", graphId + "_node"));
+            assertThat(nodeTableDescriptor.getDurability(),
+                is(org.apache.hadoop.hbase.client.Durability.ASYNC_WAL));
+            for (HColumnDescriptor family : nodeTableDescriptor.getColumnFamilies()) {
+                assertThat(family.getDataBlockEncoding(), is(DataBlockEncoding.PREFIX));
+                assertThat(family.getBlocksize(), is(16384));
+                assertThat(family.getBloomFilterType(), is(BloomType.ROWCOL));
+                assertThat(family.isInMemory(), is(true));
+            }
+            HColumnDescriptor nodeFamily = nodeTableDescriptor.getFamily(Bytes.toBytes("n"));
+            assertThat(nodeFamily.getMaxVersions(), is(3));
+            assertThat(nodeFamily.getTimeToLive(), is(86400));
+            assertThat(nodeFamily.getKeepDeletedCells(), is(KeepDeletedCells.TTL));
+            // the degree counters have no history
+            HColumnDescriptor degreeFamily = nodeTableDescriptor.getFamily(Bytes.toBytes("d"));
+            assertThat(degreeFamily.getTimeToLive(), is(HConstants.FOREVER));
+
+            graphService.addNode(graphId, "a", "User", Collections.emptyMap());
+
+            // the options which are left out go back to the defaults
+            StorageOptions alteredStorageOptions =
+                new StorageOptions(null, null, null, BloomFilterType.ROW, null, false, null, null,
+                    null, null, null);
+            graphService.alterGraph(graphId, alteredStorageOptions);
+            assertThat(graphService.getGraphConfiguration(graphId),
+                is(Optional.of(new GraphConfiguration(graphId, alteredStorageOptions))));
+
+            HTableDescriptor relTableDescriptor = testUtil.getHBaseAdmin()
+                .getTableDescriptor(TableName.valueOf("graphbase", graphId + "_rel"));
+            assertThat(relTableDescriptor.getDurability(),
+                is(org.apache.hadoop.hbase.client.Durability.USE_DEFAULT));
+            for (HColumnDescriptor family : relTableDescriptor.getColumnFamilies()) {
+                assertThat(family.getDataBlockEncoding(), is(DataBlockEncoding.FAST_DIFF));
+                assertThat(family.getBloomFilterType(), is(BloomType.ROW));
+                assertThat(family.isBlockCacheEnabled(), is(false));
+                assertThat(family.isInMemory(), is(false));
+                assertThat(family.getMaxVersions(), is(Integer.MAX_VALUE));
+                assertThat(family.getKeepDeletedCells(), is(KeepDeletedCells.TRUE));
+            }
+            assertThat(graphService.nodeExists(graphId, "a"), is(true));
+
+            assertThrows(GraphNotFoundException.class, () -> graphService
+                .alterGraph("GraphCatalogRelatedTest-nonexistent", alteredStorageOptions));
+        }
+
+        @Test @DisplayName("Test for the durability of the writes")
+        public void durability() throws IOException {
+            final String graphId = "GraphCatalogRelatedTest-durability";
+
+            createGraph(new GraphConfiguration(graphId, null, null, Durability.SKIP_WAL));
+
+            // the puts to the node table are recorded as the region server gets them
+            addCoprocessor(testUtil, TableName.valueOf("graphbase", graphId + "_node"),
+                DurabilityObserver.class);
+
+            graphService.addNode(graphId, "alice", "User", Collections.emptyMap());
+            graphService
+                .addNode(graphId, "bob", "User", Collections.emptyMap(), Durability.SYNC_WAL);
+            graphService.setDurability(graphId, Durability.ASYNC_WAL);
+            graphService.addNode(graphId, "carol", "User", Collections.emptyMap());
+
+            // the durability of the graph is kept when the storage options are altered
+            graphService.alterGraph(graphId, null);
+            assertThat(graphService.getGraphConfiguration(graphId).get().durability(),
+                is(Durability.ASYNC_WAL));
+
+            graphService.setDurability(graphId, null);
+            graphService.addNode(graphId, "dave", "User", Collections.emptyMap());
+
+            // the request, then the graph, then the tables
+            assertThat(DurabilityObserver.durability("alice"),
+                is(org.apache.hadoop.hbase.client.Durability.SKIP_WAL));
+            assertThat(DurabilityObserver.durability("bob"),
+                is(org.apache.hadoop.hbase.client.Durability.SYNC_WAL));
+            assertThat(DurabilityObserver.durability("carol"),
+                is(org.apache.hadoop.hbase.client.Durability.ASYNC_WAL));
+            assertThat(DurabilityObserver.durability("dave"),
+                is(org.apache.hadoop.hbase.client.Durability.USE_DEFAULT));
+        }
     }
 
 
@@ -792,4 +1107,1637 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
             }
         }
     }
+
+
+    @Nested @DisplayName("Tests related to sampling") public class SamplingRelatedTest {
+        @Test @DisplayName("Test for sampling the neighbors") public void sampleNeighbors() {
+            final String graphId = "SamplingRelatedTest-sampleNeighbors";
+            final String relType = "relType";
+
+            createGraph(graphId);
+
+            IntStream.range(0, 5).forEach(i -> graphService
+                .addRelationship(graphId, "nodeId", relType, "neighbor" + i,
+                    Collections.emptyMap()));
+            IntStream.range(0, 5).forEach(i -> graphService
+                .addRelationship(graphId, "neighbor" + i, relType, "nodeId",
+                    Collections.emptyMap()));
+            graphService.addRelationship(graphId, "nodeId2", relType, "neighbor0",
+                Collections.emptyMap());
+
+            List<NeighborSample> samples = graphService.sampleNeighbors(graphId,
+                new NeighborSampleParameters(Arrays.asList("nodeId", "nodeId2"),
+                    Arrays.asList(3, 1), null, null, 0L));
+
+            List<NeighborSample> firstHop =
+                samples.stream().filter(s -> s.hop() == 0).collect(Collectors.toList());
+            assertThat(firstHop, hasSize(2));
+
+            assertThat(firstHop.get(0).nodeId(), is("nodeId"));
+            assertThat(firstHop.get(0).neighbors(), hasSize(3));
+            assertThat(new HashSet<>(firstHop.get(0).neighbors()), hasSize(3));
+            firstHop.get(0).neighbors()
+                .forEach(neighbor -> assertThat(neighbor.startsWith("neighbor"), is(true)));
+
+            assertThat(firstHop.get(1).nodeId(), is("nodeId2"));
+            assertThat(firstHop.get(1).neighbors(), is(Collections.singletonList("neighbor0")));
+
+            samples.stream().filter(s -> s.hop() == 1).forEach(s -> {
+                assertThat(s.nodeId().startsWith("neighbor"), is(true));
+                assertThat(s.neighbors(), is(Collections.singletonList("nodeId")));
+            });
+        }
+
+        @Test @DisplayName("Test for sampling the neighbors with weights")
+        public void sampleNeighborsWithWeights() {
+            final String graphId = "SamplingRelatedTest-sampleNeighborsWithWeights";
+            final String relType = "relType";
+            final String weightKey = "weight";
+
+            createGraph(graphId);
+
+            graphService.addRelationship(graphId, "nodeId", relType, "neighbor1",
+                Properties.property(weightKey, 1.5));
+            graphService.addRelationship(graphId, "nodeId", relType, "neighbor2",
+                Properties.property(weightKey, 0));
+            graphService.addRelationship(graphId, "nodeId", relType, "neighbor3",
+                Collections.emptyMap());
+
+            List<NeighborSample> samples = graphService.sampleNeighbors(graphId,
+                new NeighborSampleParameters(Collections.singletonList("nodeId"),
+                    Collections.singletonList(3), null, weightKey, null));
+
+            assertThat(samples, hasSize(2));
+            assertThat(samples.get(0).neighbors(), is(Collections.singletonList("neighbor1")));
+        }
+
+        @Test @DisplayName("Test for the random walks") public void randomWalks() {
+            final String graphId = "SamplingRelatedTest-randomWalks";
+            final String relType = "relType";
+
+            createGraph(graphId);
+
+            graphService.addRelationship(graphId, "a", relType, "b", Collections.emptyMap());
+            graphService.addRelationship(graphId, "b", relType, "c", Collections.emptyMap());
+            graphService.addRelationship(graphId, "c", relType, "d", Collections.emptyMap());
+            graphService.addRelationship(graphId, "b", "otherType", "x", Collections.emptyMap());
+
+            try (Stream<List<String>> walks = graphService.randomWalks(graphId,
+                new RandomWalkParameters(Arrays.asList("a", "c"), 3, 2,
+                    Collections.singletonList(relType), null, 0.5, 2.0, 0L))) {
+                List<List<String>> result = walks.collect(Collectors.toList());
+
+                assertThat(result, hasSize(4));
+                assertThat(result.get(0), is(Arrays.asList("a", "b", "c")));
+                assertThat(result.get(1), is(Arrays.asList("a", "b", "c")));
+                assertThat(result.get(2), is(Arrays.asList("c", "d")));
+                assertThat(result.get(3), is(Arrays.asList("c", "d")));
+            }
+
+            // the number of the walks is bounded, so that it doesn't overflow
+            assertThrows(IllegalArgumentException.class,
+                () -> new RandomWalkParameters(Arrays.asList("a", "c"), 3, Integer.MAX_VALUE,
+                    null, null, null, null, null));
+        }
+    }
+
+
+    @Nested @DisplayName("Tests related to ranking") public class RankingRelatedTest {
+        @Test @DisplayName("Test for the personalized PageRank")
+        public void personalizedPageRank() {
+            final String graphId = "RankingRelatedTest-personalizedPageRank";
+            final String relType = "follows";
+
+            createGraph(graphId);
+
+            graphService.addRelationship(graphId, "a", relType, "b", Collections.emptyMap());
+            graphService.addRelationship(graphId, "a", relType, "c", Collections.emptyMap());
+            graphService.addRelationship(graphId, "b", relType, "d", Collections.emptyMap());
+            graphService.addRelationship(graphId, "c", relType, "d", Collections.emptyMap());
+            graphService.addRelationship(graphId, "d", relType, "e", Collections.emptyMap());
+            graphService.addRelationship(graphId, "x", relType, "y", Collections.emptyMap());
+
+            {
+                List<ScoredNode> result = graphService.personalizedPageRank(graphId, "a",
+                    new PersonalizedPageRankParameters(null, null, 1e-6, null, null, 10000L,
+                        null, null));
+
+                assertThat(result, hasSize(2));
+                assertThat(result.get(0).nodeId(), is("d"));
+                assertThat(result.get(1).nodeId(), is("e"));
+                assertThat(result.get(0).score() > result.get(1).score(), is(true));
+            }
+
+            {
+                List<ScoredNode> result = graphService.personalizedPageRank(graphId, "a",
+                    new PersonalizedPageRankParameters(Collections.singletonList(relType), null,
+                        1e-6, 10, null, 10000L, false, false));
+
+                assertThat(result, hasSize(4));
+                assertThat(result.get(0).nodeId(), is("d"));
+                assertThat(result.stream().map(ScoredNode::nodeId).collect(Collectors.toSet()),
+                    is(new HashSet<>(Arrays.asList("b", "c", "d", "e"))));
+            }
+        }
+    }
+
+    @Nested @DisplayName("Tests related to similarity") public class SimilarityRelatedTest {
+        @Test @DisplayName("Test for the common neighbors and the similarities")
+        public void similarity() {
+            final String graphId = "SimilarityRelatedTest-similarity";
+            final String relType = "follows";
+
+            createGraph(graphId);
+
+            for (String inNodeId : Arrays.asList("c", "d", "e")) {
+                graphService.addRelationship(graphId, "a", relType, inNodeId,
+                    Collections.emptyMap());
+            }
+            for (String inNodeId : Arrays.asList("d", "e", "f", "g")) {
+                graphService.addRelationship(graphId, "b", relType, inNodeId,
+                    Collections.emptyMap());
+            }
+            graphService.addRelationship(graphId, "a", "likes", "f", Collections.emptyMap());
+            graphService.addRelationship(graphId, "d", relType, "x", Collections.emptyMap());
+            graphService.addRelationship(graphId, "d", relType, "y", Collections.emptyMap());
+
+            assertThat(graphService.commonNeighbors(graphId, "a", "b", relType),
+                is(Arrays.asList("d", "e")));
+            assertThat(graphService.commonNeighbors(graphId, "a", "x", relType), is(empty()));
+
+            NodeSimilarity similarity = graphService.similarity(graphId, "a", "b", relType);
+            assertThat(similarity.commonNeighbors(), is(2L));
+            assertThat(similarity.jaccard(), is(2.0 / 5.0));
+            assertThat(similarity.adamicAdar(), is(2.0 / Math.log(2)));
+
+            List<NodeSimilarity> similarities = graphService.similarities(graphId,
+                Arrays.asList(new NodePair("a", "b"), new NodePair("b", "a"),
+                    new NodePair("a", "z")), relType);
+            assertThat(similarities, hasSize(3));
+            assertThat(similarities.get(0), is(similarity));
+            assertThat(similarities.get(1).jaccard(), is(2.0 / 5.0));
+            assertThat(similarities.get(2).commonNeighbors(), is(0L));
+            assertThat(similarities.get(2).jaccard(), is(0.0));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to pattern queries") public class QueryRelatedTest {
+        @Test @DisplayName("Test for the pattern query") public void query() {
+            final String graphId = "QueryRelatedTest-query";
+
+            createGraph(graphId);
+
+            graphService.addNode(graphId, "u1", "User", Collections.emptyMap());
+            graphService.addNode(graphId, "u2", "User", Collections.emptyMap());
+            graphService.addNode(graphId, "u3", "User", Collections.emptyMap());
+            graphService.addNode(graphId, "p1", "Post", Collections.singletonMap("lang", "en"));
+            graphService.addNode(graphId, "p2", "Post", Collections.singletonMap("lang", "ja"));
+            graphService.addNode(graphId, "p3", "Post", Collections.singletonMap("lang", "en"));
+
+            graphService.addRelationship(graphId, "u1", "FOLLOWS", "u2", Collections.emptyMap());
+            graphService.addRelationship(graphId, "u1", "FOLLOWS", "u3", Collections.emptyMap());
+            graphService.addRelationship(graphId, "u2", "LIKES", "p1", Collections.emptyMap());
+            graphService.addRelationship(graphId, "u2", "LIKES", "p2", Collections.emptyMap());
+            graphService.addRelationship(graphId, "u3", "LIKES", "p3",
+                Collections.singletonMap("stars", 1));
+            graphService.addRelationship(graphId, "u3", "FOLLOWS", "u1", Collections.emptyMap());
+
+            NodePattern user1 = new NodePattern("a", Collections.singletonList("User"), null, null);
+            NodePattern user2 = new NodePattern("b", Collections.singletonList("User"), null, null);
+            NodePattern post = new NodePattern("p", Collections.singletonList("Post"), null,
+                Collections.singletonList(
+                    new PropertyCondition("lang", PropertyCondition.Operator.EQ, "en")));
+
+            {
+                PatternQuery query = new PatternQuery(Arrays.asList(user1, user2, post), Arrays
+                    .asList(new RelationshipPattern(null, "a", "b",
+                            Collections.singletonList("FOLLOWS"), null),
+                        new RelationshipPattern("l", "b", "p", Collections.singletonList("LIKES"),
+                            null)), null);
+
+                try (Stream<Map<String, Object>> stream = graphService.query(graphId, query)) {
+                    List<Map<String, Object>> bindings = stream.collect(Collectors.toList());
+                    assertThat(bindings, hasSize(2));
+                    assertThat(bindings.stream()
+                            .map(binding -> ((Node) binding.get("p")).id() + "<-"
+                                + ((Node) binding.get("b")).id() + "<-" + ((Node) binding.get("a"))
+                                .id()).collect(Collectors.toSet()),
+                        is(new HashSet<>(Arrays.asList("p1<-u2<-u1", "p3<-u3<-u1"))));
+                    bindings.forEach(binding -> assertThat(binding, hasKey("l")));
+                }
+            }
+
+            {
+                // the relationship condition and the limit
+                PatternQuery query = new PatternQuery(Arrays.asList(user1, post), Collections
+                    .singletonList(
+                        new RelationshipPattern(null, "a", "p", null, Collections.singletonList(
+                            new PropertyCondition("stars", PropertyCondition.Operator.GE, 1)))),
+                    10);
+
+                try (Stream<Map<String, Object>> stream = graphService.query(graphId, query)) {
+                    List<Map<String, Object>> bindings = stream.collect(Collectors.toList());
+                    assertThat(bindings, hasSize(1));
+                    assertThat(((Node) bindings.get(0).get("a")).id(), is("u3"));
+                }
+            }
+
+            {
+                // a cycle starting from the given ids
+                PatternQuery query = new PatternQuery(Arrays
+                    .asList(new NodePattern("a", null, Collections.singletonList("u1"), null),
+                        user2), Arrays.asList(
+                    new RelationshipPattern(null, "a", "b", Collections.singletonList("FOLLOWS"),
+                        null),
+                    new RelationshipPattern(null, "b", "a", Collections.singletonList("FOLLOWS"),
+                        null)), null);
+
+                try (Stream<Map<String, Object>> stream = graphService.query(graphId, query)) {
+                    List<Map<String, Object>> bindings = stream.collect(Collectors.toList());
+                    assertThat(bindings, hasSize(1));
+                    assertThat(((Node) bindings.get(0).get("b")).id(), is("u3"));
+                }
+            }
+
+            assertThrows(IllegalArgumentException.class, () -> new PatternQuery(
+                Arrays.asList(user1, user2), Collections.emptyList(), null));
+        }
+
+        @SuppressWarnings("unchecked") @Test
+        @DisplayName("Test for the backward expansion of the pattern query")
+        public void backwardExpansion() {
+            final String graphId = "QueryRelatedTest-backwardExpansion";
+
+            createGraph(graphId);
+
+            for (String userId : Arrays.asList("u1", "u2", "u3")) {
+                graphService.addNode(graphId, userId, "User", Collections.emptyMap());
+            }
+            for (String postId : Arrays.asList("p1", "p2", "p10")) {
+                graphService.addNode(graphId, postId, "Post", Collections.emptyMap());
+            }
+
+            graphService.addRelationship(graphId, "u1", "LIKES", "p1", Collections.emptyMap());
+            graphService.addRelationship(graphId, "u2", "LIKES", "p1", Collections.emptyMap());
+            // the unrelated ones: another type, other posts and an id sharing the prefix
+            graphService.addRelationship(graphId, "u3", "SHARES", "p1", Collections.emptyMap());
+            graphService.addRelationship(graphId, "u3", "LIKES", "p2", Collections.emptyMap());
+            graphService.addRelationship(graphId, "u3", "LIKES", "p10", Collections.emptyMap());
+            graphService.addRelationship(graphId, "u1", "FOLLOWS", "u2", Collections.emptyMap());
+
+            // records the relationships the executor reads, and fails on a full scan
+            List<Relationship> read = new ArrayList<>();
+            GraphStorage recording = (GraphStorage) Proxy
+                .newProxyInstance(GraphStorage.class.getClassLoader(),
+                    new Class<?>[] {GraphStorage.class}, (proxy, method, args) -> {
+                        assertThat(method.getName(), is(not("getRelationships")));
+                        Object ret = method.invoke(graphStorage, args);
+                        if (method.getName().equals("getIncomingRelationships")) {
+                            return ((Stream<Relationship>) ret).peek(read::add);
+                        }
+                        return ret;
+                    });
+
+            PatternQuery query = new PatternQuery(Arrays
+                .asList(new NodePattern("u", Collections.singletonList("User"), null, null),
+                    new NodePattern("p", null, Collections.singletonList("p1"), null)),
+                Collections.singletonList(
+                    new RelationshipPattern(null, "u", "p", Collections.singletonList("LIKES"),
+                        null)), null);
+
+            GraphConfiguration graphConf = graphService.getGraphConfiguration(graphId).get();
+            try (Stream<Map<String, Object>> stream = new PatternQueryExecutor(recording,
+                graphConf, query).execute()) {
+                assertThat(stream.map(binding -> ((Node) binding.get("u")).id())
+                    .collect(Collectors.toSet()), is(new HashSet<>(Arrays.asList("u1", "u2"))));
+            }
+
+            assertThat(read.stream().map(rel -> rel.outNodeId() + "-" + rel.type() + "->"
+                    + rel.inNodeId()).collect(Collectors.toSet()),
+                is(new HashSet<>(Arrays.asList("u1-LIKES->p1", "u2-LIKES->p1"))));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to versions") public class VersionRelatedTest {
+        @Test @DisplayName("Test for updating a node conditionally")
+        public void updateNodeConditionally() {
+            final String graphId = "VersionRelatedTest-updateNodeConditionally";
+
+            createGraph(graphId);
+
+            graphService.addNode(graphId, "a", "User", Properties.property("name", "alice"));
+
+            String version =
+                graphService.getVersionedNode(graphId, "a", withoutProperties()).get().version();
+            assertThat(version, not(nullValue()));
+
+            Mutation mutation = new Mutation(Properties.property("age", 20), null);
+            String newVersion = graphService.updateNode(graphId, "a", mutation, null, version);
+            assertThat(newVersion, is(not(version)));
+            assertThat(
+                graphService.getVersionedNode(graphId, "a", withAllProperties()).get().version(),
+                is(newVersion));
+
+            // the version isn't a property
+            assertThat(graphService.getNode(graphId, "a", withAllProperties()).get().properties()
+                .keySet(), is(new HashSet<>(
+                Arrays.asList("name", "age", GraphbaseConstants.PROPERTY_ADD_AT))));
+
+            assertThrows(VersionMismatchException.class,
+                () -> graphService.updateNode(graphId, "a", mutation, null, version));
+            assertThrows(NodeNotFoundException.class,
+                () -> graphService.updateNode(graphId, "b", mutation, null, version));
+            assertThrows(NodeNotFoundException.class,
+                () -> graphService.updateNode(graphId, "b", mutation));
+
+            // the updates without a version always succeed
+            graphService.updateNode(graphId, "a", mutation);
+            assertThrows(VersionMismatchException.class,
+                () -> graphService.updateNode(graphId, "a", mutation, null, newVersion));
+        }
+
+        @Test @DisplayName("Test for updating a relationship conditionally")
+        public void updateRelationshipConditionally() {
+            final String graphId = "VersionRelatedTest-updateRelationshipConditionally";
+
+            createGraph(graphId);
+
+            graphService.addRelationship(graphId, "a", "follows", "b", Collections.emptyMap());
+
+            String version = graphService
+                .getVersionedRelationship(graphId, "a", "follows", "b", withoutProperties()).get()
+                .version();
+
+            Mutation mutation = new Mutation(Properties.property("weight", 1), null);
+            graphService.updateRelationship(graphId, "a", "follows", "b", mutation, null, version);
+
+            assertThrows(VersionMismatchException.class, () -> graphService
+                .updateRelationship(graphId, "a", "follows", "b", mutation, null, version));
+            assertThrows(RelationshipNotFoundException.class, () -> graphService
+                .updateRelationship(graphId, "a", "follows", "c", mutation, null, version));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to upserts") public class UpsertRelatedTest {
+        @Test @DisplayName("Test for upserting a node") public void upsertNode() {
+            final String graphId = "UpsertRelatedTest-upsertNode";
+
+            createGraph(graphId);
+
+            String version = graphService.upsertNode(graphId,
+                new Node("a", "User", Properties.property("name", "alice", "age", 20)),
+                UpsertMode.MERGE);
+            assertThat(
+                graphService.getVersionedNode(graphId, "a", withoutProperties()).get().version(),
+                is(version));
+
+            // MERGE keeps the properties it doesn't set
+            graphService.upsertNode(graphId,
+                new Node("a", "Admin", Properties.property("age", 21)), UpsertMode.MERGE);
+            Node node = graphService.getNode(graphId, "a", withAllProperties()).get();
+            assertThat(node.type(), is("Admin"));
+            assertThat(Properties.equals(node.properties(),
+                Properties.property("name", "alice", "age", 21), true), is(true));
+
+            // and REPLACE removes them
+            graphService.upsertNode(graphId,
+                new Node("a", "User", Properties.property("age", 22)), UpsertMode.REPLACE);
+            node = graphService.getNode(graphId, "a", withAllProperties()).get();
+            assertThat(node.type(), is("User"));
+            assertThat(Properties.equals(node.properties(), Properties.property("age", 22), true),
+                is(true));
+
+            assertThrows(IllegalArgumentException.class, () -> graphService
+                .upsertNode(graphId, new Node("b", null, null), UpsertMode.MERGE));
+            assertThrows(GraphNotFoundException.class, () -> graphService
+                .upsertNode("notFound", new Node("a", "User", null), UpsertMode.MERGE));
+        }
+
+        @Test @DisplayName("Test for upserting a relationship") public void upsertRelationship() {
+            final String graphId = "UpsertRelatedTest-upsertRelationship";
+
+            createGraph(graphId);
+
+            graphService.upsertRelationship(graphId,
+                new Relationship("a", "follows", "b", Properties.property("weight", 1, "since", 0)),
+                UpsertMode.MERGE);
+            graphService.upsertRelationship(graphId,
+                new Relationship("a", "follows", "b", Properties.property("weight", 2)),
+                UpsertMode.MERGE);
+            assertThat(Properties.equals(
+                graphService.getRelationship(graphId, "a", "follows", "b", withAllProperties())
+                    .get().properties(), Properties.property("weight", 2, "since", 0), true),
+                is(true));
+
+            graphService.upsertRelationship(graphId,
+                new Relationship("a", "follows", "b", Properties.property("weight", 3)),
+                UpsertMode.REPLACE);
+            assertThat(Properties.equals(
+                graphService.getRelationship(graphId, "a", "follows", "b", withAllProperties())
+                    .get().properties(), Properties.property("weight", 3), true), is(true));
+
+            // the degrees are counted once
+            assertThat(graphService.degree(graphId, "a", Direction.OUT, null), is(1L));
+            assertThat(graphService.degree(graphId, "b", Direction.IN, null), is(1L));
+
+            // REPLACE creates a relationship too
+            graphService.upsertRelationship(graphId,
+                new Relationship("a", "follows", "c", Properties.property("weight", 4)),
+                UpsertMode.REPLACE);
+            assertThat(graphService.degree(graphId, "a", Direction.OUT, null), is(2L));
+            assertThat(graphService.degree(graphId, "c", Direction.IN, null), is(1L));
+        }
+
+        @Test @DisplayName("Test for the upserts which lose to the concurrent writes")
+        public void upsertConflict() throws IOException {
+            final String graphId = "UpsertRelatedTest-upsertConflict";
+
+            createGraph(graphId);
+            GraphConfiguration graphConf = graphService.getGraphConfiguration(graphId).get();
+
+            // no attempt is left, as if every one of them lost
+            Configuration conf = new Configuration(testUtil.getConfiguration());
+            conf.setInt(HBaseGraphStorage.CONDITIONAL_WRITE_MAX_ATTEMPTS_CONF_KEY, 0);
+            try (HBaseGraphStorage storage = new HBaseGraphStorage(conf,
+                new GraphMetrics(new SimpleMeterRegistry()))) {
+                assertThrows(WriteConflictException.class, () -> storage
+                    .upsertRelationship(graphConf, new Relationship("a", "follows", "b", null),
+                        UpsertMode.MERGE));
+                assertThrows(WriteConflictException.class, () -> storage
+                    .upsertNode(graphConf, new Node("a", "User", null), UpsertMode.REPLACE));
+            }
+            assertThat(graphService.relationshipExists(graphId, "a", "follows", "b"), is(false));
+            assertThat(graphService.nodeExists(graphId, "a"), is(false));
+        }
+
+        @Test @DisplayName("Test for upserting in batches") public void upsertInBatches() {
+            final String graphId = "UpsertRelatedTest-upsertInBatches";
+
+            createGraph(graphId);
+
+            graphService.addNode(graphId, "a", "User", Properties.property("name", "alice"));
+            graphService.addRelationship(graphId, "a", "follows", "b", Collections.emptyMap());
+
+            graphService.upsertNodes(graphId, Arrays
+                .asList(new Node("a", "User", Properties.property("age", 20)),
+                    new Node("b", "User", Properties.property("age", 30)),
+                    new Node("b", "User", Properties.property("age", 31))), UpsertMode.MERGE);
+            assertThat(graphService.getNode(graphId, "a", withAllProperties()).get().properties(),
+                hasEntry("name", (Object) "alice"));
+            assertThat(graphService.getNode(graphId, "b", withAllProperties()).get().properties(),
+                hasEntry("age", (Object) 31));
+
+            graphService.upsertRelationships(graphId, Arrays
+                .asList(new Relationship("a", "follows", "b", Properties.property("weight", 1)),
+                    new Relationship("a", "follows", "c", Properties.property("weight", 2)),
+                    new Relationship("a", "follows", "c", Properties.property("weight", 3))),
+                UpsertMode.REPLACE);
+            assertThat(
+                graphService.getRelationship(graphId, "a", "follows", "c", withAllProperties())
+                    .get().properties(), hasEntry("weight", (Object) 3));
+
+            // only the created relationships are counted
+            assertThat(graphService.degree(graphId, "a", Direction.OUT, null), is(2L));
+            assertThat(graphService.degree(graphId, "c", Direction.IN, null), is(1L));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to the operators") public class OperatorRelatedTest {
+        private Mutation increment(String key, long amount) {
+            return new Mutation(null, null, Collections.singletonMap(key, amount), null, null);
+        }
+
+        @Test @DisplayName("Test for incrementing properties") public void increment() {
+            final String graphId = "OperatorRelatedTest-increment";
+
+            createGraph(graphId);
+
+            graphService.addNode(graphId, "a", "Page", Properties.property("viewCount", 10));
+
+            // the increments aren't lost under contention
+            IntStream.range(0, 100).parallel()
+                .forEach(i -> graphService.updateNode(graphId, "a", increment("viewCount", 1)));
+            graphService.updateNode(graphId, "a", increment("likeCount", -1));
+
+            Node node = graphService.getNode(graphId, "a", withAllProperties()).get();
+            assertThat(node.properties(), hasEntry("viewCount", (Object) 110L));
+            assertThat(node.properties(), hasEntry("likeCount", (Object) (-1L)));
+
+            // the counters are read by the filters like the other numbers
+            assertThat(graphService.getNodes(graphId, null, greater("viewCount", 100), null,
+                withoutProperties()), hasSize(1));
+
+            graphService.updateNode(graphId, "a",
+                new Mutation(Properties.property("title", "x"), null));
+            assertThrows(IllegalArgumentException.class,
+                () -> graphService.updateNode(graphId, "a", increment("title", 1)));
+            assertThrows(NodeNotFoundException.class,
+                () -> graphService.updateNode(graphId, "b", increment("viewCount", 1)));
+            assertThat(graphService.nodeExists(graphId, "b"), is(false));
+        }
+
+        @Test @DisplayName("Test for the range of the counters") public void counterRange() {
+            final String graphId = "OperatorRelatedTest-counterRange";
+
+            createGraph(graphId);
+
+            long max = (1L << 56) - 1;
+            graphService.addNode(graphId, "a", "Page", Collections.emptyMap());
+            graphService.updateNode(graphId, "a", increment("viewCount", max - 1));
+            graphService.updateNode(graphId, "a", increment("viewCount", 1));
+            assertThat(graphService.getNode(graphId, "a", withAllProperties()).get().properties(),
+                hasEntry("viewCount", (Object) max));
+
+            // the increment which crosses the range is taken back, with the others of the call
+            Map<String, Long> increments = new HashMap<>();
+            increments.put("viewCount", 1L);
+            increments.put("likeCount", 1L);
+            assertThrows(IllegalArgumentException.class, () -> graphService
+                .updateNode(graphId, "a", new Mutation(null, null, increments, null, null)));
+            Node node = graphService.getNode(graphId, "a", withAllProperties()).get();
+            assertThat(node.properties(), hasEntry("viewCount", (Object) max));
+            assertThat(node.properties(), hasEntry("likeCount", (Object) 0L));
+
+            graphService.updateNode(graphId, "a", increment("downCount", -max - 1));
+            assertThrows(IllegalArgumentException.class,
+                () -> graphService.updateNode(graphId, "a", increment("downCount", -1)));
+            assertThrows(IllegalArgumentException.class, () -> graphService
+                .updateNode(graphId, "a", increment("viewCount", Long.MIN_VALUE)));
+            assertThrows(IllegalArgumentException.class, () -> graphService.updateNode(graphId,
+                "a", new Mutation(null, null, null, null,
+                    Collections.singletonMap("maxCount", max + 1))));
+        }
+
+        @Test @DisplayName("Test for appending to properties and setting the max")
+        public void appendAndMax() {
+            final String graphId = "OperatorRelatedTest-appendAndMax";
+
+            createGraph(graphId);
+
+            graphService.addRelationship(graphId, "a", "visits", "b",
+                Properties.property("pages", Arrays.asList("p1"), "maxScore", 10));
+
+            Map<String, List<Object>> appends = new HashMap<>();
+            appends.put("pages", Arrays.asList("p2", "p3"));
+            appends.put("tags", Collections.singletonList("t1"));
+            Map<String, Long> maxes = new HashMap<>();
+            maxes.put("maxScore", 5L);
+            maxes.put("maxDepth", -3L);
+            graphService.updateRelationship(graphId, "a", "visits", "b",
+                new Mutation(null, null, null, appends, maxes));
+
+            Map<String, Object> properties =
+                graphService.getRelationship(graphId, "a", "visits", "b", withAllProperties())
+                    .get().properties();
+            assertThat(properties, hasEntry("pages", (Object) Arrays.asList("p1", "p2", "p3")));
+            assertThat(properties, hasEntry("tags", (Object) Collections.singletonList("t1")));
+            assertThat(properties, hasEntry("maxScore", (Object) 10));
+            assertThat(properties, hasEntry("maxDepth", (Object) (-3L)));
+
+            graphService.updateRelationship(graphId, "a", "visits", "b",
+                new Mutation(null, null, null, null, Collections.singletonMap("maxScore", 20L)));
+            graphService.updateRelationship(graphId, "a", "visits", "b",
+                new Mutation(null, null, null, null, Collections.singletonMap("maxScore", 15L)));
+            assertThat(
+                graphService.getRelationship(graphId, "a", "visits", "b", withAllProperties())
+                    .get().properties(), hasEntry("maxScore", (Object) 20L));
+
+            // the operators can't be applied conditionally
+            String version = graphService
+                .getVersionedRelationship(graphId, "a", "visits", "b", withoutProperties()).get()
+                .version();
+            assertThrows(IllegalArgumentException.class, () -> graphService
+                .updateRelationship(graphId, "a", "visits", "b", increment("count", 1), null,
+                    version));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to writing behind") public class WriteBehindRelatedTest {
+        @Test @DisplayName("Test for updating nodes behind") public void updateNodesBehind()
+            throws IOException {
+            final String graphId = "WriteBehindRelatedTest-updateNodesBehind";
+
+            // the window is long, so that only the reads and the explicit flushes write
+            Configuration conf = new Configuration(testUtil.getConfiguration());
+            conf.setLong(GraphService.WRITE_BEHIND_WINDOW_MS_CONF_KEY, 60000L);
+            try (GraphService service = new GraphService(conf, graphStorage,
+                new GraphMetrics(registry))) {
+                service.createGraph(new GraphConfiguration(graphId));
+                GraphConfiguration graphConf = service.getGraphConfiguration(graphId).get();
+
+                service.addNode(graphId, "a", "User", Properties.property("status", "online"));
+                for (int i = 0; i < 100; i++) {
+                    service.updateNodeBehind(graphId, "a",
+                        new Mutation(Properties.property("lastSeenAt", i), null));
+                }
+                service.updateNodeBehind(graphId, "a",
+                    new Mutation(null, Collections.singleton("status")));
+
+                // nothing is written until the node is read
+                assertThat(graphStorage.getNode(graphConf, "a", withAllProperties()).get()
+                    .properties(), not(hasKey("lastSeenAt")));
+                Node node = service.getNode(graphId, "a", withAllProperties()).get();
+                assertThat(node.properties(), hasEntry("lastSeenAt", (Object) 99));
+                assertThat(node.properties(), not(hasKey("status")));
+
+                // the pending updates are written before the other writes of the node
+                service.updateNodeBehind(graphId, "a",
+                    new Mutation(Properties.property("lastSeenAt", 100), null));
+                service.updateNode(graphId, "a",
+                    new Mutation(Properties.property("lastSeenAt", 101), null));
+                assertThat(graphStorage.getNode(graphConf, "a", withAllProperties()).get()
+                    .properties(), hasEntry("lastSeenAt", (Object) 101));
+
+                // the updates of the nodes which don't exist are dropped
+                service.updateNodeBehind(graphId, "b",
+                    new Mutation(Properties.property("lastSeenAt", 0), null));
+                service.flushPendingUpdates();
+                assertThat(service.nodeExists(graphId, "b"), is(false));
+
+                assertThrows(IllegalArgumentException.class, () -> service
+                    .updateNodeBehind(graphId, "a",
+                        new Mutation(null, null, Collections.singletonMap("count", 1L), null,
+                            null)));
+            }
+        }
+
+        @Test @DisplayName("Test for a node deleted while its update is pending")
+        public void deletedWhilePending() throws IOException {
+            final String graphId = "WriteBehindRelatedTest-deletedWhilePending";
+
+            Configuration conf = new Configuration(testUtil.getConfiguration());
+            conf.setLong(GraphService.WRITE_BEHIND_WINDOW_MS_CONF_KEY, 60000L);
+            try (GraphService service = new GraphService(conf, graphStorage,
+                new GraphMetrics(registry))) {
+                service.createGraph(new GraphConfiguration(graphId));
+                GraphConfiguration graphConf = service.getGraphConfiguration(graphId).get();
+
+                service.addNode(graphId, "a", "User", Properties.property("status", "online"));
+                service.updateNodeBehind(graphId, "a",
+                    new Mutation(Properties.property("lastSeenAt", 1), null));
+
+                // the node is deleted between the update and its flush, by another service
+                graphStorage.deleteNode(graphConf, "a");
+                service.flushPendingUpdates();
+
+                // the update isn't written back without a type
+                assertThat(graphStorage.getNode(graphConf, "a", withAllProperties()).isPresent(),
+                    is(false));
+                assertThat(service.countNodes(graphId, null, null), is(0L));
+
+                // and the node added again doesn't have the properties of the update
+                service.addNode(graphId, "a", "User", Collections.emptyMap());
+                assertThat(service.getNode(graphId, "a", withAllProperties()).get().properties(),
+                    not(hasKey("lastSeenAt")));
+            }
+        }
+    }
+
+    @Nested @DisplayName("Tests related to quotas") public class QuotaRelatedTest {
+        @Test @DisplayName("Test for the quotas of a graph") public void quotas() {
+            final String graphId = "QuotaRelatedTest-quotas";
+
+            createGraph(
+                new GraphConfiguration(graphId, null, null, null, new Quotas(null, 2.0, null)));
+
+            // the calls over the quota wait for a while and are then rejected, until it refills
+            graphService.addNode(graphId, "a", "User", Properties.property("age", 1));
+            graphService.addNode(graphId, "b", "User", Properties.property("age", 2));
+            assertThrows(QuotaExceededException.class,
+                () -> graphService.addNode(graphId, "c", "User", Properties.property("age", 3)));
+            assertThat(meter(registry, GraphMetrics.QUOTA_THROTTLED, Counter.class, "graph",
+                graphId, "quota", "writes", "outcome", "rejected").count(), is(1.0));
+            nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            graphService.addNode(graphId, "c", "User", Properties.property("age", 3));
+
+            // the rows scanned are charged after the scans, the ones the filter dropped included
+            graphService.setQuotas(graphId, new Quotas(null, null, 1.0));
+            assertThat(graphService.countNodes(graphId, null, greaterOrEqual("age", 10)), is(0L));
+            AggregationQuery aggregation =
+                new AggregationQuery(AggregationQuery.Target.NODES, null, null, false, null,
+                    Collections.singletonList(new Aggregation("count", Aggregation.Function.COUNT,
+                        null)));
+            assertThrows(QuotaExceededException.class,
+                () -> graphService.aggregate(graphId, aggregation));
+
+            // so are the ones of the aggregations and the pattern queries
+            nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(3));
+            graphService.aggregate(graphId, aggregation);
+            PatternQuery query = new PatternQuery(Collections
+                .singletonList(new NodePattern("u", Collections.singletonList("User"), null, null)),
+                null, null);
+            assertThrows(QuotaExceededException.class, () -> graphService.query(graphId, query));
+
+            nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(3));
+            try (Stream<Map<String, Object>> stream = graphService.query(graphId, query)) {
+                assertThat(stream.count(), is(3L));
+            }
+            assertThrows(QuotaExceededException.class,
+                () -> graphService.countNodes(graphId, null, null));
+            assertThat(meter(registry, GraphMetrics.QUOTA_THROTTLED, Counter.class, "graph",
+                graphId, "quota", "scanned_rows", "outcome", "rejected").count(), is(3.0));
+
+            graphService.setQuotas(graphId, null);
+            for (int i = 0; i < 10; i++) {
+                assertThat(graphService.countNodes(graphId, null, null), is(3L));
+            }
+            assertThat(graphService.getGraphConfiguration(graphId).get().quotas(), is(nullValue()));
+        }
+
+        @Test @DisplayName("Test for the rows scanned by a cascade") public void cascadeQuota() {
+            final String graphId = "QuotaRelatedTest-cascadeQuota";
+
+            createGraph(graphId);
+            graphService.addNode(graphId, "a", "User", Collections.emptyMap());
+            graphService.addNode(graphId, "b0", "User", Collections.emptyMap());
+            for (int i = 0; i < 3; i++) {
+                graphService
+                    .addRelationship(graphId, "a", "follows", "b" + i, Collections.emptyMap());
+            }
+
+            // the relationships the cascade scanned are charged like the rows of the reads
+            graphService.setQuotas(graphId, new Quotas(null, null, 1.0));
+            assertThat(graphService.deleteNodeWithRelationships(graphId, "a"), is(3L));
+            assertThrows(QuotaExceededException.class,
+                () -> graphService.countNodes(graphId, null, null));
+
+            nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(3));
+            assertThat(graphService.countNodes(graphId, null, null), is(1L));
+        }
+
+        @Test @DisplayName("Test for the quotas of the clients") public void clientQuotas() {
+            final String graphId = "QuotaRelatedTest-clientQuotas";
+
+            createGraph(new GraphConfiguration(graphId, null, null, null,
+                new Quotas(null, null, null, new Quotas(1.0, null, null))));
+            graphService.addNode(graphId, "a", "User", Collections.emptyMap());
+
+            // each client has a quota of its own, and the calls without a client have none
+            try {
+                ClientContext.set("client1");
+                assertThat(graphService.nodeExists(graphId, "a"), is(true));
+                assertThrows(QuotaExceededException.class,
+                    () -> graphService.nodeExists(graphId, "a"));
+
+                ClientContext.set("client2");
+                assertThat(graphService.nodeExists(graphId, "a"), is(true));
+            } finally {
+                ClientContext.clear();
+            }
+            assertThat(graphService.nodeExists(graphId, "a"), is(true));
+            assertThat(graphService.nodeExists(graphId, "a"), is(true));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to timeline reads") public class TimelineRelatedTest {
+        @Test @DisplayName("Test for the reads of a graph with region replicas")
+        public void regionReplicas() throws IOException {
+            final String graphId = "TimelineRelatedTest-regionReplicas";
+
+            StorageOptions storageOptions =
+                new StorageOptions(null, null, null, null, null, null, null, null, null, null, 2);
+            createGraph(new GraphConfiguration(graphId, null, storageOptions, null, null,
+                Consistency.TIMELINE));
+            assertThat(testUtil.getHBaseAdmin()
+                .getTableDescriptor(TableName.valueOf("graphbase", graphId + "_node"))
+                .getRegionReplication(), is(2));
+
+            graphService.addNode(graphId, "a", "User", Properties.property("name", "alice"));
+            graphService.addNode(graphId, "b", "User", Collections.emptyMap());
+            graphService.addRelationship(graphId, "a", "follows", "b", Collections.emptyMap());
+
+            // the strong reads are served by the primary only, so they are never stale
+            Timelined<Optional<Node>> node = graphService
+                .getTimelinedNode(graphId, "a", withAllProperties(), Consistency.STRONG);
+            assertThat(node.stale(), is(false));
+            assertThat(node.value().get().properties(), hasEntry("name", (Object) "alice"));
+
+            Timelined<List<Node>> nodes = graphService
+                .getTimelinedNodes(graphId, Arrays.asList("a", "b", "c"), withoutProperties(),
+                    Consistency.STRONG);
+            assertThat(nodes.stale(), is(false));
+            assertThat(nodes.value(), hasSize(2));
+
+            Timelined<Optional<Relationship>> rel = graphService
+                .getTimelinedRelationship(graphId, "a", "follows", "b", withoutProperties(),
+                    Consistency.STRONG);
+            assertThat(rel.stale(), is(false));
+            assertThat(rel.value().isPresent(), is(true));
+
+            // the timeline gets of the graph are served by the secondary replicas when the
+            // primary ones are slow, and tell that they are stale
+            addCoprocessor(testUtil, TableName.valueOf("graphbase", graphId + "_node"),
+                SlowPrimaryObserver.class);
+            SlowPrimaryObserver.setEnabled(true);
+            try {
+                waitUntil(() -> graphService
+                    .getTimelinedNode(graphId, "a", withAllProperties(), null).stale());
+
+                // the strong gets and the versioned ones wait for the primary replicas
+                node = graphService
+                    .getTimelinedNode(graphId, "a", withAllProperties(), Consistency.STRONG);
+                assertThat(node.stale(), is(false));
+                assertThat(node.value().get().properties(), hasEntry("name", (Object) "alice"));
+
+                Optional<Versioned<Node>> versioned =
+                    graphService.getVersionedNode(graphId, "a", withAllProperties());
+                assertThat(versioned.get().entity().properties(),
+                    hasEntry("name", (Object) "alice"));
+                assertThat(versioned.get().version(), is(not(nullValue())));
+            } finally {
+                SlowPrimaryObserver.setEnabled(false);
+            }
+        }
+    }
+
+    @Nested @DisplayName("Tests related to workload classes") public class WorkloadRelatedTest {
+        @Test @DisplayName("Test for the calls of the workload classes")
+        public void workloadClasses() throws IOException {
+            final String graphId = "WorkloadRelatedTest-workloadClasses";
+
+            // the analytics calls have their own connection, threads and scan caching
+            Configuration conf = new Configuration(testUtil.getConfiguration());
+            WorkloadClass analytics = WorkloadClass.ANALYTICS;
+            conf.setInt(analytics.confKey(HBaseClient.WORKLOAD_SCAN_PARALLELISM_CONF_KEY), 2);
+            conf.setInt(analytics.confKey(HBaseClient.WORKLOAD_SCAN_CACHING_CONF_KEY), 1000);
+            conf.setLong(analytics.confKey(HBaseClient.WORKLOAD_SCANNER_TIMEOUT_MS_CONF_KEY),
+                120000L);
+            conf.setBoolean(
+                WorkloadClass.BATCH.confKey(HBaseClient.WORKLOAD_DEDICATED_CONNECTION_CONF_KEY),
+                true);
+            MeterRegistry registry = new SimpleMeterRegistry();
+            GraphMetrics metrics = new GraphMetrics(registry);
+            try (HBaseGraphStorage storage = new HBaseGraphStorage(conf, metrics);
+                GraphService service = new GraphService(conf, storage, metrics)) {
+                service.createGraph(new GraphConfiguration(graphId));
+
+                // the batch class has a dedicated connection, and the analytics one too as it has
+                // timeouts of its own
+                assertThat(meter(registry, GraphMetrics.HBASE_CONNECTIONS, Gauge.class).value(),
+                    is(3.0));
+
+                ClientContext.setWorkloadClass(WorkloadClass.BATCH);
+                try {
+                    service.addNode(graphId, "a", "User", Collections.emptyMap());
+                    service.addNode(graphId, "b", "User", Collections.emptyMap());
+                } finally {
+                    ClientContext.clear();
+                }
+
+                ClientContext.setWorkloadClass(analytics);
+                try {
+                    assertThat(service.countNodes(graphId, null, null), is(2L));
+                    try (Stream<String> nodeIds = service.getNodeIds(graphId, null, null)) {
+                        assertThat(nodeIds.collect(Collectors.toList()), hasItems("a", "b"));
+                    }
+                } finally {
+                    ClientContext.clear();
+                }
+
+                // the interactive calls see the writes of the other classes
+                assertThat(ClientContext.getWorkloadClass(), is(WorkloadClass.INTERACTIVE));
+                assertThat(service.getNode(graphId, "a", withoutProperties()).isPresent(),
+                    is(true));
+
+                // the parallel scans run on the threads of the class of the caller
+                GraphConfiguration graphConf = service.getGraphConfiguration(graphId).get();
+                assertThat(scanThreads(storage, graphConf), everyItem(
+                    startsWith("graphbase-scan-interactive-")));
+                ClientContext.setWorkloadClass(analytics);
+                try {
+                    assertThat(scanThreads(storage, graphConf), everyItem(
+                        startsWith("graphbase-scan-analytics-")));
+                } finally {
+                    ClientContext.clear();
+                }
+            }
+        }
+
+        // the names of the threads which folded the nodes
+        private Set<String> scanThreads(GraphStorage storage, GraphConfiguration graphConf) {
+            Set<String> ret = storage.collectNodes(graphConf, null, null, withoutProperties(),
+                Collector.of(ConcurrentHashMap::newKeySet,
+                    (Set<String> names, Node node) -> names.add(Thread.currentThread().getName()),
+                    (names1, names2) -> {
+                        names1.addAll(names2);
+                        return names1;
+                    }));
+            assertThat(ret, not(empty()));
+            return ret;
+        }
+    }
+
+    @Nested @DisplayName("Tests related to metrics") public class MetricsRelatedTest {
+        // the tags are given as keys and values in turn
+        @Test @DisplayName("Test for the meters of a graph") public void meters()
+            throws IOException {
+            final String graphId = "MetricsRelatedTest-meters";
+
+            MeterRegistry registry = new SimpleMeterRegistry();
+            GraphMetrics metrics = new GraphMetrics(registry);
+            Configuration conf = testUtil.getConfiguration();
+            try (HBaseGraphStorage storage = new HBaseGraphStorage(conf, metrics);
+                GraphService service = new GraphService(conf, storage, metrics)) {
+                service.createGraph(new GraphConfiguration(graphId));
+                for (int i = 0; i < 4; i++) {
+                    service.addNode(graphId, "n" + i, "User", Properties.property("age", i));
+                }
+                assertThat(service.getNodes(graphId, null, greaterOrEqual("age", 1), null,
+                    withoutProperties()), hasSize(3));
+                assertThrows(NodeAlreadyExistsException.class,
+                    () -> service.addNode(graphId, "n0", "User", Collections.emptyMap()));
+
+                // the operations are timed per graph, and the failed ones by their exception
+                assertThat(meter(registry, GraphMetrics.OPERATIONS, Timer.class, "graph", graphId,
+                    "operation", "addNode", "exception", "none").count(), is(4L));
+                assertThat(meter(registry, GraphMetrics.OPERATIONS, Timer.class, "graph", graphId,
+                    "operation", "addNode", "exception", "NodeAlreadyExistsException").count(),
+                    is(1L));
+                assertThat(meter(registry, GraphMetrics.OPERATIONS, Timer.class, "graph", graphId,
+                    "operation", "scanNodes").count(), is(1L));
+
+                // so are the traversals
+                assertThat(service.commonNeighbors(graphId, "n0", "n1", "follows"), is(empty()));
+                assertThat(meter(registry, GraphMetrics.OPERATIONS, Timer.class, "graph", graphId,
+                    "operation", "commonNeighbors").count(), is(1L));
+
+                // the rows the filter dropped are scanned but not returned
+                assertThat(meter(registry, GraphMetrics.SCAN_ROWS_SCANNED,
+                    DistributionSummary.class, "graph", graphId, "entity", "node").totalAmount(),
+                    is(4.0));
+                assertThat(meter(registry, GraphMetrics.SCAN_ROWS_RETURNED,
+                    DistributionSummary.class, "graph", graphId, "entity", "node").totalAmount(),
+                    is(3.0));
+                assertThat(meter(registry, GraphMetrics.SCAN_FILTER_SELECTIVITY,
+                    DistributionSummary.class, "graph", graphId, "entity", "node").totalAmount(),
+                    is(0.75));
+
+                assertThat(registry.getMeters().stream()
+                    .anyMatch(meter -> meter.getId().getName().equals(GraphMetrics.HBASE_CALLS)),
+                    is(true));
+
+                // the percentile histograms aren't published by default
+                assertThat(registry.getMeters().stream().anyMatch(
+                    meter -> meter.getId().getName().endsWith(GraphMetrics.HISTOGRAM_SUFFIX)),
+                    is(false));
+            }
+        }
+
+        @Test @DisplayName("Test for the percentile histograms") public void histograms()
+            throws IOException {
+            final String graphId = "MetricsRelatedTest-histograms";
+
+            MeterRegistry registry = new SimpleMeterRegistry();
+            GraphMetrics metrics = new GraphMetrics(registry, true);
+            Configuration conf = testUtil.getConfiguration();
+            try (HBaseGraphStorage storage = new HBaseGraphStorage(conf, metrics);
+                GraphService service = new GraphService(conf, storage, metrics)) {
+                service.createGraph(new GraphConfiguration(graphId));
+                service.addNode(graphId, "a", "User", Collections.emptyMap());
+                try (Stream<String> nodeIds = service.getNodeIds(graphId, null, null)) {
+                    assertThat(nodeIds.collect(Collectors.toList()),
+                        is(Collections.singletonList("a")));
+                }
+
+                // the streams are timed until they are closed
+                assertThat(meter(registry, GraphMetrics.OPERATIONS, Timer.class, "graph", graphId,
+                    "operation", "getNodeIds").count(), is(1L));
+                assertThat(meter(registry, GraphMetrics.OPERATIONS + GraphMetrics.HISTOGRAM_SUFFIX,
+                    Timer.class, "operation", "getNodeIds").count(), is(1L));
+
+                // the histograms are neither tagged by the graph nor by the table
+                List<Meter> histograms = registry.getMeters().stream().filter(
+                    meter -> meter.getId().getName().endsWith(GraphMetrics.HISTOGRAM_SUFFIX))
+                    .collect(Collectors.toList());
+                assertThat(histograms.isEmpty(), is(false));
+                assertThat(histograms.stream().allMatch(
+                    meter -> meter.getId().getTag("graph") == null
+                        && meter.getId().getTag("table") == null), is(true));
+            }
+        }
+    }
+
+    @Nested @DisplayName("Tests related to the history") public class HistoryRelatedTest {
+        private long tick() {
+            // the cells written before and after the returned time have different timestamps
+            try {
+                TimeUnit.MILLISECONDS.sleep(10);
+                long ret = System.currentTimeMillis();
+                TimeUnit.MILLISECONDS.sleep(10);
+                return ret;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Test @DisplayName("Test for reading the nodes as of a time") public void asOf() {
+            final String graphId = "HistoryRelatedTest-asOf";
+
+            createGraph(graphId);
+
+            long beforeAdd = tick();
+            graphService.addNode(graphId, "a", "User", Collections.singletonMap("age", 1));
+            graphService.addNode(graphId, "b", "User", Collections.singletonMap("age", 10));
+            long afterAdd = tick();
+            graphService.updateNode(graphId, "a",
+                new Mutation(Collections.singletonMap("age", 2), Collections.emptySet()));
+            long afterUpdate = tick();
+            graphService.deleteNode(graphId, "a");
+
+            assertThat(graphService.getNode(graphId, "a", withAllProperties()).isPresent(),
+                is(false));
+            assertThat(graphService.getNode(graphId, "a", withAllProperties(), beforeAdd)
+                .isPresent(), is(false));
+            assertThat(graphService.getNode(graphId, "a", withAllProperties(), afterAdd).get()
+                .properties(), hasEntry("age", 1));
+            assertThat(graphService.getNode(graphId, "a", withAllProperties(), afterUpdate).get()
+                .properties(), hasEntry("age", 2));
+
+            assertThat(graphService.getNodes(graphId, null, null, null, withAllProperties()),
+                hasSize(1));
+            assertThat(graphService
+                .getNodes(graphId, null, null, null, withAllProperties(), beforeAdd), is(empty()));
+            List<Node> nodes = graphService.getNodes(graphId, null, greaterOrEqual("age", 2),
+                Collections.singletonList(asc("age")), withAllProperties(), afterUpdate);
+            assertThat(nodes, hasSize(2));
+            assertThat(nodes.get(0).id(), is("a"));
+            assertThat(nodes.get(0).properties(), hasEntry("age", 2));
+            assertThat(nodes.get(1).id(), is("b"));
+
+            assertThrows(IllegalArgumentException.class,
+                () -> graphService.getNode(graphId, "a", withAllProperties(), -1));
+        }
+
+        @Test @DisplayName("Test for the history of a shared graph created again")
+        public void recreatedSharedGraph() {
+            final String graphId = "HistoryRelatedTest-recreatedSharedGraph";
+
+            createGraph(new GraphConfiguration(graphId, StorageLayout.SHARED, null));
+            graphService.addNode(graphId, "a", "User", Collections.singletonMap("age", 1));
+            long beforeDrop = tick();
+            assertThat(graphService.getNode(graphId, "a", withAllProperties(), beforeDrop)
+                .isPresent(), is(true));
+
+            graphService.dropGraph(graphId);
+            createGraph(new GraphConfiguration(graphId, StorageLayout.SHARED, null));
+            tick();
+            graphService.addNode(graphId, "b", "User", Collections.singletonMap("age", 2));
+            long afterAdd = tick();
+
+            // the dropped graph left its cells in the shared tables, but they aren't its history
+            assertThat(graphService.getNode(graphId, "a", withAllProperties(), beforeDrop)
+                .isPresent(), is(false));
+            assertThat(graphService.getNode(graphId, "a", withAllProperties(), afterAdd)
+                .isPresent(), is(false));
+            assertThat(graphService
+                    .getNodes(graphId, null, null, null, withAllProperties(), beforeDrop),
+                is(empty()));
+            List<Node> nodes =
+                graphService.getNodes(graphId, null, null, null, withAllProperties(), afterAdd);
+            assertThat(nodes, hasSize(1));
+            assertThat(nodes.get(0).id(), is("b"));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to degrees") public class DegreeRelatedTest {
+        @Test @DisplayName("Test for the degree counters") public void degree() {
+            final String graphId = "DegreeRelatedTest-degree";
+
+            createGraph(graphId);
+
+            graphService.addNode(graphId, "a", "User", Collections.emptyMap());
+            graphService.addRelationship(graphId, "a", "follows", "b", Collections.emptyMap());
+            graphService.addRelationship(graphId, "a", "follows", "c", Collections.emptyMap());
+            graphService.addRelationship(graphId, "a", "likes", "c", Collections.emptyMap());
+            graphService.addRelationship(graphId, "b", "follows", "a", Collections.emptyMap());
+
+            assertThat(graphService.degree(graphId, "a", Direction.OUT, null), is(3L));
+            assertThat(graphService.degree(graphId, "a", Direction.IN, null), is(1L));
+            assertThat(graphService.degree(graphId, "a", Direction.BOTH, null), is(4L));
+            assertThat(graphService
+                    .degree(graphId, "a", Direction.OUT, Collections.singletonList("follows")),
+                is(2L));
+            assertThat(graphService
+                    .degree(graphId, "c", Direction.IN, Arrays.asList("follows", "likes")),
+                is(2L));
+            assertThat(graphService.degree(graphId, "x", Direction.BOTH, null), is(0L));
+
+            graphService.deleteRelationship(graphId, "a", "follows", "c");
+            assertThat(graphService.degree(graphId, "a", Direction.OUT, null), is(2L));
+            assertThat(graphService.degree(graphId, "c", Direction.IN, null), is(1L));
+
+            // the counters of a node are kept when the node is deleted
+            graphService.deleteNode(graphId, "a");
+            assertThat(graphService.nodeExists(graphId, "a"), is(false));
+            assertThat(graphService.degree(graphId, "a", Direction.OUT, null), is(2L));
+
+            // nodes having only the counters are not returned
+            assertThat(graphService.getNode(graphId, "b", withAllProperties()).isPresent(),
+                is(false));
+            assertThat(graphService.getNodes(graphId, null, null, null, withAllProperties()),
+                is(empty()));
+        }
+
+        @Test @DisplayName("Test for the tables created before the degree counters")
+        public void tableWithoutDegreeFamily() throws IOException {
+            final String graphId = "DegreeRelatedTest-tableWithoutDegreeFamily";
+
+            createGraph(graphId);
+            TableName nodeTableName = TableName.valueOf("graphbase", graphId + "_node");
+            testUtil.getHBaseAdmin().deleteColumn(nodeTableName, Bytes.toBytes("d"));
+            waitUntil(() -> {
+                try {
+                    return testUtil.getHBaseAdmin().getAlterStatus(nodeTableName).getFirst() == 0
+                        && !testUtil.getHBaseAdmin().getTableDescriptor(nodeTableName)
+                        .hasFamily(Bytes.toBytes("d"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            graphService.addRelationship(graphId, "a", "follows", "b", Collections.emptyMap());
+            assertThat(graphService.degree(graphId, "a", Direction.OUT, null), is(1L));
+            assertThat(testUtil.getHBaseAdmin().getTableDescriptor(nodeTableName)
+                .hasFamily(Bytes.toBytes("d")), is(true));
+        }
+
+        // up to the cells read, so that the later writes in the same millisecond aren't masked
+        private Delete deleteRead(Result result) {
+            return new Delete(result.getRow(),
+                Arrays.stream(result.rawCells()).mapToLong(Cell::getTimestamp).max().getAsLong());
+        }
+
+        @Test @DisplayName("Test for recomputing the degree counters") public void recompute()
+            throws IOException {
+            final String graphId = "DegreeRelatedTest-recompute";
+
+            createGraph(graphId);
+
+            graphService.addRelationship(graphId, "a", "follows", "b", Collections.emptyMap());
+            graphService.addRelationship(graphId, "a", "follows", "c", Collections.emptyMap());
+            graphService.addRelationship(graphId, "b", "likes", "c", Collections.emptyMap());
+
+            // the counters of a and c are lost, and b gets a counter of no relationship
+            try (Table table = testUtil.getConnection()
+                .getTable(TableName.valueOf("graphbase", graphId + "_node"))) {
+                try (ResultScanner scanner = table.getScanner(Bytes.toBytes("d"))) {
+                    for (Result result : scanner) {
+                        if (result.getFamilyMap(Bytes.toBytes("d"))
+                            .containsKey(Bytes.toBytes("ofollows"))) {
+                            table.delete(deleteRead(result));
+                        } else if (result.getFamilyMap(Bytes.toBytes("d"))
+                            .containsKey(Bytes.toBytes("olikes"))) {
+                            table.put(new Put(result.getRow())
+                                .addColumn(Bytes.toBytes("d"), Bytes.toBytes("omentions"),
+                                    Bytes.toBytes(2L)));
+                        }
+                    }
+                }
+                try (ResultScanner scanner = table.getScanner(Bytes.toBytes("d"))) {
+                    for (Result result : scanner) {
+                        if (result.getFamilyMap(Bytes.toBytes("d"))
+                            .containsKey(Bytes.toBytes("ilikes"))) {
+                            table.delete(deleteRead(result));
+                        }
+                    }
+                }
+            }
+            assertThat(graphService.degree(graphId, "a", Direction.OUT, null), is(0L));
+            assertThat(graphService.degree(graphId, "b", Direction.OUT, null), is(3L));
+
+            // a's out follows, c's in follows and in likes, and b's out mentions
+            assertThat(graphService.recomputeDegrees(graphId), is(4L));
+            assertThat(graphService.degree(graphId, "a", Direction.OUT, null), is(2L));
+            assertThat(graphService.degree(graphId, "b", Direction.OUT, null), is(1L));
+            assertThat(graphService.degree(graphId, "b", Direction.IN, null), is(1L));
+            assertThat(graphService.degree(graphId, "c", Direction.IN, null), is(2L));
+
+            assertThat(graphService.recomputeDegrees(graphId), is(0L));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to cascading deletes")
+    public class CascadeDeleteRelatedTest {
+        @Test @DisplayName("Test for deleting a node with its relationships")
+        public void deleteNodeWithRelationships() {
+            final String graphId = "CascadeDeleteRelatedTest-deleteNodeWithRelationships";
+
+            createGraph(graphId);
+
+            graphService.addNode(graphId, "hub", "User", Collections.emptyMap());
+            IntStream.range(0, 25).forEach(i -> {
+                graphService.addNode(graphId, "user" + i, "User", Collections.emptyMap());
+                graphService.addRelationship(graphId, "hub", "follows", "user" + i,
+                    Collections.emptyMap());
+            });
+            IntStream.range(0, 5).forEach(i -> graphService
+                .addRelationship(graphId, "hub", "likes", "user" + i, Collections.emptyMap()));
+            graphService.addRelationship(graphId, "user0", "follows", "hub",
+                Collections.emptyMap());
+            graphService.addRelationship(graphId, "user0", "follows", "user1",
+                Collections.emptyMap());
+
+            assertThat(graphService.deleteNodeWithRelationships(graphId, "hub"), is(30L));
+
+            assertThat(graphService.nodeExists(graphId, "hub"), is(false));
+            assertThat(graphService.relationshipExists(graphId, "hub", "follows", "user3"),
+                is(false));
+            assertThat(graphService.degree(graphId, "hub", Direction.OUT, null), is(0L));
+            assertThat(graphService.degree(graphId, "user0", Direction.IN, null), is(0L));
+            assertThat(graphService.degree(graphId, "user1", Direction.IN, null), is(1L));
+            assertThat(graphService.degree(graphId, "user20", Direction.IN, null), is(0L));
+
+            // the incoming relationships are left
+            assertThat(graphService.relationshipExists(graphId, "user0", "follows", "hub"),
+                is(true));
+            assertThat(graphService.degree(graphId, "hub", Direction.IN, null), is(1L));
+            assertThat(graphService.countRelationships(graphId, null, null), is(2L));
+        }
+
+        @Test @DisplayName("Test for deleting a node which doesn't exist")
+        public void deleteNonexistentNodeWithRelationships() {
+            final String graphId = "CascadeDeleteRelatedTest-deleteNonexistentNode";
+
+            createGraph(graphId);
+
+            assertThrows(NodeNotFoundException.class,
+                () -> graphService.deleteNodeWithRelationships(graphId, "a"));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to the shared layout")
+    public class SharedLayoutRelatedTest {
+        @Test @DisplayName("Test for isolating the graphs in the shared tables")
+        public void isolateSharedGraphs() {
+            final String graphId1 = "SharedLayoutRelatedTest-isolateSharedGraphs1";
+            final String graphId2 = "SharedLayoutRelatedTest-isolateSharedGraphs2";
+
+            createGraph(new GraphConfiguration(graphId1, StorageLayout.SHARED, null));
+            createGraph(new GraphConfiguration(graphId2, StorageLayout.SHARED, null));
+
+            // the same ids in both graphs
+            for (String graphId : Arrays.asList(graphId1, graphId2)) {
+                graphService.addNode(graphId, "a", "User", Collections.emptyMap());
+                graphService.addNode(graphId, "b", "User", Collections.emptyMap());
+                graphService.addRelationship(graphId, "a", "follows", "b",
+                    Collections.emptyMap());
+            }
+            graphService.addNode(graphId2, "c", "User", Collections.emptyMap());
+            graphService.addRelationship(graphId2, "a", "follows", "c", Collections.emptyMap());
+
+            assertThat(graphService.countNodes(graphId1, null, null), is(2L));
+            assertThat(graphService.countNodes(graphId2, null, null), is(3L));
+            assertThat(graphService.countRelationships(graphId1, null, null), is(1L));
+            assertThat(graphService.degree(graphId1, "a", Direction.OUT, null), is(1L));
+            assertThat(graphService.degree(graphId2, "a", Direction.OUT, null), is(2L));
+            assertThat(graphService.getNodeIds(graphId1, null, null).collect(Collectors.toList()),
+                hasItems("a", "b"));
+            assertThat(graphService.relationshipExists(graphId1, "a", "follows", "c"), is(false));
+
+            graphService.dropGraph(graphId2);
+
+            assertThat(graphService.countNodes(graphId1, null, null), is(2L));
+            assertThat(graphService.countRelationships(graphId1, null, null), is(1L));
+            assertThat(graphService.relationshipExists(graphId1, "a", "follows", "b"), is(true));
+
+            // the rows of the dropped graph are gone, even if it's created again
+            createGraph(new GraphConfiguration(graphId2, StorageLayout.SHARED, null));
+            assertThat(graphService.countNodes(graphId2, null, null), is(0L));
+            assertThat(graphService.degree(graphId2, "a", Direction.OUT, null), is(0L));
+        }
+
+        @Test @DisplayName("Test for the storage options of a shared graph")
+        public void sharedGraphStorageOptions() {
+            final String graphId = "SharedLayoutRelatedTest-sharedGraphStorageOptions";
+
+            StorageOptions storageOptions =
+                new StorageOptions(null, null, null, null, true, null, null, null, null, null,
+                    null);
+            assertThrows(IllegalArgumentException.class, () -> graphService
+                .createGraph(new GraphConfiguration(graphId, StorageLayout.SHARED,
+                    storageOptions)));
+            assertThat(graphService.graphExists(graphId), is(false));
+
+            createGraph(new GraphConfiguration(graphId, StorageLayout.SHARED, null));
+            assertThrows(IllegalArgumentException.class,
+                () -> graphService.alterGraph(graphId, storageOptions));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to counting") public class CountRelatedTest {
+        @Test @DisplayName("Test for counting and listing ids") public void count() {
+            final String graphId = "CountRelatedTest-count";
+
+            createGraph(graphId);
+
+            IntStream.range(0, 20).forEach(i -> graphService
+                .addNode(graphId, "user" + i, "User", Collections.singletonMap("age", i)));
+            IntStream.range(0, 5).forEach(i -> graphService
+                .addNode(graphId, "post" + i, "Post", Collections.emptyMap()));
+            IntStream.range(0, 10).forEach(i -> graphService
+                .addRelationship(graphId, "user" + i, "follows", "user" + (i + 1),
+                    Collections.singletonMap("weight", i)));
+            IntStream.range(0, 5).forEach(i -> graphService
+                .addRelationship(graphId, "user" + i, "likes", "post" + i,
+                    Collections.emptyMap()));
+
+            assertThat(graphService.countNodes(graphId, null, null), is(25L));
+            assertThat(graphService.countNodes(graphId, Collections.singletonList("User"), null),
+                is(20L));
+            assertThat(graphService.countNodes(graphId, Collections.singletonList("User"),
+                greaterOrEqual("age", 15)), is(5L));
+            assertThat(graphService.countNodes(graphId, null, greater("age", 100)), is(0L));
+
+            assertThat(graphService.countRelationships(graphId, null, null), is(15L));
+            assertThat(graphService
+                    .countRelationships(graphId, Collections.singletonList("likes"), null),
+                is(5L));
+            assertThat(graphService
+                    .countRelationships(graphId, Collections.singletonList("follows"),
+                        greaterOrEqual("weight", 8)), is(2L));
+
+            try (Stream<String> nodeIds = graphService
+                .getNodeIds(graphId, Collections.singletonList("Post"), null)) {
+                assertThat(nodeIds.collect(Collectors.toSet()), is(IntStream.range(0, 5)
+                    .mapToObj(i -> "post" + i).collect(Collectors.toSet())));
+            }
+
+            try (Stream<String> nodeIds = graphService
+                .getNodeIds(graphId, null, greaterOrEqual("age", 18))) {
+                assertThat(nodeIds.collect(Collectors.toSet()),
+                    is(new HashSet<>(Arrays.asList("user18", "user19"))));
+            }
+
+            try (Stream<Relationship> rels = graphService
+                .getRelationshipIds(graphId, Collections.singletonList("likes"), null)) {
+                List<Relationship> list = rels.collect(Collectors.toList());
+                assertThat(list, hasSize(5));
+                list.forEach(rel -> {
+                    assertThat(rel.type(), is("likes"));
+                    assertThat(rel.properties().isEmpty(), is(true));
+                });
+            }
+        }
+    }
+
+    @Nested @DisplayName("Tests related to aggregation") public class AggregationRelatedTest {
+        @Test @DisplayName("Test for the aggregation") public void aggregate() {
+            final String graphId = "AggregationRelatedTest-aggregate";
+
+            createGraph(graphId);
+
+            IntStream.range(0, 30).forEach(i -> graphService.addNode(graphId, "user" + i,
+                i % 3 == 0 ? "Admin" : "User",
+                Properties.property("country", i % 2 == 0 ? "jp" : "us", "score", i)));
+            IntStream.range(0, 10).forEach(i -> graphService
+                .addRelationship(graphId, "user" + i, "follows", "user" + (i + 1),
+                    Properties.property("weight", i)));
+
+            {
+                AggregationQuery query =
+                    new AggregationQuery(AggregationQuery.Target.NODES, null, null, true,
+                        Collections.singletonList("country"), Arrays
+                        .asList(new Aggregation("count", Aggregation.Function.COUNT, null),
+                            new Aggregation("avg", Aggregation.Function.AVG, "score")));
+
+                List<AggregationResult> results = graphService.aggregate(graphId, query);
+                assertThat(results, hasSize(4));
+                assertThat(results.get(0).type(), is("Admin"));
+                assertThat(results.get(0).group().get("country"), is("jp"));
+                // 0, 6, 12, 18, 24
+                assertThat(results.get(0).values().get("count"), is(5L));
+                assertThat(results.get(0).values().get("avg"), is(12.0));
+                assertThat(results.stream().mapToLong(r -> (Long) r.values().get("count")).sum(),
+                    is(30L));
+            }
+
+            {
+                List<PropertyCondition> where = Collections.singletonList(
+                    new PropertyCondition("score", PropertyCondition.Operator.GE, 20));
+                AggregationQuery query =
+                    new AggregationQuery(AggregationQuery.Target.NODES,
+                        Collections.singletonList("User"), where, false, null, Arrays
+                        .asList(new Aggregation("sum", Aggregation.Function.SUM, "score"),
+                            new Aggregation("max", Aggregation.Function.MAX, "score")));
+
+                List<AggregationResult> results = graphService.aggregate(graphId, query);
+                assertThat(results, hasSize(1));
+                // 20, 22, 23, 25, 26, 28, 29
+                assertThat(results.get(0).values().get("sum"), is(173L));
+                assertThat(results.get(0).values().get("max"), is(29));
+            }
+
+            {
+                AggregationQuery query =
+                    new AggregationQuery(AggregationQuery.Target.RELATIONSHIPS, null, null, true,
+                        null, Collections
+                        .singletonList(new Aggregation("min", Aggregation.Function.MIN, "weight")));
+
+                List<AggregationResult> results = graphService.aggregate(graphId, query);
+                assertThat(results, hasSize(1));
+                assertThat(results.get(0).type(), is("follows"));
+                assertThat(results.get(0).values().get("min"), is(0));
+            }
+        }
+    }
+
+    @Nested @DisplayName("Tests related to bulk loading") public class BulkLoadRelatedTest {
+        @Test @DisplayName("Test for bulk loading from CSV and NDJSON files")
+        public void bulkLoad() throws IOException {
+            final String graphId = "BulkLoadRelatedTest-bulkLoad";
+
+            createGraph(graphId);
+
+            File dir = Files.createTempDirectory("graphbase-bulkload-test").toFile();
+            File nodeFile = new File(dir, "nodes.csv");
+            List<String> nodeLines = new ArrayList<>();
+            nodeLines.add("id,type,age,name");
+            IntStream.range(0, 100)
+                .forEach(i -> nodeLines.add("user" + i + ",User," + i + ",\"name, " + i + "\""));
+            Files.write(nodeFile.toPath(), nodeLines, StandardCharsets.UTF_8);
+
+            File relFile = new File(dir, "relationships.ndjson");
+            List<String> relLines = new ArrayList<>();
+            IntStream.range(0, 100).forEach(i -> relLines.add(
+                "{\"outNodeId\":\"user" + i + "\",\"type\":\"follows\",\"inNodeId\":\"user"
+                    + (i + 1) % 100 + "\",\"properties\":{\"weight\":" + i + "}}"));
+            // a duplicate, which is counted once
+            relLines.add("{\"outNodeId\":\"user0\",\"type\":\"follows\",\"inNodeId\":\"user1\"}");
+            relLines.add("{\"outNodeId\":\"user0\",\"type\":\"likes\",\"inNodeId\":\"user2\"}");
+            Files.write(relFile.toPath(), relLines, StandardCharsets.UTF_8);
+
+            // a small buffer, so that the sort spills
+            Configuration conf = new Configuration(testUtil.getConfiguration());
+            conf.setLong(HBaseBulkLoader.SORT_BUFFER_SIZE_CONF_KEY, 4096);
+            conf.set(HBaseBulkLoader.SPILL_DIR_CONF_KEY, dir.getAbsolutePath());
+            try (HBaseBulkLoader loader = new HBaseBulkLoader(conf, new GraphMetrics(registry))) {
+                loader.load(graphService.getGraphConfiguration(graphId).get(),
+                    Collections.singletonList(nodeFile), Collections.singletonList(relFile));
+            }
+
+            assertThat(graphService.countNodes(graphId, null, null), is(100L));
+            assertThat(graphService.countRelationships(graphId, null, null), is(101L));
+
+            Node node = graphService.getNode(graphId, "user42", withAllProperties()).get();
+            assertThat(node.type(), is("User"));
+            assertThat(node.properties(), hasEntry("age", 42));
+            assertThat(node.properties(), hasEntry("name", "name, 42"));
+
+            Relationship rel = graphService
+                .getRelationship(graphId, "user42", "follows", "user43", withAllProperties())
+                .get();
+            assertThat(rel.properties(), hasEntry("weight", 42));
+
+            assertThat(graphService.degree(graphId, "user0", Direction.OUT, null), is(2L));
+            assertThat(graphService.degree(graphId, "user0", Direction.BOTH,
+                Collections.singletonList("follows")), is(2L));
+            assertThat(graphService.degree(graphId, "user2", Direction.IN, null), is(2L));
+
+            // the loaded graph takes the regular writes
+            graphService
+                .addRelationship(graphId, "user2", "likes", "user0", Collections.emptyMap());
+            assertThat(graphService.degree(graphId, "user0", Direction.IN, null), is(2L));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to importing") public class ImportRelatedTest {
+        @Test @DisplayName("Test for importing nodes and relationships")
+        public void importEntities() {
+            final String graphId = "ImportRelatedTest-importEntities";
+
+            createGraph(graphId);
+            graphService.addNode(graphId, "user0", "User", Collections.emptyMap());
+
+            StringBuilder nodes = new StringBuilder("id,type,age\n");
+            IntStream.range(0, 50).forEach(i -> nodes.append("user").append(i).append(",User,")
+                .append(i).append("\n"));
+            // a duplicate and a malformed line
+            nodes.append("user1,User,1\n");
+            nodes.append("user99\n");
+
+            ImportResult nodeResult = graphService.importNodes(graphId, toInputStream(nodes),
+                EntityFiles.Format.CSV);
+            assertThat(nodeResult.imported(), is(49L));
+            assertThat(nodeResult.failureCount(), is(3L));
+            assertThat(nodeResult.failures().stream().map(ImportFailure::message)
+                    .collect(Collectors.toSet()),
+                is(new HashSet<>(Arrays.asList("already exists", "duplicated in the input",
+                    "wrong number of values"))));
+            assertThat(graphService.countNodes(graphId, null, null), is(50L));
+            assertThat(graphService.getNode(graphId, "user7", withAllProperties()).get()
+                .properties(), hasEntry("age", 7));
+
+            StringBuilder rels = new StringBuilder();
+            IntStream.range(0, 49).forEach(i -> rels.append("{\"outNodeId\":\"user").append(i)
+                .append("\",\"type\":\"follows\",\"inNodeId\":\"user").append(i + 1)
+                .append("\"}\n"));
+            rels.append("{\"outNodeId\":\"user0\",\"type\":\"follows\"}\n");
+
+            ImportResult relResult = graphService.importRelationships(graphId,
+                toInputStream(rels), EntityFiles.Format.NDJSON);
+            assertThat(relResult.imported(), is(49L));
+            assertThat(relResult.failureCount(), is(1L));
+            assertThat(relResult.secondaryFailureCount(), is(0L));
+            assertThat(relResult.failures().get(0).line(), is(50L));
+            assertThat(graphService.countRelationships(graphId, null, null), is(49L));
+            assertThat(graphService.degree(graphId, "user1", Direction.BOTH, null), is(2L));
+
+            // importing again reports every relationship as existing, without counting it twice
+            ImportResult again = graphService.importRelationships(graphId,
+                toInputStream(rels), EntityFiles.Format.NDJSON);
+            assertThat(again.imported(), is(0L));
+            assertThat(again.failureCount(), is(50L));
+            assertThat(graphService.degree(graphId, "user1", Direction.BOTH, null), is(2L));
+        }
+
+        private InputStream toInputStream(CharSequence input) {
+            return new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Nested @DisplayName("Tests related to exporting") public class ExportRelatedTest {
+        @Test @DisplayName("Test for exporting, resuming and loading the export")
+        public void export() throws IOException {
+            final String graphId = "ExportRelatedTest-export";
+
+            createGraph(graphId);
+            IntStream.range(0, 30).forEach(i -> graphService.addNode(graphId, "user" + i, "User",
+                Collections.singletonMap("tags", Arrays.asList("t" + i, i))));
+            IntStream.range(0, 29).forEach(i -> graphService
+                .addRelationship(graphId, "user" + i, "follows", "user" + (i + 1),
+                    Collections.singletonMap("weight", i * 0.5)));
+
+            Configuration conf = new Configuration(testUtil.getConfiguration());
+            conf.setInt(HBaseExporter.CHECKPOINT_INTERVAL_CONF_KEY, 4);
+            GraphConfiguration graphConf = graphService.getGraphConfiguration(graphId).get();
+
+            File ndjsonDir = Files.createTempDirectory("graphbase-export-test").toFile();
+            try (HBaseExporter exporter = new HBaseExporter(conf, new GraphMetrics(registry))) {
+                long[] counts = exporter.export(graphConf, ndjsonDir, EntityFiles.Format.NDJSON);
+                assertThat(counts[0], is(30L));
+                assertThat(counts[1], is(29L));
+            }
+
+            List<Node> nodes = new ArrayList<>();
+            for (File file : ndjsonDir.listFiles((dir, name) -> name.endsWith(".ndjson"))) {
+                if (file.getName().startsWith("node-")) {
+                    try (Stream<Node> stream = EntityFiles.readNodes(file)) {
+                        stream.forEach(nodes::add);
+                    }
+                }
+            }
+            assertThat(nodes, hasSize(30));
+            assertThat(nodes.stream().filter(node -> node.id().equals("user3")).findFirst().get()
+                .properties(), hasEntry("tags", Arrays.asList("t3", 3)));
+
+            File binaryDir = Files.createTempDirectory("graphbase-export-test").toFile();
+            try (HBaseExporter exporter = new HBaseExporter(conf, new GraphMetrics(registry))) {
+                exporter.export(graphConf, binaryDir, EntityFiles.Format.BINARY);
+            }
+
+            // an interrupted shard: the checkpoint isn't done, and the file has a partial record
+            // after it
+            for (File checkpointFile : binaryDir
+                .listFiles((dir, name) -> name.endsWith(".checkpoint"))) {
+                String checkpoint =
+                    new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.UTF_8);
+                Files.write(checkpointFile.toPath(), checkpoint.replace("\"done\":true",
+                    "\"done\":false").getBytes(StandardCharsets.UTF_8));
+
+                File dataFile = new File(binaryDir,
+                    checkpointFile.getName().replace(".checkpoint", ".bin"));
+                Files.write(dataFile.toPath(), new byte[] {0, 0, 1},
+                    StandardOpenOption.APPEND);
+            }
+            try (HBaseExporter exporter = new HBaseExporter(conf, new GraphMetrics(registry))) {
+                long[] counts = exporter.export(graphConf, binaryDir, EntityFiles.Format.BINARY);
+                assertThat(counts[0], is(30L));
+                assertThat(counts[1], is(29L));
+            }
+
+            // loading the export into another graph
+            final String copyGraphId = "ExportRelatedTest-export-copy";
+            createGraph(copyGraphId);
+            List<File> nodeFiles = new ArrayList<>();
+            List<File> relFiles = new ArrayList<>();
+            for (File file : binaryDir.listFiles((dir, name) -> name.endsWith(".bin"))) {
+                if (file.getName().startsWith("node-")) {
+                    nodeFiles.add(file);
+                } else {
+                    relFiles.add(file);
+                }
+            }
+            try (HBaseBulkLoader loader = new HBaseBulkLoader(conf, new GraphMetrics(registry))) {
+                loader.load(graphService.getGraphConfiguration(copyGraphId).get(), nodeFiles,
+                    relFiles);
+            }
+
+            assertThat(graphService.countNodes(copyGraphId, null, null), is(30L));
+            assertThat(graphService.countRelationships(copyGraphId, null, null), is(29L));
+            assertThat(graphService
+                .getRelationship(copyGraphId, "user4", "follows", "user5", withAllProperties())
+                .get().properties(), hasEntry("weight", 2.0));
+            assertThat(graphService.degree(copyGraphId, "user4", Direction.BOTH, null), is(2L));
+        }
+    }
 }
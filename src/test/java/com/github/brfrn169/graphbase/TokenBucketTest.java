@@ -0,0 +1,46 @@
+package com.github.brfrn169.graphbase;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@DisplayName("Tests for TokenBucket") public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test @DisplayName("Test for reserving the tokens") public void reserve() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10.0, now::get);
+
+        // a full bucket has a second of tokens
+        assertThat(bucket.reserve(10, 0), is(0L));
+
+        // the next ones wait in turn, up to the max wait
+        assertThat(bucket.reserve(1, SECOND), is(SECOND / 10));
+        assertThat(bucket.reserve(1, SECOND), is(SECOND / 5));
+        assertThat(bucket.reserve(1, SECOND / 10), is(-1L));
+
+        // a second later the bucket has refilled
+        now.addAndGet(SECOND + SECOND / 5);
+        assertThat(bucket.reserve(10, 0), is(0L));
+    }
+
+    @Test @DisplayName("Test for charging the tokens") public void charge() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10.0, now::get);
+
+        // the tokens charged after a call make the next ones wait
+        bucket.charge(20);
+        assertThat(bucket.reserve(0, 0), is(-1L));
+        assertThat(bucket.reserve(0, 2 * SECOND), is(SECOND));
+
+        // a call taking more than the bucket holds waits for a full bucket only
+        now.addAndGet(SECOND);
+        assertThat(bucket.reserve(30, 2 * SECOND), is(SECOND));
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.brfrn169.graphbase;
+
+import com.github.brfrn169.graphbase.exception.GraphbaseException;
+import com.github.brfrn169.graphbase.util.Properties;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("Tests for WriteBehindBuffer") public class WriteBehindBufferTest {
+
+    private static final String GRAPH_ID = "g";
+
+    // the window is long enough that only the flushes of the tests write
+    private static final long WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // the batches written to the storage in order, which fails while failing is set
+    private final List<Map<String, Mutation>> written = new ArrayList<>();
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    private WriteBehindBuffer createBuffer(int maxPendingNodes) {
+        GraphStorage graphStorage = mock(GraphStorage.class);
+        when(graphStorage.updateNodes(any(), anyMap())).thenAnswer(invocation -> {
+            if (failing.get()) {
+                throw new GraphbaseException("the storage is failing");
+            }
+            Map<String, Mutation> mutations = invocation.getArgument(1);
+            written.add(new HashMap<>(mutations));
+            return Collections.emptyList();
+        });
+        return new WriteBehindBuffer(graphStorage,
+            graphId -> Optional.of(new GraphConfiguration(graphId)), WINDOW_MILLIS,
+            maxPendingNodes);
+    }
+
+    private static Mutation set(String key, Object value) {
+        return new Mutation(Properties.property(key, value), null);
+    }
+
+    @Test @DisplayName("Test for coalescing the mutations") public void coalesce() {
+        Mutation mutation = WriteBehindBuffer
+            .coalesce(null, new Mutation(Properties.property("a", 1, "b", 1), null));
+        mutation = WriteBehindBuffer.coalesce(mutation,
+            new Mutation(Properties.property("a", 2), new HashSet<>(Arrays.asList("b", "c"))));
+        mutation = WriteBehindBuffer
+            .coalesce(mutation, new Mutation(Properties.property("c", 3), null));
+
+        // the later mutations win, and a key is either set or deleted
+        assertThat(mutation.setProperties(), is(Properties.property("a", 2, "c", 3)));
+        assertThat(mutation.deleteKeys(), is(Collections.singleton("b")));
+    }
+
+    @Test @DisplayName("Test for the maximum of the pending nodes") public void maxPendingNodes() {
+        try (WriteBehindBuffer buffer = createBuffer(2)) {
+            buffer.add(GRAPH_ID, "a", set("x", 1));
+            buffer.add(GRAPH_ID, "b", set("x", 1));
+            assertThat(written.isEmpty(), is(true));
+
+            // a pending node is updated without a flush
+            buffer.add(GRAPH_ID, "a", set("x", 2));
+            assertThat(written.isEmpty(), is(true));
+
+            // another node flushes the pending ones before it's buffered
+            buffer.add(GRAPH_ID, "c", set("x", 1));
+            assertThat(written.size(), is(1));
+            assertThat(written.get(0).keySet(), is(new HashSet<>(Arrays.asList("a", "b"))));
+            assertThat(written.get(0).get("a").setProperties(), is(Properties.property("x", 2)));
+            assertThat(buffer.isPending(GRAPH_ID, "a"), is(false));
+            assertThat(buffer.isPending(GRAPH_ID, "c"), is(true));
+        }
+    }
+
+    @Test @DisplayName("Test for retrying a failed flush") public void failedFlush() {
+        try (WriteBehindBuffer buffer = createBuffer(2)) {
+            buffer.add(GRAPH_ID, "a", set("x", 1));
+            buffer.add(GRAPH_ID, "b", set("x", 1));
+
+            // another node is refused while the flush fails, and isn't written later
+            failing.set(true);
+            assertThrows(GraphbaseException.class, () -> buffer.add(GRAPH_ID, "c", set("x", 1)));
+            assertThat(buffer.isPending(GRAPH_ID, "c"), is(false));
+            assertThat(buffer.isPending(GRAPH_ID, "a"), is(true));
+            assertThat(buffer.isPending(GRAPH_ID, "b"), is(true));
+
+            // the pending nodes are still updated
+            buffer.add(GRAPH_ID, "a", set("x", 2));
+
+            // the pending updates are written by the next flush
+            failing.set(false);
+            buffer.add(GRAPH_ID, "c", set("x", 1));
+            assertThat(written.size(), is(1));
+            assertThat(written.get(0).keySet(), is(new HashSet<>(Arrays.asList("a", "b"))));
+            assertThat(written.get(0).get("a").setProperties(), is(Properties.property("x", 2)));
+
+            buffer.flush();
+            assertThat(written.size(), is(2));
+            assertThat(written.get(1).keySet(), is(Collections.singleton("c")));
+        }
+    }
+
+    @Test @DisplayName("Test for flushing a node") public void flushNode() {
+        try (WriteBehindBuffer buffer = createBuffer(10)) {
+            buffer.add(GRAPH_ID, "a", set("x", 1));
+            buffer.add(GRAPH_ID, "b", set("x", 1));
+
+            // only the node is written
+            buffer.flush(GRAPH_ID, "a");
+            assertThat(written.size(), is(1));
+            assertThat(written.get(0).keySet(), is(Collections.singleton("a")));
+            assertThat(buffer.isPending(GRAPH_ID, "a"), is(false));
+            assertThat(buffer.isPending(GRAPH_ID, "b"), is(true));
+
+            // nothing is written for a node which isn't pending
+            buffer.flush(GRAPH_ID, "a");
+            assertThat(written.size(), is(1));
+
+            // the later update of the node is written after the flushed one
+            buffer.add(GRAPH_ID, "a", set("x", 2));
+            buffer.flush();
+            assertThat(written.size(), is(2));
+            assertThat(written.get(1).keySet(), is(new HashSet<>(Arrays.asList("a", "b"))));
+            assertThat(written.get(1).get("a").setProperties(), is(Properties.property("x", 2)));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.brfrn169.graphbase.aggregation;
+
+import com.github.brfrn169.graphbase.Node;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+import static com.github.brfrn169.graphbase.util.Properties.property;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.junit.Assert.assertThat;
+
+@DisplayName("Tests for Aggregator") public class AggregatorTest {
+
+    private static final List<Node> NODES = Arrays
+        .asList(new Node("n1", "User", property("country", "jp", "score", 10)),
+            new Node("n2", "User", property("country", "us", "score", 5)),
+            new Node("n3", "User", property("country", "jp", "score", 2.5)),
+            new Node("n4", "Admin", property("country", "jp")),
+            new Node("n5", "User", property("score", 1)));
+
+    @Test @DisplayName("Test for the group-by aggregation") public void groupBy() {
+        AggregationQuery query =
+            new AggregationQuery(AggregationQuery.Target.NODES, null, null, false,
+                Collections.singletonList("country"), Arrays
+                .asList(new Aggregation("count", Aggregation.Function.COUNT, null),
+                    new Aggregation("sum", Aggregation.Function.SUM, "score"),
+                    new Aggregation("avg", Aggregation.Function.AVG, "score"),
+                    new Aggregation("min", Aggregation.Function.MIN, "score"),
+                    new Aggregation("max", Aggregation.Function.MAX, "score")));
+
+        List<AggregationResult> results =
+            NODES.stream().collect(new Aggregator(query).collector(Node::type));
+
+        // the group of the nodes without the property comes first
+        assertThat(results, hasSize(3));
+        assertThat(results.get(0).group().get("country"), is(nullValue()));
+        assertThat(results.get(0).values().get("count"), is(1L));
+        assertThat(results.get(0).values().get("sum"), is(1L));
+
+        AggregationResult jp = results.get(1);
+        assertThat(jp.group().get("country"), is("jp"));
+        assertThat(jp.values().get("count"), is(3L));
+        assertThat(jp.values().get("sum"), is(12.5));
+        assertThat(jp.values().get("avg"), is(12.5 / 2));
+        assertThat(jp.values().get("min"), is(2.5));
+        assertThat(jp.values().get("max"), is(10L));
+
+        assertThat(results.get(2).group().get("country"), is("us"));
+        assertThat(results.get(2).values().get("sum"), is(5L));
+    }
+
+    @Test @DisplayName("Test for merging the partial aggregates") public void merge() {
+        AggregationQuery query =
+            new AggregationQuery(AggregationQuery.Target.NODES, null, null, true, null, Arrays
+                .asList(new Aggregation("count", Aggregation.Function.COUNT, null),
+                    new Aggregation("max", Aggregation.Function.MAX, "score")));
+
+        List<AggregationResult> expected =
+            NODES.stream().collect(new Aggregator(query).collector(Node::type));
+        List<AggregationResult> merged = collectInPartitions(NODES,
+            new Aggregator(query).collector(Node::type));
+
+        assertThat(merged, is(expected));
+        assertThat(merged, hasSize(2));
+        assertThat(merged.get(0).type(), is("Admin"));
+        assertThat(merged.get(0).values().get("max"), is(nullValue()));
+        assertThat(merged.get(1).type(), is("User"));
+        assertThat(merged.get(1).values().get("count"), is(4L));
+        assertThat(merged.get(1).values().get("max"), is(10L));
+    }
+
+    @Test @DisplayName("Test for the values of mixed classes") public void mixedClasses() {
+        List<Node> nodes = Arrays
+            .asList(new Node("n1", "User", property("level", 1, "score", 1)),
+                new Node("n2", "User", property("level", 1L, "score", 2L)),
+                new Node("n3", "User", property("level", 1, "score", 0.5f)),
+                new Node("n4", "User", property("level", 2L, "score", "high")));
+
+        AggregationQuery query =
+            new AggregationQuery(AggregationQuery.Target.NODES, null, null, false,
+                Collections.singletonList("level"), Arrays
+                .asList(new Aggregation("sum", Aggregation.Function.SUM, "score"),
+                    new Aggregation("min", Aggregation.Function.MIN, "score"),
+                    new Aggregation("max", Aggregation.Function.MAX, "score")));
+
+        List<AggregationResult> results =
+            collectInPartitions(nodes, new Aggregator(query).collector(Node::type));
+
+        // an Integer and a Long of the same value are the same group
+        assertThat(results, hasSize(2));
+        assertThat(results.get(0).group().get("level"), is(1L));
+        assertThat(results.get(0).values().get("sum"), is(3.5));
+        assertThat(results.get(0).values().get("min"), is(0.5));
+        assertThat(results.get(0).values().get("max"), is(2L));
+
+        assertThat(results.get(1).group().get("level"), is(2L));
+        assertThat(results.get(1).values().get("sum"), is(0L));
+        assertThat(results.get(1).values().get("max"), is("high"));
+    }
+
+    @Test @DisplayName("Test for the values of lists") public void lists() {
+        List<Node> nodes = Arrays
+            .asList(new Node("n1", "User", property("tags", Arrays.asList("b", "c"), "score", 1)),
+                new Node("n2", "User", property("tags", Arrays.asList("a"), "score",
+                    Arrays.asList(2, 3))),
+                new Node("n3", "User", property("tags", Arrays.asList("b", "c"), "score",
+                    Arrays.asList(1))),
+                new Node("n4", "User", property("tags", 2.5, "score", 0)),
+                new Node("n5", "User", property("tags", 1L, "score", 0)));
+
+        AggregationQuery query =
+            new AggregationQuery(AggregationQuery.Target.NODES, null, null, false,
+                Collections.singletonList("tags"), Arrays
+                .asList(new Aggregation("count", Aggregation.Function.COUNT, null),
+                    new Aggregation("min", Aggregation.Function.MIN, "score"),
+                    new Aggregation("max", Aggregation.Function.MAX, "score")));
+
+        List<AggregationResult> results =
+            collectInPartitions(nodes, new Aggregator(query).collector(Node::type));
+
+        // the numbers are ordered by their values, and the lists by their JSON after them
+        assertThat(results, hasSize(4));
+        assertThat(results.get(0).group().get("tags"), is(1L));
+        assertThat(results.get(1).group().get("tags"), is(2.5));
+        assertThat(results.get(2).group().get("tags"), is(Collections.singletonList("a")));
+        assertThat(results.get(3).group().get("tags"), is(Arrays.asList("b", "c")));
+        assertThat(results.get(3).values().get("count"), is(2L));
+        assertThat(results.get(3).values().get("min"), is(1L));
+        assertThat(results.get(3).values().get("max"), is(Collections.singletonList(1)));
+
+        AggregationResult all = nodes.stream().collect(new Aggregator(
+            new AggregationQuery(AggregationQuery.Target.NODES, null, null, false, null,
+                query.aggregations())).collector(Node::type)).get(0);
+        assertThat(all.values().get("min"), is(0L));
+        assertThat(all.values().get("max"), is(Arrays.asList(2, 3)));
+    }
+
+    // folds each node into its own container, like one partition per region
+    private static <A, R> R collectInPartitions(List<Node> nodes,
+        Collector<Node, A, R> collector) {
+        return collector.finisher().apply(nodes.stream().map(node -> {
+            A container = collector.supplier().get();
+            collector.accumulator().accept(container, node);
+            return container;
+        }).reduce(collector.combiner()).orElseGet(collector.supplier()));
+    }
+}
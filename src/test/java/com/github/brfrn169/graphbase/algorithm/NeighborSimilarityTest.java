@@ -0,0 +1,52 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@DisplayName("Tests for NeighborSimilarity") public class NeighborSimilarityTest {
+
+    @Test @DisplayName("Test for the merge-join") public void merge() {
+        NeighborSimilarity.MergeResult result = NeighborSimilarity
+            .merge(Arrays.asList("a", "c", "d", "f").iterator(),
+                Arrays.asList("b", "c", "f", "g", "h").iterator());
+        assertThat(result.common, is(Arrays.asList("c", "f")));
+        assertThat(result.leftSize, is(4L));
+        assertThat(result.rightSize, is(5L));
+
+        result = NeighborSimilarity
+            .merge(Collections.<String>emptyIterator(), Arrays.asList("a", "b").iterator());
+        assertThat(result.common.isEmpty(), is(true));
+        assertThat(result.leftSize, is(0L));
+        assertThat(result.rightSize, is(2L));
+    }
+
+    @Test @DisplayName("Test for the order of UTF-8 bytes") public void compareUtf8() {
+        // U+FF5E is greater than U+1F600 in UTF-16, but less in UTF-8
+        List<String> strings = Arrays.asList("", "a", "ab", "b", "\uff5e", "\ud83d\ude00");
+        for (String s1 : strings) {
+            for (String s2 : strings) {
+                assertThat(Integer.signum(NeighborSimilarity.compareUtf8(s1, s2)),
+                    is(Integer.signum(compareBytes(s1.getBytes(StandardCharsets.UTF_8),
+                        s2.getBytes(StandardCharsets.UTF_8)))));
+            }
+        }
+    }
+
+    private static int compareBytes(byte[] b1, byte[] b2) {
+        for (int i = 0; i < Math.min(b1.length, b2.length); i++) {
+            int c = Integer.compare(b1[i] & 0xff, b2[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(b1.length, b2.length);
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.brfrn169.graphbase.algorithm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.junit.Assert.assertThat;
+
+@DisplayName("Tests for Reservoir") public class ReservoirTest {
+
+    @Test @DisplayName("Test for the uniform sampling") public void uniform() {
+        Random random = new Random(0);
+
+        Reservoir<Integer> reservoir = new Reservoir<>(10, random);
+        IntStream.range(0, 1000).forEach(reservoir::offer);
+
+        List<Integer> items = reservoir.items();
+        assertThat(items, hasSize(10));
+        assertThat(new HashSet<>(items), hasSize(10));
+
+        Reservoir<Integer> small = new Reservoir<>(10, random);
+        IntStream.range(0, 3).forEach(small::offer);
+        assertThat(small.items(), containsInAnyOrder(0, 1, 2));
+    }
+
+    @Test @DisplayName("Test for the weighted sampling") public void weighted() {
+        Random random = new Random(0);
+
+        int heavyCount = 0;
+        for (int i = 0; i < 1000; i++) {
+            Reservoir<String> reservoir = new Reservoir<>(1, random);
+            reservoir.offer("light", 1.0);
+            reservoir.offer("heavy", 9.0);
+            reservoir.offer("zero", 0.0);
+
+            List<String> items = reservoir.items();
+            assertThat(items, hasSize(1));
+            if (items.get(0).equals("heavy")) {
+                heavyCount++;
+            }
+        }
+        assertThat(heavyCount, is(greaterThan(800)));
+
+        Reservoir<String> reservoir = new Reservoir<>(1, random);
+        reservoir.offer("zero", 0.0);
+        assertThat(reservoir.isEmpty(), is(true));
+    }
+}
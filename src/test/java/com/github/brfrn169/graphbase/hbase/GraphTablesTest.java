@@ -0,0 +1,82 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.Relationship;
+import com.github.brfrn169.graphbase.StorageLayout;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Tests for GraphTables") public class GraphTablesTest {
+
+    private static GraphTables shared(String graphId) {
+        return GraphTables.of(new GraphConfiguration(graphId, StorageLayout.SHARED, null));
+    }
+
+    @Test @DisplayName("Test for decoding the rows") public void decodeRows() {
+        for (GraphTables tables : new GraphTables[] {
+            GraphTables.of(new GraphConfiguration("graph")), shared("graph")}) {
+            assertThat(tables.nodeId(tables.nodeRow("a")), is("a"));
+
+            Relationship rel = tables.rel(tables.relRow("a", "follows", "b"));
+            assertThat(rel.outNodeId(), is("a"));
+            assertThat(rel.type(), is("follows"));
+            assertThat(rel.inNodeId(), is("b"));
+            assertThat(tables.relType(tables.relRow("a", "follows", "b")), is("follows"));
+        }
+    }
+
+    @Test @DisplayName("Test for the rows of the shared graphs") public void sharedRows() {
+        GraphTables tables1 = shared("graph1");
+        GraphTables tables2 = shared("graph2");
+
+        assertThat(tables1.nodeTableName(), is(tables2.nodeTableName()));
+        assertThat(Bytes.equals(tables1.nodeRow("a"), tables2.nodeRow("a")), is(false));
+
+        // every row of a graph is in its scan ranges and in none of the other graph
+        byte[] row = tables1.nodeRow("a");
+        assertThat(inRange(row, tables1.nodeScanRows()), is(true));
+        assertThat(inRange(row, tables2.nodeScanRows()), is(false));
+        row = tables1.relRow("a", "follows", "b");
+        assertThat(inRange(row, tables1.relScanRows()), is(true));
+        assertThat(inRange(row, tables2.relScanRows()), is(false));
+    }
+
+    @Test @DisplayName("Test for the ranges of a shared graph") public void graphRanges() {
+        GraphTables tables = shared("graph");
+        List<Pair<byte[], byte[]>> ranges = tables.graphRanges();
+        assertThat(ranges.size(), is(greaterThan(1)));
+
+        for (int i = 1; i < ranges.size(); i++) {
+            assertThat(ranges.get(i - 1).getSecond(), is(ranges.get(i).getFirst()));
+        }
+        assertThat(Bytes.compareTo(ranges.get(0).getFirst(), tables.nodeScanRows().getFirst()),
+            is(not(greaterThan(0))));
+        assertThat(Bytes.compareTo(ranges.get(ranges.size() - 1).getSecond(),
+            tables.relScanRows().getSecond()), is(not(lessThan(0))));
+
+        for (int i = 0; i < 100; i++) {
+            byte[] row = tables.nodeRow("node" + i);
+            assertThat(ranges.stream().filter(range -> inRange(row, range)).count(), is(1L));
+        }
+    }
+
+    @Test @DisplayName("Test for a graph id which can't be shared") public void invalidGraphId() {
+        assertThrows(IllegalArgumentException.class, () -> shared("graph\0"));
+    }
+
+    private static boolean inRange(byte[] row, Pair<byte[], byte[]> range) {
+        return Bytes.compareTo(row, range.getFirst()) >= 0
+            && Bytes.compareTo(row, range.getSecond()) < 0;
+    }
+}
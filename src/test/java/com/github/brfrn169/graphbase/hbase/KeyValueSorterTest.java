@@ -0,0 +1,51 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+@DisplayName("Tests for KeyValueSorter") public class KeyValueSorterTest {
+
+    @Test @DisplayName("Test for sorting with spills") public void sort() throws IOException {
+        File spillDir = Files.createTempDirectory("graphbase-sort-test").toFile();
+
+        List<KeyValue> kvs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            kvs.add(new KeyValue(Bytes.toBytes("row" + i % 300), Bytes.toBytes("f"),
+                Bytes.toBytes("q" + i), 1L, Bytes.toBytes(i)));
+        }
+        List<KeyValue> shuffled = new ArrayList<>(kvs);
+        Collections.shuffle(shuffled, new Random(0));
+
+        try (KeyValueSorter sorter = new KeyValueSorter(4096, spillDir)) {
+            shuffled.forEach(sorter::add);
+            assertThat(sorter.spillCount(), is(greaterThan(1)));
+
+            kvs.sort(KeyValue.COMPARATOR);
+            Iterator<KeyValue> sorted = sorter.sorted();
+            for (KeyValue expected : kvs) {
+                assertThat(sorted.hasNext(), is(true));
+                KeyValue actual = sorted.next();
+                assertThat(KeyValue.COMPARATOR.compare(actual, expected), is(0));
+                assertThat(Bytes.toInt(actual.getValue()), is(Bytes.toInt(expected.getValue())));
+            }
+            assertThat(sorted.hasNext(), is(false));
+        }
+
+        assertThat(spillDir.list().length, is(0));
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Tests for PropertyValues") public class PropertyValuesTest {
+
+    @Test @DisplayName("Test for decoding the counters") public void counters() {
+        for (long value : new long[] {0L, 1L, -1L, 30L, (1L << 56) - 1, -(1L << 56)}) {
+            byte[] encoded = PropertyValues.encodeCounter(value);
+            assertThat(PropertyValues.isCounter(encoded), is(true));
+            assertThat(PropertyValues.decode(encoded), is((Object) value));
+            assertThat(new String(PropertyValues.toJson(encoded)), is(Long.toString(value)));
+        }
+
+        // a JSON value of the same length isn't a counter
+        byte[] json = PropertyValues.encode("abcdef");
+        assertThat(json.length, is(8));
+        assertThat(PropertyValues.isCounter(json), is(false));
+        assertThat(PropertyValues.decode(json), is((Object) "abcdef"));
+
+        // a counter beyond 2^56 would start like JSON
+        assertThrows(IllegalArgumentException.class,
+            () -> PropertyValues.encodeCounter(PropertyValues.COUNTER_MAX + 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> PropertyValues.encodeCounter(PropertyValues.COUNTER_MIN - 1));
+    }
+
+    @Test @DisplayName("Test for decoding the appended lists") public void appendedLists() {
+        byte[] appended = PropertyValues.encodeAppended(Arrays.asList(1, "a"));
+        assertThat(PropertyValues.decode(appended), is((Object) Arrays.asList(1, "a")));
+
+        // appended to a list, and to a value which isn't one
+        byte[] list = PropertyValues.encode(Arrays.asList(0, 1));
+        assertThat(PropertyValues.decode(Bytes.add(list, appended)),
+            is((Object) Arrays.asList(0, 1, 1, "a")));
+        byte[] value = PropertyValues.encode(Collections.singletonMap("k", "v"));
+        assertThat(PropertyValues.decode(Bytes.add(value, appended)),
+            is((Object) Arrays.asList(Collections.singletonMap("k", "v"), 1, "a")));
+
+        // a counter can contain the separator
+        byte[] counter = PropertyValues.encodeCounter(0x1E1E);
+        assertThat(PropertyValues.decode(Bytes.add(counter, appended)),
+            is((Object) Arrays.asList(0x1E1EL, 1, "a")));
+
+        assertThat(new String(PropertyValues.toJson(Bytes.add(list, appended))),
+            is("[0,1,1,\"a\"]"));
+    }
+}
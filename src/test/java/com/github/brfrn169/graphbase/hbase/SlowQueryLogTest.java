@@ -0,0 +1,101 @@
+package com.github.brfrn169.graphbase.hbase;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.util.Json;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.brfrn169.graphbase.PropertyProjections.Builder.withProperties;
+import static com.github.brfrn169.graphbase.filter.FilterPredicate.Builder.and;
+import static com.github.brfrn169.graphbase.filter.FilterPredicate.Builder.greaterOrEqual;
+import static com.github.brfrn169.graphbase.filter.FilterPredicate.Builder.isNull;
+import static com.github.brfrn169.graphbase.sort.SortPredicate.Builder.desc;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.junit.Assert.assertThat;
+
+@DisplayName("Tests for SlowQueryLog") public class SlowQueryLogTest {
+
+    private static final Json JSON = new Json(JsonInclude.Include.NON_NULL);
+
+    private static Result result(String row, String value) {
+        return Result.create(new Cell[] {
+            new KeyValue(Bytes.toBytes(row), Bytes.toBytes("n"), Bytes.toBytes("k"),
+                Bytes.toBytes(value))});
+    }
+
+    @SuppressWarnings("unchecked") @Test @DisplayName("Test for the entries of the log")
+    public void entries() {
+        ScanStats stats = new ScanStats(true);
+        List<String> rows;
+        try (Stream<String> s = Stream.of(result("a", "xx"), result("b", "yyy"), result("c", "z"))
+            .map(stats.decoder(r -> Bytes.toString(r.getRow())))
+            .filter(stats.filter(row -> !row.equals("b")))
+            .sorted(stats.comparator(Comparator.<String>reverseOrder())).map(stats::returned)) {
+            rows = s.collect(Collectors.toList());
+        }
+        assertThat(rows, is(Arrays.asList("c", "a")));
+
+        ScanMetrics scanMetrics = new ScanMetrics();
+        scanMetrics.countOfRegions.set(2);
+
+        Map<String, Object> entry = SlowQueryLog
+            .toEntry(new GraphConfiguration("g"), "node", Collections.singletonList("User"),
+                and(greaterOrEqual("age", 1), isNull("email")),
+                Collections.singletonList(desc("age")), withProperties("name"), stats, scanMetrics,
+                1000000L);
+
+        assertThat(entry, hasEntry("elapsedMs", (Object) 1.0));
+        assertThat(entry.containsKey("workMs"), is(true));
+
+        Map<String, Object> query = (Map<String, Object>) entry.get("query");
+        assertThat(query, hasEntry("graph", (Object) "g"));
+        assertThat(query, hasEntry("types", (Object) Collections.singletonList("User")));
+        assertThat(query, hasEntry("sorts", (Object) Collections.singletonList("age DESC")));
+
+        // the values of the conditions of the filter are redacted
+        assertThat(JSON.writeValueAsString(query.get("filter")),
+            is("{\"op\":\"AND\",\"filters\":[{\"key\":\"age\",\"op\":\"GE\",\"value\":\"?\"},"
+                + "{\"key\":\"email\",\"op\":\"IS_NULL\"}]}"));
+
+        // the rows dropped by the filter are scanned and decoded, but not returned
+        Map<String, Object> rowCounts = (Map<String, Object>) entry.get("rows");
+        assertThat(rowCounts, hasEntry("scanned", (Object) 3L));
+        assertThat(rowCounts, hasEntry("filtered", (Object) 1L));
+        assertThat(rowCounts, hasEntry("returned", (Object) 2L));
+        assertThat(rowCounts, hasEntry("cellsDecoded", (Object) 3L));
+        assertThat(rowCounts, hasEntry("bytesDecoded", (Object) 6L));
+
+        Map<String, Long> metrics = (Map<String, Long>) entry.get("scanMetrics");
+        assertThat(metrics, hasEntry(ScanMetrics.REGIONS_SCANNED_METRIC_NAME, 2L));
+    }
+
+    @Test @DisplayName("Test for the threshold") public void threshold()
+        throws InterruptedException {
+        assertThat(new SlowQueryLog(-1L).isEnabled(), is(false));
+        assertThat(new SlowQueryLog(0L).isEnabled(), is(true));
+
+        // the time the stream was left open without being consumed isn't work of the scan
+        ScanStats stats = new ScanStats(true);
+        TimeUnit.MILLISECONDS.sleep(20);
+        assertThat(stats.elapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(20), is(true));
+        assertThat(new SlowQueryLog(10L).isSlow(stats), is(false));
+        assertThat(new SlowQueryLog(0L).isSlow(stats), is(true));
+        assertThat(new SlowQueryLog(-1L).isSlow(stats), is(false));
+    }
+}
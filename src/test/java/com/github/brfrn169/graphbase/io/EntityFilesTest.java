@@ -0,0 +1,80 @@
+package com.github.brfrn169.graphbase.io;
+
+import com.github.brfrn169.graphbase.Node;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.junit.Assert.assertThat;
+
+@DisplayName("Tests for EntityFiles") public class EntityFilesTest {
+
+    @Test @DisplayName("Test for splitting CSV lines") public void parseCsvLine() {
+        assertThat(EntityFiles.parseCsvLine("a,b,,c"), is(Arrays.asList("a", "b", "", "c")));
+        assertThat(EntityFiles.parseCsvLine("\"a,b\",\"say \"\"hi\"\"\""),
+            is(Arrays.asList("a,b", "say \"hi\"")));
+        assertThat(EntityFiles.parseCsvLine(""), is(Collections.singletonList("")));
+    }
+
+    @Test @DisplayName("Test for parsing CSV values") public void parseCsvValue() {
+        assertThat(EntityFiles.parseCsvValue("42"), is(42));
+        assertThat(EntityFiles.parseCsvValue("-1.5"), is(-1.5));
+        assertThat(EntityFiles.parseCsvValue("true"), is(true));
+        assertThat(EntityFiles.parseCsvValue("[1,2]"), is(Arrays.asList(1, 2)));
+        assertThat(EntityFiles.parseCsvValue("007"), is("007"));
+        assertThat(EntityFiles.parseCsvValue("12 apples"), is("12 apples"));
+        assertThat(EntityFiles.parseCsvValue("{broken"), is("{broken"));
+    }
+
+    @Test @DisplayName("Test for reading records with malformed lines") public void readRecords() {
+        String input = "id,type,age\nuser1,User,10\n\nuser2\nuser3,User,\n";
+        try (Stream<EntityRecord<Node>> records = EntityFiles
+            .readNodes(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                EntityFiles.Format.CSV)) {
+            List<EntityRecord<Node>> list = records.collect(Collectors.toList());
+            assertThat(list, hasSize(3));
+
+            assertThat(list.get(0).line(), is(2L));
+            assertThat(list.get(0).get().properties().get("age"), is(10));
+
+            assertThat(list.get(1).line(), is(4L));
+            assertThat(list.get(1).entity(), is(nullValue()));
+            assertThat(list.get(1).error(), is("wrong number of values"));
+
+            assertThat(list.get(2).line(), is(5L));
+            assertThat(list.get(2).get().properties().isEmpty(), is(true));
+        }
+    }
+
+    @Test @DisplayName("Test for the binary format") public void binary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RawEntityWriter writer = EntityFiles.createRawWriter(out, EntityFiles.Format.BINARY)) {
+            writer.writeNode("user1", "User",
+                Collections.singletonMap("name", "\"\u3042\"".getBytes(StandardCharsets.UTF_8)));
+            writer.writeNode("user2", "User", Collections.emptyMap());
+        }
+        // a truncated record
+        out.write(new byte[] {0, 0, 0, 9, 1});
+
+        try (Stream<EntityRecord<Node>> records = EntityFiles
+            .readNodes(new ByteArrayInputStream(out.toByteArray()), EntityFiles.Format.BINARY)) {
+            List<EntityRecord<Node>> list = records.collect(Collectors.toList());
+            assertThat(list, hasSize(3));
+            assertThat(list.get(0).get().properties().get("name"), is("\u3042"));
+            assertThat(list.get(1).get().id(), is("user2"));
+            assertThat(list.get(2).error(), is("truncated record"));
+        }
+    }
+}
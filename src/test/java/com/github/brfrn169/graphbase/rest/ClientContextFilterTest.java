@@ -0,0 +1,112 @@
+package com.github.brfrn169.graphbase.rest;
+
+import com.github.brfrn169.graphbase.ClientContext;
+import com.github.brfrn169.graphbase.WorkloadClass;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@DisplayName("Tests for ClientContextFilter") public class ClientContextFilterTest {
+
+    private static MockHttpServletRequest request(String workloadClass) {
+        MockHttpServletRequest ret = new MockHttpServletRequest("GET", "/v1/graphs/g/nodes");
+        ret.addHeader(ClientContextFilter.WORKLOAD_HEADER, workloadClass);
+        return ret;
+    }
+
+    private static MockHttpServletResponse doFilter(ClientContextFilter filter,
+        MockHttpServletRequest request, FilterChain filterChain) throws Exception {
+        MockHttpServletResponse ret = new MockHttpServletResponse();
+        filter.doFilter(request, ret, filterChain);
+        return ret;
+    }
+
+    @Test @DisplayName("Test for the concurrent requests of the workload classes")
+    public void maxConcurrentRequests() throws Exception {
+        Configuration conf = new Configuration(false);
+        conf.setInt(WorkloadClass.ANALYTICS
+            .confKey(ClientContextFilter.MAX_CONCURRENT_REQUESTS_CONF_KEY), 1);
+        conf.setLong(WorkloadClass.ANALYTICS.confKey(ClientContextFilter.MAX_WAIT_MS_CONF_KEY),
+            10L);
+        ClientContextFilter filter = new ClientContextFilter(conf);
+
+        // the first analytics request holds the only permit of its class until it's released
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<MockHttpServletResponse> holding = executor.submit(
+                () -> doFilter(filter, request("analytics"), (req, res) -> {
+                    assertThat(ClientContext.getWorkloadClass(), is(WorkloadClass.ANALYTICS));
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+
+            // the next one times out waiting for the permit and is rejected
+            MockHttpServletResponse rejected =
+                doFilter(filter, request("analytics"), (req, res) -> {
+                    throw new AssertionError("the request must not be served");
+                });
+            assertThat(rejected.getStatus(), is(HttpStatus.SERVICE_UNAVAILABLE.value()));
+            assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER), is("1"));
+
+            // the requests of the other classes don't wait for the permits of the analytics ones
+            MockHttpServletResponse interactive = doFilter(filter, request("interactive"),
+                (req, res) -> assertThat(ClientContext.getWorkloadClass(),
+                    is(WorkloadClass.INTERACTIVE)));
+            assertThat(interactive.getStatus(), is(HttpStatus.OK.value()));
+            assertThat(doFilter(filter, request("batch"), (req, res) -> {
+            }).getStatus(), is(HttpStatus.OK.value()));
+
+            release.countDown();
+            assertThat(holding.get(10, TimeUnit.SECONDS).getStatus(), is(HttpStatus.OK.value()));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        // the permit is given back when the request is done
+        assertThat(doFilter(filter, request("analytics"), (req, res) -> {
+        }).getStatus(), is(HttpStatus.OK.value()));
+        assertThat(ClientContext.getWorkloadClass(), is(WorkloadClass.INTERACTIVE));
+    }
+
+    @Test @DisplayName("Test for the workload classes under another locale")
+    public void defaultLocale() throws Exception {
+        Locale defaultLocale = Locale.getDefault();
+        // the lower and upper cases of i differ in turkish
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertThat(WorkloadClass.INTERACTIVE.confKey("scan.caching"),
+                is("graphbase.workload.interactive.scan.caching"));
+
+            ClientContextFilter filter = new ClientContextFilter(new Configuration(false));
+            MockHttpServletResponse response = doFilter(filter, request("interactive"),
+                (req, res) -> assertThat(ClientContext.getWorkloadClass(),
+                    is(WorkloadClass.INTERACTIVE)));
+            assertThat(response.getStatus(), is(HttpStatus.OK.value()));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
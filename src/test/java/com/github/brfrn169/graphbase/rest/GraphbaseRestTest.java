@@ -1,15 +1,23 @@
 package com.github.brfrn169.graphbase.rest;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.brfrn169.graphbase.Durability;
 import com.github.brfrn169.graphbase.GraphConfiguration;
+import com.github.brfrn169.graphbase.GraphMetrics;
+import com.github.brfrn169.graphbase.GraphServiceTest;
 import com.github.brfrn169.graphbase.Node;
 import com.github.brfrn169.graphbase.Relationship;
+import com.github.brfrn169.graphbase.StorageOptions;
 import com.github.brfrn169.graphbase.hbase.HBaseGraphStorage;
 import com.github.brfrn169.graphbase.util.Json;
 import com.github.brfrn169.graphbase.util.Properties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseTestingUtility;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Consistency;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
@@ -28,6 +36,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +56,8 @@ public class GraphbaseRestTest {
 
     @Autowired private TestRestTemplate restTemplate;
 
+    @Autowired private MeterRegistry meterRegistry;
+
     @BeforeAll public static void beforeAll() throws Exception {
         testUtil = new HBaseTestingUtility();
         testUtil.startMiniCluster();
@@ -65,8 +76,10 @@ public class GraphbaseRestTest {
     }
 
     private void createGraph(String graphId) {
-        GraphConfiguration graphConf = new GraphConfiguration(graphId);
+        createGraph(new GraphConfiguration(graphId));
+    }
 
+    private void createGraph(GraphConfiguration graphConf) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         HttpEntity<String> requestEntry =
@@ -167,6 +180,21 @@ public class GraphbaseRestTest {
                 assertThat(nodesMap.entrySet(), is(empty()));
             }
         }
+
+        {
+            // the ids of the nodes don't collide with the paths of the counts and the ids
+            Node count = new Node("count", "type1", Properties.property("key1", "value1"));
+            Node ids = new Node("ids", "type1", Properties.property("key1", "value1"));
+            addNode(graphId, count);
+            addNode(graphId, ids);
+            getNode(graphId, count);
+            getNode(graphId, ids);
+
+            ResponseEntity<Long> responseEntity =
+                restTemplate.getForEntity("/v1/graphs/" + graphId + "/nodes/_count", Long.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.OK));
+            assertThat(responseEntity.getBody(), is(5L));
+        }
     }
 
     private void addRelationship(String graphId, Relationship rel) {
@@ -242,4 +270,191 @@ public class GraphbaseRestTest {
             }
         }
     }
+
+    @Test @DisplayName("Test related to conditional updates") public void conditionalUpdateTest() {
+        final String graphId = "conditionalUpdateTest";
+        createGraph(graphId);
+
+        addNode(graphId, new Node("id1", "type1", Properties.property("key1", "value1")));
+
+        String url = "/v1/graphs/" + graphId + "/nodes/id1";
+        String etag = restTemplate.getForEntity(url, Node.class).getHeaders().getETag();
+        assertThat(etag, not(nullValue()));
+
+        String body = "{\"setProperties\":{\"key1\":\"value2\"}}";
+        {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setIfMatch(etag);
+            ResponseEntity<Void> responseEntity = restTemplate
+                .exchange(url, HttpMethod.PUT, new HttpEntity<>(body, headers), Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.OK));
+            assertThat(responseEntity.getHeaders().getETag(), not(etag));
+        }
+        {
+            // the ETag is stale after the update
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setIfMatch(etag);
+            ResponseEntity<Void> responseEntity = restTemplate
+                .exchange(url, HttpMethod.PUT, new HttpEntity<>(body, headers), Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.PRECONDITION_FAILED));
+        }
+    }
+
+    @Test @DisplayName("Test related to timeline reads") public void timelineTest()
+        throws IOException {
+        final String graphId = "timelineTest";
+        StorageOptions storageOptions =
+            new StorageOptions(null, null, null, null, null, null, null, null, null, null, 2);
+        createGraph(new GraphConfiguration(graphId, null, storageOptions, null, null,
+            Consistency.TIMELINE));
+
+        addNode(graphId, new Node("id1", "type1", Properties.property("key1", "value1")));
+        GraphServiceTest.addCoprocessor(testUtil, TableName.valueOf("graphbase", graphId + "_node"),
+            GraphServiceTest.SlowPrimaryObserver.class);
+
+        String url = "/v1/graphs/" + graphId + "/nodes/id1";
+        GraphServiceTest.SlowPrimaryObserver.setEnabled(true);
+        try {
+            // the timeline reads are served by the secondary replicas while the primary ones are
+            // slow, and have no ETag
+            ResponseEntity<Node> responseEntity;
+            do {
+                responseEntity = restTemplate.getForEntity(url + "?consistency=TIMELINE",
+                    Node.class);
+            } while (!"true".equals(responseEntity.getHeaders()
+                .getFirst(GraphbaseV1RestController.STALE_HEADER)));
+            assertThat(responseEntity.getHeaders().getETag(), is(nullValue()));
+
+            // the reads with an ETag are strong even though the graph is TIMELINE
+            responseEntity = restTemplate.getForEntity(url, Node.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.OK));
+            assertThat(responseEntity.getBody().properties().get("key1"), is((Object) "value1"));
+            assertThat(responseEntity.getHeaders().getETag(), not(nullValue()));
+            assertThat(responseEntity.getHeaders()
+                .getFirst(GraphbaseV1RestController.STALE_HEADER), is(nullValue()));
+        } finally {
+            GraphServiceTest.SlowPrimaryObserver.setEnabled(false);
+        }
+    }
+
+    @Test @DisplayName("Test related to upserts") public void upsertTest() {
+        final String graphId = "upsertTest";
+        createGraph(graphId);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        String url = "/v1/graphs/" + graphId + "/nodes/upsert?mode=REPLACE";
+        Node node = new Node("id1", "type1", Properties.property("key1", "value1"));
+        {
+            ResponseEntity<Void> responseEntity = restTemplate.postForEntity(url,
+                new HttpEntity<>(JSON.writeValueAsString(node), headers), Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.OK));
+            assertThat(responseEntity.getHeaders().getETag(), not(nullValue()));
+        }
+        getNode(graphId, node);
+        {
+            ResponseEntity<Void> responseEntity = restTemplate.postForEntity(url,
+                new HttpEntity<>("{\"id\":\"id2\"}", headers), Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        }
+        {
+            ResponseEntity<Void> responseEntity = restTemplate.postForEntity(
+                "/v1/graphs/notFound/nodes/upsert/batch",
+                new HttpEntity<>("[" + JSON.writeValueAsString(node) + "]", headers), Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.NOT_FOUND));
+        }
+    }
+
+    @Test @DisplayName("Test related to durability") public void durabilityTest() {
+        final String graphId = "durabilityTest";
+        createGraph(graphId);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        String url = "/v1/graphs/" + graphId;
+        {
+            ResponseEntity<Void> responseEntity = restTemplate.exchange(url + "/durability",
+                HttpMethod.PUT, new HttpEntity<>("\"SKIP_WAL\"", headers), Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.NO_CONTENT));
+        }
+        assertThat(restTemplate.getForEntity(url, GraphConfiguration.class).getBody().durability(),
+            is(Durability.SKIP_WAL));
+        {
+            ResponseEntity<Void> responseEntity = restTemplate.exchange(url + "/durability",
+                HttpMethod.PUT, new HttpEntity<>("\"NO_WAL\"", headers), Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        }
+        {
+            ResponseEntity<Void> responseEntity = restTemplate.exchange(
+                "/v1/graphs/notFound/durability", HttpMethod.PUT,
+                new HttpEntity<>("\"SKIP_WAL\"", headers), Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.NOT_FOUND));
+        }
+    }
+
+    @Test @DisplayName("Test related to quotas") public void quotaTest() {
+        final String graphId = "quotaTest";
+        createGraph(graphId);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(ClientContextFilter.CLIENT_HEADER, "client1");
+
+        String url = "/v1/graphs/" + graphId;
+        {
+            ResponseEntity<Void> responseEntity = restTemplate.exchange(url + "/quotas",
+                HttpMethod.PUT, new HttpEntity<>("{\"perClient\":{\"readsPerSecond\":1}}", headers),
+                Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.NO_CONTENT));
+        }
+        {
+            ResponseEntity<Void> responseEntity = restTemplate.exchange(url + "/quotas",
+                HttpMethod.PUT, new HttpEntity<>("{\"readsPerSecond\":0}", headers), Void.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        }
+
+        // the second read of the client is over its quota
+        HttpEntity<Void> requestEntity = new HttpEntity<>(headers);
+        assertThat(restTemplate.exchange(url + "/nodes/_count", HttpMethod.GET, requestEntity,
+            Long.class).getStatusCode(), is(HttpStatus.OK));
+        {
+            ResponseEntity<Long> responseEntity = restTemplate
+                .exchange(url + "/nodes/_count", HttpMethod.GET, requestEntity, Long.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.TOO_MANY_REQUESTS));
+            assertThat(responseEntity.getHeaders().getFirst(HttpHeaders.RETRY_AFTER), is("1"));
+        }
+
+        // the throttled calls are counted in the metrics
+        Counter rejected = (Counter) meterRegistry.getMeters().stream()
+            .filter(meter -> meter.getId().getName().equals(GraphMetrics.QUOTA_THROTTLED))
+            .filter(meter -> graphId.equals(meter.getId().getTag("graph")))
+            .filter(meter -> "rejected".equals(meter.getId().getTag("outcome"))).findFirst().get();
+        assertThat(rejected.count(), is(1.0));
+    }
+
+    @Test @DisplayName("Test related to workload classes") public void workloadTest() {
+        final String graphId = "workloadTest";
+        createGraph(graphId);
+
+        String url = "/v1/graphs/" + graphId + "/nodes/_ids";
+        {
+            // the streamed response is written in the workload class of the request
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(ClientContextFilter.WORKLOAD_HEADER, "analytics");
+            ResponseEntity<String> responseEntity =
+                restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.OK));
+        }
+        {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(ClientContextFilter.WORKLOAD_HEADER, "unknown");
+            ResponseEntity<String> responseEntity =
+                restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+            assertThat(responseEntity.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        }
+    }
 }
@@ -0,0 +1,25 @@
+package com.github.brfrn169.graphbase.util;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@DisplayName("Tests for FingerprintSet") public class FingerprintSetTest {
+
+    @Test @DisplayName("Test for adding keys beyond the initial capacity") public void add() {
+        FingerprintSet set = new FingerprintSet(10);
+        for (int i = 0; i < 100000; i++) {
+            assertThat(set.add(Bytes.toBytes("key" + i)), is(true));
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertThat(set.add(Bytes.toBytes("key" + i)), is(false));
+        }
+        assertThat(set.size(), is(100000L));
+
+        assertThat(set.add(new byte[0]), is(true));
+        assertThat(set.add(new byte[0]), is(false));
+    }
+}
@@ -1,9 +1,14 @@
 package com.github.brfrn169.graphbase.util;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.brfrn169.graphbase.BloomFilterType;
+import com.github.brfrn169.graphbase.CompressionAlgorithm;
+import com.github.brfrn169.graphbase.Durability;
 import com.github.brfrn169.graphbase.GraphConfiguration;
 import com.github.brfrn169.graphbase.Node;
 import com.github.brfrn169.graphbase.Relationship;
+import com.github.brfrn169.graphbase.StorageLayout;
+import com.github.brfrn169.graphbase.StorageOptions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -25,6 +30,32 @@ import static org.junit.Assert.assertTrue;
         assertEquals(graphId, graphConf.graphId());
     }
 
+    @Test @DisplayName("Test for GraphConfiguration with storage options")
+    public void graphConfigurationWithStorageOptionsTest() {
+        GraphConfiguration graphConfiguration = new GraphConfiguration("graph",
+            new StorageOptions(CompressionAlgorithm.GZ, null, 65536, BloomFilterType.ROWCOL, null,
+                null, null, Durability.SKIP_WAL, null, null, null));
+
+        String json = JSON.writeValueAsString(graphConfiguration);
+        assertEquals("{\"graphId\":\"graph\",\"storageOptions\":{\"compression\":\"GZ\","
+            + "\"blockSize\":65536,\"bloomFilterType\":\"ROWCOL\",\"durability\":\"SKIP_WAL\"}}",
+            json);
+
+        assertEquals(graphConfiguration, JSON.readValue(json, GraphConfiguration.class));
+    }
+
+    @Test @DisplayName("Test for GraphConfiguration with the layout and durability")
+    public void graphConfigurationWithDurabilityTest() {
+        GraphConfiguration graphConfiguration =
+            new GraphConfiguration("graph", StorageLayout.SHARED, null, Durability.ASYNC_WAL);
+
+        String json = JSON.writeValueAsString(graphConfiguration);
+        assertEquals("{\"graphId\":\"graph\",\"layout\":\"SHARED\",\"durability\":\"ASYNC_WAL\"}",
+            json);
+
+        assertEquals(graphConfiguration, JSON.readValue(json, GraphConfiguration.class));
+    }
+
     @Test @DisplayName("Test for Node") public void nodeTest() {
         Node origNode = new Node("id", "type", Properties.property("key", "value"));
 